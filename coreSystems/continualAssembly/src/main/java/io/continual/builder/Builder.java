@@ -17,12 +17,15 @@
 package io.continual.builder;
 
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.Preferences;
 
 import org.json.JSONObject;
@@ -384,20 +387,71 @@ public class Builder<T>
 	}
 
 	@SuppressWarnings("unchecked")
-	private <D> T build ( String className ) throws BuildFailure
+	private T build ( String className ) throws BuildFailure
 	{
+		final Class<? extends T> c;
 		try
 		{
 			// find the target class
-			Class<? extends T> c = findClass ( className );
+			c = findClass ( className );
+		}
+		catch ( ClassNotFoundException | SecurityException e )
+		{
+			throw new BuildFailure ( e );
+		}
 
-			// get the name of the init method on the target class
-			final String initerName = fData.getIniterName ();
+		// get the name of the init method on the target class and the class it expects as a data source
+		final String initerName = fData.getIniterName ();
+		final Class<?> initerDataClass = fData.getIniterClass ();
 
-			// get the class that the init method expects as a data source
-			final Class<?> initerDataClass = fData.getIniterClass ();
-			
-			// try a static init method that'll take the context class and the data class
+		// find (or reuse) the way to create this class from this kind of data and context
+		final String key = fBase.getName () + "|" + initerName + "|" + initerDataClass.getName () + "|" + ( fContextClass == null ? "" : fContextClass.getName () );
+		final Creator creator = skCreators.get ( c ).computeIfAbsent ( key, k -> resolveCreator ( c, className, initerName, initerDataClass ) );
+
+		try
+		{
+			return (T) creator.create ( fData.getInitData (), fContext );
+		}
+		catch ( BuildFailure e )
+		{
+			throw e;
+		}
+		catch ( Throwable t )
+		{
+			throw new BuildFailure ( t );
+		}
+	}
+
+	/**
+	 * A resolved way to create an instance of a class from init data and a context
+	 */
+	private interface Creator
+	{
+		Object create ( Object data, Object context ) throws Throwable;
+	}
+
+	// resolved creators by target class, then by base class, initer name, data class, and context class
+	private static final ClassValue<ConcurrentHashMap<String,Creator>> skCreators = new ClassValue<ConcurrentHashMap<String,Creator>> ()
+	{
+		@Override
+		protected ConcurrentHashMap<String,Creator> computeValue ( Class<?> type )
+		{
+			return new ConcurrentHashMap<> ();
+		}
+	};
+
+	/**
+	 * Find the way to create the given class, in this order: a static init method taking the data
+	 * (and optionally the context), an instance init method called after the no-arg constructor, a
+	 * constructor taking the context and the data, a constructor taking the data, and finally the
+	 * no-arg constructor. The result is compiled to method handles so repeat builds don't pay for
+	 * the search or for reflective calls.
+	 */
+	private Creator resolveCreator ( Class<? extends T> c, String className, String initerName, Class<?> initerDataClass )
+	{
+		try
+		{
+			// try an init method that'll take the data class and possibly the context class
 			for ( Method m : c.getMethods () )
 			{
 				// if this method is named properly and returns an instance we can use...
@@ -411,13 +465,18 @@ public class Builder<T>
 					{
 						if ( isStatic )
 						{
-							return (T) m.invoke ( null, fData.getInitData () );
+							final MethodHandle h = kLookup.unreflect ( m ).asType ( MethodType.methodType ( Object.class, Object.class ) );
+							return ( data, ctx ) -> (Object) h.invokeExact ( data );
 						}
 						else
 						{
-							T t = c.newInstance ();
-							m.invoke ( t, fData.getInitData () );
-							return t;
+							final MethodHandle ctor = noArgConstructor ( c );
+							final MethodHandle h = kLookup.unreflect ( m ).asType ( MethodType.methodType ( void.class, Object.class, Object.class ) );
+							return ( data, ctx ) -> {
+								final Object t = (Object) ctor.invokeExact ();
+								h.invokeExact ( t, data );
+								return t;
+							};
 						}
 					}
 					else if ( params.length == 2 &&
@@ -428,28 +487,33 @@ public class Builder<T>
 					{
 						if ( isStatic )
 						{
-							return (T) m.invoke ( null, fData.getInitData (), fContext );
+							final MethodHandle h = kLookup.unreflect ( m ).asType ( MethodType.methodType ( Object.class, Object.class, Object.class ) );
+							return ( data, ctx ) -> (Object) h.invokeExact ( data, ctx );
 						}
 						else
 						{
-							T t = c.newInstance ();
-							m.invoke ( t, fData.getInitData (), fContext );
-							return t;
+							final MethodHandle ctor = noArgConstructor ( c );
+							final MethodHandle h = kLookup.unreflect ( m ).asType ( MethodType.methodType ( void.class, Object.class, Object.class, Object.class ) );
+							return ( data, ctx ) -> {
+								final Object t = (Object) ctor.invokeExact ();
+								h.invokeExact ( t, data, ctx );
+								return t;
+							};
 						}
 					}
 				}
 			}
 
 			// next try a constructor with the data and context...
-			if ( fContext != null )
+			if ( fContextClass != null )
 			{
 				Class<?> contextClassToTry = fContextClass;
 				while ( contextClassToTry != null )
 				{
 					try
 					{
-						final Constructor<? extends T> cc = c.getConstructor ( contextClassToTry, initerDataClass );
-						return cc.newInstance ( fContext, fData.getInitData () );
+						final MethodHandle h = constructor ( c.getConstructor ( contextClassToTry, initerDataClass ), Object.class, Object.class );
+						return ( data, ctx ) -> (Object) h.invokeExact ( ctx, data );
 					}
 					catch ( NoSuchMethodException e )
 					{
@@ -463,8 +527,8 @@ public class Builder<T>
 				{
 					try
 					{
-						final Constructor<? extends T> cc = c.getConstructor ( iface, initerDataClass );
-						return cc.newInstance ( fContext, fData.getInitData () );
+						final MethodHandle h = constructor ( c.getConstructor ( iface, initerDataClass ), Object.class, Object.class );
+						return ( data, ctx ) -> (Object) h.invokeExact ( ctx, data );
 					}
 					catch ( NoSuchMethodException e )
 					{
@@ -476,8 +540,8 @@ public class Builder<T>
 			// next try a constructor with just the data
 			try
 			{
-				final Constructor<? extends T> cc = c.getConstructor ( initerDataClass );
-				return cc.newInstance ( fData.getInitData () );
+				final MethodHandle h = constructor ( c.getConstructor ( initerDataClass ), Object.class );
+				return ( data, ctx ) -> (Object) h.invokeExact ( data );
 			}
 			catch ( NoSuchMethodException e )
 			{
@@ -487,8 +551,8 @@ public class Builder<T>
 			// finally, we'll take a no-arg constructor
 			try
 			{
-				final Constructor<? extends T> cc = c.getConstructor ();
-				return cc.newInstance ();
+				final MethodHandle h = constructor ( c.getConstructor () );
+				return ( data, ctx ) -> (Object) h.invokeExact ();
 			}
 			catch ( NoSuchMethodException e )
 			{
@@ -496,44 +560,39 @@ public class Builder<T>
 			}
 
 			// out of options
-			throw new BuildFailure ( "Could not find a suitable constructor/creator for class [" + className + "]" );
+			return failWith ( new BuildFailure ( "Could not find a suitable constructor/creator for class [" + className + "]" ) );
 		}
-		catch ( IllegalArgumentException e )
+		catch ( IllegalAccessException | InstantiationException | SecurityException e )
 		{
-			throw new BuildFailure ( e );
+			return failWith ( new BuildFailure ( e ) );
 		}
-		catch ( InvocationTargetException e )
-		{
-			final Throwable target = e.getTargetException ();
-			if ( target instanceof BuildFailure )
-			{
-				final BuildFailure f = (BuildFailure) target;
-				throw f;
-			}
-			if ( target == null )
-			{
-				throw new BuildFailure ( e );
-			}
-			throw new BuildFailure ( target );
-		}
-		catch ( ClassNotFoundException e )
-		{
-			throw new BuildFailure ( e );
-		}
-		catch ( InstantiationException e )
-		{
-			throw new BuildFailure ( e );
-		}
-		catch ( IllegalAccessException e )
+	}
+
+	private static final MethodHandles.Lookup kLookup = MethodHandles.lookup ();
+
+	private static MethodHandle constructor ( Constructor<?> cc, Class<?>... genericParams ) throws IllegalAccessException
+	{
+		return kLookup.unreflectConstructor ( cc ).asType ( MethodType.methodType ( Object.class, genericParams ) );
+	}
+
+	private static MethodHandle noArgConstructor ( Class<?> c ) throws IllegalAccessException, InstantiationException
+	{
+		try
 		{
-			throw new BuildFailure ( e );
+			return constructor ( c.getConstructor () );
 		}
-		catch ( SecurityException e )
+		catch ( NoSuchMethodException e )
 		{
-			throw new BuildFailure ( e );
+			throw new InstantiationException ( c.getName () );
 		}
 	}
 
+	private static Creator failWith ( BuildFailure failure )
+	{
+		// a fresh exception per attempt, so each caller gets its own stack trace
+		return ( data, ctx ) -> { throw new BuildFailure ( failure.getMessage (), failure.getCause () ); };
+	}
+
 	private Class<?> classForName ( String className ) throws ClassNotFoundException
 	{
 		if ( fClassLoader != null )
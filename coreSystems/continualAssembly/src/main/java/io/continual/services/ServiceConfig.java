@@ -16,8 +16,14 @@
 
 package io.continual.services;
 
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import io.continual.util.data.json.JsonVisitor;
+
 public class ServiceConfig
 {
 	public static ServiceConfig read ( JSONObject sc )
@@ -73,5 +79,37 @@ public class ServiceConfig
 		return fLocal.getBoolean ( "enabled", true );
 	}
 
+	/**
+	 * Get the names of services this service declares it depends on, via "dependsOn",
+	 * which may be a single name or an array of names.
+	 * @return a list of 0 or more service names
+	 */
+	public List<String> getDependencies ()
+	{
+		final JSONObject data = toJson ();
+		final JSONArray names = data.optJSONArray ( "dependsOn" );
+		if ( names != null )
+		{
+			return JsonVisitor.arrayToList ( names );
+		}
+
+		final LinkedList<String> result = new LinkedList<> ();
+		final String name = data.optString ( "dependsOn", null );
+		if ( name != null )
+		{
+			result.add ( name );
+		}
+		return result;
+	}
+
+	/**
+	 * Get the time this service is allowed for startup, via "startTimeoutMs"
+	 * @return a timeout in milliseconds, or -1 to use the container's default
+	 */
+	public long getStartTimeoutMs ()
+	{
+		return toJson ().optLong ( "startTimeoutMs", -1L );
+	}
+
 	private ConfigObject fLocal;
 }
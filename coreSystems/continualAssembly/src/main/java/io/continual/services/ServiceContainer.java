@@ -18,9 +18,23 @@ package io.continual.services;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -29,7 +43,6 @@ import org.slf4j.LoggerFactory;
 import io.continual.builder.Builder;
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.builder.sources.BuilderJsonDataSource;
-import io.continual.util.collections.MultiMap;
 import io.continual.util.console.ConsoleProgram.StartupFailureException;
 import io.continual.util.data.exprEval.EnvDataSource;
 import io.continual.util.data.exprEval.ExprDataSourceStack;
@@ -76,6 +89,7 @@ public class ServiceContainer
 	public static <T extends ServiceContainer> T build ( InputStream serviceStream, String[] profiles, boolean withStart, ServiceContainerFactory<T> scf ) throws StartupFailureException
 	{
 		final T svcContainer = scf.create ();
+		final ServiceContainer container = svcContainer;
 
 		if ( serviceStream == null )
 		{
@@ -100,12 +114,36 @@ public class ServiceContainer
 				log.info ( "Service [" + sc.getName() + "] is enabled..." );
 				try
 				{
-					final Service s = Builder.withBaseClass ( Service.class )
-						.usingClassName ( sc.getClassname () )
-						.usingData ( new BuilderJsonDataSource ( sc.toJson() ) )
-						.providingContext ( svcContainer )
-						.build ();
+					// services found via get() or getReqd() while this one is built are its dependencies
+					final Set<Service> lookups = newServiceSet ();
+					final Set<Service> prior = container.captureLookups ( lookups );
+					final Service s;
+					try
+					{
+						s = Builder.withBaseClass ( Service.class )
+							.usingClassName ( sc.getClassname () )
+							.usingData ( new BuilderJsonDataSource ( sc.toJson() ) )
+							.providingContext ( svcContainer )
+							.build ();
+					}
+					finally
+					{
+						container.captureLookups ( prior );
+					}
 					svcContainer.add ( sc.getName (), s );
+
+					for ( Service dependency : lookups )
+					{
+						svcContainer.addDependency ( s, dependency );
+					}
+					for ( String dependencyName : sc.getDependencies () )
+					{
+						svcContainer.addDependency ( s, dependencyName );
+					}
+					if ( sc.getStartTimeoutMs () >= 0 )
+					{
+						svcContainer.setStartTimeout ( s, sc.getStartTimeoutMs () );
+					}
 				}
 				catch ( BuildFailure e )
 				{
@@ -138,48 +176,124 @@ public class ServiceContainer
 	
 	public ServiceContainer ()
 	{
-		fServices = new LinkedList<Service> ();
-		fServiceByName = new MultiMap<String,Service> ();
+		fRegistry = new Registry ();
+		fSettings = new IdentityHashMap<> ();
+		fStartTimes = new ConcurrentHashMap<> ();
+		fLookupCapture = new ThreadLocal<> ();
+		fStateChange = new Object ();
+		fDefaultStartTimeoutMs = 0L;
+		fShutdownWaitMs = kDefaultShutdownWaitMs;
 	}
 
 	public synchronized ServiceContainer add ( String name, Service s )
 	{
-		fServices.add ( s );
 		if ( name != null )
 		{
-			final int count = fServiceByName.size ( name );
+			final List<Service> current = fRegistry.fServiceByName.get ( name );
+			final int count = current == null ? 0 : current.size ();
 			if ( count > 0 )
 			{
 				log.warn ( "While adding service [{}], {} instances are already present.", name, count );
 			}
-			fServiceByName.put ( name, s );
 		}
+		fRegistry = fRegistry.with ( name, s );
+		return this;
+	}
+
+	/**
+	 * Declare that a service depends on another, so that it's started after, and stopped before,
+	 * the other service. Services built by this container also depend on the services they
+	 * find via get() or getReqd() during construction.
+	 * @param dependent the dependent service
+	 * @param dependency the service it depends on
+	 * @return this container
+	 */
+	public synchronized ServiceContainer addDependency ( Service dependent, Service dependency )
+	{
+		if ( dependent != null && dependency != null && dependent != dependency )
+		{
+			settingsFor ( dependent ).fDependencies.add ( dependency );
+		}
+		return this;
+	}
+
+	/**
+	 * Declare that a service depends on the services registered under the given name. The
+	 * name is resolved when services are started or stopped.
+	 * @param dependent the dependent service
+	 * @param dependencyName the name of the services it depends on
+	 * @return this container
+	 */
+	public synchronized ServiceContainer addDependency ( Service dependent, String dependencyName )
+	{
+		if ( dependent != null && dependencyName != null )
+		{
+			settingsFor ( dependent ).fDependencyNames.add ( dependencyName );
+		}
+		return this;
+	}
+
+	/**
+	 * Set the time a service is allowed for startup.
+	 * @param s the service
+	 * @param timeoutMs the timeout in milliseconds, or 0 for no limit
+	 * @return this container
+	 */
+	public synchronized ServiceContainer setStartTimeout ( Service s, long timeoutMs )
+	{
+		if ( s != null )
+		{
+			settingsFor ( s ).fStartTimeoutMs = Math.max ( 0L, timeoutMs );
+		}
+		return this;
+	}
+
+	/**
+	 * Set the time each service is allowed for startup, unless set for the service specifically.
+	 * @param timeoutMs the timeout in milliseconds, or 0 for no limit (the default)
+	 * @return this container
+	 */
+	public synchronized ServiceContainer setDefaultStartTimeout ( long timeoutMs )
+	{
+		fDefaultStartTimeoutMs = Math.max ( 0L, timeoutMs );
+		return this;
+	}
+
+	/**
+	 * Set how long stopAll() waits for a service's dependents to stop before asking the
+	 * service itself to stop.
+	 * @param waitMs the wait time in milliseconds
+	 * @return this container
+	 */
+	public synchronized ServiceContainer setShutdownWait ( long waitMs )
+	{
+		fShutdownWaitMs = Math.max ( 0L, waitMs );
 		return this;
 	}
 
-	public synchronized List<String> getServiceNames ()
+	public List<String> getServiceNames ()
 	{
-		return new LinkedList<String> ( fServiceByName.getKeys () );
+		return new LinkedList<String> ( fRegistry.fServiceByName.keySet () );
 	}
 
-	public synchronized List<Service> getServices ()
+	public List<Service> getServices ()
 	{
-		return new LinkedList<Service> ( fServices );
+		return new LinkedList<Service> ( fRegistry.fServices );
 	}
 
 	@SuppressWarnings("unchecked")
-	public synchronized <T> T get ( String name, Class<T> asClass )
+	public <T> T get ( String name, Class<T> asClass )
 	{
 		if ( name == null ) return null;
 
-		final List<Service> svcs = fServiceByName.get ( name );
+		final List<Service> svcs = fRegistry.fServiceByName.get ( name );
 		if ( svcs != null )
 		{
 			for ( Service svc : svcs )
 			{
 				if ( asClass.isInstance ( svc ) )
 				{
-					return (T) svc;
+					return (T) captured ( svc );
 				}
 			}
 		}
@@ -187,32 +301,32 @@ public class ServiceContainer
 	}
 
 	/**
-	 * Get a service by class. 
+	 * Get a service by class.
 	 * @param <T>
 	 * @param asClass
 	 * @return an instance of the target class or null
 	 */
 	@SuppressWarnings("unchecked")
-	public synchronized <T> T get ( Class<T> asClass )
+	public <T> T get ( Class<T> asClass )
 	{
-		for ( Service svc : fServices )
+		for ( Service svc : fRegistry.fServices )
 		{
 			if ( asClass.isInstance ( svc ) )
 			{
-				return (T) svc;
+				return (T) captured ( svc );
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * Get a required service by class. 
+	 * Get a required service by class.
 	 * @param <T>
 	 * @param asClass
 	 * @return an instance of the target class or null
-	 * @throws BuildFailure 
+	 * @throws BuildFailure
 	 */
-	public synchronized <T> T getReqd ( Class<T> asClass ) throws BuildFailure
+	public <T> T getReqd ( Class<T> asClass ) throws BuildFailure
 	{
 		T result = get ( asClass );
 		if ( result == null )
@@ -230,7 +344,7 @@ public class ServiceContainer
 	 * @return an instance of the target class
 	 * @throws BuildFailure
 	 */
-	public synchronized <T> T getReqd ( String name, Class<T> asClass ) throws BuildFailure
+	public <T> T getReqd ( String name, Class<T> asClass ) throws BuildFailure
 	{
 		T result = get ( name, asClass );
 		if ( result == null )
@@ -248,7 +362,7 @@ public class ServiceContainer
 	 * @return an instance of the target class
 	 * @throws BuildFailure
 	 */
-	public synchronized <T> T getReqdIfNotNull ( String name, Class<T> asClass ) throws BuildFailure
+	public <T> T getReqdIfNotNull ( String name, Class<T> asClass ) throws BuildFailure
 	{
 		if ( name == null ) return null;
 
@@ -260,51 +374,157 @@ public class ServiceContainer
 		return result;
 	}
 
+	/**
+	 * Start the named services. Services are started in layers, each layer holding the services
+	 * whose dependencies are all in earlier layers, and the services within a layer are started
+	 * in parallel. If any service fails to start (or doesn't start within its timeout), the
+	 * remaining layers are skipped and all services are stopped.
+	 * @throws Service.FailedToStart
+	 */
 	public void startAll () throws Service.FailedToStart
 	{
+		final Registry registry = fRegistry;
+		final List<Service> services = registry.getNamedServices ();
+		final List<List<Service>> layers = planLayers ( registry, services, resolveDependencies ( registry, services ) );
+
+		final long startMs = System.currentTimeMillis ();
+		final ExecutorService executor = createExecutor ( "start" );
 		try
 		{
-			// startup the services
-			for ( Entry<String, List<Service>> svcEntry : fServiceByName.getValues().entrySet() )
+			for ( List<Service> layer : layers )
 			{
-				log.info ( "Starting service [{}]...", svcEntry.getKey () );
-				for ( Service svc : svcEntry.getValue() )
-				{
-					svc.start ();
-				}
+				startLayer ( registry, layer, executor );
 			}
+			log.info ( "Started {} services in {} layers in {} ms.", services.size (), layers.size (), System.currentTimeMillis () - startMs );
 		}
-		catch ( Service.FailedToStart e )
+		catch ( Service.FailedToStart | RuntimeException e )
 		{
 			stopAll ();
 			throw e;
 		}
+		finally
+		{
+			executor.shutdown ();
+		}
 	}
 
+	/**
+	 * Get the time each service took to start, by service name
+	 * @return a map of service name to startup time in milliseconds
+	 */
+	public Map<String,Long> getStartupTimesMs ()
+	{
+		return new TreeMap<> ( fStartTimes );
+	}
+
+	/**
+	 * Ask all services to stop. Each service is asked to stop in parallel with the others, but
+	 * only after the services that depend on it have stopped (or the shutdown wait expires).
+	 */
 	public void stopAll ()
 	{
-		// stop the services
-		for ( Service svc : getServices () )
+		final Registry registry = fRegistry;
+		final List<Service> services = registry.getDistinctServices ();
+		final Map<Service,Set<Service>> dependencies = resolveDependencies ( registry, services );
+		final List<List<Service>> layers = planLayers ( registry, services, dependencies );
+
+		// each service waits only for its dependents in later layers, so a dependency cycle can't deadlock
+		final IdentityHashMap<Service,Integer> layerOf = new IdentityHashMap<> ();
+		for ( int i=0; i<layers.size (); i++ )
 		{
-			svc.requestFinish ();
+			for ( Service svc : layers.get ( i ) )
+			{
+				layerOf.put ( svc, i );
+			}
+		}
+		final IdentityHashMap<Service,List<Service>> dependents = new IdentityHashMap<> ();
+		for ( Map.Entry<Service,Set<Service>> e : dependencies.entrySet () )
+		{
+			for ( Service dependency : e.getValue () )
+			{
+				if ( layerOf.get ( e.getKey () ) > layerOf.get ( dependency ) )
+				{
+					dependents.computeIfAbsent ( dependency, k -> new LinkedList<> () ).add ( e.getKey () );
+				}
+			}
 		}
-	}
 
-	public void awaitTermination () throws InterruptedException
-	{
-		int runCount = Integer.MAX_VALUE;
-		while ( runCount > 0 )
+		final long waitUntilMs = System.currentTimeMillis () + fShutdownWaitMs;
+		final ExecutorService executor = createExecutor ( "stop" );
+		try
 		{
-			// service implementation is wide-open, so there's not a good way
-			// to enforce a signal to wait on. Here, we just poll.
-			Thread.sleep ( 250 );
+			final LinkedList<Future<?>> stops = new LinkedList<> ();
+			for ( int i=layers.size ()-1; i>=0; i-- )
+			{
+				for ( Service svc : layers.get ( i ) )
+				{
+					final List<Service> waitFor = dependents.getOrDefault ( svc, Collections.emptyList () );
+					stops.add ( executor.submit ( () -> {
+						awaitStopped ( registry, svc, waitFor, waitUntilMs );
+						svc.requestFinish ();
+						signalStateChange ();
+						return null;
+					} ) );
+				}
+			}
 
-			runCount = 0;
-			for ( Service s : getServices () )
+			for ( Future<?> f : stops )
 			{
-				if ( s.isRunning () ) runCount++;
+				try
+				{
+					f.get ( Math.max ( 0L, waitUntilMs - System.currentTimeMillis () ) + kStopGraceMs, TimeUnit.MILLISECONDS );
+				}
+				catch ( ExecutionException e )
+				{
+					log.warn ( "Service failed during shutdown: {}", e.getCause ().getMessage (), e.getCause () );
+				}
+				catch ( TimeoutException e )
+				{
+					log.warn ( "A service did not finish its shutdown request in time." );
+				}
 			}
 		}
+		catch ( InterruptedException e )
+		{
+			log.warn ( "Interrupted while stopping services." );
+			Thread.currentThread ().interrupt ();
+		}
+		finally
+		{
+			executor.shutdown ();
+			signalStateChange ();
+		}
+	}
+
+	/**
+	 * Wait until no service is running.
+	 * @throws InterruptedException
+	 */
+	public void awaitTermination () throws InterruptedException
+	{
+		awaitTermination ( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Wait up to the given time for all services to stop running. The wait is released as
+	 * stopAll() asks services to finish. Because a service can also stop on its own without
+	 * any signal, running services are re-checked periodically as well.
+	 * @param duration
+	 * @param units
+	 * @return true if no service is running
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination ( long duration, TimeUnit units ) throws InterruptedException
+	{
+		final long durationMs = units.toMillis ( duration );
+		final long startMs = System.currentTimeMillis ();
+		while ( isAnyRunning ( fRegistry.getDistinctServices () ) )
+		{
+			final long remainingMs = durationMs - ( System.currentTimeMillis () - startMs );
+			if ( remainingMs <= 0 ) return false;
+			waitForStateChange ( Math.min ( remainingMs, kTerminationRecheckMs ) );
+		}
+		return true;
 	}
 
 	public ExpressionEvaluator getExprEval ()
@@ -322,8 +542,422 @@ public class ServiceContainer
 		return new ExpressionEvaluator ( stack );
 	}
 
-	private final LinkedList<Service> fServices;
-	private final MultiMap<String,Service> fServiceByName;
+	private volatile Registry fRegistry;
+	private final IdentityHashMap<Service,ServiceSettings> fSettings;
+	private final ConcurrentHashMap<String,Long> fStartTimes;
+	private final ThreadLocal<Set<Service>> fLookupCapture;
+	private final Object fStateChange;
+	private volatile long fDefaultStartTimeoutMs;
+	private volatile long fShutdownWaitMs;
+
+	private static final long kDefaultShutdownWaitMs = 10 * 1000L;
+	private static final long kStopGraceMs = 5 * 1000L;
+	private static final long kStopRecheckMs = 25L;
+	private static final long kTerminationRecheckMs = 250L;
+
+	// the states of a service start submitted to the start executor
+	private static final int kStartQueued = 0;
+	private static final int kStartRunning = 1;
+	private static final int kStartReturned = 2;
+	private static final int kStartAbandoned = 3;
+
+	/**
+	 * An immutable view of the services in this container. Additions replace the registry,
+	 * so lookups never lock.
+	 */
+	private static class Registry
+	{
+		Registry ()
+		{
+			this ( Collections.<Service>emptyList (), Collections.<String,List<Service>>emptyMap (), new IdentityHashMap<> () );
+		}
+
+		Registry with ( String name, Service s )
+		{
+			final ArrayList<Service> services = new ArrayList<> ( fServices );
+			services.add ( s );
+
+			final LinkedHashMap<String,List<Service>> byName = new LinkedHashMap<> ( fServiceByName );
+			final IdentityHashMap<Service,String> names = new IdentityHashMap<> ( fNames );
+			if ( name != null )
+			{
+				final ArrayList<Service> named = new ArrayList<> ( byName.getOrDefault ( name, Collections.<Service>emptyList () ) );
+				named.add ( s );
+				byName.put ( name, Collections.unmodifiableList ( named ) );
+				names.putIfAbsent ( s, name );
+			}
+			return new Registry ( Collections.unmodifiableList ( services ), Collections.unmodifiableMap ( byName ), names );
+		}
+
+		String nameOf ( Service s )
+		{
+			final String name = fNames.get ( s );
+			return name == null ? "(unnamed)" : name;
+		}
+
+		/**
+		 * Get each service that was added with a name once, in the order added
+		 * @return a list of services
+		 */
+		List<Service> getNamedServices ()
+		{
+			final LinkedList<Service> result = new LinkedList<> ();
+			final Set<Service> seen = newServiceSet ();
+			for ( Service s : fServices )
+			{
+				if ( s != null && fNames.containsKey ( s ) && seen.add ( s ) )
+				{
+					result.add ( s );
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Get each service once, in the order added
+		 * @return a list of services
+		 */
+		List<Service> getDistinctServices ()
+		{
+			final LinkedList<Service> result = new LinkedList<> ();
+			final Set<Service> seen = newServiceSet ();
+			for ( Service s : fServices )
+			{
+				if ( s != null && seen.add ( s ) )
+				{
+					result.add ( s );
+				}
+			}
+			return result;
+		}
+
+		private Registry ( List<Service> services, Map<String,List<Service>> byName, IdentityHashMap<Service,String> names )
+		{
+			fServices = services;
+			fServiceByName = byName;
+			fNames = names;
+		}
+
+		private final List<Service> fServices;
+		private final Map<String,List<Service>> fServiceByName;
+		private final IdentityHashMap<Service,String> fNames;
+	}
+
+	private static class ServiceSettings
+	{
+		private final Set<Service> fDependencies = newServiceSet ();
+		private final List<String> fDependencyNames = new LinkedList<> ();
+		private long fStartTimeoutMs = -1L;
+	}
+
+	private static Set<Service> newServiceSet ()
+	{
+		return Collections.newSetFromMap ( new IdentityHashMap<Service,Boolean> () );
+	}
+
+	private ServiceSettings settingsFor ( Service s )
+	{
+		return fSettings.computeIfAbsent ( s, k -> new ServiceSettings () );
+	}
+
+	private synchronized long startTimeoutFor ( Service s )
+	{
+		final ServiceSettings ss = fSettings.get ( s );
+		return ( ss == null || ss.fStartTimeoutMs < 0 ) ? fDefaultStartTimeoutMs : ss.fStartTimeoutMs;
+	}
+
+	/**
+	 * Set the collection that records services found by lookups on this thread
+	 * @param into a collection, or null to stop recording
+	 * @return the collection that was in place, if any
+	 */
+	private Set<Service> captureLookups ( Set<Service> into )
+	{
+		final Set<Service> prior = fLookupCapture.get ();
+		if ( into == null )
+		{
+			fLookupCapture.remove ();
+		}
+		else
+		{
+			fLookupCapture.set ( into );
+		}
+		return prior;
+	}
+
+	private Service captured ( Service s )
+	{
+		final Set<Service> capture = fLookupCapture.get ();
+		if ( capture != null )
+		{
+			capture.add ( s );
+		}
+		return s;
+	}
+
+	/**
+	 * Get each service's dependencies among the given services
+	 * @param registry
+	 * @param services
+	 * @return a map from each service to the set of services it depends on
+	 */
+	private Map<Service,Set<Service>> resolveDependencies ( Registry registry, List<Service> services )
+	{
+		final Set<Service> members = newServiceSet ();
+		members.addAll ( services );
+
+		final IdentityHashMap<Service,Set<Service>> result = new IdentityHashMap<> ();
+		synchronized ( this )
+		{
+			for ( Service svc : services )
+			{
+				final Set<Service> deps = newServiceSet ();
+				final ServiceSettings ss = fSettings.get ( svc );
+				if ( ss != null )
+				{
+					deps.addAll ( ss.fDependencies );
+					for ( String name : ss.fDependencyNames )
+					{
+						final List<Service> named = registry.fServiceByName.get ( name );
+						if ( named == null )
+						{
+							log.warn ( "Service [{}] depends on unknown service [{}].", registry.nameOf ( svc ), name );
+						}
+						else
+						{
+							deps.addAll ( named );
+						}
+					}
+				}
+				deps.retainAll ( members );
+				deps.remove ( svc );
+				result.put ( svc, deps );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Arrange services into layers such that each service's dependencies are in earlier layers.
+	 * @param registry
+	 * @param services
+	 * @param dependencies
+	 * @return a list of layers
+	 */
+	private List<List<Service>> planLayers ( Registry registry, List<Service> services, Map<Service,Set<Service>> dependencies )
+	{
+		final LinkedList<List<Service>> layers = new LinkedList<> ();
+		final Set<Service> placed = newServiceSet ();
+		final LinkedList<Service> remaining = new LinkedList<> ( services );
+		while ( !remaining.isEmpty () )
+		{
+			final LinkedList<Service> layer = new LinkedList<> ();
+			for ( Service svc : remaining )
+			{
+				if ( placed.containsAll ( dependencies.get ( svc ) ) )
+				{
+					layer.add ( svc );
+				}
+			}
+			if ( layer.isEmpty () )
+			{
+				// a dependency cycle; take the services in the order they were added until it's broken
+				log.warn ( "Service [{}] is in a dependency cycle. Ordering it by registration.", registry.nameOf ( remaining.getFirst () ) );
+				layer.add ( remaining.getFirst () );
+			}
+			placed.addAll ( layer );
+			remaining.removeAll ( layer );
+			layers.add ( layer );
+		}
+		return layers;
+	}
+
+	private void startLayer ( Registry registry, List<Service> layer, ExecutorService executor ) throws Service.FailedToStart
+	{
+		// a lone service without a timeout is started on the caller's thread, as it always was
+		if ( layer.size () == 1 && startTimeoutFor ( layer.get ( 0 ) ) == 0 )
+		{
+			startService ( registry, layer.get ( 0 ) );
+			return;
+		}
+
+		final long submittedAtMs = System.currentTimeMillis ();
+		final ArrayList<Future<?>> starts = new ArrayList<> ( layer.size () );
+		final ArrayList<AtomicInteger> states = new ArrayList<> ( layer.size () );
+		for ( Service svc : layer )
+		{
+			final AtomicInteger state = new AtomicInteger ( kStartQueued );
+			states.add ( state );
+			starts.add ( executor.submit ( () -> {
+				if ( !state.compareAndSet ( kStartQueued, kStartRunning ) ) return null;
+				try
+				{
+					startService ( registry, svc );
+				}
+				finally
+				{
+					// a start that was abandoned after its timeout is stopped as soon as it returns
+					if ( !state.compareAndSet ( kStartRunning, kStartReturned ) )
+					{
+						svc.requestFinish ();
+					}
+					signalStateChange ();
+				}
+				return null;
+			} ) );
+		}
+
+		// wait for the whole layer, even after a failure, so nothing is mid-start when services are stopped
+		Service.FailedToStart failure = null;
+		RuntimeException runtimeFailure = null;
+		for ( int i=0; i<layer.size (); i++ )
+		{
+			final Service svc = layer.get ( i );
+			final Future<?> f = starts.get ( i );
+			final long timeoutMs = startTimeoutFor ( svc );
+			try
+			{
+				if ( timeoutMs > 0 )
+				{
+					f.get ( Math.max ( 0L, submittedAtMs + timeoutMs - System.currentTimeMillis () ), TimeUnit.MILLISECONDS );
+				}
+				else
+				{
+					f.get ();
+				}
+			}
+			catch ( TimeoutException e )
+			{
+				f.cancel ( true );
+				abandonStart ( registry, svc, states.get ( i ) );
+				if ( failure == null )
+				{
+					failure = new Service.FailedToStart ( new TimeoutException ( "Service [" + registry.nameOf ( svc ) + "] did not start within " + timeoutMs + " ms." ) );
+				}
+			}
+			catch ( ExecutionException e )
+			{
+				final Throwable cause = e.getCause ();
+				if ( cause instanceof RuntimeException )
+				{
+					if ( runtimeFailure == null ) runtimeFailure = (RuntimeException) cause;
+				}
+				else if ( failure == null )
+				{
+					failure = cause instanceof Service.FailedToStart ? (Service.FailedToStart) cause : new Service.FailedToStart ( cause );
+				}
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+				for ( int j=0; j<layer.size (); j++ )
+				{
+					starts.get ( j ).cancel ( true );
+					final AtomicInteger state = states.get ( j );
+					if ( !state.compareAndSet ( kStartQueued, kStartAbandoned ) )
+					{
+						state.compareAndSet ( kStartRunning, kStartAbandoned );
+					}
+				}
+				throw new Service.FailedToStart ( e );
+			}
+		}
+
+		if ( failure != null ) throw failure;
+		if ( runtimeFailure != null ) throw runtimeFailure;
+	}
+
+	/**
+	 * Give up on a start that timed out. A start that's underway gets a grace period to return
+	 * (it was interrupted) so it can be stopped normally; if it's still running after that, it's
+	 * marked abandoned and its own thread stops the service once start() returns.
+	 */
+	private void abandonStart ( Registry registry, Service svc, AtomicInteger state )
+	{
+		if ( state.compareAndSet ( kStartQueued, kStartAbandoned ) ) return;
+
+		final long waitUntilMs = System.currentTimeMillis () + kStopGraceMs;
+		try
+		{
+			while ( state.get () == kStartRunning )
+			{
+				final long remainingMs = waitUntilMs - System.currentTimeMillis ();
+				if ( remainingMs <= 0 ) break;
+				waitForStateChange ( Math.min ( remainingMs, kStopRecheckMs ) );
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread ().interrupt ();
+		}
+
+		if ( state.compareAndSet ( kStartRunning, kStartAbandoned ) )
+		{
+			log.warn ( "Service [{}] is still starting after its timeout; it'll be stopped when its start returns.", registry.nameOf ( svc ) );
+		}
+	}
+
+	private void startService ( Registry registry, Service svc ) throws Service.FailedToStart
+	{
+		final String name = registry.nameOf ( svc );
+		log.info ( "Starting service [{}]...", name );
+
+		final long startMs = System.currentTimeMillis ();
+		svc.start ();
+		final long durationMs = System.currentTimeMillis () - startMs;
+
+		fStartTimes.put ( name, durationMs );
+		log.info ( "Service [{}] started in {} ms.", name, durationMs );
+	}
+
+	private void awaitStopped ( Registry registry, Service svc, List<Service> dependents, long untilMs ) throws InterruptedException
+	{
+		while ( isAnyRunning ( dependents ) )
+		{
+			final long remainingMs = untilMs - System.currentTimeMillis ();
+			if ( remainingMs <= 0 )
+			{
+				log.warn ( "Stopping service [{}] while services that depend on it are still running.", registry.nameOf ( svc ) );
+				return;
+			}
+			waitForStateChange ( Math.min ( remainingMs, kStopRecheckMs ) );
+		}
+	}
+
+	private static boolean isAnyRunning ( List<Service> services )
+	{
+		for ( Service s : services )
+		{
+			if ( s.isRunning () ) return true;
+		}
+		return false;
+	}
+
+	private void waitForStateChange ( long atMostMs ) throws InterruptedException
+	{
+		synchronized ( fStateChange )
+		{
+			fStateChange.wait ( atMostMs );
+		}
+	}
+
+	private void signalStateChange ()
+	{
+		synchronized ( fStateChange )
+		{
+			fStateChange.notifyAll ();
+		}
+	}
+
+	private static ExecutorService createExecutor ( String purpose )
+	{
+		final AtomicInteger threadNum = new AtomicInteger ( 0 );
+		return Executors.newCachedThreadPool ( r -> {
+			final Thread t = new Thread ( r, "ServiceContainer " + purpose + " " + threadNum.incrementAndGet () );
+			t.setDaemon ( true );
+			return t;
+		} );
+	}
 
 	private static final Logger log = LoggerFactory.getLogger ( ServiceContainer.class );
 }
@@ -196,6 +196,87 @@ public class BuilderTest
 		}
 	}
 
+	@Test
+	public void testRepeatBuildsUseContextConstructor () throws BuildFailure
+	{
+		for ( int i=0; i<3; i++ )
+		{
+			final CountingThing t = Builder.withBaseClass ( CountingThing.class )
+				.usingClassName ( CountingThing.class.getName () )
+				.usingData ( new JSONObject ().put ( "n", i ) )
+				.providingContext ( "ctx" )
+				.build ();
+			Assert.assertEquals ( i, t.fN );
+			Assert.assertEquals ( "ctx", t.fContext );
+		}
+
+		// without a context, the data-only constructor applies
+		final CountingThing t = Builder.withBaseClass ( CountingThing.class )
+			.usingClassName ( CountingThing.class.getName () )
+			.usingData ( new JSONObject ().put ( "n", 5 ) )
+			.build ();
+		Assert.assertEquals ( 5, t.fN );
+		Assert.assertNull ( t.fContext );
+	}
+
+	@Test
+	public void testConstructorFailuresAreMapped ()
+	{
+		try
+		{
+			Builder.withBaseClass ( FailingThing.class )
+				.usingClassName ( FailingThing.class.getName () )
+				.usingData ( new JSONObject ().put ( "fail", "build" ) )
+				.build ();
+			Assert.fail ( "expected a build failure" );
+		}
+		catch ( BuildFailure e )
+		{
+			// the constructor's own failure is passed through
+			Assert.assertEquals ( "bad config", e.getMessage () );
+		}
+
+		try
+		{
+			Builder.withBaseClass ( FailingThing.class )
+				.usingClassName ( FailingThing.class.getName () )
+				.usingData ( new JSONObject ().put ( "fail", "runtime" ) )
+				.build ();
+			Assert.fail ( "expected a build failure" );
+		}
+		catch ( BuildFailure e )
+		{
+			Assert.assertTrue ( e.getCause () instanceof IllegalStateException );
+		}
+	}
+
+	public static class CountingThing
+	{
+		public CountingThing ( String context, JSONObject data )
+		{
+			fN = data.getInt ( "n" );
+			fContext = context;
+		}
+
+		public CountingThing ( JSONObject data )
+		{
+			fN = data.getInt ( "n" );
+			fContext = null;
+		}
+
+		final int fN;
+		final String fContext;
+	}
+
+	public static class FailingThing
+	{
+		public FailingThing ( JSONObject data ) throws BuildFailure
+		{
+			if ( data.getString ( "fail" ).equals ( "build" ) ) throw new BuildFailure ( "bad config" );
+			throw new IllegalStateException ( "runtime" );
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private static class TestBuilderJsonDataSource1 extends BuilderJsonDataSource {
 		public TestBuilderJsonDataSource1 () {
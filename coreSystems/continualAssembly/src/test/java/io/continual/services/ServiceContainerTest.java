@@ -1,8 +1,16 @@
 package io.continual.services;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -103,6 +111,272 @@ public class ServiceContainerTest
 		sc.startAll ();
 	}
 
+	@Test
+	public void testParallelStartInLayers () throws FailedToStart
+	{
+		// a and b can only finish starting if they start at the same time
+		final CountDownLatch together = new CountDownLatch ( 2 );
+		final RecordingService a = new RecordingService ( "a" ).awaitingOnStart ( together );
+		final RecordingService b = new RecordingService ( "b" ).awaitingOnStart ( together );
+		final RecordingService c = new RecordingService ( "c" );
+
+		final ServiceContainer sc = new ServiceContainer ()
+			.add ( "c", c )
+			.add ( "a", a )
+			.add ( "b", b )
+			.addDependency ( c, a )
+			.addDependency ( c, b )
+		;
+		c.fContainer = sc;
+		sc.startAll ();
+
+		Assert.assertTrue ( a.isRunning () && b.isRunning () && c.isRunning () );
+		Assert.assertTrue ( c.fRunningAtStart.contains ( "a" ) );
+		Assert.assertTrue ( c.fRunningAtStart.contains ( "b" ) );
+		Assert.assertEquals ( 3, sc.getStartupTimesMs ().size () );
+		sc.stopAll ();
+	}
+
+	@Test
+	public void testDependenciesFromConfigAndLookups () throws StartupFailureException
+	{
+		sfStarts.clear ();
+		final String services = "{ \"services\": ["
+			+ "{ \"classname\": \"" + RecordingService.class.getName () + "\", \"name\": \"web\", \"dependsOn\": \"api\" },"
+			+ "{ \"classname\": \"" + RecordingService.class.getName () + "\", \"name\": \"db\" },"
+			+ "{ \"classname\": \"" + LookupService.class.getName () + "\", \"name\": \"api\" }"
+			+ "] }";
+		final ServiceContainer sc = ServiceContainer.build ( new ByteArrayInputStream ( services.getBytes ( StandardCharsets.UTF_8 ) ), new String[] { "default" }, true );
+
+		synchronized ( sfStarts )
+		{
+			Assert.assertEquals ( "db", sfStarts.get ( 0 ) );
+			Assert.assertEquals ( "api", sfStarts.get ( 1 ) );
+			Assert.assertEquals ( "web", sfStarts.get ( 2 ) );
+		}
+		sc.stopAll ();
+	}
+
+	@Test
+	public void testStartTimeout () throws InterruptedException
+	{
+		final RecordingService fine = new RecordingService ( "fine" );
+		final RecordingService slow = new RecordingService ( "slow" ).awaitingOnStart ( new CountDownLatch ( 2 ) );
+		final ServiceContainer sc = new ServiceContainer ()
+			.add ( "fine", fine )
+			.add ( "slow", slow )
+			.setStartTimeout ( slow, 200 )
+		;
+		try
+		{
+			sc.startAll ();
+			Assert.fail ( "Expected a startup timeout." );
+		}
+		catch ( FailedToStart e )
+		{
+			Assert.assertTrue ( e.getCause () instanceof TimeoutException );
+		}
+		Assert.assertFalse ( fine.isRunning () );
+		Assert.assertTrue ( sc.awaitTermination ( 1, TimeUnit.SECONDS ) );
+	}
+
+	@Test
+	public void testTimedOutStartIsStoppedWhenItReturns () throws InterruptedException
+	{
+		final LateStartingService late = new LateStartingService ( 500 );
+		final ServiceContainer sc = new ServiceContainer ()
+			.add ( "late", late )
+			.setStartTimeout ( late, 100 )
+		;
+		try
+		{
+			sc.startAll ();
+			Assert.fail ( "Expected a startup timeout." );
+		}
+		catch ( FailedToStart e )
+		{
+			Assert.assertTrue ( e.getCause () instanceof TimeoutException );
+		}
+
+		// the start ignored its interrupt and finished late, but it was still stopped
+		Assert.assertTrue ( late.fStartReturned );
+		Assert.assertFalse ( late.isRunning () );
+	}
+
+	@Test
+	public void testOrderedStop () throws FailedToStart, InterruptedException
+	{
+		final RecordingService db = new RecordingService ( "db" );
+		final SlowStoppingService api = new SlowStoppingService ();
+		final ServiceContainer sc = new ServiceContainer ()
+			.add ( "db", db )
+			.add ( "api", api )
+			.addDependency ( api, db )
+		;
+		db.fDependent = api;
+		sc.startAll ();
+		Assert.assertFalse ( sc.awaitTermination ( 50, TimeUnit.MILLISECONDS ) );
+
+		sc.stopAll ();
+		Assert.assertTrue ( sc.awaitTermination ( 5, TimeUnit.SECONDS ) );
+		Assert.assertFalse ( db.fDependentRunningAtStop );
+	}
+
+	private static final List<String> sfStarts = new LinkedList<> ();
+
+	public static class RecordingService extends SimpleService
+	{
+		public RecordingService ( ServiceContainer sc, JSONObject config )
+		{
+			this ( config.getString ( "name" ) );
+		}
+
+		public RecordingService ( String name )
+		{
+			fName = name;
+		}
+
+		RecordingService awaitingOnStart ( CountDownLatch latch )
+		{
+			fLatch = latch;
+			return this;
+		}
+
+		@Override
+		protected void onStartRequested () throws FailedToStart
+		{
+			synchronized ( sfStarts )
+			{
+				sfStarts.add ( fName );
+			}
+			for ( String name : new String[] { "a", "b" } )
+			{
+				if ( fContainer != null && fContainer.get ( name, Service.class ) != null && fContainer.get ( name, Service.class ).isRunning () )
+				{
+					fRunningAtStart.add ( name );
+				}
+			}
+			if ( fLatch != null )
+			{
+				fLatch.countDown ();
+				try
+				{
+					if ( !fLatch.await ( 5, TimeUnit.SECONDS ) )
+					{
+						throw new FailedToStart ( new TimeoutException ( "latch" ) );
+					}
+				}
+				catch ( InterruptedException e )
+				{
+					throw new FailedToStart ( e );
+				}
+			}
+		}
+
+		@Override
+		protected void onStopRequested ()
+		{
+			fDependentRunningAtStop = fDependent != null && fDependent.isRunning ();
+		}
+
+		private final String fName;
+		private CountDownLatch fLatch = null;
+		private ServiceContainer fContainer = null;
+		private Service fDependent = null;
+		private final List<String> fRunningAtStart = new LinkedList<> ();
+		private volatile boolean fDependentRunningAtStop = true;
+	}
+
+	public static class LookupService extends RecordingService
+	{
+		public LookupService ( ServiceContainer sc, JSONObject config ) throws BuildFailure
+		{
+			super ( sc, config );
+			sc.getReqd ( "db", RecordingService.class );
+		}
+	}
+
+	private static class SlowStoppingService extends SimpleService
+	{
+		@Override
+		public synchronized void requestFinish ()
+		{
+			// finish in the background a little later
+			new Thread ( () -> {
+				try
+				{
+					Thread.sleep ( 200 );
+				}
+				catch ( InterruptedException e )
+				{
+					// just finish
+				}
+				fStopped = true;
+			} ).start ();
+		}
+
+		@Override
+		public boolean isRunning ()
+		{
+			return fStarted && !fStopped;
+		}
+
+		@Override
+		protected void onStartRequested ()
+		{
+			fStarted = true;
+		}
+
+		private volatile boolean fStarted = false;
+		private volatile boolean fStopped = false;
+	}
+
+	private static class LateStartingService extends SimpleService
+	{
+		public LateStartingService ( long startMs )
+		{
+			fStartMs = startMs;
+		}
+
+		@Override
+		public void start ()
+		{
+			// ignore interrupts, as a blocking client library might
+			final long untilMs = System.currentTimeMillis () + fStartMs;
+			while ( System.currentTimeMillis () < untilMs )
+			{
+				try
+				{
+					Thread.sleep ( 10 );
+				}
+				catch ( InterruptedException e )
+				{
+					// keep starting
+				}
+			}
+			fStarted = true;
+			fStartReturned = true;
+		}
+
+		@Override
+		public void requestFinish ()
+		{
+			// can only stop once started
+			if ( fStarted ) fStopped = true;
+		}
+
+		@Override
+		public boolean isRunning ()
+		{
+			return fStarted && !fStopped;
+		}
+
+		private final long fStartMs;
+		private volatile boolean fStarted = false;
+		private volatile boolean fStopped = false;
+		private volatile boolean fStartReturned = false;
+	}
+
 	private static class TestSimpleServiceException extends SimpleService
 	{
 		@Override
@@ -15,6 +15,7 @@
  */
 package io.continual.email;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -107,6 +108,22 @@ public interface EmailService extends Service
 	 */
 	Future<MailStatus> mail ( MailBuilder builder );
 
+	/**
+	 * Mail each message based on its builder. Implementations may send the messages together, e.g. over
+	 * a single connection.
+	 * @param builders
+	 * @return a future mail status for each builder, in order
+	 */
+	default List<Future<MailStatus>> mail ( Collection<MailBuilder> builders )
+	{
+		final ArrayList<Future<MailStatus>> result = new ArrayList<> ( builders.size () );
+		for ( MailBuilder b : builders )
+		{
+			result.add ( mail ( b ) );
+		}
+		return result;
+	}
+
 	/**
 	 * Mail a message to a single address. This is equivalent to mail with an address array with a single entry.
 	 * @param to
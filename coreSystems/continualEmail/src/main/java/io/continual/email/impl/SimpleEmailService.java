@@ -15,21 +15,30 @@
  */
 package io.continual.email.impl;
 
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
 import java.util.TreeSet;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import javax.mail.Address;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
+import javax.mail.URLName;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
@@ -38,20 +47,34 @@ import javax.mail.internet.MimeMultipart;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPTransport;
+
 import io.continual.email.EmailService;
 import io.continual.services.ServiceContainer;
 import io.continual.services.SimpleService;
 import io.continual.util.data.exprEval.ExpressionEvaluator;
 
 /**
- * A simple service for sending email.
+ * A simple service for sending email.<br>
+ * <br>
+ * Messages go onto a bounded queue ("queueSize") that is drained by sender threads ("threadCount"). Each
+ * sender keeps its own SMTP connection open between messages and sends whatever is queued, up to
+ * "maxBatchSize" messages at a time, over that connection. The messages in one call to mail(Collection)
+ * are queued together, so one sender sends them all. Connections are replaced after
+ * "maxMessagesPerConnection" messages or "connectionIdleSecs" of idle time. When the queue is full,
+ * callers wait up to "enqueueWaitMs" for space.<br>
+ * <br>
+ * Set "maxPerDomainPerMinute" to limit the rate of messages to each recipient domain. A message that has
+ * to wait for its domain is set aside until its time comes, so it doesn't hold up mail to other domains.<br>
+ * <br>
+ * A send that fails because a kept-open connection was dropped is retried once on a new connection, but
+ * only if the failure came before the message data was sent, so that a message is never delivered twice.
  */
 public class SimpleEmailService extends SimpleService implements EmailService
 {
 	public SimpleEmailService ( ServiceContainer sc, JSONObject config )
 	{
-		fSenders = Executors.newFixedThreadPool ( config.optInt ( "threadCount", 1 ) );
-
 		final ExpressionEvaluator ee = sc.getExprEval ( config );
 
 		fMailProps = new Properties ();
@@ -67,6 +90,28 @@ public class SimpleEmailService extends SimpleService implements EmailService
 
 		fFromAddr = ee.evaluateText ( config.optString ( kSetting_MailFromEmail, "hello@continual.io" ) );
 		fFromName = ee.evaluateText ( config.optString ( kSetting_MailFromName, "Continual.io" ) );
+
+		// each service gets its own session, since the default session keeps the first properties it sees
+		fSession = Session.getInstance ( fMailProps );
+
+		fQueue = new ArrayBlockingQueue<> ( Math.max ( 1, config.optInt ( kSetting_QueueSize, 1000 ) ) );
+		fDeferred = new DelayQueue<> ();
+		fEnqueueWaitMs = config.optLong ( kSetting_EnqueueWaitMs, 30000L );
+		fMaxBatchSize = Math.max ( 1, config.optInt ( kSetting_MaxBatchSize, 50 ) );
+		fMaxMsgsPerConnection = Math.max ( 1, config.optInt ( kSetting_MaxMsgsPerConnection, 100 ) );
+		fConnectionIdleMs = 1000L * config.optLong ( kSetting_ConnectionIdleSecs, 60L );
+		fDomainLimiter = new DomainRateLimiter ( config.optInt ( kSetting_MaxPerDomainPerMinute, 0 ) );
+
+		fRunning = true;
+		fSenders = new LinkedList<> ();
+		final int threadCount = Math.max ( 1, config.optInt ( "threadCount", 1 ) );
+		for ( int i=0; i<threadCount; i++ )
+		{
+			final Thread t = new Thread ( new Sender (), "SimpleEmailService sender " + i );
+			t.setDaemon ( true );
+			t.start ();
+			fSenders.add ( t );
+		}
 	}
 
 	private class MailBuilderImpl implements MailBuilder
@@ -126,23 +171,85 @@ public class SimpleEmailService extends SimpleService implements EmailService
 		// allow a no-op send
 		if ( builder.fTos.size()== 0 ) return kNoopStatus;
 
-		return fSenders.submit ( new MailTask ( builder ) );
+		final PendingMail pm = new PendingMail ( builder );
+		final String err = enqueue ( Collections.singletonList ( pm ) );
+		if ( err != null )
+		{
+			log.warn ( "{}; not sending \"{}\"", err, builder.fSubj );
+			return new InterfaceSendFailure ( err );
+		}
+		return pm.fResult;
+	}
+
+	@Override
+	public List<Future<MailStatus>> mail ( Collection<MailBuilder> builders )
+	{
+		final ArrayList<Future<MailStatus>> result = new ArrayList<> ( builders.size () );
+		final ArrayList<PendingMail> pms = new ArrayList<> ( builders.size () );
+		for ( MailBuilder b : builders )
+		{
+			final MailBuilderImpl builder = (MailBuilderImpl) b;
+			if ( builder.fTos.size () == 0 )
+			{
+				result.add ( kNoopStatus );
+			}
+			else
+			{
+				final PendingMail pm = new PendingMail ( builder );
+				pms.add ( pm );
+				result.add ( pm.fResult );
+			}
+		}
+		if ( pms.isEmpty () ) return result;
+
+		final String err = enqueue ( pms );
+		if ( err != null )
+		{
+			log.warn ( "{}; not sending {} messages", err, pms.size () );
+			for ( PendingMail pm : pms )
+			{
+				pm.fResult.complete ( new SimpleMailStatus ( err ) );
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public void close ()
 	{
+		fRunning = false;
 		try
 		{
-			// shutdown our executors
-			fSenders.shutdown ();
-			fSenders.awaitTermination ( 30, TimeUnit.SECONDS );
+			// let the senders finish what's queued
+			final long endByMs = System.currentTimeMillis () + 30000L;
+			for ( Thread t : fSenders )
+			{
+				t.join ( Math.max ( 1L, endByMs - System.currentTimeMillis () ) );
+			}
 		}
 		catch ( InterruptedException x )
 		{
-			log.warn ( "SimpleEmailService shutdown took too long." );
 			Thread.currentThread ().interrupt ();
 		}
+
+		final LinkedList<PendingMail> unsent = new LinkedList<> ();
+		final LinkedList<List<PendingMail>> unsentGroups = new LinkedList<> ();
+		fQueue.drainTo ( unsentGroups );
+		for ( List<PendingMail> group : unsentGroups )
+		{
+			unsent.addAll ( group );
+		}
+		fDeferred.drainTo ( unsent );
+		unsent.addAll ( fDeferred );	// drainTo only takes messages whose time has come
+		fDeferred.clear ();
+		if ( unsent.size () > 0 )
+		{
+			log.warn ( "SimpleEmailService shutdown took too long; {} messages were not sent.", unsent.size () );
+			for ( PendingMail pm : unsent )
+			{
+				pm.fResult.complete ( new SimpleMailStatus ( "The mail service closed before this message was sent." ) );
+			}
+		}
 	}
 
 	@Override
@@ -167,82 +274,206 @@ public class SimpleEmailService extends SimpleService implements EmailService
 	public static final String kSetting_SmtpServerPort = "mailSmtpServerPort";
 	public static final String kSetting_SmtpServerSsl = "mailSmtpServerSsl";
 	public static final String kSetting_SmtpServerUseAuth = "mailSmtpServerUseAuth";
+	public static final String kSetting_QueueSize = "queueSize";
+	public static final String kSetting_EnqueueWaitMs = "enqueueWaitMs";
+	public static final String kSetting_MaxBatchSize = "maxBatchSize";
+	public static final String kSetting_MaxMsgsPerConnection = "maxMessagesPerConnection";
+	public static final String kSetting_ConnectionIdleSecs = "connectionIdleSecs";
+	public static final String kSetting_MaxPerDomainPerMinute = "maxPerDomainPerMinute";
+
+	private final Session fSession;
+	private final ArrayBlockingQueue<List<PendingMail>> fQueue;
+	private final DelayQueue<PendingMail> fDeferred;
+	private final long fEnqueueWaitMs;
+	private final int fMaxBatchSize;
+	private final int fMaxMsgsPerConnection;
+	private final long fConnectionIdleMs;
+	private final DomainRateLimiter fDomainLimiter;
+	private final LinkedList<Thread> fSenders;
+	private volatile boolean fRunning;
+
+	private static final long kMaxPollMs = 1000L;
+
+	/**
+	 * Queue messages to be sent together
+	 * @param pms
+	 * @return null on success, or an error message
+	 */
+	private String enqueue ( List<PendingMail> pms )
+	{
+		try
+		{
+			// the queue is bounded, so a flood of mail slows down the caller rather than filling memory
+			if ( !fRunning || !fQueue.offer ( pms, fEnqueueWaitMs, TimeUnit.MILLISECONDS ) )
+			{
+				return "The mail queue is full or closed.";
+			}
+			return null;
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread ().interrupt ();
+			return "Interrupted while queueing mail.";
+		}
+	}
 
-	private class MailTask implements Callable<MailStatus>
+	private static class PendingMail implements Delayed
 	{
-		public MailTask ( MailBuilderImpl builder )
+		public PendingMail ( MailBuilderImpl builder )
 		{
 			fBuilder = builder;
+			fResult = new CompletableFuture<> ();
+			fSendAtMs = 0L;
+			fSlotReserved = false;
+		}
+
+		@Override
+		public long getDelay ( TimeUnit unit )
+		{
+			return unit.convert ( fSendAtMs - System.currentTimeMillis (), TimeUnit.MILLISECONDS );
+		}
+
+		@Override
+		public int compareTo ( Delayed that )
+		{
+			return Long.compare ( getDelay ( TimeUnit.MILLISECONDS ), that.getDelay ( TimeUnit.MILLISECONDS ) );
+		}
+
+		final MailBuilderImpl fBuilder;
+		final CompletableFuture<MailStatus> fResult;
+		long fSendAtMs;
+		boolean fSlotReserved;
+	}
+
+	/**
+	 * An SMTP transport that notes whether the current message got as far as the DATA command. After that,
+	 * the server may have accepted the message even if we didn't see its reply.
+	 */
+	private static class DataTrackingTransport extends SMTPTransport
+	{
+		public DataTrackingTransport ( Session session )
+		{
+			super ( session, new URLName ( "smtp", null, -1, null, null, null ) );
+		}
+
+		@Override
+		public synchronized void sendMessage ( Message msg, Address[] addrs ) throws MessagingException
+		{
+			fDataStarted = false;
+			super.sendMessage ( msg, addrs );
+		}
+
+		@Override
+		protected OutputStream data () throws MessagingException
+		{
+			final OutputStream os = super.data ();
+			fDataStarted = true;
+			return os;
 		}
 
+		public boolean wasDataStarted () { return fDataStarted; }
+
+		private volatile boolean fDataStarted = false;
+	}
+
+	/**
+	 * A sender thread owns one SMTP connection, which it keeps open between messages. It takes
+	 * whatever is queued, up to the batch size, and sends it all over that connection.
+	 */
+	private class Sender implements Runnable
+	{
 		@Override
-		public MailStatus call () 
+		public void run ()
 		{
-			final StringBuffer sbLog = new StringBuffer ();
-			sbLog.append ( "sending mail to (" );
-			final StringBuffer addrList = new StringBuffer ();
-			for ( String to : fBuilder.fTos )
+			final ArrayList<PendingMail> batch = new ArrayList<> ();
+			try
 			{
-				if ( addrList.length () > 0 )
+				while ( fRunning || fQueue.size () > 0 || fDeferred.size () > 0 )
 				{
-					addrList.append ( ", " );
+					// messages set aside for the rate limit go first once their time comes
+					batch.clear ();
+					fDeferred.drainTo ( batch, fMaxBatchSize );
+					if ( batch.isEmpty () )
+					{
+						final List<PendingMail> first = fQueue.poll ( pollTimeMs (), TimeUnit.MILLISECONDS );
+						if ( first == null )
+						{
+							closeIfIdle ();
+							continue;
+						}
+						batch.addAll ( first );
+					}
+
+					// fill the batch with whole groups
+					List<PendingMail> next;
+					while ( batch.size () < fMaxBatchSize && ( next = fQueue.poll () ) != null )
+					{
+						batch.addAll ( next );
+					}
+
+					for ( PendingMail pm : batch )
+					{
+						if ( !pm.fSlotReserved )
+						{
+							pm.fSlotReserved = true;
+							pm.fSendAtMs = fDomainLimiter.reserve ( pm.fBuilder.fTos );
+							if ( pm.fSendAtMs > System.currentTimeMillis () )
+							{
+								fDeferred.add ( pm );
+								continue;
+							}
+						}
+						pm.fResult.complete ( send ( pm.fBuilder ) );
+					}
+					fLastUseMs = System.currentTimeMillis ();
 				}
-				addrList.append ( to );
 			}
-			sbLog.append ( addrList.toString () );
-			sbLog.append ( ") \"" );
-			sbLog.append ( fBuilder.fSubj );
-			sbLog.append ( "\"" );
-			log.info ( sbLog.toString () );
-
-			try
+			catch ( InterruptedException e )
 			{
-				final Session session = Session.getDefaultInstance ( fMailProps );
+				Thread.currentThread ().interrupt ();
+			}
+			finally
+			{
+				closeTransport ();
+			}
+		}
 
-				final Message msg = new MimeMessage ( session );
+		private long pollTimeMs ()
+		{
+			final PendingMail nextDeferred = fDeferred.peek ();
+			if ( nextDeferred == null ) return kMaxPollMs;
+			return Math.max ( 1L, Math.min ( kMaxPollMs, nextDeferred.getDelay ( TimeUnit.MILLISECONDS ) ) );
+		}
 
-				// subject
-				msg.setSubject ( fBuilder.fSubj );
+		private MailStatus send ( MailBuilderImpl builder )
+		{
+			log.info ( "sending mail to ({}) \"{}\"", String.join ( ", ", builder.fTos ), builder.fSubj );
 
-				// addressing
-				final InternetAddress from = new InternetAddress ( fFromAddr, fFromName );
-				msg.setFrom ( from );
-				msg.setReplyTo ( new InternetAddress[] { from } );
-				for ( String toAddr : fBuilder.fTos )
-				{
-					final InternetAddress to = new InternetAddress ( toAddr );
-					msg.addRecipient ( Message.RecipientType.TO, to );
-				}
+			try
+			{
+				final Message msg = buildMessage ( builder );
 
-				if ( fBuilder.isMultipart () )
+				final DataTrackingTransport t = getTransport ();
+				try
 				{
-					// message content alternatives
-					final Multipart contentAlternatives = new MimeMultipart ( "alternative" );
-					for ( MimeBodyPart bodyPart : fBuilder.fParts )
-					{
-						contentAlternatives.addBodyPart ( bodyPart );
-					}
-	
-					// top-level...
-					final MimeBodyPart altsBodyPart = new MimeBodyPart ();
-					altsBodyPart.setContent ( contentAlternatives );
-	
-					final Multipart mixedMultipart = new MimeMultipart ( "mixed" );
-					mixedMultipart.addBodyPart ( altsBodyPart );
-					msg.setContent ( mixedMultipart );
+					t.sendMessage ( msg, msg.getAllRecipients () );
 				}
-				else
+				catch ( MessagingException e )
 				{
-					msg.setText ( fBuilder.getText () );
+					// a problem with this message, such as its addresses, leaves the connection usable
+					if ( !isConnectionFailure ( e ) ) throw e;
+					closeTransport ();
+
+					// once the data is sent, the server may have the message, and sending it again could deliver it twice
+					if ( t.wasDataStarted () ) throw e;
+
+					// the pooled connection may have been dropped by the server; try once on a new one
+					log.info ( "Retrying mail on a new connection after: {}", e.getMessage () );
+					getTransport ().sendMessage ( msg, msg.getAllRecipients () );
 				}
-					
-				final Transport transport = session.getTransport ( "smtp" );
-				transport.connect ( fUser, fPassword );
-				transport.sendMessage ( msg, msg.getAllRecipients () );
-				transport.close ();
+				fSentOnTransport++;
 
 				log.info ( "Mail sent." );
-
 				return new SimpleMailStatus ();
 			}
 			catch ( MessagingException | UnsupportedEncodingException e )
@@ -252,10 +483,145 @@ public class SimpleEmailService extends SimpleService implements EmailService
 			}
 		}
 
-		private final MailBuilderImpl fBuilder;
+		private boolean isConnectionFailure ( MessagingException e )
+		{
+			// a command the server didn't answer at all
+			if ( e instanceof SMTPSendFailedException ) return ( (SMTPSendFailedException) e ).getReturnCode () < 0;
+			return !( e instanceof SendFailedException );
+		}
+
+		private DataTrackingTransport getTransport () throws MessagingException
+		{
+			if ( fTransport != null && ( fSentOnTransport >= fMaxMsgsPerConnection || !fTransport.isConnected () ) )
+			{
+				closeTransport ();
+			}
+			if ( fTransport == null )
+			{
+				final DataTrackingTransport t = new DataTrackingTransport ( fSession );
+				t.connect ( fUser, fPassword );
+				fTransport = t;
+				fSentOnTransport = 0;
+			}
+			return fTransport;
+		}
+
+		private void closeIfIdle ()
+		{
+			if ( fTransport != null && System.currentTimeMillis () - fLastUseMs > fConnectionIdleMs )
+			{
+				closeTransport ();
+			}
+		}
+
+		private void closeTransport ()
+		{
+			if ( fTransport != null )
+			{
+				try
+				{
+					fTransport.close ();
+				}
+				catch ( MessagingException e )
+				{
+					log.debug ( "Error closing mail transport: {}", e.getMessage () );
+				}
+				fTransport = null;
+			}
+		}
+
+		private DataTrackingTransport fTransport = null;
+		private int fSentOnTransport = 0;
+		private long fLastUseMs = 0L;
+	}
+
+	/**
+	 * Limits the rate of messages to each recipient domain, so that a burst of mail doesn't get
+	 * us throttled or blocked by the receiving servers.
+	 */
+	private static class DomainRateLimiter
+	{
+		public DomainRateLimiter ( int perMinute )
+		{
+			fPerMinute = perMinute;
+			fNextSlotMs = new ConcurrentHashMap<> ();
+		}
+
+		/**
+		 * Reserve the next send slot for each recipient domain
+		 * @param addrs the recipient addresses
+		 * @return the time at which the message may be sent
+		 */
+		public long reserve ( Collection<String> addrs )
+		{
+			if ( fPerMinute <= 0 ) return 0L;
+
+			final TreeSet<String> domains = new TreeSet<> ();
+			for ( String addr : addrs )
+			{
+				final int at = addr.lastIndexOf ( '@' );
+				domains.add ( ( at < 0 ? addr : addr.substring ( at + 1 ) ).trim ().toLowerCase () );
+			}
+
+			// reserve the next slot for each domain; the message goes at the latest of them
+			final long intervalMs = Math.max ( 1L, 60000L / fPerMinute );
+			long waitUntilMs = 0L;
+			for ( String domain : domains )
+			{
+				final long slotMs = fNextSlotMs.compute ( domain, ( d, next ) -> {
+					final long nowMs = System.currentTimeMillis ();
+					return ( next == null || next < nowMs ) ? nowMs + intervalMs : next + intervalMs;
+				} ) - intervalMs;
+				waitUntilMs = Math.max ( waitUntilMs, slotMs );
+			}
+			return waitUntilMs;
+		}
+
+		private final int fPerMinute;
+		private final ConcurrentHashMap<String,Long> fNextSlotMs;
+	}
+
+	private Message buildMessage ( MailBuilderImpl builder ) throws MessagingException, UnsupportedEncodingException
+	{
+		final Message msg = new MimeMessage ( fSession );
+
+		// subject
+		msg.setSubject ( builder.fSubj );
+
+		// addressing
+		final InternetAddress from = new InternetAddress ( fFromAddr, fFromName );
+		msg.setFrom ( from );
+		msg.setReplyTo ( new InternetAddress[] { from } );
+		for ( String toAddr : builder.fTos )
+		{
+			final InternetAddress to = new InternetAddress ( toAddr );
+			msg.addRecipient ( Message.RecipientType.TO, to );
+		}
+
+		if ( builder.isMultipart () )
+		{
+			// message content alternatives
+			final Multipart contentAlternatives = new MimeMultipart ( "alternative" );
+			for ( MimeBodyPart bodyPart : builder.fParts )
+			{
+				contentAlternatives.addBodyPart ( bodyPart );
+			}
+
+			// top-level...
+			final MimeBodyPart altsBodyPart = new MimeBodyPart ();
+			altsBodyPart.setContent ( contentAlternatives );
+
+			final Multipart mixedMultipart = new MimeMultipart ( "mixed" );
+			mixedMultipart.addBodyPart ( altsBodyPart );
+			msg.setContent ( mixedMultipart );
+		}
+		else
+		{
+			msg.setText ( builder.getText () );
+		}
+		return msg;
 	}
 
-	private final ExecutorService fSenders;
 	private static final org.slf4j.Logger log = LoggerFactory.getLogger ( SimpleEmailService.class );
 
 	private static class SimpleMailStatus implements MailStatus
@@ -0,0 +1,269 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.email.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.email.EmailService.MailBuilder;
+import io.continual.email.EmailService.MailStatus;
+import io.continual.services.ServiceContainer;
+import junit.framework.TestCase;
+
+public class SimpleEmailServiceTest extends TestCase
+{
+	@Test
+	public void testBulkMailSharesOneConnection () throws IOException, MessagingException, InterruptedException, ExecutionException, TimeoutException
+	{
+		try ( FakeSmtpServer server = new FakeSmtpServer () )
+		{
+			final SimpleEmailService svc = makeService ( server, new JSONObject () );
+			try
+			{
+				final ArrayList<MailBuilder> mail = new ArrayList<> ();
+				for ( int i=0; i<5; i++ )
+				{
+					mail.add ( svc.createMessage ().to ( "user" + i + "@example.com" ).withSubject ( "bulk " + i ).withSimpleText ( "hello" ) );
+				}
+				final List<Future<MailStatus>> results = svc.mail ( mail );
+				assertEquals ( 5, results.size () );
+				for ( Future<MailStatus> f : results )
+				{
+					assertTrue ( f.get ( 10, TimeUnit.SECONDS ).didSend () );
+				}
+				assertEquals ( 5, server.fMessages.get () );
+				assertEquals ( 1, server.fConnections.get () );
+			}
+			finally
+			{
+				svc.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testConnectionFailureBeforeDataIsRetried () throws IOException, InterruptedException, ExecutionException, TimeoutException
+	{
+		try ( FakeSmtpServer server = new FakeSmtpServer () )
+		{
+			server.fDropOnMailFrom = true;
+
+			final SimpleEmailService svc = makeService ( server, new JSONObject () );
+			try
+			{
+				final MailStatus ms = svc.mail ( "user@example.com", "retry", "hello" ).get ( 10, TimeUnit.SECONDS );
+				assertTrue ( ms.getErrorMsg (), ms.didSend () );
+				assertEquals ( 1, server.fMessages.get () );
+				assertEquals ( 2, server.fConnections.get () );
+			}
+			finally
+			{
+				svc.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testFailureAfterDataIsNotRetried () throws IOException, InterruptedException, ExecutionException, TimeoutException
+	{
+		try ( FakeSmtpServer server = new FakeSmtpServer () )
+		{
+			server.fDropAfterData = true;
+
+			final SimpleEmailService svc = makeService ( server, new JSONObject () );
+			try
+			{
+				final MailStatus ms = svc.mail ( "user@example.com", "no retry", "hello" ).get ( 10, TimeUnit.SECONDS );
+				assertTrue ( ms.didFail () );
+				assertEquals ( 1, server.fMessages.get () );
+				assertEquals ( 1, server.fConnections.get () );
+			}
+			finally
+			{
+				svc.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testRateLimitedDomainDoesntHoldUpOthers () throws IOException, InterruptedException, ExecutionException, TimeoutException
+	{
+		try ( FakeSmtpServer server = new FakeSmtpServer () )
+		{
+			// one message per second to each domain, on a single sender thread
+			final SimpleEmailService svc = makeService ( server, new JSONObject ().put ( SimpleEmailService.kSetting_MaxPerDomainPerMinute, 60 ) );
+			try
+			{
+				final long startMs = System.currentTimeMillis ();
+				final Future<MailStatus> first = svc.mail ( "a@slow.example.com", "first", "hello" );
+				final Future<MailStatus> second = svc.mail ( "b@slow.example.com", "second", "hello" );
+				final Future<MailStatus> other = svc.mail ( "c@other.example.com", "other", "hello" );
+
+				assertTrue ( first.get ( 10, TimeUnit.SECONDS ).didSend () );
+				assertTrue ( other.get ( 10, TimeUnit.SECONDS ).didSend () );
+				assertFalse ( second.isDone () );
+				assertTrue ( System.currentTimeMillis () - startMs < 900L );
+
+				assertTrue ( second.get ( 10, TimeUnit.SECONDS ).didSend () );
+				assertTrue ( System.currentTimeMillis () - startMs >= 900L );
+				assertEquals ( 3, server.fMessages.get () );
+			}
+			finally
+			{
+				svc.close ();
+			}
+		}
+	}
+
+	private static SimpleEmailService makeService ( FakeSmtpServer server, JSONObject config )
+	{
+		return new SimpleEmailService ( new ServiceContainer (), config
+			.put ( SimpleEmailService.kSetting_SmtpServer, "127.0.0.1" )
+			.put ( SimpleEmailService.kSetting_SmtpServerPort, "" + server.getPort () )
+			.put ( SimpleEmailService.kSetting_SmtpServerUseAuth, "false" )
+			.put ( SimpleEmailService.kSetting_SmtpServerSsl, "false" )
+			.put ( SimpleEmailService.kSetting_MailFromEmail, "sender@example.com" )
+		);
+	}
+
+	/**
+	 * Just enough of an SMTP server to accept mail, with switches to drop the connection at
+	 * particular points on the first connection.
+	 */
+	private static class FakeSmtpServer implements AutoCloseable
+	{
+		public FakeSmtpServer () throws IOException
+		{
+			fSocket = new ServerSocket ( 0 );
+			fThread = new Thread ( this::acceptLoop, "fake smtp server" );
+			fThread.setDaemon ( true );
+			fThread.start ();
+		}
+
+		public int getPort () { return fSocket.getLocalPort (); }
+
+		@Override
+		public void close () throws IOException
+		{
+			fSocket.close ();
+		}
+
+		final AtomicInteger fConnections = new AtomicInteger ( 0 );
+		final AtomicInteger fMessages = new AtomicInteger ( 0 );
+		volatile boolean fDropOnMailFrom = false;
+		volatile boolean fDropAfterData = false;
+
+		private final ServerSocket fSocket;
+		private final Thread fThread;
+
+		private void acceptLoop ()
+		{
+			try
+			{
+				while ( true )
+				{
+					final Socket s = fSocket.accept ();
+					final int connNum = fConnections.incrementAndGet ();
+					final Thread t = new Thread ( () -> converse ( s, connNum == 1 ) );
+					t.setDaemon ( true );
+					t.start ();
+				}
+			}
+			catch ( IOException e )
+			{
+				// closed
+			}
+		}
+
+		private void converse ( Socket s, boolean firstConnection )
+		{
+			try ( Socket sock = s )
+			{
+				final BufferedReader in = new BufferedReader ( new InputStreamReader ( sock.getInputStream (), StandardCharsets.US_ASCII ) );
+				final OutputStream out = sock.getOutputStream ();
+				reply ( out, "220 fake smtp" );
+
+				String line;
+				while ( ( line = in.readLine () ) != null )
+				{
+					final String cmd = line.length () < 4 ? line.toUpperCase () : line.substring ( 0, 4 ).toUpperCase ();
+					switch ( cmd )
+					{
+						case "EHLO":
+						case "HELO":
+						case "RCPT":
+						case "RSET":
+						case "NOOP":
+							reply ( out, "250 OK" );
+							break;
+
+						case "MAIL":
+							if ( firstConnection && fDropOnMailFrom ) return;
+							reply ( out, "250 OK" );
+							break;
+
+						case "DATA":
+							reply ( out, "354 go ahead" );
+							while ( ( line = in.readLine () ) != null && !line.equals ( "." ) )
+							{
+								// message content
+							}
+							fMessages.incrementAndGet ();
+							if ( firstConnection && fDropAfterData ) return;
+							reply ( out, "250 queued" );
+							break;
+
+						case "QUIT":
+							reply ( out, "221 bye" );
+							return;
+
+						default:
+							reply ( out, "500 unknown command" );
+							break;
+					}
+				}
+			}
+			catch ( IOException e )
+			{
+				// connection dropped
+			}
+		}
+
+		private static void reply ( OutputStream out, String line ) throws IOException
+		{
+			out.write ( ( line + "\r\n" ).getBytes ( StandardCharsets.US_ASCII ) );
+			out.flush ();
+		}
+	}
+}
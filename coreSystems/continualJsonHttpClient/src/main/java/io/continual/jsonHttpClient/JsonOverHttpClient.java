@@ -89,7 +89,23 @@ public interface JsonOverHttpClient
 		 * @return the HTTP status message
 		 */
 		String getMessage ();
-		
+
+		/**
+		 * Get the first value of the named response header.
+		 * @param name the header name
+		 * @return the header value, or null if the header was not sent
+		 */
+		default String getHeader ( String name ) { return null; }
+
+		/**
+		 * Return true if the server replied "not modified" to a conditional request
+		 * @return true if the server replied with 304 status
+		 */
+		default boolean isNotModified ()
+		{
+			return getCode() == 304;
+		}
+
 		/**
 		 * At this level, the close() call does not throw.
 		 */
@@ -3,6 +3,7 @@ package io.continual.jsonHttpClient.impl.ok;
 import java.net.Proxy;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -14,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import io.continual.jsonHttpClient.JsonOverHttpClient;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 
 /**
  * This OkHttp-backed implementation is expected to be used as a singleton in the process.
@@ -33,9 +35,24 @@ public class OkHttp implements JsonOverHttpClient
 	}
 
 	public OkHttp ( Proxy proxy, boolean ignoreCertValidation )
+	{
+		this ( proxy, ignoreCertValidation, false );
+	}
+
+	/**
+	 * Construct an OkHttp client. OkHttp negotiates HTTP/2 over TLS on its own, multiplexing concurrent
+	 * requests to the same host over a single connection. For cleartext servers that are known to speak
+	 * HTTP/2, set h2PriorKnowledge to skip the HTTP/1.1 upgrade and multiplex from the start.
+	 * 
+	 * @param proxy an optional proxy
+	 * @param ignoreCertValidation if true, don't validate server certificates
+	 * @param h2PriorKnowledge if true, speak HTTP/2 without negotiation (cleartext only)
+	 */
+	public OkHttp ( Proxy proxy, boolean ignoreCertValidation, boolean h2PriorKnowledge )
 	{
 		fProxy = proxy;
 		fIgnoreCertValidation = ignoreCertValidation;
+		fH2PriorKnowledge = h2PriorKnowledge;
 		fDestroyed = false;
 	}
 
@@ -60,6 +77,7 @@ public class OkHttp implements JsonOverHttpClient
 	private OkHttpClient fHttpClient;
 	private boolean fDestroyed;
 	private boolean fIgnoreCertValidation;
+	private boolean fH2PriorKnowledge;
 
 	private synchronized OkHttpClient getHttpClient ( )
 	{
@@ -78,6 +96,11 @@ public class OkHttp implements JsonOverHttpClient
 					.readTimeout ( 60, TimeUnit.SECONDS )
 					.proxy ( fProxy )
 				;
+
+				if ( fH2PriorKnowledge )
+				{
+					builder.protocols ( Collections.singletonList ( Protocol.H2_PRIOR_KNOWLEDGE ) );
+				}
 	
 				if ( fIgnoreCertValidation )
 				{
@@ -19,6 +19,7 @@ import io.continual.jsonHttpClient.JsonOverHttpClient.HttpRequest;
 import io.continual.jsonHttpClient.JsonOverHttpClient.HttpResponse;
 import io.continual.jsonHttpClient.JsonOverHttpClient.HttpServiceException;
 import io.continual.util.data.TypeConvertor;
+import io.continual.util.tracing.TraceContext;
 import okhttp3.Credentials;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -167,6 +168,13 @@ class OkRequest implements HttpRequest
 			}
 		}
 
+		// pass along the trace ID of the work we're doing, unless the caller set one
+		final String traceId = TraceContext.getTraceId ();
+		if ( traceId != null && !fHeaders.containsKey ( TraceContext.kTraceIdHeader ) )
+		{
+			rb.header ( TraceContext.kTraceIdHeader, traceId );
+		}
+
 		return rb;
 	}
 
@@ -235,7 +243,8 @@ class OkRequest implements HttpRequest
 		try
 		{
 			final String user = fCreds == null ? " (anon)" : " (as " + fCreds.getUser () + ")";
-			log.info ( "HTTP {} " + fPath + user, verbForLog );
+			final String traceId = request.header ( TraceContext.kTraceIdHeader );
+			log.info ( "HTTP {} " + fPath + user + ( traceId == null ? "" : " [trace " + traceId + "]" ), verbForLog );
 
 			final long startMs = System.nanoTime ();
 			final Response response = fHttpClient.newCall ( request ).execute ();
@@ -37,6 +37,9 @@ class OkResponse implements HttpResponse
 	@Override
 	public String getMessage () { return fResponse.message (); }
 
+	@Override
+	public String getHeader ( String name ) { return fResponse.header ( name ); }
+
 	@Override
 	public JSONObject getBody () throws BodyFormatException
 	{
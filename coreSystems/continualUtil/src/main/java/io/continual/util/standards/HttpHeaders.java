@@ -22,6 +22,8 @@ public enum HttpHeaders
 {
 	REFERER ( "Referer" ),
 	CONTENT_TYPE ( "Content-Type" ),
+	ETAG ( "ETag" ),
+	IF_NONE_MATCH ( "If-None-Match" ),
 	;
 
 	HttpHeaders ( String htmlHeaderText )
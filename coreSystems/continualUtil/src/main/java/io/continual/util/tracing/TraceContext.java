@@ -0,0 +1,105 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.util.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds the trace ID for work running on the current thread, so that it can be passed along
+ * to downstream calls without threading it through every API. A server binds the ID when it
+ * starts handling a request; clients read it when building outbound requests.
+ */
+public class TraceContext
+{
+	/**
+	 * The HTTP header that carries a trace ID
+	 */
+	public static final String kTraceIdHeader = "X-Trace-Id";
+
+	/**
+	 * A binding of a trace ID to the current thread. Closing it restores the previous binding.
+	 */
+	public interface Scope extends AutoCloseable
+	{
+		@Override
+		void close ();	// no exception
+	}
+
+	/**
+	 * Make a new random trace ID, 32 hex characters long
+	 * @return a trace ID
+	 */
+	public static String newTraceId ()
+	{
+		final ThreadLocalRandom r = ThreadLocalRandom.current ();
+		return String.format ( "%016x%016x", r.nextLong (), r.nextLong () );
+	}
+
+	/**
+	 * Is the given string acceptable as a trace ID from an outside caller? We take short
+	 * strings of letters, digits, and a few separators so that they're safe to log and echo.
+	 * @param id
+	 * @return true if the ID is acceptable
+	 */
+	public static boolean isValidTraceId ( String id )
+	{
+		if ( id == null || id.length () == 0 || id.length () > kMaxIdLength ) return false;
+		for ( int i=0; i<id.length (); i++ )
+		{
+			final char c = id.charAt ( i );
+			if ( !( Character.isLetterOrDigit ( c ) || c == '-' || c == '_' || c == '.' ) || c > 127 ) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the trace ID bound to the current thread
+	 * @return a trace ID or null
+	 */
+	public static String getTraceId ()
+	{
+		return sfTraceId.get ();
+	}
+
+	/**
+	 * Bind a trace ID to the current thread until the returned scope is closed
+	 * @param traceId
+	 * @return a scope
+	 */
+	public static Scope withTraceId ( String traceId )
+	{
+		final String prev = sfTraceId.get ();
+		sfTraceId.set ( traceId );
+		return new Scope ()
+		{
+			@Override
+			public void close ()
+			{
+				if ( prev == null )
+				{
+					sfTraceId.remove ();
+				}
+				else
+				{
+					sfTraceId.set ( prev );
+				}
+			}
+		};
+	}
+
+	private static final int kMaxIdLength = 128;
+	private static final ThreadLocal<String> sfTraceId = new ThreadLocal<> ();
+}
@@ -101,6 +101,33 @@ public interface FlowControlDeploymentService
 		DeploymentSpec build () throws BuildFailure;
 	}
 
+	/**
+	 * A listener for changes in deployment status
+	 */
+	interface StatusListener
+	{
+		/**
+		 * Called when a deployment's status changes. Removed deployments are reported as STOPPED.
+		 * @param deploymentId
+		 * @param jobId the job ID, if known
+		 * @param status
+		 */
+		void onStatusChange ( String deploymentId, String jobId, FlowControlDeployment.Status status );
+	}
+
+	/**
+	 * Register a listener for deployment status changes. Deployment services that can't observe
+	 * changes ignore this call.
+	 * @param listener
+	 */
+	default void addStatusListener ( StatusListener listener ) {}
+
+	/**
+	 * Remove a previously registered status listener
+	 * @param listener
+	 */
+	default void removeStatusListener ( StatusListener listener ) {}
+
 	/**
 	 * Get a deployment spec builder for this deployment service
 	 * @return
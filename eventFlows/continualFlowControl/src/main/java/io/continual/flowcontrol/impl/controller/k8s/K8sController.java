@@ -7,12 +7,16 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -29,6 +33,7 @@ import io.continual.flowcontrol.controlapi.FlowControlRuntimeSpec;
 import io.continual.flowcontrol.jobapi.FlowControlJob;
 import io.continual.resources.ResourceLoader;
 import io.continual.services.ServiceContainer;
+import io.continual.services.Service.FailedToStart;
 import io.continual.services.SimpleService;
 import io.continual.templating.ContinualTemplateContext;
 import io.continual.templating.ContinualTemplateEngine;
@@ -51,7 +56,6 @@ import io.fabric8.kubernetes.api.model.PodSpec;
 import io.fabric8.kubernetes.api.model.PodTemplateSpec;
 import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.kubernetes.api.model.ResourceRequirements;
-import io.fabric8.kubernetes.api.model.Secret;
 import io.fabric8.kubernetes.api.model.SecretBuilder;
 import io.fabric8.kubernetes.api.model.SecretKeySelector;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
@@ -66,7 +70,10 @@ import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientBuilder;
 import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.Informable;
 import io.fabric8.kubernetes.client.dsl.PodResource;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 
 public class K8sController extends SimpleService implements FlowControlDeploymentService
 {
@@ -107,6 +114,10 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 	static final String kSetting_DeploySpecCtxPop = "deploymentSpecToContext";
 	static final String kSetting_TemplateEngine = "templateEngine";
 
+	static final String kSetting_CacheDeployments = "cacheDeployments";
+	static final String kSetting_CacheResyncMs = "cacheResyncMs";
+	static final long kDefault_CacheResyncMs = 5 * 60 * 1000L;
+
 	public K8sController ( ServiceContainer sc, JSONObject rawConfig ) throws BuildFailure
 	{
 		final JSONObject config = sc.getExprEval ().evaluateJsonObject ( rawConfig );
@@ -174,6 +185,24 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 			log.info ( "No templating engine specified; defaulting to ${} evals." );
 			fTemplateEngine = new DollarEvalTemplateEngine ( sc, new JSONObject () );
 		}
+
+		fUseCache = config.optBoolean ( kSetting_CacheDeployments, true );
+		fCacheResyncMs = config.optLong ( kSetting_CacheResyncMs, kDefault_CacheResyncMs );
+		fStatusTracker = new StatusTracker ();
+	}
+
+	@Override
+	protected void onStartRequested () throws FailedToStart
+	{
+		super.onStartRequested ();
+
+		if ( fUseCache )
+		{
+			// watch the namespace's stateful sets and deployments rather than listing them on each lookup
+			fStsInformer = startInformer ( fApiClient.apps ().statefulSets ().inNamespace ( fNamespace ), ss -> new K8sDeployWrapper ( ss ) );
+			fDeployInformer = startInformer ( fApiClient.apps ().deployments ().inNamespace ( fNamespace ), d -> new K8sDeployWrapper ( d ) );
+			log.info ( "Started deployment cache for namespace {}.", fNamespace );
+		}
 	}
 
 	@Override
@@ -181,9 +210,24 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 	{
 		super.onStopRequested ();
 
+		if ( fStsInformer != null ) fStsInformer.close ();
+		if ( fDeployInformer != null ) fDeployInformer.close ();
+
 		fApiClient.close ();
 	}
 
+	@Override
+	public void addStatusListener ( StatusListener listener )
+	{
+		fStatusTracker.addListener ( listener );
+	}
+
+	@Override
+	public void removeStatusListener ( StatusListener listener )
+	{
+		fStatusTracker.removeListener ( listener );
+	}
+
 	@Override
 	public DeploymentSpecBuilder deploymentBuilder ()
 	{
@@ -352,11 +396,8 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 		
 			try
 			{
-				final Secret secret = fApiClient.secrets ().inNamespace ( fNamespace ).withName ( tagToSecret ( deploymentId ) ).get ();
-				if ( secret != null )
-				{
-					fApiClient.resource ( secret ).delete ();
-				}
+				// delete by name rather than fetching the secret first; a missing secret is a no-op
+				fApiClient.secrets ().inNamespace ( fNamespace ).withName ( tagToSecret ( deploymentId ) ).delete ();
 			}
 			catch ( KubernetesClientException | IllegalStateException x )
 			{
@@ -417,7 +458,7 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 		final LinkedList<FlowControlDeployment> result = new LinkedList<> ();
 		try
 		{
-			for ( K8sDeployWrapper dw : getK8sDeployments () )
+			for ( K8sDeployWrapper dw : getK8sDeploymentsForJob ( jobId ) )
 			{
 				final String thisJobId = getJobIdFrom ( dw, null );
 				if ( jobId.equals ( thisJobId ) )
@@ -455,6 +496,116 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 	private final String fDefPersistDiskSize;
 	private final String fDefLogDiskSize;
 
+	private final boolean fUseCache;
+	private final long fCacheResyncMs;
+	private volatile SharedIndexInformer<StatefulSet> fStsInformer;
+	private volatile SharedIndexInformer<Deployment> fDeployInformer;
+	private final StatusTracker fStatusTracker;
+
+	private static final String kIndex_Name = "name";
+	private static final String kIndex_Job = "job";
+
+	private <T extends HasMetadata> SharedIndexInformer<T> startInformer ( Informable<T> source, Function<T,K8sDeployWrapper> wrap )
+	{
+		final SharedIndexInformer<T> informer = source.runnableInformer ( fCacheResyncMs );
+
+		final HashMap<String,Function<T,List<String>>> indexers = new HashMap<> ();
+		indexers.put ( kIndex_Name, item -> Collections.singletonList ( item.getMetadata ().getName () ) );
+		indexers.put ( kIndex_Job, item -> {
+			final String jobId = getJobIdFrom ( wrap.apply ( item ), null );
+			return jobId == null ? Collections.emptyList () : Collections.singletonList ( jobId );
+		} );
+		informer.addIndexers ( indexers );
+
+		informer.addEventHandler ( new ResourceEventHandler<T> ()
+		{
+			@Override
+			public void onAdd ( T item ) { noteStatus ( wrap.apply ( item ) ); }
+
+			@Override
+			public void onUpdate ( T oldItem, T newItem ) { noteStatus ( wrap.apply ( newItem ) ); }
+
+			@Override
+			public void onDelete ( T item, boolean deletedFinalStateUnknown ) { noteRemoved ( wrap.apply ( item ) ); }
+		} );
+
+		informer.start ();
+		return informer;
+	}
+
+	private boolean isCacheReady ()
+	{
+		return fStsInformer != null && fDeployInformer != null && fStsInformer.hasSynced () && fDeployInformer.hasSynced ();
+	}
+
+	private void noteStatus ( K8sDeployWrapper dw )
+	{
+		fStatusTracker.noteStatus ( dw.getMetadata ().getName (), getJobIdFrom ( dw, null ), dw.getStatus () );
+	}
+
+	private void noteRemoved ( K8sDeployWrapper dw )
+	{
+		fStatusTracker.noteRemoved ( dw.getMetadata ().getName (), getJobIdFrom ( dw, null ) );
+	}
+
+	/**
+	 * Tracks the last status seen for each deployment and tells listeners when it changes.
+	 * Resyncs and unrelated changes arrive as updates too, so repeats of a status aren't reported.
+	 */
+	static class StatusTracker
+	{
+		StatusTracker ()
+		{
+			fListeners = new CopyOnWriteArrayList<> ();
+			fLastStatus = new ConcurrentHashMap<> ();
+		}
+
+		void addListener ( StatusListener listener )
+		{
+			fListeners.add ( listener );
+		}
+
+		void removeListener ( StatusListener listener )
+		{
+			fListeners.remove ( listener );
+		}
+
+		void noteStatus ( String id, String jobId, Status status )
+		{
+			final Status prev = fLastStatus.put ( id, status );
+			if ( prev != status )
+			{
+				notifyListeners ( id, jobId, status );
+			}
+		}
+
+		void noteRemoved ( String id, String jobId )
+		{
+			if ( fLastStatus.remove ( id ) != null )
+			{
+				notifyListeners ( id, jobId, Status.STOPPED );
+			}
+		}
+
+		private void notifyListeners ( String id, String jobId, Status status )
+		{
+			for ( StatusListener sl : fListeners )
+			{
+				try
+				{
+					sl.onStatusChange ( id, jobId, status );
+				}
+				catch ( RuntimeException x )
+				{
+					log.warn ( "Status listener failed on {}: {}", id, x.getMessage () );
+				}
+			}
+		}
+
+		private final CopyOnWriteArrayList<StatusListener> fListeners;
+		private final ConcurrentHashMap<String,Status> fLastStatus;
+	}
+
 	protected void updateEnv ( HashMap<String,String> env )
 	{
 	}
@@ -658,8 +809,10 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 				boolean progressing = false;
 				boolean available = false;
 				
+				// a deployment that was just created may not have a status yet
 				final DeploymentStatus ds = fDeployment.getStatus ();
-				for ( DeploymentCondition dc : ds.getConditions () )
+				final List<DeploymentCondition> conditions = ds == null ? null : ds.getConditions ();
+				for ( DeploymentCondition dc : conditions == null ? Collections.<DeploymentCondition>emptyList () : conditions )
 				{
 					final String type = dc.getType ();
 					final String status = dc.getStatus ();
@@ -687,10 +840,10 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 			{
 				final int replReqd = safeInt ( fStatefulSet.getSpec ().getReplicas () );
 				final StatefulSetStatus sss = fStatefulSet.getStatus ();
-				final int ready = safeInt ( sss.getReadyReplicas () );
-				final int repls = safeInt ( sss.getReplicas () );
+				final int ready = sss == null ? 0 : safeInt ( sss.getReadyReplicas () );
+				final int repls = sss == null ? 0 : safeInt ( sss.getReplicas () );
 
-				log.info ( "Sts {}: {} reqd, {} created, {} ready", fStatefulSet.getMetadata ().getName (), replReqd, repls, ready );
+				log.debug ( "Sts {}: {} reqd, {} created, {} ready", fStatefulSet.getMetadata ().getName (), replReqd, repls, ready );
 
 				if ( ready < replReqd )
 				{
@@ -815,6 +968,21 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 
 	private K8sDeployWrapper getDeployment ( String tag )
 	{
+		if ( isCacheReady () )
+		{
+			for ( StatefulSet ss : fStsInformer.getIndexer ().byIndex ( kIndex_Name, tag ) )
+			{
+				return new K8sDeployWrapper ( ss );
+			}
+			for ( Deployment d : fDeployInformer.getIndexer ().byIndex ( kIndex_Name, tag ) )
+			{
+				return new K8sDeployWrapper ( d );
+			}
+
+			// a deployment applied moments ago may not have reached the cache yet, so ask the API server
+			log.debug ( "Deployment {} isn't cached; checking the API server.", tag );
+		}
+
 		// First look for a stateful set. Issuing a call for a named item as a deployment and then
 		// as a stateful set (since we don't know which was used in the init yaml) seemed to cause trouble
 		// either for the fabric8 client or for the service, with the 2nd call throwing "not found" so instead
@@ -863,6 +1031,19 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 	private List<K8sDeployWrapper> getK8sDeployments ( )
 	{
 		final LinkedList<K8sDeployWrapper> result = new LinkedList<> ();
+		if ( isCacheReady () )
+		{
+			for ( Deployment d : fDeployInformer.getStore ().list () )
+			{
+				result.add ( new K8sDeployWrapper ( d ) );
+			}
+			for ( StatefulSet ss : fStsInformer.getStore ().list () )
+			{
+				result.add ( new K8sDeployWrapper ( ss ) );
+			}
+			return result;
+		}
+
 		for ( Deployment d : fApiClient.apps().deployments().inNamespace ( fNamespace ).list ().getItems () )
 		{
 			result.add ( new K8sDeployWrapper ( d ) );
@@ -874,6 +1055,25 @@ public class K8sController extends SimpleService implements FlowControlDeploymen
 		return result;
 	}
 
+	private List<K8sDeployWrapper> getK8sDeploymentsForJob ( String jobId )
+	{
+		if ( !isCacheReady () )
+		{
+			return getK8sDeployments ();
+		}
+
+		final LinkedList<K8sDeployWrapper> result = new LinkedList<> ();
+		for ( Deployment d : fDeployInformer.getIndexer ().byIndex ( kIndex_Job, jobId ) )
+		{
+			result.add ( new K8sDeployWrapper ( d ) );
+		}
+		for ( StatefulSet ss : fStsInformer.getIndexer ().byIndex ( kIndex_Job, jobId ) )
+		{
+			result.add ( new K8sDeployWrapper ( ss ) );
+		}
+		return result;
+	}
+
 	private List<Pod> getPodsFor ( String tag )
 	{
 		final PodList pl = fApiClient
@@ -0,0 +1,81 @@
+package io.continual.flowcontrol.impl.controller.k8s;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.continual.flowcontrol.controlapi.FlowControlDeployment.Status;
+import io.continual.flowcontrol.controlapi.FlowControlDeploymentService.StatusListener;
+import junit.framework.TestCase;
+
+public class K8sControllerTest extends TestCase
+{
+	@Test
+	public void testOnlyChangesAreReported ()
+	{
+		final K8sController.StatusTracker tracker = new K8sController.StatusTracker ();
+		final Recorder r = new Recorder ();
+		tracker.addListener ( r );
+
+		tracker.noteStatus ( "s-a", "a", Status.PENDING );
+		tracker.noteStatus ( "s-a", "a", Status.PENDING );
+		tracker.noteStatus ( "s-a", "a", Status.RUNNING );
+		tracker.noteStatus ( "s-a", "a", Status.RUNNING );
+		tracker.noteStatus ( "s-b", "b", Status.RUNNING );
+
+		assertEquals ( 3, r.fEvents.size () );
+		assertEquals ( "s-a a PENDING", r.fEvents.get ( 0 ) );
+		assertEquals ( "s-a a RUNNING", r.fEvents.get ( 1 ) );
+		assertEquals ( "s-b b RUNNING", r.fEvents.get ( 2 ) );
+	}
+
+	@Test
+	public void testRemovalReportsStoppedOnce ()
+	{
+		final K8sController.StatusTracker tracker = new K8sController.StatusTracker ();
+		final Recorder r = new Recorder ();
+		tracker.addListener ( r );
+
+		// never seen, so nothing to report
+		tracker.noteRemoved ( "s-x", "x" );
+		assertTrue ( r.fEvents.isEmpty () );
+
+		tracker.noteStatus ( "s-a", "a", Status.RUNNING );
+		tracker.noteRemoved ( "s-a", "a" );
+		tracker.noteRemoved ( "s-a", "a" );
+		assertEquals ( 2, r.fEvents.size () );
+		assertEquals ( "s-a a STOPPED", r.fEvents.get ( 1 ) );
+
+		// a deployment that comes back is reported again
+		tracker.noteStatus ( "s-a", "a", Status.RUNNING );
+		assertEquals ( 3, r.fEvents.size () );
+	}
+
+	@Test
+	public void testFailingListenerDoesNotStopOthers ()
+	{
+		final K8sController.StatusTracker tracker = new K8sController.StatusTracker ();
+		final Recorder r = new Recorder ();
+		tracker.addListener ( ( id, jobId, status ) -> { throw new IllegalStateException ( "boom" ); } );
+		tracker.addListener ( r );
+
+		tracker.noteStatus ( "s-a", "a", Status.PENDING );
+		assertEquals ( 1, r.fEvents.size () );
+
+		tracker.removeListener ( r );
+		tracker.noteStatus ( "s-a", "a", Status.RUNNING );
+		assertEquals ( 1, r.fEvents.size () );
+	}
+
+	private static class Recorder implements StatusListener
+	{
+		@Override
+		public void onStatusChange ( String deploymentId, String jobId, Status status )
+		{
+			fEvents.add ( deploymentId + " " + jobId + " " + status );
+		}
+
+		private final List<String> fEvents = new LinkedList<> ();
+	}
+}
@@ -4,9 +4,9 @@
  *	Licensed under the Apache License, Version 2.0 (the "License");
  *	you may not use this file except in compliance with the License.
  *	You may obtain a copy of the License at
- *	
+ *
  *	http://www.apache.org/licenses/LICENSE-2.0
- *	
+ *
  *	Unless required by applicable law or agreed to in writing, software
  *	distributed under the License is distributed on an "AS IS" BASIS,
  *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -16,8 +16,19 @@
 
 package io.continual.services.processor.engine.library.sinks;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -26,35 +37,97 @@ import org.slf4j.LoggerFactory;
 
 import io.continual.builder.Builder;
 import io.continual.builder.Builder.BuildFailure;
+import io.continual.metrics.MetricsCatalog;
 import io.continual.services.processor.config.readers.ConfigLoadContext;
 import io.continual.services.processor.engine.model.Message;
 import io.continual.services.processor.engine.model.MessageProcessingContext;
 import io.continual.services.processor.engine.model.Sink;
+import io.continual.services.processor.engine.model.Source;
+import io.continual.services.processor.engine.model.StreamProcessingContext;
+import io.continual.util.data.exprEval.ExprDataSource;
+import io.continual.util.data.json.JsonEval;
 import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ArrayVisitor;
 
+/**
+ * Send each message to a set of sinks. By default the sinks are called in turn on the
+ * processing thread. With "parallel" set, each sink gets its own bounded queue and worker
+ * thread so that a slow sink doesn't hold up the others:
+ * <pre>
+ * {
+ *   "classname": "FanOutSink",
+ *   "parallel": true,
+ *   "queueSize": 1000,
+ *   "overflow": "block",
+ *   "sinks": [
+ *     { "classname": "RcvrSink", ..., "fanOut": { "queueSize": 100, "overflow": "dropOldest" } },
+ *     { "classname": "JdbcSink", ..., "fanOut": { "overflow": "spill", "spillFile": "./spill/jdbc.json" } }
+ *   ]
+ * }
+ * </pre>
+ * When a branch's queue is full, "block" waits for room, "dropOldest" discards the branch's oldest
+ * queued message, and "spill" appends the new message as a JSON line to the branch's spill file,
+ * from which it can be replayed later (e.g. with JsonObjectFileSource). flush() and close() wait
+ * for every branch to finish the messages queued ahead of them.<br>
+ * <br>
+ * In parallel mode, the message's source isn't told the message is complete until every branch has
+ * processed, dropped, or spilled it, so a source that commits its position on completion doesn't
+ * commit past messages a slow branch still holds. A branch's sink sees a copy of the message
+ * processing context. Calling stopProcessing on it affects only that copy, and its warnings go to
+ * the stream processing context.
+ */
 public class FanOutSink implements Sink
 {
+	public enum Overflow
+	{
+		BLOCK,
+		DROP_OLDEST,
+		SPILL
+	}
+
 	public FanOutSink ( ConfigLoadContext sc, JSONObject config ) throws BuildFailure
 	{
 		fSinks = new ArrayList<> ();
+		fBranches = new ArrayList<> ();
+		fParallel = config.optBoolean ( "parallel", false );
+
+		final int defQueueSize = config.optInt ( "queueSize", kDefault_QueueSize );
+		final Overflow defOverflow = readOverflow ( config.optString ( "overflow", null ), Overflow.BLOCK );
+
 		try
 		{
 			JsonVisitor.forEachElement ( config.optJSONArray ( "sinks" ), new ArrayVisitor<JSONObject,BuildFailure> () {
-	
+
 				@Override
 				public boolean visit ( JSONObject sink ) throws JSONException,BuildFailure
 				{
-					fSinks.add (
-						Builder.withBaseClass ( Sink.class )
-							.providingContext ( sc )
-							.withClassNameInData ()
-							.usingData ( sink )
-							.build ()
-						);
+					final Sink s = Builder.withBaseClass ( Sink.class )
+						.providingContext ( sc )
+						.withClassNameInData ()
+						.usingData ( sink )
+						.build ()
+					;
+					fSinks.add ( s );
+
+					if ( fParallel )
+					{
+						final JSONObject branchConfig = sink.optJSONObject ( "fanOut" );
+						final JSONObject bc = branchConfig == null ? new JSONObject () : branchConfig;
+
+						final String name = bc.optString ( "name", sink.optString ( "name", "branch" + fBranches.size () ) );
+						final Overflow overflow = readOverflow ( bc.optString ( "overflow", null ), defOverflow );
+						final String spillFile = bc.optString ( "spillFile", null );
+						if ( overflow == Overflow.SPILL && spillFile == null )
+						{
+							throw new BuildFailure ( "Branch " + name + " spills on overflow but has no spillFile." );
+						}
+
+						fBranches.add ( new Branch ( s, name, bc.optInt ( "queueSize", defQueueSize ), overflow,
+							spillFile == null ? null : new File ( spillFile ) ) );
+					}
 					return true;
 				}
-				
+
 			} );
 		}
 		catch ( JSONException x )
@@ -70,11 +143,22 @@ public class FanOutSink implements Sink
 		{
 			s.init ( );
 		}
+		for ( Branch b : fBranches )
+		{
+			b.start ();
+		}
 	}
 
 	@Override
 	public void close ()
 	{
+		if ( fParallel )
+		{
+			// each branch closes its sink after everything queued ahead of the close request
+			awaitBarrier ( Marker.Kind.CLOSE );
+			return;
+		}
+
 		for ( Sink s : fSinks )
 		{
 			try
@@ -91,6 +175,12 @@ public class FanOutSink implements Sink
 	@Override
 	public void flush ()
 	{
+		if ( fParallel )
+		{
+			awaitBarrier ( Marker.Kind.FLUSH );
+			return;
+		}
+
 		for ( Sink s : fSinks )
 		{
 			s.flush ();
@@ -106,14 +196,394 @@ public class FanOutSink implements Sink
 	@Override
 	public void process ( MessageProcessingContext context )
 	{
-		for ( Sink s : fSinks )
+		if ( !fParallel )
+		{
+			for ( Sink s : fSinks )
+			{
+				s.process ( context );
+			}
+			return;
+		}
+
+		if ( fBranches.isEmpty () ) return;
+
+		// the pipeline may go on to change the message after we return, so branches work on a copy
+		final SnapshotContext snapshot = new SnapshotContext ( context, fBranches.size () );
+		for ( Branch b : fBranches )
 		{
-			s.process ( context );
+			b.enqueue ( snapshot );
 		}
 	}
 
+	private static final int kDefault_QueueSize = 1000;
 
 	private final ArrayList<Sink> fSinks;
+	private final ArrayList<Branch> fBranches;
+	private final boolean fParallel;
+
+	private static Overflow readOverflow ( String val, Overflow def ) throws BuildFailure
+	{
+		if ( val == null ) return def;
+		switch ( val.toLowerCase () )
+		{
+			case "block": return Overflow.BLOCK;
+			case "dropoldest":
+			case "drop_oldest":
+			case "drop-oldest": return Overflow.DROP_OLDEST;
+			case "spill": return Overflow.SPILL;
+			default:
+				throw new BuildFailure ( "Unknown overflow behavior: " + val );
+		}
+	}
+
+	private void awaitBarrier ( Marker.Kind kind )
+	{
+		final CountDownLatch latch = new CountDownLatch ( fBranches.size () );
+		final Marker m = new Marker ( kind, latch );
+		for ( Branch b : fBranches )
+		{
+			b.enqueueMarker ( m );
+		}
+
+		try
+		{
+			latch.await ();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	/**
+	 * A flush or close request, queued behind the messages it applies to
+	 */
+	private static class Marker
+	{
+		enum Kind { FLUSH, CLOSE };
+
+		Marker ( Kind kind, CountDownLatch latch )
+		{
+			fKind = kind;
+			fLatch = latch;
+		}
+
+		final Kind fKind;
+		final CountDownLatch fLatch;
+	}
+
+	/**
+	 * One sink with its queue and worker thread
+	 */
+	private static class Branch implements Runnable
+	{
+		Branch ( Sink sink, String name, int queueSize, Overflow overflow, File spillFile )
+		{
+			fSink = sink;
+			fName = name;
+			fQueue = new ArrayBlockingQueue<> ( Math.max ( 1, queueSize ) );
+			fOverflow = overflow;
+			fSpillFile = spillFile;
+			fDropped = new AtomicLong ( 0 );
+			fSpilled = new AtomicLong ( 0 );
+			fErrors = new AtomicLong ( 0 );
+			fMetricsRegistered = false;
+		}
+
+		void start ()
+		{
+			fThread = new Thread ( this, "FanOutSink " + fName );
+			fThread.setDaemon ( true );
+			fThread.start ();
+		}
+
+		void enqueue ( SnapshotContext ctx )
+		{
+			registerMetrics ( ctx );
+
+			boolean queued = false;
+			try
+			{
+				switch ( fOverflow )
+				{
+					case BLOCK:
+						fQueue.put ( ctx );
+						queued = true;
+						break;
+
+					case DROP_OLDEST:
+						while ( !fQueue.offer ( ctx ) )
+						{
+							// markers are never dropped; put one back at the end if we took it
+							final Object oldest = fQueue.poll ();
+							if ( oldest instanceof Marker )
+							{
+								fQueue.put ( oldest );
+							}
+							else if ( oldest != null )
+							{
+								fDropped.incrementAndGet ();
+								( (SnapshotContext) oldest ).branchDone ();
+							}
+						}
+						queued = true;
+						break;
+
+					case SPILL:
+						if ( fQueue.offer ( ctx ) )
+						{
+							queued = true;
+						}
+						else
+						{
+							spill ( ctx.getMessage () );
+						}
+						break;
+				}
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+			finally
+			{
+				// a message this branch won't process is done as far as this branch is concerned
+				if ( !queued ) ctx.branchDone ();
+			}
+		}
+
+		void enqueueMarker ( Marker m )
+		{
+			try
+			{
+				fQueue.put ( m );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+		}
+
+		@Override
+		public void run ()
+		{
+			while ( true )
+			{
+				final Object item;
+				try
+				{
+					item = fQueue.take ();
+				}
+				catch ( InterruptedException e )
+				{
+					log.warn ( "FanOutSink branch {} interrupted; exiting.", fName );
+					return;
+				}
+
+				if ( item instanceof Marker )
+				{
+					final Marker m = (Marker) item;
+					try
+					{
+						if ( m.fKind == Marker.Kind.FLUSH )
+						{
+							fSink.flush ();
+						}
+						else
+						{
+							fSink.close ();
+							closeSpill ();
+						}
+					}
+					catch ( IOException | RuntimeException e )
+					{
+						fErrors.incrementAndGet ();
+						log.error ( "FanOutSink branch {}: {}", fName, e.getMessage () );
+					}
+					finally
+					{
+						m.fLatch.countDown ();
+					}
+
+					if ( m.fKind == Marker.Kind.CLOSE ) return;
+				}
+				else
+				{
+					final SnapshotContext ctx = (SnapshotContext) item;
+					try
+					{
+						fSink.process ( ctx );
+					}
+					catch ( RuntimeException e )
+					{
+						fErrors.incrementAndGet ();
+						log.warn ( "FanOutSink branch {}: {}", fName, e.getMessage () );
+					}
+					finally
+					{
+						ctx.branchDone ();
+					}
+				}
+			}
+		}
+
+		private final Sink fSink;
+		private final String fName;
+		private final ArrayBlockingQueue<Object> fQueue;
+		private final Overflow fOverflow;
+		private final File fSpillFile;
+		private final AtomicLong fDropped;
+		private final AtomicLong fSpilled;
+		private final AtomicLong fErrors;
+		private boolean fMetricsRegistered;
+		private Thread fThread;
+		private Writer fSpillWriter;
+
+		// spill runs on the producing thread only, and close on the worker after all spills
+		private synchronized void spill ( Message msg )
+		{
+			try
+			{
+				if ( fSpillWriter == null )
+				{
+					final File dir = fSpillFile.getAbsoluteFile ().getParentFile ();
+					if ( dir != null && !dir.exists () && !dir.mkdirs () )
+					{
+						throw new IOException ( "Couldn't create " + dir );
+					}
+					fSpillWriter = new BufferedWriter ( new OutputStreamWriter ( new FileOutputStream ( fSpillFile, true ), StandardCharsets.UTF_8 ) );
+				}
+				fSpillWriter.write ( msg.toLine () );
+				fSpillWriter.write ( '\n' );
+				fSpilled.incrementAndGet ();
+			}
+			catch ( IOException e )
+			{
+				fDropped.incrementAndGet ();
+				log.warn ( "FanOutSink branch {} couldn't spill to {}: {}", fName, fSpillFile, e.getMessage () );
+			}
+		}
+
+		private synchronized void closeSpill ()
+		{
+			if ( fSpillWriter != null )
+			{
+				try
+				{
+					fSpillWriter.close ();
+				}
+				catch ( IOException e )
+				{
+					log.warn ( "FanOutSink branch {} couldn't close {}: {}", fName, fSpillFile, e.getMessage () );
+				}
+				fSpillWriter = null;
+			}
+		}
+
+		private void registerMetrics ( MessageProcessingContext ctx )
+		{
+			if ( fMetricsRegistered ) return;
+			fMetricsRegistered = true;
+
+			final StreamProcessingContext spc = ctx.getStreamProcessingContext ();
+			final MetricsCatalog base = spc != null ? spc.getMetrics () : ctx.getMetrics ();
+			if ( base == null ) return;
+
+			final MetricsCatalog mc = base.getSubCatalog ( "FanOutSink" ).getSubCatalog ( fName );
+			mc.gauge ( "lag", () -> () -> fQueue.size () );
+			mc.gauge ( "dropped", () -> () -> fDropped.get () );
+			mc.gauge ( "spilled", () -> () -> fSpilled.get () );
+			mc.gauge ( "errors", () -> () -> fErrors.get () );
+		}
+	}
+
+	/**
+	 * A message processing context with a private copy of the message and its own processing state,
+	 * used from branch threads after the original context's processing has moved on. It holds the
+	 * original message's completion until each branch is done with it.
+	 */
+	private static class SnapshotContext implements MessageProcessingContext
+	{
+		SnapshotContext ( MessageProcessingContext base, int branchCount )
+		{
+			fBase = base;
+			fMsg = base.getMessage ().clone ();
+			fSpc = base.getStreamProcessingContext ();
+			fId = base.getId ();
+			fHalted = false;
+			fRemaining = new AtomicInteger ( branchCount );
+			fRelease = base.holdCompletion ();
+		}
+
+		void branchDone ()
+		{
+			if ( fRemaining.decrementAndGet () == 0 )
+			{
+				fRelease.run ();
+			}
+		}
+
+		@Override
+		public StreamProcessingContext getStreamProcessingContext () { return fSpc; }
+
+		@Override
+		public String getId () { return fId; }
+
+		@Override
+		public Message getMessage () { return fMsg; }
+
+		@Override
+		public boolean shouldContinue () { return !fHalted && ( fSpc == null || !fSpc.failed () ); }
+
+		@Override
+		public void stopProcessing () { fHalted = true; }
+
+		@Override
+		public void warn ( String warningText )
+		{
+			if ( fSpc != null )
+			{
+				fSpc.warn ( "msg #" + fId + ": " + warningText );
+			}
+			else
+			{
+				log.warn ( "msg #{}: {}", fId, warningText );
+			}
+		}
+
+		@Override
+		public Source getSource ( String srcName ) { return fBase.getSource ( srcName ); }
+
+		@Override
+		public Sink getSink ( String sinkName ) { return fBase.getSink ( sinkName ); }
+
+		@Override
+		public <T> T evalExpression ( String expression, Class<T> targetType, ExprDataSource... addlSrcs )
+		{
+			// our copy of the message goes after the caller's sources, ahead of the original message
+			final ExprDataSource[] srcs = Arrays.copyOf ( addlSrcs, addlSrcs.length + 1 );
+			srcs[addlSrcs.length] = new ExprDataSource ()
+			{
+				@Override
+				public Object eval ( String label )
+				{
+					return JsonEval.eval ( fMsg.accessRawJson (), label );
+				}
+			};
+			return fBase.evalExpression ( expression, targetType, srcs );
+		}
+
+		@Override
+		public MetricsCatalog getMetrics () { return fBase.getMetrics (); }
+
+		private final MessageProcessingContext fBase;
+		private final Message fMsg;
+		private final StreamProcessingContext fSpc;
+		private final String fId;
+		private final AtomicInteger fRemaining;
+		private final Runnable fRelease;
+		private volatile boolean fHalted;
+	}
 
 	private static final Logger log = LoggerFactory.getLogger ( FanOutSink.class );
 }
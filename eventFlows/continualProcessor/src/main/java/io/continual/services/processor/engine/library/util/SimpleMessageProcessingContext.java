@@ -1,5 +1,8 @@
 package io.continual.services.processor.engine.library.util;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
@@ -29,7 +32,19 @@ public class SimpleMessageProcessingContext implements MessageProcessingContext
 		 */
 		public SimpleMessageProcessingContext build ( Message msg ) throws BuildFailure
 		{
-			return new SimpleMessageProcessingContext ( this, msg );
+			return build ( msg, null );
+		}
+
+		/**
+		 * Build a processing context for a specific message
+		 * @param msg
+		 * @param onComplete run when the message is complete (see complete()), or null
+		 * @return a message processing context
+		 * @throws BuildFailure 
+		 */
+		public SimpleMessageProcessingContext build ( Message msg, Runnable onComplete ) throws BuildFailure
+		{
+			return new SimpleMessageProcessingContext ( this, msg, onComplete );
 		}
 
 		public Builder usingContext ( StreamProcessingContext s ) { fStreamProcContext = s; return this; }
@@ -150,12 +165,40 @@ public class SimpleMessageProcessingContext implements MessageProcessingContext
 		return fSpc.getMetrics ().getSubCatalog ( "messageProcessing" );
 	}
 
-	private SimpleMessageProcessingContext ( Builder b, Message msg ) throws BuildFailure
+	@Override
+	public Runnable holdCompletion ()
+	{
+		fHolds.incrementAndGet ();
+		final AtomicBoolean released = new AtomicBoolean ( false );
+		return () -> {
+			if ( released.compareAndSet ( false, true ) )
+			{
+				releaseHold ();
+			}
+		};
+	}
+
+	/**
+	 * Release the hold on completion taken when this context was built. The completion action
+	 * runs now if no other holds are outstanding, otherwise when the last one is released.
+	 */
+	public void complete ()
+	{
+		if ( fCompleted.compareAndSet ( false, true ) )
+		{
+			releaseHold ();
+		}
+	}
+
+	private SimpleMessageProcessingContext ( Builder b, Message msg, Runnable onComplete ) throws BuildFailure
 	{
 		fSpc = b.fStreamProcContext;
 		fMsg = msg;
 		fId = b.fSng.getNext ();
 		fEvalStack = b.fEvalStack;
+		fOnComplete = onComplete;
+		fHolds = new AtomicInteger ( 1 );
+		fCompleted = new AtomicBoolean ( false );
 
 		if ( fSpc == null ) throw new BuildFailure ( "No stream processing context in message processing context." );
 	}
@@ -164,5 +207,16 @@ public class SimpleMessageProcessingContext implements MessageProcessingContext
 	private final String fId;
 	private final Message fMsg;
 	private final ExprDataSource fEvalStack;
+	private final Runnable fOnComplete;
+	private final AtomicInteger fHolds;
+	private final AtomicBoolean fCompleted;
 	private boolean fHaltRequested = false;
+
+	private void releaseHold ()
+	{
+		if ( fHolds.decrementAndGet () == 0 && fOnComplete != null )
+		{
+			fOnComplete.run ();
+		}
+	}
 }
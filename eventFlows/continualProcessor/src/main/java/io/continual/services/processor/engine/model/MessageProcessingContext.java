@@ -119,4 +119,16 @@ public interface MessageProcessingContext
 	 * @return
 	 */
 	MetricsCatalog getMetrics ();
+
+	/**
+	 * Hold off completion of this message until the returned action is run. A processor that hands
+	 * the message to another thread takes a hold so that the message's source isn't told it's complete
+	 * (and, for example, doesn't commit its offset) before that work is done. The engine completes the
+	 * message when the pipeline has returned and every hold has been released.
+	 * @return an action to run when the deferred work is done; running it again has no effect
+	 */
+	default Runnable holdCompletion ()
+	{
+		return () -> {};
+	}
 }
@@ -49,7 +49,9 @@ public interface Source extends Closeable
 	void requeue ( MessageAndRouting msgAndRoute );
 
 	/**
-	 * Called by the processing engine when processing for a given message is complete.
+	 * Called by the processing engine when processing for a given message is complete. If processing
+	 * was handed off to other threads (see MessageProcessingContext.holdCompletion), this is called
+	 * from the thread that finished last, so messages can complete out of order.
 	 * @param spc
 	 * @param mr
 	 */
@@ -389,15 +389,19 @@ public class Engine extends SimpleService
 							if ( pl == null )
 							{
 								log.info ( "No pipeline {} for source \"{}\", ignored.", msgAndRoute.getPipelineName (), fSrcName );
+								fSource.markComplete ( fStreamContext, msgAndRoute );
 							}
 							else
 							{
+								// the source hears about completion once the pipeline and any work it handed off are done
+								final SimpleMessageProcessingContext mpc = mpcBuilder.build ( msgAndRoute.getMessage (),
+									() -> fSource.markComplete ( fStreamContext, msgAndRoute ) );
 								try ( Timer.Context ctx = procTime.time () )
 								{
-									pl.process ( mpcBuilder.build ( msgAndRoute.getMessage () ) );
+									pl.process ( mpc );
 								}
+								mpc.complete ();
 							}
-							fSource.markComplete ( fStreamContext, msgAndRoute );
 						}
 					}
 					if ( fSource.isEof () )
@@ -0,0 +1,392 @@
+package io.continual.services.processor.engine.library.sinks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.ServiceContainer;
+import io.continual.services.processor.config.readers.ConfigLoadContext;
+import io.continual.services.processor.engine.library.TestProcessingContext;
+import io.continual.services.processor.engine.library.util.SimpleMessageProcessingContext;
+import io.continual.services.processor.engine.library.util.SimpleStreamProcessingContext;
+import io.continual.services.processor.engine.model.Message;
+import io.continual.services.processor.engine.model.MessageProcessingContext;
+import io.continual.services.processor.engine.model.Sink;
+import junit.framework.TestCase;
+
+public class FanOutSinkTest extends TestCase
+{
+	@Test
+	public void testSequentialByDefault () throws BuildFailure
+	{
+		reset ();
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "sinks", new JSONArray ()
+				.put ( recorder ( "a" ) )
+				.put ( recorder ( "b" ) )
+			)
+		);
+		fos.init ();
+		fos.process ( new TestProcessingContext ( new JSONObject ().put ( "n", 1 ) ) );
+
+		// no queues, so both sinks have it already
+		assertEquals ( 1, received ( "a" ).size () );
+		assertEquals ( 1, received ( "b" ).size () );
+		fos.close ();
+	}
+
+	@Test
+	public void testSlowBranchDoesNotBlockOthers () throws BuildFailure, InterruptedException
+	{
+		reset ();
+		sfGate = new CountDownLatch ( 1 );
+
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ()
+				.put ( recorder ( "slow" )
+					.put ( "gated", true )
+					.put ( "fanOut", new JSONObject ().put ( "queueSize", 2 ).put ( "overflow", "dropOldest" ) )
+				)
+				.put ( recorder ( "fast" ) )
+			)
+		);
+		fos.init ();
+
+		for ( int i=0; i<10; i++ )
+		{
+			fos.process ( new TestProcessingContext ( new JSONObject ().put ( "n", i ) ) );
+		}
+
+		// the fast branch gets everything while the slow one is stuck
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( received ( "fast" ).size () < 10 && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		assertEquals ( 10, received ( "fast" ).size () );
+
+		sfGate.countDown ();
+		fos.flush ();
+
+		final List<Integer> slow = received ( "slow" );
+		assertTrue ( slow.size () < 10 );
+		assertEquals ( Integer.valueOf ( 9 ), slow.get ( slow.size () - 1 ) );
+		assertEquals ( 1, flushes ( "slow" ) );
+		assertEquals ( 1, flushes ( "fast" ) );
+
+		fos.close ();
+		assertTrue ( closed ( "slow" ) );
+		assertTrue ( closed ( "fast" ) );
+	}
+
+	@Test
+	public void testBranchesSeeSnapshot () throws BuildFailure
+	{
+		reset ();
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ().put ( recorder ( "a" ) ) )
+		);
+		fos.init ();
+
+		final MessageProcessingContext ctx = new TestProcessingContext ( new JSONObject ().put ( "n", 1 ) );
+		fos.process ( ctx );
+		ctx.getMessage ().putValue ( "n", 2 );
+
+		fos.flush ();
+		assertEquals ( Collections.singletonList ( 1 ), received ( "a" ) );
+		fos.close ();
+	}
+
+	@Test
+	public void testCompletionWaitsForBranches () throws BuildFailure, InterruptedException
+	{
+		reset ();
+		sfGate = new CountDownLatch ( 1 );
+
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ()
+				.put ( recorder ( "slow" ).put ( "gated", true ) )
+				.put ( recorder ( "fast" ) )
+			)
+		);
+		fos.init ();
+
+		final AtomicInteger completed = new AtomicInteger ( 0 );
+		final SimpleMessageProcessingContext ctx = SimpleMessageProcessingContext.builder ()
+			.usingContext ( SimpleStreamProcessingContext.builder ().build () )
+			.build ( Message.copyJsonToMessage ( new JSONObject ().put ( "n", 1 ) ), () -> completed.incrementAndGet () )
+		;
+		fos.process ( ctx );
+		ctx.complete ();
+
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( received ( "fast" ).size () < 1 && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		assertEquals ( 1, received ( "fast" ).size () );
+		assertEquals ( 0, completed.get () );
+
+		// the message completes once the slow branch is done with it
+		sfGate.countDown ();
+		fos.flush ();
+		assertEquals ( 1, completed.get () );
+		fos.close ();
+	}
+
+	@Test
+	public void testDroppedAndSpilledMessagesComplete () throws BuildFailure, IOException
+	{
+		reset ();
+		sfGate = new CountDownLatch ( 1 );
+
+		final File spill = new File ( Files.createTempDirectory ( "fanout" ).toFile (), "spill.json" );
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ()
+				.put ( recorder ( "dropper" )
+					.put ( "gated", true )
+					.put ( "fanOut", new JSONObject ().put ( "queueSize", 1 ).put ( "overflow", "dropOldest" ) )
+				)
+				.put ( recorder ( "spiller" )
+					.put ( "gated", true )
+					.put ( "fanOut", new JSONObject ().put ( "queueSize", 1 ).put ( "overflow", "spill" ).put ( "spillFile", spill.getAbsolutePath () ) )
+				)
+			)
+		);
+		fos.init ();
+
+		final AtomicInteger completed = new AtomicInteger ( 0 );
+		final SimpleMessageProcessingContext.Builder builder = SimpleMessageProcessingContext.builder ()
+			.usingContext ( SimpleStreamProcessingContext.builder ().build () )
+		;
+		for ( int i=0; i<5; i++ )
+		{
+			final SimpleMessageProcessingContext ctx = builder.build ( Message.copyJsonToMessage ( new JSONObject ().put ( "n", i ) ), () -> completed.incrementAndGet () );
+			fos.process ( ctx );
+			ctx.complete ();
+		}
+
+		sfGate.countDown ();
+		fos.close ();
+		assertEquals ( 5, completed.get () );
+	}
+
+	@Test
+	public void testBranchStopIsLocal () throws BuildFailure
+	{
+		reset ();
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ().put ( recorder ( "a" ).put ( "stops", true ) ) )
+		);
+		fos.init ();
+
+		final SimpleMessageProcessingContext ctx = SimpleMessageProcessingContext.builder ()
+			.usingContext ( SimpleStreamProcessingContext.builder ().build () )
+			.build ( Message.copyJsonToMessage ( new JSONObject ().put ( "n", 1 ) ) )
+		;
+		fos.process ( ctx );
+		fos.flush ();
+
+		// the branch saw its own stop, and the original context didn't
+		assertEquals ( Collections.singletonList ( -2 ), received ( "a" ) );
+		assertTrue ( ctx.shouldContinue () );
+		fos.close ();
+	}
+
+	@Test
+	public void testSpillOnOverflow () throws BuildFailure, IOException
+	{
+		reset ();
+		sfGate = new CountDownLatch ( 1 );
+
+		final File spill = new File ( Files.createTempDirectory ( "fanout" ).toFile (), "spill.json" );
+		final FanOutSink fos = new FanOutSink ( kLoadContext, new JSONObject ()
+			.put ( "parallel", true )
+			.put ( "sinks", new JSONArray ()
+				.put ( recorder ( "slow" )
+					.put ( "gated", true )
+					.put ( "fanOut", new JSONObject ()
+						.put ( "queueSize", 1 )
+						.put ( "overflow", "spill" )
+						.put ( "spillFile", spill.getAbsolutePath () )
+					)
+				)
+			)
+		);
+		fos.init ();
+
+		for ( int i=0; i<5; i++ )
+		{
+			fos.process ( new TestProcessingContext ( new JSONObject ().put ( "n", i ) ) );
+		}
+		sfGate.countDown ();
+		fos.close ();
+
+		final List<String> lines = Files.readAllLines ( spill.toPath (), StandardCharsets.UTF_8 );
+		assertEquals ( 5, lines.size () + received ( "slow" ).size () );
+		assertTrue ( lines.size () >= 3 );
+		for ( String line : lines )
+		{
+			assertTrue ( new JSONObject ( line ).has ( "n" ) );
+		}
+	}
+
+	@Test
+	public void testSpillRequiresFile ()
+	{
+		try
+		{
+			new FanOutSink ( kLoadContext, new JSONObject ()
+				.put ( "parallel", true )
+				.put ( "overflow", "spill" )
+				.put ( "sinks", new JSONArray ().put ( recorder ( "a" ) ) )
+			);
+			fail ( "expected a build failure" );
+		}
+		catch ( BuildFailure x )
+		{
+			// expected
+		}
+	}
+
+	public static class RecordingSink implements Sink
+	{
+		public RecordingSink ( JSONObject config )
+		{
+			fName = config.getString ( "name" );
+			fGated = config.optBoolean ( "gated", false );
+			fStops = config.optBoolean ( "stops", false );
+		}
+
+		@Override
+		public void init () {}
+
+		@Override
+		public void flush ()
+		{
+			synchronized ( sfFlushes )
+			{
+				sfFlushes.put ( fName, flushes ( fName ) + 1 );
+			}
+		}
+
+		@Override
+		public void close ()
+		{
+			synchronized ( sfClosed )
+			{
+				sfClosed.add ( fName );
+			}
+		}
+
+		@Override
+		public void process ( Message msg ) {}
+
+		@Override
+		public void process ( MessageProcessingContext context )
+		{
+			if ( fGated )
+			{
+				try
+				{
+					sfGate.await ();
+				}
+				catch ( InterruptedException e )
+				{
+					Thread.currentThread ().interrupt ();
+				}
+			}
+			if ( fStops )
+			{
+				context.stopProcessing ( "stopped" );
+				synchronized ( sfReceived )
+				{
+					sfReceived.computeIfAbsent ( fName, k -> new ArrayList<> () ).add ( context.shouldContinue () ? -3 : -2 );
+				}
+				return;
+			}
+			synchronized ( sfReceived )
+			{
+				sfReceived.computeIfAbsent ( fName, k -> new ArrayList<> () ).add ( context.getMessage ().getInt ( "n", -1 ) );
+			}
+		}
+
+		private final String fName;
+		private final boolean fGated;
+		private final boolean fStops;
+	}
+
+	private static JSONObject recorder ( String name )
+	{
+		return new JSONObject ()
+			.put ( "classname", RecordingSink.class.getName () )
+			.put ( "name", name )
+		;
+	}
+
+	private static void reset ()
+	{
+		synchronized ( sfReceived ) { sfReceived.clear (); }
+		synchronized ( sfFlushes ) { sfFlushes.clear (); }
+		synchronized ( sfClosed ) { sfClosed.clear (); }
+		sfGate = new CountDownLatch ( 0 );
+	}
+
+	private static List<Integer> received ( String name )
+	{
+		synchronized ( sfReceived )
+		{
+			final List<Integer> list = sfReceived.get ( name );
+			return list == null ? new ArrayList<> () : new ArrayList<> ( list );
+		}
+	}
+
+	private static int flushes ( String name )
+	{
+		synchronized ( sfFlushes )
+		{
+			final Integer i = sfFlushes.get ( name );
+			return i == null ? 0 : i;
+		}
+	}
+
+	private static boolean closed ( String name )
+	{
+		synchronized ( sfClosed )
+		{
+			return sfClosed.contains ( name );
+		}
+	}
+
+	private static final ConfigLoadContext kLoadContext = new ConfigLoadContext ()
+	{
+		@Override
+		public ServiceContainer getServiceContainer () { return new ServiceContainer (); }
+
+		@Override
+		public List<String> getSearchPathPackages () { return new ArrayList<> (); }
+	};
+
+	private static final Map<String,List<Integer>> sfReceived = new HashMap<> ();
+	private static final Map<String,Integer> sfFlushes = new HashMap<> ();
+	private static final List<String> sfClosed = new ArrayList<> ();
+	private static volatile CountDownLatch sfGate = new CountDownLatch ( 0 );
+}
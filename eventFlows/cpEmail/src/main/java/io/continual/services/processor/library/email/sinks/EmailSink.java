@@ -17,6 +17,8 @@
 package io.continual.services.processor.library.email.sinks;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -25,11 +27,14 @@ import java.util.concurrent.TimeoutException;
 import org.json.JSONObject;
 
 import io.continual.builder.Builder.BuildFailure;
+import io.continual.email.EmailService;
 import io.continual.email.EmailService.MailStatus;
 import io.continual.email.impl.SimpleEmailService;
+import io.continual.services.ServiceContainer;
 import io.continual.services.processor.config.readers.ConfigLoadContext;
 import io.continual.services.processor.engine.model.MessageProcessingContext;
 import io.continual.services.processor.engine.model.Sink;
+import io.continual.services.processor.engine.model.StreamProcessingContext;
 
 public class EmailSink implements Sink
 {
@@ -45,7 +50,21 @@ public class EmailSink implements Sink
 
 	public EmailSink ( ConfigLoadContext sc, JSONObject config ) throws BuildFailure
 	{
-		fMailer = new SimpleEmailService ( sc.getServiceContainer (), config );
+		final ServiceContainer services = sc == null ? new ServiceContainer () : sc.getServiceContainer ();
+
+		// use a shared mail service if one is named, otherwise run our own
+		final String svcName = config.optString ( "emailService", null );
+		if ( svcName != null )
+		{
+			fMailer = services.getReqd ( svcName, EmailService.class );
+			fOwnMailer = false;
+		}
+		else
+		{
+			fMailer = new SimpleEmailService ( services, config );
+			fOwnMailer = true;
+		}
+		fInFlight = new LinkedList<> ();
 	}
 
 	@Override
@@ -53,37 +72,84 @@ public class EmailSink implements Sink
 	{
 	}
 
+	/**
+	 * Queue the message's email with the mail service and return without waiting for it to send. Send
+	 * failures are reported as warnings on the stream once they're known.
+	 */
 	@Override
 	public void process ( MessageProcessingContext context )
 	{
-		try
-		{
-			final Future<MailStatus> status = fMailer.mail (
-				context.getMessage ().getString ( "to" ),
-				context.getMessage ().getString ( "subject" ),
-				context.getMessage ().getString ( "body" )
-			);
-			final MailStatus ms = status.get ( 30, TimeUnit.SECONDS );
-			if ( ms.didFail () )
-			{
-				context.warn ( "Mail send problem: " + ms.getErrorMsg () );
-			}
-		}
-		catch ( InterruptedException | ExecutionException | TimeoutException e )
+		reportCompleted ( false );
+
+		final Future<MailStatus> status = fMailer.mail (
+			context.getMessage ().getString ( "to" ),
+			context.getMessage ().getString ( "subject" ),
+			context.getMessage ().getString ( "body" )
+		);
+		synchronized ( fInFlight )
 		{
-			context.warn ( "Mail send problem: " + e.getMessage () );
+			fInFlight.add ( new InFlight ( context.getStreamProcessingContext (), status ) );
 		}
 	}
 
 	@Override
 	public void flush ()
 	{
+		reportCompleted ( true );
 	}
 
 	@Override
 	public void close () throws IOException
 	{
+		flush ();
+		if ( fOwnMailer ) fMailer.close ();
+	}
+
+	private final EmailService fMailer;
+	private final boolean fOwnMailer;
+	private final LinkedList<InFlight> fInFlight;
+
+	private static class InFlight
+	{
+		public InFlight ( StreamProcessingContext spc, Future<MailStatus> status )
+		{
+			fSpc = spc;
+			fStatus = status;
+		}
+
+		final StreamProcessingContext fSpc;
+		final Future<MailStatus> fStatus;
 	}
 
-	private final SimpleEmailService fMailer;
+	private void reportCompleted ( boolean wait )
+	{
+		synchronized ( fInFlight )
+		{
+			final Iterator<InFlight> it = fInFlight.iterator ();
+			while ( it.hasNext () )
+			{
+				final InFlight f = it.next ();
+				if ( !wait && !f.fStatus.isDone () ) continue;
+				it.remove ();
+
+				try
+				{
+					final MailStatus ms = f.fStatus.get ( 30, TimeUnit.SECONDS );
+					if ( ms.didFail () )
+					{
+						f.fSpc.warn ( "Mail send problem: " + ms.getErrorMsg () );
+					}
+				}
+				catch ( InterruptedException e )
+				{
+					Thread.currentThread ().interrupt ();
+					return;
+				}
+				catch ( ExecutionException | TimeoutException e )
+				{
+					f.fSpc.warn ( "Mail send problem: " + e.getMessage () );
+				}
+			}
+		}
+	}
 }
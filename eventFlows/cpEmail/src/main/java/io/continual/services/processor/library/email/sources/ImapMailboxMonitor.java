@@ -5,6 +5,7 @@ import java.util.LinkedList;
 import java.util.Properties;
 
 import javax.mail.AuthenticationFailedException;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
@@ -12,8 +13,13 @@ import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
 import javax.mail.UIDFolder;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
 import javax.mail.internet.MimeMessage;
 
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -33,6 +39,12 @@ import io.continual.services.processor.library.email.sources.support.SimpleMessa
 import io.continual.util.data.exprEval.ExpressionEvaluator;
 import io.continual.util.time.Clock;
 
+/**
+ * A source that reads new messages from an IMAP folder. The monitor keeps its connection open, asks the
+ * server only for UIDs above the highest one its tracker has seen (within the folder's UIDVALIDITY), and
+ * prefetches messages in batches. Between polls, it waits for new mail with IMAP IDLE when the server
+ * supports it, and reads again early only when the server reports new messages.
+ */
 public class ImapMailboxMonitor extends BasicSource
 {
 	public ImapMailboxMonitor ( ConfigLoadContext clc, JSONObject config ) throws JSONException, BuildFailure
@@ -59,8 +71,12 @@ public class ImapMailboxMonitor extends BasicSource
 		fMailProps.put ( "mail.imaps.port", "" + ee.evaluateTextToInt ( config.opt ( kSetting_ImapServerPort ), 993 ) );
 		fMailProps.put ( "mail.pop3.starttls.enable", "" + ee.evaluateTextToBoolean ( config.opt ( kSetting_ImapServerSsl ), true ) );
 		fMailProps.put ( "mail.imaps.usesocketchannels", "true" );	// required for IMAP watch 
-		
+
+		fUseIdle = ee.evaluateTextToBoolean ( config.opt ( kSetting_UseIdle ), true );
+		fFetchBatchSize = Math.max ( 1, ee.evaluateTextToInt ( config.opt ( kSetting_FetchBatchSize ), kDefault_FetchBatchSize ) );
+
 		fPending = new LinkedList<>();
+		fUnfetched = new LinkedList<>();
 		fSeenTracker = Builder.fromJson ( SeenTracker.class, config.getJSONObject ( "tracker" ), sc );
 
 		final JSONObject dataLoader = config.optJSONObject ( "dataLoader" );
@@ -74,6 +90,22 @@ public class ImapMailboxMonitor extends BasicSource
 		}
 	}
 
+	@Override
+	public synchronized void close () throws IOException
+	{
+		stopIdle ();
+		disconnect ();
+		try
+		{
+			fSeenTracker.close ();
+		}
+		catch ( Exception e )
+		{
+			log.warn ( "Couldn't close seen tracker: " + e.getMessage () );
+		}
+		super.close ();
+	}
+
 	@Override
 	protected MessageAndRouting internalGetNextMessage ( StreamProcessingContext spc ) throws IOException, InterruptedException
 	{
@@ -96,8 +128,16 @@ public class ImapMailboxMonitor extends BasicSource
 
 	private long fLastPollMs;
 	private final long fPollIntervalMs;
+	private final boolean fUseIdle;
+	private final int fFetchBatchSize;
+
+	private Store fStore;
+	private Folder fOpenFolder;
+	private Thread fIdleThread;
+	private volatile boolean fWakeup = false;
 
 	private final LinkedList<io.continual.services.processor.engine.model.Message> fPending;
+	private final LinkedList<Message> fUnfetched;
 	private final SeenTracker fSeenTracker;
 	private final DataLoader fDataLoader;
 
@@ -110,8 +150,11 @@ public class ImapMailboxMonitor extends BasicSource
 	public static final String kSetting_ImapServerPort = "mailImapServerPort";
 	public static final String kSetting_ImapServerSsl = "mailImapServerSsl";
 	public static final String kSetting_ImapServerUseAuth = "mailImapServerUseAuth";
+	public static final String kSetting_UseIdle = "useIdle";
+	public static final String kSetting_FetchBatchSize = "fetchBatchSize";
 
 	public static final long kDefault_PollFreqMinutes = 5L;
+	public static final int kDefault_FetchBatchSize = 250;
 
 	private synchronized void enqueue ( long uid, Message msg ) throws MessagingException
 	{
@@ -152,48 +195,222 @@ public class ImapMailboxMonitor extends BasicSource
 
 	private synchronized void readNextBatch () throws IOException
 	{
-		final long nowMs = Clock.now ();
-		if ( fLastPollMs + fPollIntervalMs > nowMs )
+		// finish messages we already know about before going back to the server
+		if ( fUnfetched.size () == 0 )
 		{
-			return;
+			final long nowMs = Clock.now ();
+			if ( !fWakeup && fLastPollMs + fPollIntervalMs > nowMs )
+			{
+				return;
+			}
+			fWakeup = false;
+			fLastPollMs = nowMs;
 		}
 
-		fLastPollMs = nowMs;
-
 		try
 		{
-			final Session session = Session.getDefaultInstance ( fMailProps );
+			final Folder folder = connect ();
 
-			try ( final Store store = session.getStore ( "imaps" ) )
+			if ( fUnfetched.size () == 0 )
 			{
-				store.connect ( fHost, fUser, fPassword );	// yes, we have to provide host twice
-	
-				try ( final Folder emailFolder = store.getFolder ( fFolder ) )
-				{
-					final UIDFolder uidFolder = (UIDFolder) emailFolder;
+				findNewMessages ( folder );
+			}
 
-					emailFolder.open ( Folder.READ_ONLY );
+			// prefetch the next batch in bulk, then hand each message to the data loader
+			final int count = Math.min ( fFetchBatchSize, fUnfetched.size () );
+			final Message[] batch = new Message [ count ];
+			for ( int i=0; i<count; i++ )
+			{
+				batch[i] = fUnfetched.removeFirst ();
+			}
+			if ( count > 0 )
+			{
+				folder.fetch ( batch, makeFetchProfile ( folder ) );
 
-					final Message[] msgs = emailFolder.getMessages ();
-					for ( Message msg : msgs )
-					{
-						enqueue ( uidFolder.getUID ( msg ), msg );
-					}
-				}
-				catch ( Exception e )
+				final UIDFolder uidFolder = (UIDFolder) folder;
+				for ( Message msg : batch )
 				{
-					log.warn ( e.getMessage (), e );
+					enqueue ( uidFolder.getUID ( msg ), msg );
 				}
+				fSeenTracker.flush ();
 			}
+
+			startIdle ( folder );
 		}
 		catch ( AuthenticationFailedException e )
 		{
 			log.warn ( "Error reading email: {}", e.getMessage(), e );
+			disconnect ();
 			throw new IOException ( e );
 		}
-		catch ( MessagingException e )
+		catch ( MessagingException | RuntimeException e )
 		{
+			// we'll reconnect on the next poll, and pick up from the highest UID we've seen
 			log.warn ( "Error reading email: {}", e.getMessage(), e );
+			fUnfetched.clear ();
+			disconnect ();
+		}
+	}
+
+	private void findNewMessages ( Folder folder ) throws MessagingException
+	{
+		final UIDFolder uidFolder = (UIDFolder) folder;
+
+		// UIDs only carry over between sessions if UIDVALIDITY hasn't changed
+		if ( fSeenTracker.onUidValidity ( uidFolder.getUIDValidity () ) )
+		{
+			log.info ( "Mailbox {} was rebuilt on the server; reading all messages again.", fFolder );
+		}
+
+		// "n:*" always includes the last message in the folder, even if its UID is below n
+		final long highest = fSeenTracker.getHighestUid ();
+		final long startUid = Math.max ( 1L, highest + 1 );
+		for ( Message msg : uidFolder.getMessagesByUID ( startUid, UIDFolder.LASTUID ) )
+		{
+			if ( msg != null && uidFolder.getUID ( msg ) > highest )
+			{
+				fUnfetched.add ( msg );
+			}
+		}
+		if ( fUnfetched.size () > 0 )
+		{
+			log.info ( "Found {} new messages in {}.", fUnfetched.size (), fFolder );
+		}
+	}
+
+	private FetchProfile makeFetchProfile ( Folder folder )
+	{
+		final FetchProfile fp = new FetchProfile ();
+		fp.add ( UIDFolder.FetchProfileItem.UID );
+		fp.add ( FetchProfile.Item.ENVELOPE );
+		fp.add ( FetchProfile.Item.FLAGS );
+		fp.add ( FetchProfile.Item.CONTENT_INFO );
+		if ( folder instanceof IMAPFolder )
+		{
+			// the whole message, so the data loader doesn't go back to the server per part
+			fp.add ( IMAPFolder.FetchProfileItem.MESSAGE );
+		}
+		return fp;
+	}
+
+	private Folder connect () throws MessagingException
+	{
+		if ( fOpenFolder != null && fOpenFolder.isOpen () && fStore != null && fStore.isConnected () )
+		{
+			return fOpenFolder;
+		}
+		disconnect ();
+
+		fStore = connectStore ();
+
+		final Folder folder = fStore.getFolder ( fFolder );
+		folder.open ( Folder.READ_ONLY );
+		fOpenFolder = folder;
+		return folder;
+	}
+
+	/**
+	 * Connect to the IMAP server
+	 * @return a connected store
+	 * @throws MessagingException
+	 */
+	Store connectStore () throws MessagingException
+	{
+		final Session session = Session.getDefaultInstance ( fMailProps );
+		final Store store = session.getStore ( "imaps" );
+		store.connect ( fHost, fUser, fPassword );	// yes, we have to provide host twice
+		return store;
+	}
+
+	private void disconnect ()
+	{
+		stopIdle ();
+		if ( fOpenFolder != null )
+		{
+			try
+			{
+				if ( fOpenFolder.isOpen () ) fOpenFolder.close ( false );
+			}
+			catch ( MessagingException e )
+			{
+				log.debug ( "Error closing folder: {}", e.getMessage () );
+			}
+			fOpenFolder = null;
+		}
+		if ( fStore != null )
+		{
+			try
+			{
+				fStore.close ();
+			}
+			catch ( MessagingException e )
+			{
+				log.debug ( "Error closing store: {}", e.getMessage () );
+			}
+			fStore = null;
+		}
+	}
+
+	/**
+	 * Wait for new mail with IMAP IDLE on a background thread, when the server supports it. When the
+	 * server reports new messages, the next call for messages reads from the server right away rather
+	 * than waiting for the poll interval. Our own reads on the folder also end the IDLE, so IDLE returning
+	 * doesn't mean anything arrived; the thread just starts it again. If the server doesn't support IDLE,
+	 * or it fails, we just poll.
+	 */
+	private void startIdle ( Folder folder )
+	{
+		if ( !fUseIdle || fIdleThread != null || !( folder instanceof IMAPFolder ) ) return;
+
+		try
+		{
+			if ( !( fStore instanceof IMAPStore ) || !((IMAPStore) fStore).hasCapability ( "IDLE" ) )
+			{
+				log.info ( "IMAP server doesn't support IDLE; polling every {} ms.", fPollIntervalMs );
+				return;
+			}
+		}
+		catch ( MessagingException e )
+		{
+			log.info ( "Couldn't check IMAP server capabilities; polling every {} ms.", fPollIntervalMs );
+			return;
+		}
+
+		final IMAPFolder imapFolder = (IMAPFolder) folder;
+		imapFolder.addMessageCountListener ( new MessageCountAdapter ()
+		{
+			@Override
+			public void messagesAdded ( MessageCountEvent e )
+			{
+				fWakeup = true;
+			}
+		} );
+
+		final Thread t = new Thread ( () -> {
+			while ( !Thread.currentThread ().isInterrupted () && imapFolder.isOpen () )
+			{
+				try
+				{
+					imapFolder.idle ( true );
+				}
+				catch ( MessagingException | IllegalStateException e )
+				{
+					log.info ( "IMAP IDLE ended ({}); polling until the next connection.", e.getMessage () );
+					break;
+				}
+			}
+		}, "ImapMailboxMonitor idle " + fFolder );
+		t.setDaemon ( true );
+		t.start ();
+		fIdleThread = t;
+	}
+
+	private void stopIdle ()
+	{
+		if ( fIdleThread != null )
+		{
+			fIdleThread.interrupt ();
+			fIdleThread = null;
 		}
 	}
 
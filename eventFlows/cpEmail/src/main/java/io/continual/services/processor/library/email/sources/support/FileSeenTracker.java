@@ -3,12 +3,12 @@ package io.continual.services.processor.library.email.sources.support;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +17,11 @@ import io.continual.builder.Builder.BuildFailure;
 import io.continual.services.ServiceContainer;
 import io.continual.util.time.Clock;
 
+/**
+ * Tracks the folder's UIDVALIDITY and the highest UID seen, in a small JSON file that's replaced
+ * atomically. Files written by earlier versions, with one "uid,timestamp" line per message, are
+ * read for their highest UID.
+ */
 public class FileSeenTracker implements SeenTracker
 {
 	public FileSeenTracker ( ServiceContainer sc, JSONObject config ) throws BuildFailure
@@ -24,127 +29,135 @@ public class FileSeenTracker implements SeenTracker
 		try
 		{
 			fFile = new File ( sc.getExprEval ().evaluateText ( config.getString ( "file" ) ) );
-			if ( !fFile.exists () )
-			{
-				fFile.createNewFile ();
-			}
-			fData = new HashMap<>();
-			fAgeThresholdMs = 1000L * config.optLong ( "ageThresholdSeconds", 60*60*24*7 );
+			fUidValidity = -1L;
+			fMaxUid = -1L;
+			fDirty = false;
+			fLastWriteMs = 0L;
 
 			read ();
 		}
-		catch ( IOException x )
+		catch ( IOException | JSONException x )
 		{
 			throw new BuildFailure ( x );
 		}
 	}
 
 	@Override
-	public void close ()
+	public synchronized void close ()
 	{
-		writeAll ();
-		if ( fAppender != null ) fAppender.close ();
+		flush ();
 	}
 
 	@Override
 	public synchronized void addUid ( long uid )
 	{
-		final Entry e = new Entry ( uid, Clock.now () );
-		fData.put ( uid, e );
-		fMaxUid = Math.max ( uid, fMaxUid );
-		append ( e );
+		if ( uid > fMaxUid )
+		{
+			fMaxUid = uid;
+			fDirty = true;
+
+			// writes are throttled; monitors flush at the end of each batch
+			if ( Clock.now () - fLastWriteMs >= kMinWriteIntervalMs )
+			{
+				flush ();
+			}
+		}
 	}
 
 	@Override
 	public synchronized boolean isUidSeen ( long uid )
 	{
-		return uid <= fMaxUid || fData.containsKey ( uid );
+		return uid <= fMaxUid;
 	}
 
-	private final File fFile;
-	private final long fAgeThresholdMs;
-	private final HashMap<Long,Entry> fData;
-	private long fMaxUid;
-	private PrintWriter fAppender;
+	@Override
+	public synchronized long getHighestUid ()
+	{
+		return fMaxUid;
+	}
 
-	private static class Entry
+	@Override
+	public synchronized boolean onUidValidity ( long uidValidity )
 	{
-		public Entry ( long uid, long timestampMs )
+		if ( fUidValidity == uidValidity ) return false;
+
+		// a tracker without a recorded UIDVALIDITY (e.g. from an older file) adopts the folder's
+		final boolean reset = fUidValidity != -1L;
+		if ( reset )
 		{
-			fUid = uid;
-			fTsMs = timestampMs;
+			log.warn ( "UIDVALIDITY changed from {} to {}; previously seen UIDs no longer apply.", fUidValidity, uidValidity );
+			fMaxUid = -1L;
 		}
-
-		private final long fUid;
-		private final long fTsMs;
+		fUidValidity = uidValidity;
+		fDirty = true;
+		flush ();
+		return reset;
 	}
 
-	private void read () throws IOException
+	@Override
+	public synchronized void flush ()
 	{
-		final long nowMs = Clock.now ();
-		fMaxUid = -1L;
-		
-		if ( fAppender != null ) fAppender.close ();
+		if ( !fDirty ) return;
 
-		try ( BufferedReader br = new BufferedReader ( new FileReader ( fFile ) ) )
+		final JSONObject data = new JSONObject ()
+			.put ( kUidValidity, fUidValidity )
+			.put ( kHighestUid, fMaxUid )
+		;
+
+		final File tmp = new File ( fFile.getPath () + ".tmp" );
+		try
 		{
-			fData.clear ();
-			String line = null;
-			while ( null != ( line = br.readLine () ) )
-			{
-				final String[] parts = line.split ( "," );
-				if ( parts.length != 2 )
-				{
-					log.warn ( "Ignored: " + line );
-				}
-				final long uid = Long.parseLong ( parts[0] );
-				final long tsms = Long.parseLong ( parts[1] );
-				if ( tsms + fAgeThresholdMs >= nowMs )
-				{
-					fData.put ( uid, new Entry ( uid, tsms ) );
-				}
-				fMaxUid = Math.max ( uid, fMaxUid );
-			}
+			Files.write ( tmp.toPath (), data.toString ().getBytes ( StandardCharsets.UTF_8 ) );
+			Files.move ( tmp.toPath (), fFile.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			fDirty = false;
+			fLastWriteMs = Clock.now ();
+		}
+		catch ( IOException x )
+		{
+			log.warn ( "Failed writing data file: " + x.getMessage () );
 		}
-
-		fAppender = new PrintWriter ( new FileWriter ( fFile, true ) );
 	}
 
-	private void append ( Entry e )
-	{
-		write ( fAppender, e );
-	}
+	private final File fFile;
+	private long fUidValidity;
+	private long fMaxUid;
+	private boolean fDirty;
+	private long fLastWriteMs;
 
-	// FIXME: probably just need to write out max...
+	private static final String kUidValidity = "uidValidity";
+	private static final String kHighestUid = "highestUid";
+	private static final long kMinWriteIntervalMs = 1000L;
 
-	private void write ( PrintWriter pw, Entry e )
+	private void read () throws IOException
 	{
-		pw.println ( Long.toString ( e.fUid ) + "," + Long.toString ( e.fTsMs ) );
-		pw.flush ();
-	}
+		if ( !fFile.exists () ) return;
 
-	private void writeAll ()
-	{
-		if ( fAppender != null ) fAppender.close ();
+		final String content = new String ( Files.readAllBytes ( fFile.toPath () ), StandardCharsets.UTF_8 ).trim ();
+		if ( content.startsWith ( "{" ) )
+		{
+			final JSONObject data = new JSONObject ( content );
+			fUidValidity = data.optLong ( kUidValidity, -1L );
+			fMaxUid = data.optLong ( kHighestUid, -1L );
+			return;
+		}
 
-		final long nowMs = Clock.now ();
-		try ( PrintWriter pw = new PrintWriter ( fFile ) )
+		// older format, one "uid,timestamp" line per message
+		try ( BufferedReader br = new BufferedReader ( new FileReader ( fFile ) ) )
 		{
-			for ( Map.Entry<Long,Entry> e : fData.entrySet () )
+			String line = null;
+			while ( null != ( line = br.readLine () ) )
 			{
-				if ( e.getValue ().fTsMs + fAgeThresholdMs >= nowMs )
+				final String[] parts = line.split ( "," );
+				if ( parts.length != 2 )
 				{
-					write ( pw, e.getValue () );
+					log.warn ( "Ignored: " + line );
+					continue;
 				}
+				fMaxUid = Math.max ( Long.parseLong ( parts[0] ), fMaxUid );
 			}
-
-			fAppender = new PrintWriter ( new FileWriter ( fFile, true ) );
-		}
-		catch ( IOException x )
-		{
-			log.warn ( "Failed writing data file: " + x.getMessage () );
 		}
+		fDirty = true;
 	}
-	
+
 	private static final Logger log = LoggerFactory.getLogger ( FileSeenTracker.class );
 }
@@ -5,4 +5,25 @@ public interface SeenTracker extends AutoCloseable
 	void addUid ( long uid );
 
 	boolean isUidSeen ( long uid );
+
+	/**
+	 * Get the highest UID this tracker has seen, if it tracks one. Monitors use this to fetch only
+	 * messages with higher UIDs.
+	 * @return the highest UID seen, or -1 if unknown
+	 */
+	default long getHighestUid () { return -1L; }
+
+	/**
+	 * Tell the tracker which UIDVALIDITY the folder currently has. UIDs are only meaningful within a
+	 * single UIDVALIDITY, so if it differs from the value the tracker last recorded, the tracker forgets
+	 * the UIDs it has seen.
+	 * @param uidValidity
+	 * @return true if the tracker reset its seen UIDs
+	 */
+	default boolean onUidValidity ( long uidValidity ) { return false; }
+
+	/**
+	 * Save any tracking state that hasn't been saved yet.
+	 */
+	default void flush () {}
 }
@@ -0,0 +1,188 @@
+package io.continual.services.processor.library.email.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.URLName;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.ServiceContainer;
+import io.continual.services.processor.library.email.sources.support.FileSeenTracker;
+import io.continual.util.time.Clock;
+import junit.framework.TestCase;
+
+public class ImapMailboxMonitorTest extends TestCase
+{
+	@Test
+	public void testIdleMailboxIsPolledOncePerInterval () throws IOException, BuildFailure, InterruptedException
+	{
+		final File f = File.createTempFile ( "seenTracker-", ".json" );
+		f.delete ();
+
+		final JSONObject config = new JSONObject ()
+			.put ( ImapMailboxMonitor.kSetting_PollFreqMinutes, 5 )
+			.put ( "tracker", new JSONObject ()
+				.put ( "class", FileSeenTracker.class.getName () )
+				.put ( "file", f.getAbsolutePath () )
+			)
+		;
+
+		final FakeStore store = new FakeStore ();
+		final Clock.TestClock clock = Clock.useNewTestClock ().set ( 1000000 );
+		final ImapMailboxMonitor monitor = new ImapMailboxMonitor ( new ServiceContainer (), config )
+		{
+			@Override
+			Store connectStore ()
+			{
+				return store;
+			}
+		};
+		try
+		{
+			assertNull ( monitor.internalGetNextMessage ( null ) );
+			assertEquals ( 1, store.fFolder.fQueries.get () );
+
+			// IDLE keeps ending (as it does whenever we use the folder), but nothing arrives
+			for ( int i=0; i<10; i++ )
+			{
+				Thread.sleep ( 20 );
+				assertNull ( monitor.internalGetNextMessage ( null ) );
+			}
+			assertEquals ( 1, store.fFolder.fQueries.get () );
+
+			clock.add ( 5 * 60 * 1000L );
+			assertNull ( monitor.internalGetNextMessage ( null ) );
+			assertEquals ( 2, store.fFolder.fQueries.get () );
+
+			// new mail is read right away
+			store.fFolder.newMail ();
+			final long endBy = System.currentTimeMillis () + 5000;
+			while ( store.fFolder.fQueries.get () == 2 && System.currentTimeMillis () < endBy )
+			{
+				Thread.sleep ( 10 );
+				monitor.internalGetNextMessage ( null );
+			}
+			assertEquals ( 3, store.fFolder.fQueries.get () );
+		}
+		finally
+		{
+			Clock.useNewTestClock ();
+			monitor.close ();
+			f.delete ();
+		}
+	}
+
+	private static class FakeStore extends IMAPStore
+	{
+		public FakeStore ()
+		{
+			super ( Session.getInstance ( new Properties () ), new URLName ( "imaps://localhost" ) );
+			fFolder = new FakeFolder ( this );
+		}
+
+		@Override
+		public Folder getFolder ( String name )
+		{
+			return fFolder;
+		}
+
+		@Override
+		public boolean isConnected ()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean hasCapability ( String capability )
+		{
+			return true;
+		}
+
+		@Override
+		public void close ()
+		{
+		}
+
+		private final FakeFolder fFolder;
+	}
+
+	private static class FakeFolder extends IMAPFolder
+	{
+		public FakeFolder ( IMAPStore store )
+		{
+			super ( "inbox", '/', store, null );
+		}
+
+		public void newMail ()
+		{
+			notifyMessageAddedListeners ( new Message[0] );
+		}
+
+		@Override
+		public void open ( int mode )
+		{
+			fOpen = true;
+		}
+
+		@Override
+		public boolean isOpen ()
+		{
+			return fOpen;
+		}
+
+		@Override
+		public void close ( boolean expunge )
+		{
+			fOpen = false;
+		}
+
+		@Override
+		public long getUIDValidity ()
+		{
+			return 1L;
+		}
+
+		@Override
+		public Message[] getMessagesByUID ( long start, long end )
+		{
+			fQueries.incrementAndGet ();
+			return new Message[0];
+		}
+
+		@Override
+		public void fetch ( Message[] msgs, FetchProfile fp )
+		{
+		}
+
+		@Override
+		public void idle ( boolean once ) throws MessagingException
+		{
+			// IDLE ends without any new mail
+			try
+			{
+				Thread.sleep ( 5 );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+		}
+
+		private volatile boolean fOpen = false;
+		private final AtomicInteger fQueries = new AtomicInteger ( 0 );
+	}
+}
@@ -0,0 +1,48 @@
+package io.continual.services.processor.library.email.sources.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.ServiceContainer;
+import junit.framework.TestCase;
+
+public class FileSeenTrackerTest extends TestCase
+{
+	@Test
+	public void testHighestUidAndUidValidity () throws IOException, BuildFailure
+	{
+		final File f = File.createTempFile ( "seenTracker-", ".json" );
+
+		// a file in the older one-line-per-message format
+		Files.write ( f.toPath (), "12,1000\n40,1000\n7,1000\n".getBytes ( StandardCharsets.UTF_8 ) );
+
+		final JSONObject config = new JSONObject ().put ( "file", f.getAbsolutePath () );
+		try ( FileSeenTracker t = new FileSeenTracker ( new ServiceContainer (), config ) )
+		{
+			assertEquals ( 40, t.getHighestUid () );
+
+			// the first UIDVALIDITY is adopted without losing the older UIDs
+			assertFalse ( t.onUidValidity ( 555 ) );
+			assertTrue ( t.isUidSeen ( 39 ) );
+
+			t.addUid ( 41 );
+			assertFalse ( t.isUidSeen ( 42 ) );
+		}
+
+		try ( FileSeenTracker t = new FileSeenTracker ( new ServiceContainer (), config ) )
+		{
+			assertEquals ( 41, t.getHighestUid () );
+			assertFalse ( t.onUidValidity ( 555 ) );
+
+			// a new UIDVALIDITY means the old UIDs no longer apply
+			assertTrue ( t.onUidValidity ( 556 ) );
+			assertEquals ( -1, t.getHighestUid () );
+		}
+	}
+}
@@ -1,19 +1,33 @@
 package io.continual.services.processor.library.kafka.sources;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.continual.services.processor.config.readers.ConfigLoadContext;
 import io.continual.services.processor.engine.library.sources.BasicSource;
@@ -24,7 +38,16 @@ import io.continual.util.data.exprEval.ExpressionEvaluator;
 import io.continual.util.data.json.CommentedJsonTokener;
 import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ObjectVisitor;
+import io.continual.util.time.Clock;
 
+/**
+ * A Kafka topic source. Records are fetched by one or more consumers in the same group
+ * ("consumers", default 1), each on its own thread, so the group's partitions are spread
+ * over them. Offsets are committed only through records the pipeline has marked complete,
+ * so anything in progress at a crash is read again on restart (at-least-once delivery).
+ * When more than "maxBuffered" messages are waiting for the pipeline, the consumers pause
+ * their partitions until the backlog drops to half that.
+ */
 public class KafkaSource extends BasicSource
 {
 	public KafkaSource ( final ConfigLoadContext sc, JSONObject config )
@@ -34,22 +57,43 @@ public class KafkaSource extends BasicSource
 		final ExpressionEvaluator ee = sc.getServiceContainer ().getExprEval ();
 		final JSONObject cc = ee.evaluateJsonObject ( config );
 
-		final String topic = cc.getString ( "topic" );
+		fTopic = cc.getString ( "topic" );
 		final String group = cc.getString ( "group" );
-		
+
+		fAutoCommit = cc.optBoolean ( "autoCommit", false );
+		fConsumerCount = Math.max ( 1, cc.optInt ( "consumers", 1 ) );
+		fMaxBuffered = Math.max ( 1, cc.optInt ( "maxBuffered", kDefault_MaxBuffered ) );
+		fCommitIntervalMs = Math.max ( 0L, cc.optLong ( "commitIntervalMs", kDefault_CommitIntervalMs ) );
+		fPollTimeoutMs = Math.max ( 1L, cc.optLong ( "pollTimeoutMs", kDefault_PollTimeoutMs ) );
+
 		fProps = new Properties ();
 		readConfigInto ( config.optJSONObject ( "kafka" ), fProps, ee );
-		fProps.put ( "group.id", topic + "::" + group );
-		fProps.put ( "client.id", UUID.randomUUID ().toString () );
-		fProps.put ( "enable.auto.commit", cc.optBoolean ( "autoCommit", true ) );
+		fProps.put ( "group.id", fTopic + "::" + group );
+		fProps.put ( "enable.auto.commit", fAutoCommit );
 		fProps.put ( ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class );
 		fProps.put ( ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class );
 
-		fConsumer = new KafkaConsumer<> ( fProps );
+		fPendingMsgs = new LinkedBlockingQueue<> ();
+		fInFlight = new IdentityHashMap<> ();
+		fPartitions = new HashMap<> ();
+		fPollers = new ArrayList<> ();
+	}
+
+	@Override
+	public synchronized void open () throws IOException
+	{
+		if ( fPollers.size () > 0 ) return;
 
-		fConsumer.subscribe ( Arrays.asList ( topic ) );
+		for ( int i=0; i<fConsumerCount; i++ )
+		{
+			final Properties props = new Properties ();
+			props.putAll ( fProps );
+			props.put ( "client.id", UUID.randomUUID ().toString () );
 
-		fPendingMsgs = new LinkedList<> ();
+			final Poller p = new Poller ( makeConsumer ( props ), fTopic + "-" + i );
+			fPollers.add ( p );
+			p.start ();
+		}
 	}
 
 	@Override
@@ -57,44 +101,293 @@ public class KafkaSource extends BasicSource
 	{
 		noteEndOfStream ();
 
-		fConsumer.close ();
+		for ( Poller p : fPollers )
+		{
+			p.requestStop ();
+		}
+		for ( Poller p : fPollers )
+		{
+			try
+			{
+				p.join ();
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void markComplete ( StreamProcessingContext spc, MessageAndRouting mr )
+	{
+		synchronized ( fPartitions )
+		{
+			final Position pos = fInFlight.remove ( mr );
+
+			// if the partition was revoked since this was fetched, its new owner reads it again
+			if ( pos != null && fPartitions.get ( pos.fPartition ) == pos.fOffsets )
+			{
+				pos.fOffsets.complete ( pos.fOffset );
+			}
+		}
 	}
 
 	@Override
 	protected MessageAndRouting internalGetNextMessage ( StreamProcessingContext spc ) throws IOException, InterruptedException
 	{
-		if ( fPendingMsgs.size () > 0 )
+		return fPendingMsgs.poll ( kMaxWaitMs, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Create a consumer. Each consumer is only used from its own polling thread.
+	 * @param props
+	 * @return a consumer
+	 */
+	protected Consumer<String,String> makeConsumer ( Properties props )
+	{
+		return new KafkaConsumer<> ( props );
+	}
+
+	private static final int kDefault_MaxBuffered = 1000;
+	private static final long kDefault_CommitIntervalMs = 1000L;
+	private static final long kDefault_PollTimeoutMs = 100L;
+	private static final long kMaxWaitMs = 100L;
+
+	private final String fTopic;
+	private final Properties fProps;
+	private final boolean fAutoCommit;
+	private final int fConsumerCount;
+	private final int fMaxBuffered;
+	private final long fCommitIntervalMs;
+	private final long fPollTimeoutMs;
+
+	private final LinkedBlockingQueue<MessageAndRouting> fPendingMsgs;
+	private final ArrayList<Poller> fPollers;
+
+	// offset tracking, guarded by fPartitions
+	private final IdentityHashMap<MessageAndRouting,Position> fInFlight;
+	private final HashMap<TopicPartition,PartitionOffsets> fPartitions;
+
+	private static class Position
+	{
+		Position ( TopicPartition tp, PartitionOffsets offsets, long offset )
+		{
+			fPartition = tp;
+			fOffsets = offsets;
+			fOffset = offset;
+		}
+
+		final TopicPartition fPartition;
+		final PartitionOffsets fOffsets;
+		final long fOffset;
+	}
+
+	/**
+	 * A consumer and the thread that polls it. Everything that touches the consumer (polling,
+	 * pause/resume, commits, rebalance callbacks) happens on this thread.
+	 */
+	private class Poller extends Thread implements ConsumerRebalanceListener
+	{
+		Poller ( Consumer<String,String> consumer, String name )
+		{
+			super ( "KafkaSource " + name );
+			setDaemon ( true );
+
+			fConsumer = consumer;
+			fRunning = true;
+			fPaused = false;
+			fLastCommitMs = Clock.now ();
+		}
+
+		void requestStop ()
 		{
-			return fPendingMsgs.remove ();
+			fRunning = false;
+			fConsumer.wakeup ();
 		}
-		
-		final ConsumerRecords<String,String> records = fConsumer.poll ( 100L );
-		for ( ConsumerRecord<String,String> cr : records )
+
+		@Override
+		public void run ()
 		{
+			try
+			{
+				fConsumer.subscribe ( Arrays.asList ( fTopic ), this );
+				while ( fRunning )
+				{
+					applyBackpressure ();
+
+					final ConsumerRecords<String,String> records = fConsumer.poll ( fPollTimeoutMs );
+					for ( ConsumerRecord<String,String> cr : records )
+					{
+						accept ( cr );
+					}
+
+					if ( Clock.now () - fLastCommitMs >= fCommitIntervalMs )
+					{
+						commit ( fConsumer.assignment () );
+					}
+				}
+			}
+			catch ( WakeupException x )
+			{
+				// stop requested
+			}
+			catch ( KafkaException x )
+			{
+				log.warn ( "Kafka consumer for {} failed: {}", fTopic, x.getMessage () );
+			}
+			finally
+			{
+				try
+				{
+					commit ( fConsumer.assignment () );
+				}
+				catch ( KafkaException x )
+				{
+					log.warn ( "Couldn't commit final offsets for {}: {}", fTopic, x.getMessage () );
+				}
+				fConsumer.close ();
+			}
+		}
+
+		@Override
+		public void onPartitionsRevoked ( Collection<TopicPartition> partitions )
+		{
+			commit ( partitions );
+
+			synchronized ( fPartitions )
+			{
+				for ( TopicPartition tp : partitions )
+				{
+					fPartitions.remove ( tp );
+				}
+
+				// drop anything not yet handed to the pipeline; the partition's new owner reads it again
+				fPendingMsgs.removeIf ( mr -> {
+					final Position pos = fInFlight.get ( mr );
+					if ( pos != null && partitions.contains ( pos.fPartition ) )
+					{
+						fInFlight.remove ( mr );
+						return true;
+					}
+					return false;
+				} );
+			}
+		}
+
+		@Override
+		public void onPartitionsAssigned ( Collection<TopicPartition> partitions )
+		{
+			if ( fPaused )
+			{
+				fConsumer.pause ( partitions );
+			}
+		}
+
+		private final Consumer<String,String> fConsumer;
+		private volatile boolean fRunning;
+		private boolean fPaused;
+		private long fLastCommitMs;
+
+		private void applyBackpressure ()
+		{
+			final int buffered = fPendingMsgs.size ();
+			if ( !fPaused && buffered >= fMaxBuffered )
+			{
+				log.debug ( "Pausing {} with {} messages buffered.", fTopic, buffered );
+				fConsumer.pause ( fConsumer.assignment () );
+				fPaused = true;
+			}
+			else if ( fPaused && buffered <= fMaxBuffered / 2 )
+			{
+				log.debug ( "Resuming {} with {} messages buffered.", fTopic, buffered );
+				fConsumer.resume ( fConsumer.paused () );
+				fPaused = false;
+			}
+		}
+
+		private void accept ( ConsumerRecord<String,String> cr )
+		{
+			final TopicPartition tp = new TopicPartition ( cr.topic (), cr.partition () );
+
+			MessageAndRouting mr = null;
 			final String msgStr = cr.value ();
 			try
 			{
 				final JSONObject msgData = new JSONObject ( new CommentedJsonTokener ( msgStr ) );
-				final Message msg = Message.adoptJsonAsMessage ( msgData );
-				fPendingMsgs.add ( makeDefRoutingMessage ( msg ) );
+				mr = makeDefRoutingMessage ( Message.adoptJsonAsMessage ( msgData ) );
 			}
 			catch ( JSONException x )
 			{
-				spc.warn ( "Couldn't parse inbound text as JSON: " + msgStr );
+				log.warn ( "Couldn't parse inbound text as JSON: " + msgStr );
+			}
+
+			synchronized ( fPartitions )
+			{
+				final PartitionOffsets offsets = fPartitions.computeIfAbsent ( tp, k -> new PartitionOffsets () );
+				offsets.fetched ( cr.offset (), mr != null );
+				if ( mr != null )
+				{
+					fInFlight.put ( mr, new Position ( tp, offsets, cr.offset () ) );
+				}
+			}
+			if ( mr != null )
+			{
+				fPendingMsgs.add ( mr );
 			}
 		}
 
-		if ( fPendingMsgs.size () > 0 )
+		private void commit ( Collection<TopicPartition> partitions )
 		{
-			return fPendingMsgs.remove ();
+			fLastCommitMs = Clock.now ();
+			if ( fAutoCommit ) return;
+
+			final Map<TopicPartition,OffsetAndMetadata> toCommit = new HashMap<> ();
+			synchronized ( fPartitions )
+			{
+				for ( TopicPartition tp : partitions )
+				{
+					final PartitionOffsets offsets = fPartitions.get ( tp );
+					final Long offset = offsets == null ? null : offsets.getUncommitted ();
+					if ( offset != null )
+					{
+						toCommit.put ( tp, new OffsetAndMetadata ( offset ) );
+					}
+				}
+			}
+			if ( toCommit.isEmpty () ) return;
+
+			try
+			{
+				fConsumer.commitSync ( toCommit );
+			}
+			catch ( WakeupException x )
+			{
+				// we're stopping; try once more so the completed work isn't re-read
+				fConsumer.commitSync ( toCommit );
+			}
+			catch ( KafkaException x )
+			{
+				// e.g. the group rebalanced underneath us; the next commit tries again
+				log.warn ( "Couldn't commit offsets for {}: {}", fTopic, x.getMessage () );
+				return;
+			}
+
+			synchronized ( fPartitions )
+			{
+				for ( Map.Entry<TopicPartition,OffsetAndMetadata> e : toCommit.entrySet () )
+				{
+					final PartitionOffsets offsets = fPartitions.get ( e.getKey () );
+					if ( offsets != null )
+					{
+						offsets.markCommitted ( e.getValue ().offset () );
+					}
+				}
+			}
 		}
-		return null;
 	}
 
-	private final Properties fProps;
-	private final KafkaConsumer<String, String> fConsumer;
-	private final LinkedList<MessageAndRouting> fPendingMsgs;
-
 	private void readConfigInto ( JSONObject config, Properties props, ExpressionEvaluator ee )
 	{
 		if ( config == null ) return;
@@ -117,4 +410,6 @@ public class KafkaSource extends BasicSource
 		} );
 
 	}
+
+	private static final Logger log = LoggerFactory.getLogger ( KafkaSource.class );
 }
@@ -0,0 +1,62 @@
+package io.continual.services.processor.library.kafka.sources;
+
+import java.util.TreeSet;
+
+/**
+ * Offset tracking for one partition. Records are pending from the time they're fetched
+ * until the pipeline marks them complete, and the committable offset never moves past the
+ * oldest pending record, so a restart re-reads anything that wasn't finished.
+ */
+class PartitionOffsets
+{
+	PartitionOffsets ()
+	{
+		fPending = new TreeSet<> ();
+		fNext = -1;
+		fCommitted = -1;
+	}
+
+	/**
+	 * Note that a record was fetched
+	 * @param offset the record's offset
+	 * @param pending if false, the record needs no processing (e.g. it couldn't be parsed)
+	 */
+	void fetched ( long offset, boolean pending )
+	{
+		fNext = Math.max ( fNext, offset + 1 );
+		if ( pending )
+		{
+			fPending.add ( offset );
+		}
+	}
+
+	void complete ( long offset )
+	{
+		fPending.remove ( offset );
+	}
+
+	int getPendingCount ()
+	{
+		return fPending.size ();
+	}
+
+	/**
+	 * Get the offset to commit (that is, the next offset to read after a restart) if it's
+	 * moved since the last commit.
+	 * @return an offset, or null
+	 */
+	Long getUncommitted ()
+	{
+		final long committable = fPending.isEmpty () ? fNext : fPending.first ();
+		return committable > fCommitted ? committable : null;
+	}
+
+	void markCommitted ( long offset )
+	{
+		fCommitted = Math.max ( fCommitted, offset );
+	}
+
+	private final TreeSet<Long> fPending;
+	private long fNext;
+	private long fCommitted;
+}
@@ -0,0 +1,115 @@
+package io.continual.services.processor.library.kafka.sources;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.services.ServiceContainer;
+import io.continual.services.processor.config.readers.ConfigLoadContext;
+import io.continual.services.processor.engine.model.MessageAndRouting;
+import junit.framework.TestCase;
+
+public class KafkaSourceTest extends TestCase
+{
+	@Test
+	public void testCommitsFollowCompletion () throws IOException, InterruptedException
+	{
+		final MockConsumer<String,String> mock = new MockConsumer<> ( OffsetResetStrategy.EARLIEST );
+		mock.schedulePollTask ( () -> {
+			mock.rebalance ( Collections.singletonList ( kPartition ) );
+			mock.updateBeginningOffsets ( Collections.singletonMap ( kPartition, 0L ) );
+			for ( int i=0; i<3; i++ )
+			{
+				mock.addRecord ( new ConsumerRecord<> ( kTopic, 0, i, null, new JSONObject ().put ( "n", i ).toString () ) );
+			}
+			mock.addRecord ( new ConsumerRecord<> ( kTopic, 0, 3, null, "not json" ) );
+		} );
+
+		final KafkaSource src = new TestKafkaSource ( mock );
+		src.open ();
+
+		final List<MessageAndRouting> msgs = new ArrayList<> ();
+		while ( msgs.size () < 3 )
+		{
+			final MessageAndRouting mr = src.getNextMessage ( null, 5, TimeUnit.SECONDS );
+			assertNotNull ( mr );
+			msgs.add ( mr );
+		}
+		assertEquals ( 2, msgs.get ( 2 ).getMessage ().getInt ( "n", -1 ) );
+
+		// finishing out of order commits nothing past the first unfinished record
+		src.markComplete ( null, msgs.get ( 1 ) );
+		assertEquals ( Long.valueOf ( 0 ), committedAfterPolls ( mock, 0 ) );
+
+		src.markComplete ( null, msgs.get ( 0 ) );
+		assertEquals ( Long.valueOf ( 2 ), committedAfterPolls ( mock, 2 ) );
+
+		// the unparseable record doesn't hold things up
+		src.markComplete ( null, msgs.get ( 2 ) );
+		assertEquals ( Long.valueOf ( 4 ), committedAfterPolls ( mock, 4 ) );
+
+		src.close ();
+		assertTrue ( mock.closed () );
+	}
+
+	private static Long committedAfterPolls ( MockConsumer<String,String> mock, long expecting ) throws InterruptedException
+	{
+		final long endBy = System.currentTimeMillis () + 2000;
+		Long result = null;
+		while ( System.currentTimeMillis () < endBy )
+		{
+			final OffsetAndMetadata om = mock.committed ( kPartition );
+			result = om == null ? null : om.offset ();
+			if ( result != null && result == expecting ) break;
+			Thread.sleep ( 20 );
+		}
+		return result;
+	}
+
+	private static class TestKafkaSource extends KafkaSource
+	{
+		public TestKafkaSource ( MockConsumer<String,String> mock )
+		{
+			super ( kLoadContext, new JSONObject ()
+				.put ( "pipeline", "default" )
+				.put ( "topic", kTopic )
+				.put ( "group", "test" )
+				.put ( "commitIntervalMs", 0 )
+				.put ( "pollTimeoutMs", 10 )
+			);
+			fMock = mock;
+		}
+
+		@Override
+		protected Consumer<String,String> makeConsumer ( Properties props )
+		{
+			return fMock;
+		}
+
+		private final MockConsumer<String,String> fMock;
+	}
+
+	private static final String kTopic = "events";
+	private static final TopicPartition kPartition = new TopicPartition ( kTopic, 0 );
+
+	private static final ConfigLoadContext kLoadContext = new ConfigLoadContext ()
+	{
+		@Override
+		public ServiceContainer getServiceContainer () { return new ServiceContainer (); }
+
+		@Override
+		public List<String> getSearchPathPackages () { return new ArrayList<> (); }
+	};
+}
@@ -0,0 +1,49 @@
+package io.continual.services.processor.library.kafka.sources;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class PartitionOffsetsTest extends TestCase
+{
+	@Test
+	public void testNothingFetched ()
+	{
+		final PartitionOffsets po = new PartitionOffsets ();
+		assertNull ( po.getUncommitted () );
+	}
+
+	@Test
+	public void testCommitStopsAtOldestPending ()
+	{
+		final PartitionOffsets po = new PartitionOffsets ();
+		po.fetched ( 10, true );
+		po.fetched ( 11, true );
+		po.fetched ( 12, true );
+
+		// nothing finished, so a restart begins at 10
+		assertEquals ( Long.valueOf ( 10 ), po.getUncommitted () );
+		po.markCommitted ( 10 );
+		assertNull ( po.getUncommitted () );
+
+		// finishing out of order doesn't move past 11
+		po.complete ( 10 );
+		po.complete ( 12 );
+		assertEquals ( Long.valueOf ( 11 ), po.getUncommitted () );
+		assertEquals ( 1, po.getPendingCount () );
+
+		po.complete ( 11 );
+		assertEquals ( Long.valueOf ( 13 ), po.getUncommitted () );
+	}
+
+	@Test
+	public void testUnparsedRecordsDontHoldCommits ()
+	{
+		final PartitionOffsets po = new PartitionOffsets ();
+		po.fetched ( 0, true );
+		po.fetched ( 1, false );
+
+		po.complete ( 0 );
+		assertEquals ( Long.valueOf ( 2 ), po.getUncommitted () );
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.processor.library.model.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.model.impl.changes.ModelChange;
+import io.continual.services.model.impl.changes.ModelChangeLog;
+import io.continual.services.processor.config.readers.ConfigLoadContext;
+import io.continual.services.processor.engine.library.sources.BasicSource;
+import io.continual.services.processor.engine.model.Message;
+import io.continual.services.processor.engine.model.MessageAndRouting;
+import io.continual.services.processor.engine.model.StreamProcessingContext;
+import io.continual.util.time.Clock;
+
+/**
+ * A source that streams changes from a model change log. Unlike ModelSource, which reads the full object
+ * set each time it runs, this source resumes from the last change that was completely processed.<br>
+ * <br>
+ * The source's position is the highest sequence number for which it and every earlier change have been
+ * marked complete. When an offset file is configured, the position is saved there periodically and on close,
+ * so a restart may re-deliver a few changes but won't skip any.
+ */
+public class ModelChangeSource extends BasicSource
+{
+	public ModelChangeSource ( ConfigLoadContext sc, JSONObject config ) throws BuildFailure
+	{
+		this (
+			sc.getServiceContainer ().getReqd ( config.getString ( "changeLog" ), ModelChangeLog.class ),
+			config
+		);
+	}
+
+	public ModelChangeSource ( ModelChangeLog changeLog, JSONObject config ) throws BuildFailure
+	{
+		super ( config );
+
+		fLog = changeLog;
+		fBatchSize = Math.max ( 1, config.optInt ( "batchSize", kDefaultBatchSize ) );
+
+		final String offsetFile = config.optString ( "offsetFile", null );
+		fOffsetFile = offsetFile == null ? null : new File ( offsetFile );
+
+		fInFlight = new IdentityHashMap<> ();
+		fPendingSeqs = new TreeSet<> ();
+		fBuffer = new LinkedList<> ();
+
+		final Long saved = readOffset ();
+		if ( saved != null )
+		{
+			fCommitted = saved;
+		}
+		else
+		{
+			final String startAt = config.optString ( "startAt", kStartAt_Earliest );
+			if ( startAt.equalsIgnoreCase ( kStartAt_Latest ) )
+			{
+				fCommitted = fLog.getLastSequence ();
+			}
+			else if ( startAt.equalsIgnoreCase ( kStartAt_Earliest ) )
+			{
+				fCommitted = fLog.getFirstSequence () - 1;
+			}
+			else
+			{
+				throw new BuildFailure ( "Unknown startAt value: " + startAt );
+			}
+		}
+		fNextRead = fCommitted + 1;
+		fSavedCommitted = fCommitted;
+		fLastSaveMs = Clock.now ();
+	}
+
+	@Override
+	public synchronized void close () throws IOException
+	{
+		saveOffset ();
+		super.close ();
+	}
+
+	@Override
+	public synchronized void markComplete ( StreamProcessingContext spc, MessageAndRouting mr )
+	{
+		final Long seq = fInFlight.remove ( mr );
+		if ( seq == null ) return;
+
+		fPendingSeqs.remove ( seq );
+
+		// the position moves up to just before the oldest change still in flight
+		fCommitted = fPendingSeqs.isEmpty () ? fNextRead - 1 : fPendingSeqs.first () - 1;
+
+		if ( Clock.now () - fLastSaveMs >= kOffsetSaveIntervalMs )
+		{
+			try
+			{
+				saveOffset ();
+			}
+			catch ( IOException e )
+			{
+				spc.warn ( "Couldn't save model change offset: " + e.getMessage () );
+			}
+		}
+	}
+
+	/**
+	 * Get the sequence number through which all changes have been processed
+	 * @return a sequence number
+	 */
+	public synchronized long getCommittedSequence ()
+	{
+		return fCommitted;
+	}
+
+	@Override
+	protected MessageAndRouting internalGetNextMessage ( StreamProcessingContext spc ) throws IOException, InterruptedException
+	{
+		if ( fBuffer.isEmpty () )
+		{
+			final List<ModelChange> changes = fLog.read ( fNextRead, fBatchSize );
+			if ( changes.isEmpty () ) return null;
+
+			final long firstSeq = changes.get ( 0 ).getSequence ();
+			if ( firstSeq > fNextRead )
+			{
+				spc.warn ( "Model changes " + fNextRead + " through " + ( firstSeq - 1 ) + " are no longer in the change log." );
+			}
+			fBuffer.addAll ( changes );
+		}
+
+		final ModelChange mc = fBuffer.removeFirst ();
+		final MessageAndRouting mr = makeDefRoutingMessage ( Message.adoptJsonAsMessage ( mc.toJson () ) );
+
+		// nothing is outstanding before this change, so a skipped range can be committed
+		if ( fPendingSeqs.isEmpty () ) fCommitted = mc.getSequence () - 1;
+
+		fInFlight.put ( mr, mc.getSequence () );
+		fPendingSeqs.add ( mc.getSequence () );
+		fNextRead = mc.getSequence () + 1;
+		return mr;
+	}
+
+	private final ModelChangeLog fLog;
+	private final int fBatchSize;
+	private final File fOffsetFile;
+
+	private final IdentityHashMap<MessageAndRouting,Long> fInFlight;
+	private final TreeSet<Long> fPendingSeqs;
+	private final LinkedList<ModelChange> fBuffer;
+
+	private long fNextRead;
+	private long fCommitted;
+	private long fSavedCommitted;
+	private long fLastSaveMs;
+
+	private static final int kDefaultBatchSize = 500;
+	private static final long kOffsetSaveIntervalMs = 1000L;
+
+	private static final String kStartAt_Earliest = "earliest";
+	private static final String kStartAt_Latest = "latest";
+
+	private Long readOffset () throws BuildFailure
+	{
+		if ( fOffsetFile == null || !fOffsetFile.exists () ) return null;
+		try
+		{
+			return Long.parseLong ( new String ( Files.readAllBytes ( fOffsetFile.toPath () ), StandardCharsets.UTF_8 ).trim () );
+		}
+		catch ( IOException | NumberFormatException e )
+		{
+			throw new BuildFailure ( "Couldn't read model change offset from " + fOffsetFile + ": " + e.getMessage () );
+		}
+	}
+
+	// call with lock held
+	private void saveOffset () throws IOException
+	{
+		fLastSaveMs = Clock.now ();
+		if ( fOffsetFile == null || fCommitted == fSavedCommitted ) return;
+
+		final File tmp = new File ( fOffsetFile.getPath () + ".tmp" );
+		Files.write ( tmp.toPath (), Long.toString ( fCommitted ).getBytes ( StandardCharsets.UTF_8 ) );
+		Files.move ( tmp.toPath (), fOffsetFile.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		fSavedCommitted = fCommitted;
+		log.debug ( "Saved model change offset {}", fCommitted );
+	}
+
+	private static final Logger log = LoggerFactory.getLogger ( ModelChangeSource.class );
+}
@@ -0,0 +1,85 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.processor.library.model.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.model.impl.changes.ModelChangeLog;
+import io.continual.services.processor.engine.model.MessageAndRouting;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class ModelChangeSourceTest extends TestCase
+{
+	@Test
+	public void testOutOfOrderCompletionCommitsWithoutGaps () throws IOException, BuildFailure, InterruptedException
+	{
+		final File dir = Files.createTempDirectory ( "continualChangeSourceTest-" ).toFile ();
+		final ModelChangeLog log = new ModelChangeLog ( dir, "test" );
+		for ( int i=0; i<5; i++ )
+		{
+			log.onObjectCreate ( Path.fromString ( "/obj" + i ) );
+		}
+		log.close ();
+
+		final JSONObject config = new JSONObject ()
+			.put ( "pipeline", "default" )
+			.put ( "offsetFile", new File ( dir, "source.offset" ).getPath () )
+		;
+
+		final ModelChangeSource src = new ModelChangeSource ( log, config );
+		assertEquals ( 0, src.getCommittedSequence () );
+
+		final MessageAndRouting m1 = src.getNextMessage ( null, 1, TimeUnit.SECONDS );
+		final MessageAndRouting m2 = src.getNextMessage ( null, 1, TimeUnit.SECONDS );
+		final MessageAndRouting m3 = src.getNextMessage ( null, 1, TimeUnit.SECONDS );
+		final MessageAndRouting m4 = src.getNextMessage ( null, 1, TimeUnit.SECONDS );
+		assertEquals ( 4, m4.getMessage ().accessRawJson ().getLong ( "seq" ) );
+
+		// later changes finishing first don't move the position past an earlier one that's still in flight
+		src.markComplete ( null, m3 );
+		assertEquals ( 0, src.getCommittedSequence () );
+		src.markComplete ( null, m2 );
+		assertEquals ( 0, src.getCommittedSequence () );
+
+		// the oldest change finishing releases everything completed behind it
+		src.markComplete ( null, m1 );
+		assertEquals ( 3, src.getCommittedSequence () );
+
+		// completing the same message again changes nothing
+		src.markComplete ( null, m3 );
+		assertEquals ( 3, src.getCommittedSequence () );
+
+		src.markComplete ( null, m4 );
+		assertEquals ( 4, src.getCommittedSequence () );
+		src.close ();
+
+		// a new source resumes after the saved position
+		final ModelChangeSource resumed = new ModelChangeSource ( log, config );
+		assertEquals ( 4, resumed.getCommittedSequence () );
+		final MessageAndRouting m5 = resumed.getNextMessage ( null, 1, TimeUnit.SECONDS );
+		assertEquals ( 5, m5.getMessage ().accessRawJson ().getLong ( "seq" ) );
+		resumed.close ();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.processor.library.msdocs.sources;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * A cell value detached from any workbook, so that rows can be handed between threads and
+ * produced by either the streaming XLSX reader or the POI user model.
+ */
+class ExcelCell
+{
+	static ExcelCell numeric ( double val, int formatIndex, String formatString, String formula )
+	{
+		return new ExcelCell ( CellType.NUMERIC, val, null, false, formatIndex, formatString, formula );
+	}
+
+	static ExcelCell string ( String val, String formula )
+	{
+		return new ExcelCell ( CellType.STRING, 0.0, val, false, -1, null, formula );
+	}
+
+	static ExcelCell bool ( boolean val, String formula )
+	{
+		return new ExcelCell ( CellType.BOOLEAN, 0.0, null, val, -1, null, formula );
+	}
+
+	static ExcelCell error ( String val, String formula )
+	{
+		return new ExcelCell ( CellType.ERROR, 0.0, val, false, -1, null, formula );
+	}
+
+	/**
+	 * Capture a user model cell's value
+	 * @param cell
+	 * @return a cell value, or null for a blank cell
+	 */
+	static ExcelCell fromCell ( Cell cell )
+	{
+		final boolean isFormula = cell.getCellType () == CellType.FORMULA;
+		final String formula = isFormula ? cell.getCellFormula () : null;
+		final CellType valType = isFormula ? cell.getCachedFormulaResultType () : cell.getCellType ();
+		switch ( valType )
+		{
+			case NUMERIC:
+				return numeric ( cell.getNumericCellValue (), cell.getCellStyle ().getDataFormat (), cell.getCellStyle ().getDataFormatString (), formula );
+			case STRING:
+				return string ( cell.getStringCellValue (), formula );
+			case BOOLEAN:
+				return bool ( cell.getBooleanCellValue (), formula );
+			case ERROR:
+				return error ( "ERROR", formula );
+			case BLANK:
+			default:
+				return null;
+		}
+	}
+
+	CellType getType () { return fType; }
+	boolean isFormula () { return fFormula != null; }
+	String getFormula () { return fFormula; }
+	double getNumber () { return fNumber; }
+	boolean getBoolean () { return fBool; }
+
+	/**
+	 * Get this value as a java date, for numeric cells
+	 * @return a date or null
+	 */
+	java.util.Date getDate ()
+	{
+		if ( fType != CellType.NUMERIC || !DateUtil.isValidExcelDate ( fNumber ) ) return null;
+		return DateUtil.getJavaDate ( fNumber );
+	}
+
+	/**
+	 * Get this value as text, formatted the way Excel would display it
+	 * @param df
+	 * @return text
+	 */
+	String getText ( DataFormatter df )
+	{
+		switch ( fType )
+		{
+			case NUMERIC:
+				if ( fFormatString != null )
+				{
+					return df.formatRawCellContents ( fNumber, fFormatIndex, fFormatString );
+				}
+				return df.formatRawCellContents ( fNumber, 0, "General" );
+			case BOOLEAN:
+				return fBool ? "TRUE" : "FALSE";
+			default:
+				return fText;
+		}
+	}
+
+	private ExcelCell ( CellType type, double num, String text, boolean bool, int formatIndex, String formatString, String formula )
+	{
+		fType = type;
+		fNumber = num;
+		fText = text;
+		fBool = bool;
+		fFormatIndex = formatIndex;
+		fFormatString = formatString;
+		fFormula = formula;
+	}
+
+	private final CellType fType;
+	private final double fNumber;
+	private final String fText;
+	private final boolean fBool;
+	private final int fFormatIndex;
+	private final String fFormatString;
+	private final String fFormula;
+}
@@ -16,12 +16,20 @@
 
 package io.continual.services.processor.library.msdocs.sources;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DataFormatter;
@@ -30,6 +38,7 @@ import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -46,7 +55,12 @@ import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ObjectVisitor;
 
 /**
- * An excel spreadsheet stream source. This source will report EOF when all records are read.
+ * An excel spreadsheet stream source. This source will report EOF when all records are read.<br>
+ * <br>
+ * XLSX workbooks are streamed a row at a time, so memory use doesn't grow with the size of the workbook.
+ * A background thread parses rows into a bounded read-ahead queue ("readAheadRows"). By default, only
+ * the first sheet is read; set "sheets" to a sheet name or index, an array of them, or "*" for all sheets.
+ * When "firstLineHeader" is set, each sheet's first row is its header.
  */
 public class ExcelSource extends BasicSource
 {
@@ -62,7 +76,10 @@ public class ExcelSource extends BasicSource
 		{
 			fResource = resource;
 			fLineNumberToField = null;
+			fSheetNameToField = null;
 			fFirstLineHeader = firstLineHeader;
+			fSheets = ( index, name ) -> index == 0;
+			fReadAheadRows = kDefaultReadAheadRows;
 
 			fFieldMap = new HashMap<> ();
 		}
@@ -79,7 +96,10 @@ public class ExcelSource extends BasicSource
 		{
 			fResource = config.optString ( "data", "" );
 			fLineNumberToField = config.optString ( "lineNumberTo", null );
+			fSheetNameToField = config.optString ( "sheetNameTo", null );
 			fFirstLineHeader = config.optBoolean ( "firstLineHeader", false );
+			fSheets = readSheetSelector ( config.opt ( "sheets" ) );
+			fReadAheadRows = Math.max ( 1, config.optInt ( "readAheadRows", kDefaultReadAheadRows ) );
 
 			fFieldMap = new HashMap<> ();
 			JsonVisitor.forEachElement ( config.optJSONObject ( "fieldMap" ), new ObjectVisitor<Object,JSONException> ()
@@ -108,9 +128,7 @@ public class ExcelSource extends BasicSource
 	@Override
 	public void close () throws IOException
 	{
-		if ( fWorkbook != null ) fWorkbook.close ();
-		fWorkbook = null;
-
+		finish ();
 		fInited = true;	// not really, but we want isEof() 
 
 		super.close ();
@@ -119,7 +137,7 @@ public class ExcelSource extends BasicSource
 	@Override
 	public boolean isEof ()
 	{
-		return fInited && fWorkbook == null;
+		return fInited && fDone;
 	}
 
 	public void setResource ( InputStream data )
@@ -136,26 +154,58 @@ public class ExcelSource extends BasicSource
 		// maybe it was closed?
 		if ( isEof() ) return null;
 
-		// get the next record
-		if ( fIterator.hasNext () )
+		// take rows from the read-ahead queue until we have a data row or the queue is empty
+		ReadEvent e;
+		while ( ( e = fQueue.poll () ) != null )
 		{
-			fLineNumber++;
-			return buildMessage ( fIterator.next () );
+			switch ( e.fKind )
+			{
+				case SHEET:
+					checkHeaderFound ( spc );
+					fSheetName = e.fSheetName;
+					fHeaderValues = null;
+					fRowWidth = -1;
+					fAwaitingHeader = fFirstLineHeader;
+					break;
+
+				case ROW:
+					if ( fAwaitingHeader )
+					{
+						readHeader ( e.fCells );
+						fAwaitingHeader = false;
+						break;
+					}
+					fLineNumber++;
+					return buildMessage ( e.fCells );
+
+				case FAILED:
+					finish ();
+					throw new IOException ( "Couldn't read spreadsheet: " + e.fFailure.getMessage (), e.fFailure );
+
+				case END:
+				default:
+					// out of records, mark EOF
+					checkHeaderFound ( spc );
+					finish ();
+					log.info ( "ExcelSource sent " + fLineNumber + " records." );
+					return null;
+			}
 		}
 
-		// out of records, close the worksheet as an EOF signal
-		fWorkbook.close ();
-		fWorkbook = null;
-		log.info ( "ExcelSource sent " + fLineNumber + " records." );
-
 		return null;
 	}
 
 	private final String fResource;
 	private final boolean fFirstLineHeader;
 	private final String fLineNumberToField;
+	private final String fSheetNameToField;
+	private final XlsxStreamingReader.SheetSelector fSheets;
+	private final int fReadAheadRows;
 	private final HashMap<String,FieldInfo> fFieldMap;
 
+	private static final int kDefaultReadAheadRows = 1000;
+	private static final long kDeliverRecheckMs = 100L;
+
 	private enum Subtype
 	{
 		NONE,
@@ -202,14 +252,74 @@ public class ExcelSource extends BasicSource
 	}
 	
 	private boolean fInited = false;
+	private volatile boolean fDone = false;
 	private ArrayList<String> fHeaderValues = null;
+	private boolean fAwaitingHeader = false;
+	private String fSheetName = null;
 	private InputStream fStream = null;
 	private int fLineNumber = 0;
 	private int fRowWidth = -1;
 
-	private Workbook fWorkbook;
-	private Sheet fSheet;
-	private Iterator<Row> fIterator = null;
+	private BlockingQueue<ReadEvent> fQueue;
+	private Thread fReader;
+	private final DataFormatter fFormatter = new DataFormatter ();
+
+	private enum EventKind
+	{
+		SHEET,
+		ROW,
+		END,
+		FAILED
+	}
+
+	private static class ReadEvent
+	{
+		static ReadEvent sheet ( String name ) { return new ReadEvent ( EventKind.SHEET, name, null, null ); }
+		static ReadEvent row ( List<ExcelCell> cells ) { return new ReadEvent ( EventKind.ROW, null, cells, null ); }
+		static ReadEvent end () { return new ReadEvent ( EventKind.END, null, null, null ); }
+		static ReadEvent failed ( Exception x ) { return new ReadEvent ( EventKind.FAILED, null, null, x ); }
+
+		private ReadEvent ( EventKind kind, String sheetName, List<ExcelCell> cells, Exception failure )
+		{
+			fKind = kind;
+			fSheetName = sheetName;
+			fCells = cells;
+			fFailure = failure;
+		}
+
+		final EventKind fKind;
+		final String fSheetName;
+		final List<ExcelCell> fCells;
+		final Exception fFailure;
+	}
+
+	private static XlsxStreamingReader.SheetSelector readSheetSelector ( Object sheets ) throws BuildFailure
+	{
+		if ( sheets == null ) return ( index, name ) -> index == 0;
+		if ( "*".equals ( sheets ) ) return ( index, name ) -> true;
+		if ( sheets instanceof String ) return ( index, name ) -> sheets.equals ( name );
+		if ( sheets instanceof Integer ) return ( index, name ) -> index == (Integer) sheets;
+		if ( sheets instanceof JSONArray )
+		{
+			final HashSet<Integer> indexes = new HashSet<> ();
+			final HashSet<String> names = new HashSet<> ();
+			final JSONArray a = (JSONArray) sheets;
+			for ( int i=0; i<a.length (); i++ )
+			{
+				final Object o = a.get ( i );
+				if ( o instanceof Integer )
+				{
+					indexes.add ( (Integer) o );
+				}
+				else
+				{
+					names.add ( o.toString () );
+				}
+			}
+			return ( index, name ) -> indexes.contains ( index ) || names.contains ( name );
+		}
+		throw new BuildFailure ( "The sheets setting must be \"*\", a sheet name or index, or an array of them." );
+	}
 
 	private void init ( StreamProcessingContext spc ) throws IOException
 	{
@@ -217,60 +327,205 @@ public class ExcelSource extends BasicSource
 		{
 			fInited = true;
 
-			// locate the stream
-			if ( fStream == null )
+			// locate the data. A local file is read in place, anything else is copied to a temp file
+			// because the XLSX format is a zip archive that we read by random access.
+			File file = null;
+			InputStream stream = fStream;
+			if ( stream == null )
 			{
 				final String name = spc.evalExpression ( fResource );
-				fStream = ResourceLoader.load ( name );
-				if ( fStream == null )
+				final File f = new File ( name );
+				if ( f.isFile () )
 				{
-					throw new IOException ( "Unable to load resource: " + name + " (" + fResource + ")" );
+					file = f;
+				}
+				else
+				{
+					stream = ResourceLoader.load ( name );
+					if ( stream == null )
+					{
+						throw new IOException ( "Unable to load resource: " + name + " (" + fResource + ")" );
+					}
 				}
 			}
 
-			// open the spreadsheet
-			fWorkbook = WorkbookFactory.create ( fStream );
-			fSheet = fWorkbook.getSheetAt ( 0 );
-			fIterator = fSheet.iterator ();
+			// read on a background thread, at most fReadAheadRows ahead of the pipeline
+			fQueue = new ArrayBlockingQueue<> ( fReadAheadRows );
+			final File localFile = file;
+			final InputStream localStream = stream;
+			fReader = new Thread ( () -> runReader ( localFile, localStream ), "ExcelSource reader" );
+			fReader.setDaemon ( true );
+			fReader.start ();
+		}
+	}
 
-			if ( fFirstLineHeader )
+	private void finish ()
+	{
+		fDone = true;
+		if ( fReader != null )
+		{
+			fReader.interrupt ();
+			fReader = null;
+		}
+		if ( fQueue != null ) fQueue.clear ();
+	}
+
+	private void runReader ( File file, InputStream stream )
+	{
+		File tmp = null;
+		ReadEvent terminal = null;
+		boolean closed = false;
+		try
+		{
+			if ( file == null )
 			{
-				// read the first line as a header list
-				fHeaderValues = new ArrayList<> ();
-				if ( !fIterator.hasNext () )
+				tmp = File.createTempFile ( "continualExcelSource-", ".tmp" );
+				try ( InputStream is = stream )
 				{
-					// no first line, so no headers.
-					spc.warn ( "Excel source configured to use header line, but no rows are available." );
-
-					// FIXME: need to decide how to flag this and handle it in data read below
+					Files.copy ( is, tmp.toPath (), StandardCopyOption.REPLACE_EXISTING );
 				}
-				else
+				file = tmp;
+			}
+
+			if ( FileMagic.valueOf ( file ) == FileMagic.OOXML )
+			{
+				XlsxStreamingReader.read ( file, fSheets, new XlsxStreamingReader.RowHandler ()
 				{
-					final Row firstRow = fIterator.next ();
-					fRowWidth = firstRow.getLastCellNum ();
-					for ( int i=0; i<fRowWidth; i++ )
+					@Override
+					public void startSheet ( String name ) throws InterruptedException
+					{
+						fQueue.put ( ReadEvent.sheet ( name ) );
+					}
+
+					@Override
+					public void row ( List<ExcelCell> cells ) throws InterruptedException
 					{
-						final Cell c = firstRow.getCell ( i, MissingCellPolicy.RETURN_BLANK_AS_NULL );
-						if ( c == null )
-						{
-							fHeaderValues.add ( "col_" + i );
-						}
-						else
-						{
-							fHeaderValues.add ( c.getStringCellValue () );
-						}
+						fQueue.put ( ReadEvent.row ( cells ) );
 					}
+				} );
+			}
+			else
+			{
+				readWithUserModel ( file );
+			}
+			terminal = ReadEvent.end ();
+		}
+		catch ( InterruptedException e )
+		{
+			// closed by the consumer
+			closed = true;
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			log.warn ( "ExcelSource couldn't read spreadsheet: " + e.getMessage () );
+			terminal = ReadEvent.failed ( e );
+		}
+		finally
+		{
+			if ( tmp != null && !tmp.delete () )
+			{
+				log.warn ( "Couldn't remove temp file " + tmp );
+			}
+
+			// the consumer waits for an end or failure event, so one is always delivered unless the source was closed
+			if ( terminal == null && !closed )
+			{
+				terminal = ReadEvent.failed ( new IOException ( "The spreadsheet reader stopped unexpectedly." ) );
+			}
+			if ( terminal != null ) deliverTerminal ( terminal );
+		}
+	}
+
+	/**
+	 * Wait for room in the read-ahead queue for the final event, giving up if the source is closed.
+	 * @param e
+	 */
+	private void deliverTerminal ( ReadEvent e )
+	{
+		try
+		{
+			while ( !fDone && !fQueue.offer ( e, kDeliverRecheckMs, TimeUnit.MILLISECONDS ) )
+			{
+				// still full; check again
+			}
+		}
+		catch ( InterruptedException x )
+		{
+			// closed by the consumer
+		}
+	}
+
+	/**
+	 * Older binary (.xls) workbooks aren't zip archives, so they're read through the POI user model.
+	 * @param file
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private void readWithUserModel ( File file ) throws IOException, InterruptedException
+	{
+		try ( Workbook wb = WorkbookFactory.create ( file, null, true ) )
+		{
+			for ( int i=0; i<wb.getNumberOfSheets (); i++ )
+			{
+				final Sheet sheet = wb.getSheetAt ( i );
+				if ( !fSheets.includes ( i, sheet.getSheetName () ) ) continue;
+
+				fQueue.put ( ReadEvent.sheet ( sheet.getSheetName () ) );
+				for ( Row row : sheet )
+				{
+					final ArrayList<ExcelCell> cells = new ArrayList<> ();
+					for ( int c=0; c<row.getLastCellNum (); c++ )
+					{
+						final Cell cell = row.getCell ( c, MissingCellPolicy.RETURN_BLANK_AS_NULL );
+						cells.add ( cell == null ? null : ExcelCell.fromCell ( cell ) );
+					}
+					fQueue.put ( ReadEvent.row ( cells ) );
 				}
 			}
 		}
 	}
 
-	private void cellToValue ( JSONObject target, String fieldName, Cell cell, CellType asType, Subtype subtype )
+	private void readHeader ( List<ExcelCell> firstRow )
+	{
+		fHeaderValues = new ArrayList<> ();
+		fRowWidth = firstRow.size ();
+		for ( int i=0; i<fRowWidth; i++ )
+		{
+			final ExcelCell c = firstRow.get ( i );
+			if ( c == null )
+			{
+				fHeaderValues.add ( "col_" + i );
+			}
+			else
+			{
+				fHeaderValues.add ( c.getText ( fFormatter ) );
+			}
+		}
+	}
+
+	private void checkHeaderFound ( StreamProcessingContext spc )
+	{
+		if ( fAwaitingHeader )
+		{
+			// no first line, so no headers.
+			spc.warn ( "Excel source configured to use header line, but no rows are available in sheet " + fSheetName + "." );
+			fAwaitingHeader = false;
+		}
+	}
+
+	private void cellToValue ( JSONObject target, String fieldName, ExcelCell cell, CellType asType, Subtype subtype )
 	{
 		switch ( asType )
 		{
 			case BOOLEAN:
-				target.put ( fieldName, cell.getBooleanCellValue () );
+				if ( cell.getType () == CellType.BOOLEAN )
+				{
+					target.put ( fieldName, cell.getBoolean () );
+				}
+				else
+				{
+					target.put ( fieldName, Boolean.parseBoolean ( cell.getText ( fFormatter ) ) );
+				}
 				break;
 
 			case ERROR:
@@ -278,40 +533,34 @@ public class ExcelSource extends BasicSource
 				break;
 
 			case FORMULA:
-				target.put ( fieldName, cell.getCellFormula () );
+				target.put ( fieldName, cell.getFormula () );
 				break;
 
 			case NUMERIC:
-				if ( subtype == Subtype.DATE )
+				if ( cell.getType () != CellType.NUMERIC )
 				{
-					final java.util.Date d = cell.getDateCellValue ();
+					target.put ( fieldName, cell.getText ( fFormatter ) );
+				}
+				else if ( subtype == Subtype.DATE )
+				{
+					final java.util.Date d = cell.getDate ();
 					target.put ( fieldName, d == null ? null : d.getTime () );
 				}
 				else
 				{
-					target.put ( fieldName, cell.getNumericCellValue () );
+					target.put ( fieldName, cell.getNumber () );
 				}
 				break;
 
 			case BLANK:
 			case STRING:
 			default:
-				String val;
-				if ( cell.getCellType () != asType )
-				{
-					final DataFormatter df = new DataFormatter ();
-					val = df.formatCellValue ( cell );
-				}
-				else
-				{
-					val = cell.getStringCellValue ();
-				}
-				target.put ( fieldName, val );
+				target.put ( fieldName, cell.getText ( fFormatter ) );
 				break;
 		}
 	}
 
-	private void cellToValue ( JSONObject target, String fieldName, Cell cell, FieldInfo fi )
+	private void cellToValue ( JSONObject target, String fieldName, ExcelCell cell, FieldInfo fi )
 	{
 		if ( cell == null )
 		{
@@ -322,7 +571,7 @@ public class ExcelSource extends BasicSource
 		CellType type = fi == null ? null : fi.getCellType ();
 		if ( type == null )
 		{
-			type = cell.getCellType ();
+			type = cell.getType ();
 		}
 
 		Subtype st = fi == null ? Subtype.NONE : fi.getCellSubtype ();
@@ -342,7 +591,8 @@ public class ExcelSource extends BasicSource
 				break;
 
 			case FORMULA:
-				cellToValue ( target, fieldName, cell, cell.getCachedFormulaResultType (), st );
+				// cells carry their formula's cached result
+				cellToValue ( target, fieldName, cell, cell.getType (), st );
 				break;
 
 			case _NONE:
@@ -352,11 +602,11 @@ public class ExcelSource extends BasicSource
 		}
 	}
 
-	private MessageAndRouting buildMessage ( Row currentRow )
+	private MessageAndRouting buildMessage ( List<ExcelCell> currentRow )
 	{
 		final JSONObject data = new JSONObject ();
 
-		final int rowWidth = fRowWidth > -1 ? fRowWidth : currentRow.getLastCellNum ();
+		final int rowWidth = fRowWidth > -1 ? fRowWidth : currentRow.size ();
 		for ( int colNo = 0; colNo < rowWidth; colNo++ )
 		{
 			// get the column name
@@ -373,7 +623,7 @@ public class ExcelSource extends BasicSource
 				}
 			}
 
-			final Cell cell = currentRow.getCell ( colNo, MissingCellPolicy.RETURN_BLANK_AS_NULL );
+			final ExcelCell cell = colNo < currentRow.size () ? currentRow.get ( colNo ) : null;
 			cellToValue ( data, useName, cell, fi );
 		}
 
@@ -383,6 +633,12 @@ public class ExcelSource extends BasicSource
 			data.put ( fLineNumberToField, fLineNumber );
 		}
 
+		// include the sheet name if requested
+		if ( fSheetNameToField != null )
+		{
+			data.put ( fSheetNameToField, fSheetName );
+		}
+
 		return makeDefRoutingMessage ( Message.adoptJsonAsMessage ( data ) );
 	}
 
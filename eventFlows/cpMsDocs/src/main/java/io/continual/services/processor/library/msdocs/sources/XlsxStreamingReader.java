@@ -0,0 +1,345 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.processor.library.msdocs.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads an XLSX workbook one row at a time with a SAX parser over each sheet's XML. Only the shared
+ * strings table and styles are held in memory; rows are handed to the caller as they're parsed.
+ */
+class XlsxStreamingReader
+{
+	interface SheetSelector
+	{
+		/**
+		 * Should the given sheet be read?
+		 * @param index the sheet's 0-based position in the workbook
+		 * @param name the sheet's name
+		 * @return true to read the sheet
+		 */
+		boolean includes ( int index, String name );
+	}
+
+	interface RowHandler
+	{
+		/**
+		 * Called before the rows of each selected sheet
+		 * @param name
+		 * @throws InterruptedException
+		 */
+		void startSheet ( String name ) throws InterruptedException;
+
+		/**
+		 * Called for each row present in the sheet
+		 * @param cells the row's cells by column, with null for blank cells
+		 * @throws InterruptedException
+		 */
+		void row ( List<ExcelCell> cells ) throws InterruptedException;
+	}
+
+	/**
+	 * Read the selected sheets of the given workbook file
+	 * @param f
+	 * @param sheets
+	 * @param handler
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static void read ( File f, SheetSelector sheets, RowHandler handler ) throws IOException, InterruptedException
+	{
+		final OPCPackage pkg;
+		try
+		{
+			pkg = OPCPackage.open ( f, PackageAccess.READ );
+		}
+		catch ( InvalidFormatException e )
+		{
+			throw new IOException ( e );
+		}
+
+		try
+		{
+			final XSSFReader reader = new XSSFReader ( pkg );
+			final ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable ( pkg );
+			final StylesTable styles = reader.getStylesTable ();
+
+			final XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData ();
+			int index = 0;
+			while ( it.hasNext () )
+			{
+				try ( InputStream sheetData = it.next () )
+				{
+					final String name = it.getSheetName ();
+					if ( sheets.includes ( index++, name ) )
+					{
+						handler.startSheet ( name );
+
+						final XMLReader parser = XMLHelper.newXMLReader ();
+						parser.setContentHandler ( new SheetHandler ( strings, styles, handler ) );
+						parser.parse ( new InputSource ( sheetData ) );
+					}
+				}
+			}
+		}
+		catch ( SAXException e )
+		{
+			if ( e.getException () instanceof InterruptedException ) throw (InterruptedException) e.getException ();
+			throw new IOException ( e );
+		}
+		catch ( OpenXML4JException | ParserConfigurationException e )
+		{
+			throw new IOException ( e );
+		}
+		finally
+		{
+			pkg.revert ();
+		}
+	}
+
+	private static class SheetHandler extends DefaultHandler
+	{
+		public SheetHandler ( ReadOnlySharedStringsTable strings, StylesTable styles, RowHandler handler )
+		{
+			fStrings = strings;
+			fStyles = styles;
+			fHandler = handler;
+			fFormats = new HashMap<> ();
+			fValue = new StringBuilder ();
+			fFormula = new StringBuilder ();
+		}
+
+		@Override
+		public void startElement ( String uri, String localName, String qName, Attributes attrs )
+		{
+			switch ( localName )
+			{
+				case "row":
+					fCells = new ArrayList<> ();
+					fNextCol = 0;
+					break;
+
+				case "c":
+				{
+					final String ref = attrs.getValue ( "r" );
+					fCol = ref == null ? fNextCol : new CellReference ( ref ).getCol ();
+					fCellType = attrs.getValue ( "t" );
+					fStyle = attrs.getValue ( "s" );
+					fValue.setLength ( 0 );
+					fFormula.setLength ( 0 );
+					fHasFormula = false;
+				}
+				break;
+
+				case "v":
+					fCapture = fValue;
+					break;
+
+				case "t":
+					// inline string text, possibly in several rich text runs
+					if ( "inlineStr".equals ( fCellType ) ) fCapture = fValue;
+					break;
+
+				case "f":
+					fHasFormula = true;
+					fCapture = fFormula;
+					break;
+
+				default:
+					break;
+			}
+		}
+
+		@Override
+		public void endElement ( String uri, String localName, String qName ) throws SAXException
+		{
+			switch ( localName )
+			{
+				case "v":
+				case "t":
+				case "f":
+					fCapture = null;
+					break;
+
+				case "c":
+				{
+					while ( fCells.size () < fCol ) fCells.add ( null );
+					fCells.add ( buildCell () );
+					fNextCol = fCol + 1;
+				}
+				break;
+
+				case "row":
+				{
+					try
+					{
+						fHandler.row ( fCells );
+					}
+					catch ( InterruptedException e )
+					{
+						throw new SAXException ( e );
+					}
+					fCells = null;
+				}
+				break;
+
+				default:
+					break;
+			}
+		}
+
+		@Override
+		public void characters ( char[] ch, int start, int length )
+		{
+			if ( fCapture != null ) fCapture.append ( ch, start, length );
+		}
+
+		private static final int kDefaultDateFormat = 14;		// m/d/yy
+		private static final int kDefaultDateTimeFormat = 22;	// m/d/yy h:mm
+
+		private final ReadOnlySharedStringsTable fStrings;
+		private final StylesTable fStyles;
+		private final RowHandler fHandler;
+		private final HashMap<String,XSSFCellStyle> fFormats;
+
+		private ArrayList<ExcelCell> fCells;
+		private int fNextCol;
+		private int fCol;
+		private String fCellType;
+		private String fStyle;
+		private boolean fHasFormula;
+		private final StringBuilder fValue;
+		private final StringBuilder fFormula;
+		private StringBuilder fCapture;
+
+		private ExcelCell buildCell ()
+		{
+			final String formula = fHasFormula ? fFormula.toString () : null;
+			final String val = fValue.toString ();
+			final String type = fCellType == null ? "n" : fCellType;
+
+			switch ( type )
+			{
+				case "s":
+					if ( val.length () == 0 ) return null;
+					return ExcelCell.string ( fStrings.getItemAt ( Integer.parseInt ( val ) ).getString (), formula );
+
+				case "inlineStr":
+				case "str":
+					return ExcelCell.string ( val, formula );
+
+				case "d":
+				{
+					// an ISO 8601 date is stored as the date serial number a numeric date cell would hold
+					final Date d = parseIsoDate ( val );
+					if ( d == null ) return ExcelCell.string ( val, formula );
+
+					final double serial = DateUtil.getExcelDate ( d );
+					final XSSFCellStyle style = getStyle ();
+					if ( style != null && DateUtil.isADateFormat ( style.getDataFormat (), style.getDataFormatString () ) )
+					{
+						return ExcelCell.numeric ( serial, style.getDataFormat (), style.getDataFormatString (), formula );
+					}
+					final int fmt = serial == Math.floor ( serial ) ? kDefaultDateFormat : kDefaultDateTimeFormat;
+					return ExcelCell.numeric ( serial, fmt, BuiltinFormats.getBuiltinFormat ( fmt ), formula );
+				}
+
+				case "b":
+					return ExcelCell.bool ( "1".equals ( val ), formula );
+
+				case "e":
+					return ExcelCell.error ( val, formula );
+
+				case "n":
+				default:
+				{
+					if ( val.length () == 0 ) return null;
+
+					final XSSFCellStyle style = getStyle ();
+					return ExcelCell.numeric (
+						Double.parseDouble ( val ),
+						style == null ? 0 : style.getDataFormat (),
+						style == null ? null : style.getDataFormatString (),
+						formula
+					);
+				}
+			}
+		}
+
+		private static Date parseIsoDate ( String val )
+		{
+			try
+			{
+				if ( val.indexOf ( 'T' ) < 0 )
+				{
+					return Date.from ( LocalDate.parse ( val ).atStartOfDay ( ZoneId.systemDefault () ).toInstant () );
+				}
+				try
+				{
+					return Date.from ( LocalDateTime.parse ( val ).atZone ( ZoneId.systemDefault () ).toInstant () );
+				}
+				catch ( DateTimeParseException e )
+				{
+					return Date.from ( OffsetDateTime.parse ( val ).toInstant () );
+				}
+			}
+			catch ( DateTimeParseException e )
+			{
+				return null;
+			}
+		}
+
+		private XSSFCellStyle getStyle ()
+		{
+			if ( fStyles == null ) return null;
+
+			final String styleKey = fStyle == null ? "0" : fStyle;
+			return fFormats.computeIfAbsent ( styleKey, k -> fStyles.getNumCellStyles () > 0 ? fStyles.getStyleAt ( Integer.parseInt ( k ) ) : null );
+		}
+	}
+}
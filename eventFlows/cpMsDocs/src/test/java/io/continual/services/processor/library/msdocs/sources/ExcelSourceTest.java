@@ -0,0 +1,151 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.processor.library.msdocs.sources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.processor.engine.library.util.SimpleStreamProcessingContext;
+import io.continual.services.processor.engine.model.MessageAndRouting;
+import io.continual.services.processor.engine.model.StreamProcessingContext;
+import junit.framework.TestCase;
+
+public class ExcelSourceTest extends TestCase
+{
+	@Test
+	public void testSharedAndInlineStrings () throws BuildFailure, IOException, InterruptedException
+	{
+		final List<JSONObject> rows = readAll ( new JSONObject () );
+		assertEquals ( 3, rows.size () );
+
+		assertEquals ( "alpha", rows.get ( 0 ).getString ( "name" ) );
+		assertEquals ( "beta", rows.get ( 1 ).getString ( "name" ) );
+		assertEquals ( "gamma", rows.get ( 2 ).getString ( "name" ) );
+		assertEquals ( 3.0, rows.get ( 0 ).getDouble ( "count" ) );
+		assertEquals ( "", rows.get ( 2 ).getString ( "count" ) );
+	}
+
+	@Test
+	public void testIsoDatesMatchNumericDates () throws BuildFailure, IOException, InterruptedException
+	{
+		// without a field map, both kinds of date cell are date serial numbers
+		final List<JSONObject> raw = readAll ( new JSONObject () );
+		assertEquals ( 45000.0, raw.get ( 0 ).getDouble ( "when" ) );
+		assertEquals ( 45000.0, raw.get ( 1 ).getDouble ( "when" ) );
+		assertEquals ( 45000.5, raw.get ( 2 ).getDouble ( "when" ) );
+
+		// and they convert to the same time
+		final List<JSONObject> rows = readAll ( new JSONObject ()
+			.put ( "fieldMap", new JSONObject ()
+				.put ( "when", new JSONObject ().put ( "type", "numeric" ).put ( "subtype", "date" ) )
+			)
+		);
+		final long numericDate = rows.get ( 0 ).getLong ( "when" );
+		assertEquals ( numericDate, rows.get ( 1 ).getLong ( "when" ) );
+		assertEquals ( numericDate + TimeUnit.HOURS.toMillis ( 12 ), rows.get ( 2 ).getLong ( "when" ) );
+	}
+
+	@Test
+	public void testTruncatedFileFails () throws BuildFailure, IOException, InterruptedException
+	{
+		final byte[] full = readFixture ();
+		for ( int len : new int[] { 0, 100, full.length / 2 } )
+		{
+			final ExcelSource src = makeSource ( new JSONObject ().put ( "readAheadRows", 1 ) );
+			src.setResource ( new ByteArrayInputStream ( Arrays.copyOf ( full, len ) ) );
+			try
+			{
+				readAll ( src );
+				fail ( "A workbook truncated to " + len + " bytes was read without error." );
+			}
+			catch ( IOException e )
+			{
+				// expected
+			}
+			finally
+			{
+				src.close ();
+			}
+		}
+	}
+
+	private static final String kFixture = "io/continual/services/processor/library/msdocs/sources/mixedCells.xlsx";
+
+	private static ExcelSource makeSource ( JSONObject config ) throws BuildFailure
+	{
+		return new ExcelSource ( null, config
+			.put ( "pipeline", "default" )
+			.put ( "data", kFixture )
+			.put ( "firstLineHeader", true )
+		);
+	}
+
+	private static List<JSONObject> readAll ( JSONObject config ) throws BuildFailure, IOException, InterruptedException
+	{
+		try ( ExcelSource src = makeSource ( config ) )
+		{
+			return readAll ( src );
+		}
+	}
+
+	private static List<JSONObject> readAll ( ExcelSource src ) throws IOException, InterruptedException
+	{
+		final StreamProcessingContext spc = SimpleStreamProcessingContext.builder ()
+			.withSource ( src )
+			.build ()
+		;
+
+		final ArrayList<JSONObject> result = new ArrayList<> ();
+		final long endByMs = System.currentTimeMillis () + 10000L;
+		while ( !src.isEof () )
+		{
+			assertTrue ( "The source didn't finish in time.", System.currentTimeMillis () < endByMs );
+
+			final MessageAndRouting mr = src.getNextMessage ( spc, 100, TimeUnit.MILLISECONDS );
+			if ( mr != null )
+			{
+				result.add ( mr.getMessage ().toJson () );
+			}
+		}
+		return result;
+	}
+
+	private static byte[] readFixture () throws IOException
+	{
+		try ( InputStream is = ExcelSourceTest.class.getClassLoader ().getResourceAsStream ( kFixture ) )
+		{
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+			final byte[] buffer = new byte[4096];
+			int len;
+			while ( ( len = is.read ( buffer ) ) != -1 )
+			{
+				baos.write ( buffer, 0, len );
+			}
+			return baos.toByteArray ();
+		}
+	}
+}
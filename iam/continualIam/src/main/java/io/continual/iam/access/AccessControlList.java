@@ -124,10 +124,7 @@ public class AccessControlList
 	public AccessControlList setOwner ( String userOrGroupId )
 	{
 		fOwner = userOrGroupId;
-		if ( fListener != null )
-		{
-			fListener.onAclUpdate ( this );
-		}
+		changed ();
 		return this;
 	}
 
@@ -195,9 +192,9 @@ public class AccessControlList
 		}
 
 		// updates
-		if ( changed && fListener != null )
+		if ( changed )
 		{
-			fListener.onAclUpdate ( this );
+			changed ();
 		}
 
 		return this;
@@ -210,10 +207,7 @@ public class AccessControlList
 	public AccessControlList clear ()
 	{
 		fEntries.clear ();
-		if ( fListener != null )
-		{
-			fListener.onAclUpdate ( this );
-		}
+		changed ();
 		return this;
 	}
 
@@ -262,17 +256,7 @@ public class AccessControlList
 	public boolean canUser ( String userId, Set<String> groups, String op )
 	{
 		final boolean isOwner = userId != null && userId.equals ( getOwner() );
-
-		for ( AccessControlEntry e : getEntries() )
-		{
-			final AccessControlEntry.Access p = e.check ( userId, groups, isOwner, op );
-			if ( p != null )
-			{
-				if ( p.equals ( AccessControlEntry.Access.DENY ) ) return false;
-				if ( p.equals ( AccessControlEntry.Access.PERMIT ) ) return true;
-			}
-		}
-		return false;
+		return getCompiled ().canUser ( userId, groups, isOwner, op );
 	}
 
 	/**
@@ -286,10 +270,7 @@ public class AccessControlList
 		if ( !fEntries.contains ( acle ) )
 		{
 			fEntries.add ( acle );
-			if ( fListener != null )
-			{
-				fListener.onAclUpdate ( this );
-			}
+			changed ();
 		}
 		return this;
 	}
@@ -393,6 +374,34 @@ public class AccessControlList
 	private final LinkedList<AccessControlEntry> fEntries;
 	private final AclUpdateListener fListener;
 
+	// the compiled entry list, rebuilt on the first check after a change
+	private volatile int fVersion = 0;
+	private volatile CompiledAcl fCompiled = null;
+
+	/**
+	 * Record a change to the entry list (or owner) and notify the listener if present
+	 */
+	private void changed ()
+	{
+		fVersion++;
+		if ( fListener != null )
+		{
+			fListener.onAclUpdate ( this );
+		}
+	}
+
+	private CompiledAcl getCompiled ()
+	{
+		CompiledAcl compiled = fCompiled;
+		final int version = fVersion;
+		if ( compiled == null || compiled.getVersion () != version )
+		{
+			compiled = new CompiledAcl ( getEntries (), version );
+			fCompiled = compiled;
+		}
+		return compiled;
+	}
+
 	private AccessControlList ( Builder b )
 	{
 		fOwner = b.fOwner;
@@ -0,0 +1,159 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.iam.access;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.continual.iam.access.AccessControlEntry.Access;
+
+/**
+ * A compiled, immutable form of an ACL's entry list. Each operation named in the list gets a
+ * slot number (with one more slot for operations the list doesn't name), and each subject
+ * gets a row holding, per slot, the index of the first entry for that subject covering the
+ * operation. A check is then a few map lookups and the smallest of the matching rows' indexes,
+ * which is the same first-match answer a walk of the entry list gives.
+ */
+class CompiledAcl
+{
+	/**
+	 * Compile the given entries
+	 * @param entries the ACL's entries, in order
+	 * @param version the ACL's modification count when the entries were read
+	 */
+	CompiledAcl ( List<AccessControlEntry> entries, int version )
+	{
+		fVersion = version;
+
+		// operations compare case-insensitively, just as AccessControlEntry.check() does
+		fOpSlots = new TreeMap<> ( String.CASE_INSENSITIVE_ORDER );
+		for ( AccessControlEntry e : entries )
+		{
+			for ( String op : e.getOperations () )
+			{
+				if ( !op.equals ( AccessControlEntry.kAnyOperation ) && !fOpSlots.containsKey ( op ) )
+				{
+					fOpSlots.put ( op, fOpSlots.size () );
+				}
+			}
+		}
+		fUnlistedSlot = fOpSlots.size ();
+
+		fPermits = new boolean [ entries.size () ];
+		fRows = new HashMap<> ();
+
+		int i = 0;
+		for ( AccessControlEntry e : entries )
+		{
+			fPermits[i] = e.getPermission () == Access.PERMIT;
+
+			final int[] row = fRows.computeIfAbsent ( e.getSubject (), k -> newRow ( fUnlistedSlot + 1 ) );
+			for ( String op : e.getOperations () )
+			{
+				if ( op.equals ( AccessControlEntry.kAnyOperation ) )
+				{
+					for ( int slot=0; slot<row.length; slot++ )
+					{
+						if ( row[slot] == kNoMatch ) row[slot] = i;
+					}
+				}
+				else
+				{
+					final int slot = fOpSlots.get ( op );
+					if ( row[slot] == kNoMatch ) row[slot] = i;
+				}
+			}
+			i++;
+		}
+
+		fAnyUserRow = fRows.get ( AccessControlEntry.kAnyUser );
+		fOwnerRow = fRows.get ( AccessControlEntry.kOwner );
+	}
+
+	/**
+	 * Get the ACL modification count this compiled form was built from
+	 * @return a version number
+	 */
+	int getVersion ()
+	{
+		return fVersion;
+	}
+
+	/**
+	 * Can the given user ID or group set perform the given operation?
+	 * @param userId a user ID, which may be null
+	 * @param groups a set of 0 or more groups, or null
+	 * @param isOwner true if the user is the ACL's owner
+	 * @param op an operation
+	 * @return true if the first matching entry permits the operation
+	 */
+	boolean canUser ( String userId, Set<String> groups, boolean isOwner, String op )
+	{
+		if ( fPermits.length == 0 ) return false;
+
+		final Integer opSlot = op == null ? null : fOpSlots.get ( op );
+		final int slot = opSlot == null ? fUnlistedSlot : opSlot;
+
+		int first = earliest ( fAnyUserRow, slot, kNoMatch );
+		if ( isOwner )
+		{
+			first = earliest ( fOwnerRow, slot, first );
+		}
+		if ( userId != null )
+		{
+			first = earliest ( fRows.get ( userId ), slot, first );
+		}
+		if ( groups != null && !groups.isEmpty () )
+		{
+			// membership follows the caller's set semantics (e.g. a case-insensitive set), as entries always have
+			for ( Map.Entry<String,int[]> e : fRows.entrySet () )
+			{
+				if ( groups.contains ( e.getKey () ) )
+				{
+					first = earliest ( e.getValue (), slot, first );
+				}
+			}
+		}
+
+		return first != kNoMatch && fPermits[first];
+	}
+
+	private final int fVersion;
+	private final TreeMap<String,Integer> fOpSlots;
+	private final int fUnlistedSlot;
+	private final boolean[] fPermits;
+	private final HashMap<String,int[]> fRows;
+	private final int[] fAnyUserRow;
+	private final int[] fOwnerRow;
+
+	private static final int kNoMatch = Integer.MAX_VALUE;
+
+	private static int[] newRow ( int slots )
+	{
+		final int[] row = new int [ slots ];
+		Arrays.fill ( row, kNoMatch );
+		return row;
+	}
+
+	private static int earliest ( int[] row, int slot, int current )
+	{
+		return row == null ? current : Math.min ( row[slot], current );
+	}
+}
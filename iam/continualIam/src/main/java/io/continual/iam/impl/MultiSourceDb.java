@@ -8,7 +8,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -39,12 +45,25 @@ import io.continual.services.ServiceContainer;
 import io.continual.util.data.exprEval.ExpressionEvaluator;
 import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ArrayVisitor;
-
+import io.continual.util.time.Clock;
+
+/**
+ * An IAM database that layers a list of databases, earlier databases taking priority over later ones.
+ * Lookups return the first database's answer that's found, in list order.<br>
+ * <br>
+ * By default, the databases are asked in turn. With parallel lookups enabled, all databases are asked
+ * at once, the highest priority answer is used, and the remaining lookups are cancelled. A negative
+ * cache can also be enabled to remember, for a short time, that a given database doesn't have a
+ * user, group, API key, or ACL, so that it's skipped by subsequent lookups.
+ */
 public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<I,G>
 {
 	public MultiSourceDb () 
 	{
 		fDbs = new ArrayList<> ();
+		fMisses = new ArrayList<> ();
+		fExecutor = null;
+		fNegativeCacheMs = 0L;
 	}
 
 	public MultiSourceDb ( ServiceContainer sc, JSONObject rawConfig ) throws BuildFailure
@@ -74,6 +93,9 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 		{
 			throw new BuildFailure ( x );
 		}
+
+		withParallelLookups ( config.optInt ( "parallelLookups", 0 ) );
+		withNegativeCache ( config.optLong ( "negativeCacheMs", 0L ) );
 	}
 
 	/**
@@ -81,30 +103,72 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	 * @param db
 	 * @return this database
 	 */
-	public MultiSourceDb<I,G> addDatabase ( IamDb<I,G> db )
+	public synchronized MultiSourceDb<I,G> addDatabase ( IamDb<I,G> db )
 	{
 		fDbs.add ( db );
+		fMisses.add ( new ConcurrentHashMap<> () );
 		return this;
 	}
-	
-	@Override
-	public boolean userExists ( String userId ) throws IamSvcException
+
+	/**
+	 * Ask all databases at once for lookups, using up to the given number of threads.
+	 * @param threads the number of lookup threads, or 0 to ask each database in turn
+	 * @return this database
+	 */
+	public synchronized MultiSourceDb<I,G> withParallelLookups ( int threads )
 	{
-		for ( IamDb<I,G> db : fDbs )
+		if ( fExecutor != null )
 		{
-			if ( db.userExists ( userId ) ) return true;
+			fExecutor.shutdown ();
+			fExecutor = null;
 		}
-		return false;
+		if ( threads > 0 )
+		{
+			final AtomicInteger threadNum = new AtomicInteger ( 0 );
+			fExecutor = Executors.newFixedThreadPool ( threads, r -> {
+				final Thread t = new Thread ( r, "MultiSourceDb lookup " + threadNum.incrementAndGet () );
+				t.setDaemon ( true );
+				return t;
+			} );
+		}
+		return this;
 	}
 
-	@Override
-	public boolean userOrAliasExists ( String userIdOrAlias ) throws IamSvcException
+	/**
+	 * Remember that a database doesn't have a given user, group, API key, or ACL for the
+	 * given length of time.
+	 * @param durationMs the cache duration in milliseconds, or 0 to disable the cache
+	 * @return this database
+	 */
+	public synchronized MultiSourceDb<I,G> withNegativeCache ( long durationMs )
 	{
-		for ( IamDb<I,G> db : fDbs )
+		fNegativeCacheMs = Math.max ( 0L, durationMs );
+		if ( fNegativeCacheMs == 0L )
 		{
-			if ( db.userOrAliasExists ( userIdOrAlias ) ) return true;
+			for ( Map<String,Long> misses : fMisses )
+			{
+				misses.clear ();
+			}
 		}
-		return false;
+		return this;
+	}
+
+	@Override
+	public void close ()
+	{
+		withParallelLookups ( 0 );
+	}
+
+	@Override
+	public boolean userExists ( String userId ) throws IamSvcException
+	{
+		return getDbFor ( userId ) != null;
+	}
+
+	@Override
+	public boolean userOrAliasExists ( String userIdOrAlias ) throws IamSvcException
+	{
+		return null != firstHit ( kAliasMiss + userIdOrAlias, true, db -> db.userOrAliasExists ( userIdOrAlias ) ? Boolean.TRUE : null );
 	}
 
 	@Override
@@ -190,12 +254,7 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	@Override
 	public ApiKey loadApiKeyRecord ( String apiKey ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final ApiKey key = db.loadApiKeyRecord ( apiKey );
-			if ( key != null ) return key;
-		}
-		return null;
+		return firstHit ( kApiKeyMiss + apiKey, true, db -> db.loadApiKeyRecord ( apiKey ) );
 	}
 
 	@Override
@@ -236,34 +295,21 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	@Override
 	public I authenticate ( UsernamePasswordCredential upc ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final I i = db.authenticate ( upc );
-			if ( i != null ) return i;
-		}
-		return null;
+		// a failed authentication may just be a bad password, so it's not cached as a miss, but
+		// databases known not to have the user are skipped
+		return firstHit ( kAliasMiss + upc.getUsername (), false, db -> db.authenticate ( upc ) );
 	}
 
 	@Override
 	public I authenticate ( ApiKeyCredential akc ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final I i = db.authenticate ( akc );
-			if ( i != null ) return i;
-		}
-		return null;
+		return firstHit ( kApiKeyMiss + akc.getApiKey (), false, db -> db.authenticate ( akc ) );
 	}
 
 	@Override
 	public I authenticate ( JwtCredential jwt ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final I i = db.authenticate ( jwt );
-			if ( i != null ) return i;
-		}
-		return null;
+		return firstHit ( null, false, db -> db.authenticate ( jwt ) );
 	}
 
 	@Override
@@ -349,23 +395,13 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	@Override
 	public G loadGroup ( String id ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			G group = db.loadGroup ( id );
-			if ( group != null ) return group;
-		}
-		return null;
+		return firstHit ( kGroupMiss + id, true, db -> db.loadGroup ( id ) );
 	}
 
 	@Override
 	public AccessControlList getAclFor ( Resource resource ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final AccessControlList acl = db.getAclFor ( resource );
-			if ( acl != null ) return acl;
-		}
-		return null;
+		return firstHit ( kAclMiss + resource.getId (), true, db -> db.getAclFor ( resource ) );
 	}
 
 	@Override
@@ -383,12 +419,8 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	@Override
 	public String getUserIdForTag ( String tag ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
-		{
-			final String result = db.getUserIdForTag ( tag );
-			if ( result != null ) return result;
-		}
-		return null;
+		// tags are created just before they're used, so they're not cached as misses
+		return firstHit ( null, false, db -> db.getUserIdForTag ( tag ) );
 	}
 
 	@Override
@@ -427,14 +459,125 @@ public class MultiSourceDb<I extends Identity,G extends Group> implements IamDb<
 	}
 
 	private final ArrayList<IamDb<I,G>> fDbs;
+	private final ArrayList<Map<String,Long>> fMisses;	// per database, miss key to expiry time
+	private volatile ExecutorService fExecutor;
+	private volatile long fNegativeCacheMs;
+
+	private static final String kUserMiss = "u:";
+	private static final String kAliasMiss = "a:";
+	private static final String kGroupMiss = "g:";
+	private static final String kApiKeyMiss = "k:";
+	private static final String kAclMiss = "r:";
+
+	private static final int kMaxMissesPerDb = 10000;
+
 	private static final Logger log = LoggerFactory.getLogger ( MultiSourceDb.class );
 
+	private interface Lookup<I extends Identity,G extends Group,T>
+	{
+		T lookup ( IamDb<I,G> db ) throws IamSvcException;
+	}
+
 	private IamDb<I,G> getDbFor ( String userId ) throws IamSvcException
 	{
-		for ( IamDb<I,G> db : fDbs )
+		return firstHit ( kUserMiss + userId, true, db -> db.userExists ( userId ) ? db : null );
+	}
+
+	/**
+	 * Run a lookup against the databases and return the highest priority non-null result.
+	 * @param missKey the negative cache key for this lookup, or null if the lookup isn't cached
+	 * @param recordMisses if true, a null result is recorded in the negative cache
+	 * @param lookup the lookup
+	 * @return the first result found in database order, or null
+	 * @throws IamSvcException
+	 */
+	private <T> T firstHit ( String missKey, boolean recordMisses, Lookup<I,G,T> lookup ) throws IamSvcException
+	{
+		final ExecutorService executor = fExecutor;
+		if ( executor == null || fDbs.size () < 2 )
 		{
-			if ( db.userExists ( userId ) ) return db;
+			for ( int i=0; i<fDbs.size (); i++ )
+			{
+				if ( isKnownMiss ( i, missKey ) ) continue;
+
+				final T result = lookup.lookup ( fDbs.get ( i ) );
+				if ( result != null ) return result;
+				if ( recordMisses ) recordMiss ( i, missKey );
+			}
+			return null;
 		}
-		return null;
+
+		// start a lookup in each database that may have the item, then take the answers in database order
+		final ArrayList<Future<T>> pending = new ArrayList<> ( fDbs.size () );
+		for ( int i=0; i<fDbs.size (); i++ )
+		{
+			final IamDb<I,G> db = fDbs.get ( i );
+			pending.add ( isKnownMiss ( i, missKey ) ? null : executor.submit ( () -> lookup.lookup ( db ) ) );
+		}
+
+		try
+		{
+			for ( int i=0; i<pending.size (); i++ )
+			{
+				final Future<T> f = pending.get ( i );
+				if ( f == null ) continue;
+
+				final T result = f.get ();
+				if ( result != null ) return result;
+				if ( recordMisses ) recordMiss ( i, missKey );
+			}
+			return null;
+		}
+		catch ( ExecutionException x )
+		{
+			final Throwable cause = x.getCause ();
+			if ( cause instanceof IamSvcException ) throw (IamSvcException) cause;
+			if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+			throw new IamSvcException ( cause );
+		}
+		catch ( InterruptedException x )
+		{
+			Thread.currentThread ().interrupt ();
+			throw new IamSvcException ( x );
+		}
+		finally
+		{
+			// lower priority lookups still running aren't needed
+			for ( Future<T> f : pending )
+			{
+				if ( f != null ) f.cancel ( true );
+			}
+		}
+	}
+
+	private boolean isKnownMiss ( int dbIndex, String missKey )
+	{
+		if ( missKey == null || fNegativeCacheMs == 0L ) return false;
+
+		final Map<String,Long> misses = fMisses.get ( dbIndex );
+		final Long expiresAt = misses.get ( missKey );
+		if ( expiresAt == null ) return false;
+		if ( expiresAt > Clock.now () ) return true;
+
+		misses.remove ( missKey, expiresAt );
+		return false;
+	}
+
+	private void recordMiss ( int dbIndex, String missKey )
+	{
+		final long durationMs = fNegativeCacheMs;
+		if ( missKey == null || durationMs == 0L ) return;
+
+		final Map<String,Long> misses = fMisses.get ( dbIndex );
+		final long now = Clock.now ();
+		if ( misses.size () >= kMaxMissesPerDb )
+		{
+			misses.values ().removeIf ( expiresAt -> expiresAt <= now );
+			if ( misses.size () >= kMaxMissesPerDb )
+			{
+				misses.clear ();
+			}
+		}
+		misses.put ( missKey, now + durationMs );
 	}
 }
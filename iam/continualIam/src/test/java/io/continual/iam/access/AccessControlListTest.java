@@ -69,6 +69,24 @@ public class AccessControlListTest extends TestCase
 		assertTrue ( acl.canUser ( "u1", groups, "op1" ) );
 	}
 
+	@Test
+	public void testGroupMembershipFollowsCallerSet ()
+	{
+		final AccessControlList acl = AccessControlList.builder ()
+			.withEntry ( AccessControlEntry.builder ().forSubject("Admins").permit().operation ( "op1" ).build () )
+			.build ()
+		;
+
+		// the same decision whether the user has fewer or more groups than the ACL has subjects
+		final TreeSet<String> groups = new TreeSet<> ( String.CASE_INSENSITIVE_ORDER );
+		groups.add ( "admins" );
+		assertTrue ( acl.canUser ( "u1", groups, "op1" ) );
+
+		groups.add ( "g1" );
+		groups.add ( "g2" );
+		assertTrue ( acl.canUser ( "u1", groups, "op1" ) );
+	}
+
 	@Test
 	public void testCreateOpenAcl ()
 	{
@@ -250,6 +268,92 @@ public class AccessControlListTest extends TestCase
 		assertNotNull ( AccessControlList.deserialize( (JSONObject)null , null ) );
 	}
 
+	@Test
+	public void testFirstMatchAcrossManyGroups ()
+	{
+		final AccessControlList acl = new AccessControlList ();
+		for ( int i=0; i<100; i++ )
+		{
+			acl.permit ( "g" + i, "read" );
+		}
+		acl.deny ( "g50", "update" );
+		acl.permit ( "g51", "update" );
+		acl.permit ( "*", "*" );
+
+		// few groups compared to the ACL's subjects
+		final TreeSet<String> groups = new TreeSet<> ();
+		groups.add ( "g51" );
+		groups.add ( "g50" );
+		assertFalse ( acl.canUser ( "u1", groups, "update" ) );
+		assertTrue ( acl.canUser ( "u1", groups, "READ" ) );
+
+		// many groups compared to the ACL's subjects
+		final AccessControlList small = new AccessControlList ();
+		small.deny ( "g150", "read" );
+		small.permit ( "g5", "read" );
+		final TreeSet<String> many = new TreeSet<> ();
+		for ( int i=0; i<200; i++ )
+		{
+			many.add ( "g" + i );
+		}
+		assertFalse ( small.canUser ( "u1", many, "read" ) );
+		many.remove ( "g150" );
+		assertTrue ( small.canUser ( "u1", many, "read" ) );
+		assertFalse ( small.canUser ( "u1", many, "update" ) );
+	}
+
+	@Test
+	public void testAnyOperationCoversUnlistedOps ()
+	{
+		final AccessControlList acl = AccessControlList.builder ()
+			.withEntry ( AccessControlEntry.builder ().forSubject("u1").deny().operation ( "delete" ).build () )
+			.withEntry ( AccessControlEntry.builder ().forSubject("u1").permit().forAnyOperation ().build () )
+			.build ()
+		;
+		assertFalse ( acl.canUser ( "u1", null, "Delete" ) );
+		assertTrue ( acl.canUser ( "u1", null, "read" ) );
+		assertTrue ( acl.canUser ( "u1", null, "neverMentioned" ) );
+		assertTrue ( acl.canUser ( "u1", null, null ) );
+		assertFalse ( acl.canUser ( "u2", null, "read" ) );
+		assertFalse ( acl.canUser ( null, null, "read" ) );
+	}
+
+	@Test
+	public void testChangesAreSeenByLaterChecks ()
+	{
+		final int[] updates = new int[] { 0 };
+		final AccessControlList acl = new AccessControlList ( a -> updates[0]++ );
+		assertFalse ( acl.canUser ( "u1", null, "read" ) );
+
+		acl.permit ( "u1", "read" );
+		assertTrue ( acl.canUser ( "u1", null, "read" ) );
+
+		final TreeSet<String> groups = new TreeSet<> ();
+		groups.add ( "g1" );
+		acl.clear ();
+		acl.deny ( "g1", "read" );
+		acl.permit ( "u1", "read" );
+		assertFalse ( acl.canUser ( "u1", groups, "read" ) );
+
+		acl.clear ( "g1", "read" );
+		assertTrue ( acl.canUser ( "u1", groups, "read" ) );
+		assertEquals ( 5, updates[0] );
+	}
+
+	@Test
+	public void testOwnerEntryFollowsOwnerChange ()
+	{
+		final AccessControlList acl = AccessControlList.builder ()
+			.ownedBy ( "u1" )
+			.withEntry ( AccessControlEntry.builder ().forOwner().permit().operation ( "update" ).build () )
+			.build ()
+		;
+		assertTrue ( acl.canUser ( "u1", null, "update" ) );
+		acl.setOwner ( "u2" );
+		assertFalse ( acl.canUser ( "u1", null, "update" ) );
+		assertTrue ( acl.canUser ( "u2", null, "update" ) );
+	}
+
 	private static class TestAclUpdateListener implements AclUpdateListener
 	{
 		@Override
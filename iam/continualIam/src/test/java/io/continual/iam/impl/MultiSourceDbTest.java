@@ -1,5 +1,9 @@
 package io.continual.iam.impl;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
@@ -16,6 +20,8 @@ import io.continual.iam.exceptions.IamIdentityExists;
 import io.continual.iam.exceptions.IamSvcException;
 import io.continual.iam.identity.Group;
 import io.continual.iam.identity.Identity;
+import io.continual.iam.impl.common.CommonJsonGroup;
+import io.continual.iam.impl.common.CommonJsonIdentity;
 import io.continual.iam.impl.jsondoc.JsonDocDb;
 import io.continual.services.ServiceContainer;
 import io.continual.util.time.Clock;
@@ -494,4 +500,119 @@ public class MultiSourceDbTest
 			Assert.fail ( "Expected to execute but fails with exception " + e.getMessage () );
 		}		
 	}
+
+	@Test
+	public void testParallelLookupsUseDatabaseOrder () throws IamSvcException, IamGroupExists
+	{
+		final SlowDb first = new SlowDb ( 300 );
+		first.createGroup ( "g1", "first" );
+		final SlowDb second = new SlowDb ( 0 );
+		second.createGroup ( "g1", "second" );
+		second.createGroup ( "g2", "second" );
+
+		final MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> msd = new MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> ()
+			.addDatabase ( first )
+			.addDatabase ( second )
+			.withParallelLookups ( 4 )
+		;
+		Assert.assertEquals ( "first", msd.loadGroup ( "g1" ).getName () );
+		Assert.assertEquals ( "second", msd.loadGroup ( "g2" ).getName () );
+		Assert.assertNull ( msd.loadGroup ( "g3" ) );
+		msd.close ();
+	}
+
+	@Test
+	public void testParallelLookupsCancelLowerPriority () throws IamSvcException, IamGroupExists, InterruptedException
+	{
+		final SlowDb first = new SlowDb ( 0 );
+		first.createGroup ( "g1", "first" );
+		final SlowDb second = new SlowDb ( 10000 );
+
+		// the first database answers only once the second's lookup is underway
+		first.fWaitFor = second.fStarted;
+
+		final MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> msd = new MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> ()
+			.addDatabase ( first )
+			.addDatabase ( second )
+			.withParallelLookups ( 2 )
+		;
+		final long startMs = System.currentTimeMillis ();
+		Assert.assertEquals ( "first", msd.loadGroup ( "g1" ).getName () );
+		Assert.assertTrue ( System.currentTimeMillis () - startMs < 5000 );
+		Assert.assertTrue ( second.fInterrupted.await ( 5, TimeUnit.SECONDS ) );
+		msd.close ();
+	}
+
+	@Test
+	public void testNegativeCache () throws IamSvcException, IamGroupExists
+	{
+		final SlowDb first = new SlowDb ( 0 );
+		final SlowDb second = new SlowDb ( 0 );
+		second.createGroup ( "g1", "second" );
+
+		final MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> msd = new MultiSourceDb<CommonJsonIdentity,CommonJsonGroup> ()
+			.addDatabase ( first )
+			.addDatabase ( second )
+			.withNegativeCache ( 1000 )
+		;
+		try
+		{
+			final Clock.TestClock clock = Clock.useNewTestClock ().set ( 1000000 );
+			first.fGroupLoads.set ( 0 );
+			second.fGroupLoads.set ( 0 );
+
+			Assert.assertEquals ( "second", msd.loadGroup ( "g1" ).getName () );
+			Assert.assertEquals ( "second", msd.loadGroup ( "g1" ).getName () );
+			Assert.assertEquals ( 1, first.fGroupLoads.get () );
+			Assert.assertEquals ( 2, second.fGroupLoads.get () );
+
+			// the miss expires, and the group is now found in the first database
+			first.createGroup ( "g1", "first" );
+			Assert.assertEquals ( "second", msd.loadGroup ( "g1" ).getName () );
+			clock.add ( 2000 );
+			Assert.assertEquals ( "first", msd.loadGroup ( "g1" ).getName () );
+		}
+		finally
+		{
+			Clock.useNewTestClock ();
+			msd.close ();
+		}
+	}
+
+	private static class SlowDb extends JsonDocDb
+	{
+		public SlowDb ( long delayMs )
+		{
+			fDelayMs = delayMs;
+			fWaitFor = null;
+		}
+
+		@Override
+		protected JSONObject loadGroupObject ( String id ) throws IamSvcException
+		{
+			fGroupLoads.incrementAndGet ();
+			fStarted.countDown ();
+			try
+			{
+				final CountDownLatch waitFor = fWaitFor;
+				if ( waitFor != null && !waitFor.await ( 5, TimeUnit.SECONDS ) )
+				{
+					throw new IamSvcException ( "timed out waiting for another lookup" );
+				}
+				Thread.sleep ( fDelayMs );
+			}
+			catch ( InterruptedException e )
+			{
+				fInterrupted.countDown ();
+				throw new IamSvcException ( e );
+			}
+			return super.loadGroupObject ( id );
+		}
+
+		private final long fDelayMs;
+		private volatile CountDownLatch fWaitFor;
+		private final CountDownLatch fStarted = new CountDownLatch ( 1 );
+		private final AtomicInteger fGroupLoads = new AtomicInteger ( 0 );
+		private final CountDownLatch fInterrupted = new CountDownLatch ( 1 );
+	}
 }
@@ -49,8 +49,7 @@ public class IamApiHandler<I extends Identity> extends TypicalRestApiEndpoint<I>
 				try
 				{
 					final Collection<String> users = fAccts.getIdentityManager ().getAllUsers ();
-					final JSONArray usersJson = JsonVisitor.listToArray ( users );
-					sendJson ( context, new JSONObject ().put ( "users", usersJson ) );
+					sendJsonList ( context, "users", users );
 				}
 				catch ( IamSvcException x )
 				{
@@ -348,8 +347,7 @@ public class IamApiHandler<I extends Identity> extends TypicalRestApiEndpoint<I>
 				try
 				{
 					final Collection<String> groups = fAccts.getAccessManager ().getAllGroups ();
-					final JSONArray groupsJson = JsonVisitor.listToArray ( groups );
-					sendJson ( context, new JSONObject ().put ( "groups", groupsJson ) );
+					sendJsonList ( context, "groups", groups );
 				}
 				catch ( IamSvcException x )
 				{
@@ -1,17 +1,29 @@
 package io.continual.onap.services.mrCommon;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 
 import io.continual.onap.services.mrCommon.SimplifiedJsonTokener.SimplifiedJsonException;
 import io.continual.onap.services.subscriber.OnapMrFetchResponse;
+import okhttp3.ResponseBody;
 
 /**
  * This is a basic implementation that parses a response JSON array of strings
- * into a list of strings.
+ * into a list of strings. The HTTP response body is parsed as it streams in, so
+ * each message is pushed to the fetch response as soon as it's read.
  */
 public class SimpleJsonResponseParser implements JsonResponseParser
 {
+	@Override
+	public void parseResponseBody ( ResponseBody httpBody, OnapMrFetchResponse resp ) throws IOException
+	{
+		try ( final Reader r = httpBody.charStream () )
+		{
+			parse ( r, resp );
+		}
+	}
+
 	@Override
 	public void parseResponseBody ( String s, OnapMrFetchResponse resp ) throws IOException
 	{
@@ -24,10 +36,24 @@ public class SimpleJsonResponseParser implements JsonResponseParser
 
 		try ( final StringReader sr = new StringReader ( s ) )
 		{
-			final SimplifiedJsonTokener t = new SimplifiedJsonTokener ( sr );
-	
-			// read start bracket
-			if ( t.nextClean () != '[' )
+			parse ( sr, resp );
+		}
+	}
+
+	private void parse ( Reader r, OnapMrFetchResponse resp ) throws IOException
+	{
+		try
+		{
+			final SimplifiedJsonTokener t = new SimplifiedJsonTokener ( r );
+
+			// read start bracket, allowing an empty body
+			final char first = t.nextClean ();
+			if ( first == 0 && t.end () )
+			{
+				resp.markEof ();
+				return;
+			}
+			if ( first != '[' )
 			{
 				throw new IOException ( "An array text must start with '['" );
 			}
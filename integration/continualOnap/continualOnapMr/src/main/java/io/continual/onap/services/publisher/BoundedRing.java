@@ -0,0 +1,159 @@
+package io.continual.onap.services.publisher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer that's safe for any number of producers and consumers.
+ * Each slot carries a sequence number that tells producers and consumers whose turn it is,
+ * so neither side takes a lock (this is Dmitry Vyukov's bounded MPMC queue).<br>
+ * <br>
+ * The slot array's size is a power of 2 (and at least 2, because a slot's sequence number can't
+ * distinguish "full" from "free" in a single-slot ring). A separate count holds the ring to its
+ * exact capacity.
+ *
+ * @param <T>
+ */
+class BoundedRing<T> implements PendingBuffer<T>
+{
+	/**
+	 * Construct a ring
+	 * @param capacity the maximum number of items in the ring
+	 */
+	BoundedRing ( int capacity )
+	{
+		if ( capacity < 1 ) throw new IllegalArgumentException ( "A ring's capacity must be positive." );
+
+		int cap = 2;
+		while ( cap < capacity )
+		{
+			cap <<= 1;
+		}
+
+		fMask = cap - 1;
+		fItems = new AtomicReferenceArray<> ( cap );
+		fSeqs = new AtomicLongArray ( cap );
+		for ( int i=0; i<cap; i++ )
+		{
+			fSeqs.set ( i, i );
+		}
+		fHead = new AtomicLong ( 0 );
+		fTail = new AtomicLong ( 0 );
+		fCapacity = capacity;
+		fCount = new AtomicInteger ( 0 );
+	}
+
+	@Override
+	public int capacity ()
+	{
+		return fCapacity;
+	}
+
+	@Override
+	public boolean offer ( T item )
+	{
+		// reserve room first; the slots can't run out while the count is within capacity
+		if ( fCount.incrementAndGet () > fCapacity )
+		{
+			fCount.decrementAndGet ();
+			return false;
+		}
+		if ( !offerToSlot ( item ) )
+		{
+			fCount.decrementAndGet ();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public T poll ()
+	{
+		final T item = pollFromSlot ();
+		if ( item != null )
+		{
+			fCount.decrementAndGet ();
+		}
+		return item;
+	}
+
+	@Override
+	public T peek ()
+	{
+		final long pos = fHead.get ();
+		final int idx = (int) ( pos & fMask );
+		if ( fSeqs.get ( idx ) == pos + 1 )
+		{
+			return fItems.get ( idx );
+		}
+		return null;
+	}
+
+	@Override
+	public int size ()
+	{
+		return Math.max ( 0, fCount.get () );
+	}
+
+	private final int fMask;
+	private final AtomicReferenceArray<T> fItems;
+	private final AtomicLongArray fSeqs;
+	private final AtomicLong fHead;
+	private final AtomicLong fTail;
+	private final int fCapacity;
+	private final AtomicInteger fCount;
+
+	private boolean offerToSlot ( T item )
+	{
+		while ( true )
+		{
+			final long pos = fTail.get ();
+			final int idx = (int) ( pos & fMask );
+			final long diff = fSeqs.get ( idx ) - pos;
+			if ( diff == 0 )
+			{
+				// the slot is free for this position; claim it
+				if ( fTail.compareAndSet ( pos, pos + 1 ) )
+				{
+					fItems.lazySet ( idx, item );
+					fSeqs.set ( idx, pos + 1 );		// publishes the item to consumers
+					return true;
+				}
+			}
+			else if ( diff < 0 )
+			{
+				// the slot still holds an item from a lap ago
+				return false;
+			}
+			// otherwise another producer claimed this position; try again
+		}
+	}
+
+	private T pollFromSlot ()
+	{
+		while ( true )
+		{
+			final long pos = fHead.get ();
+			final int idx = (int) ( pos & fMask );
+			final long diff = fSeqs.get ( idx ) - ( pos + 1 );
+			if ( diff == 0 )
+			{
+				if ( fHead.compareAndSet ( pos, pos + 1 ) )
+				{
+					final T item = fItems.get ( idx );
+					fItems.lazySet ( idx, null );
+					fSeqs.set ( idx, pos + fMask + 1 );		// frees the slot for the next lap
+					return item;
+				}
+			}
+			else if ( diff < 0 )
+			{
+				// nothing published at this position yet
+				return null;
+			}
+			// otherwise another consumer took this item; try again
+		}
+	}
+}
@@ -1,8 +1,14 @@
 package io.continual.onap.services.publisher;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +17,12 @@ import io.continual.onap.services.mrCommon.OnapMrResponse;
 import io.continual.onap.services.publisher.OnapMsgRouterPublisher.Message;
 
 /**
- * A batching publisher for ONAP Message Router.
+ * A batching publisher for ONAP Message Router.<br>
+ * <br>
+ * Pending messages are held in bounded lock-free rings, one per in-flight batch "lane". A message's
+ * lane is chosen by its stream name (the partition key), so messages with the same key are always
+ * sent in the order they were queued, while messages with different keys can be in flight concurrently.
+ * The buffer capacity is split exactly across the lanes. A negative capacity leaves the buffer unbounded.
  */
 public class OnapMsgRouterBatchPublisher implements Closeable
 {
@@ -38,6 +49,47 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 		}
 	};
 
+	/**
+	 * What a sender experiences if the send buffer is at maximum capacity
+	 */
+	public enum FullBufferPolicy
+	{
+		/**
+		 * The sender waits for room, optionally with a timeout. See {@link Builder#blockingAtMostMs(long)}.
+		 */
+		BLOCK,
+
+		/**
+		 * The send is rejected with a {@link BufferFullException}.
+		 */
+		REJECT,
+
+		/**
+		 * The oldest pending message is dropped to make room.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * The new message is dropped.
+		 */
+		DROP_NEWEST;
+
+		public static FullBufferPolicy fromDropPolicy ( DropPolicy dp )
+		{
+			return dp == DropPolicy.DROP_NEWEST ? DROP_NEWEST : DROP_OLDEST;
+		}
+	}
+
+	/**
+	 * Thrown from send when the buffer is full and the full buffer policy is REJECT, or
+	 * is BLOCK and the send timed out.
+	 */
+	public static class BufferFullException extends RuntimeException
+	{
+		public BufferFullException ( String msg ) { super ( msg ); }
+		private static final long serialVersionUID = 1L;
+	}
+
 	/**
 	 * For convenience, just provide a publisher and batching limits
 	 * @param pub an underlying publisher
@@ -94,7 +146,7 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 			fMaxBatch = atMost;
 			return this;
 		}
-		
+
 		/**
 		 * specify how long to wait for messages to join a batch
 		 * @param maxAgeMs the limit, in milliseconds, on how long to wait before sending a batch
@@ -106,10 +158,54 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 			return this;
 		}
 
+		/**
+		 * Limit the number of pending messages, dropping messages when the limit is reached.
+		 * A negative limit means no limit, so the buffer grows as needed and senders never wait.
+		 * @param maxPending the buffer capacity, or a negative value for no limit
+		 * @param dropPolicy which message to drop when the buffer is full
+		 * @return this
+		 */
 		public Builder withMaxPendingCount ( int maxPending, DropPolicy dropPolicy )
 		{
-			fMaxPendingCount = maxPending;
-			fMaxPendingDropPolicy = dropPolicy;
+			fCapacity = maxPending < 0 ? kUnbounded : maxPending;
+			fFullPolicy = FullBufferPolicy.fromDropPolicy ( dropPolicy );
+			return this;
+		}
+
+		/**
+		 * Specify the buffer capacity and what happens when it's full
+		 * @param capacity the number of messages that may be pending, or a negative value for no limit
+		 * @param policy the policy to apply when the buffer is full
+		 * @return this
+		 */
+		public Builder withBufferCapacity ( int capacity, FullBufferPolicy policy )
+		{
+			fCapacity = capacity < 0 ? kUnbounded : capacity;
+			fFullPolicy = policy;
+			return this;
+		}
+
+		/**
+		 * With the BLOCK policy, specify how long a sender waits for room before the send fails
+		 * with a BufferFullException. A value of 0 or less means wait indefinitely (the default).
+		 * @param timeoutMs the wait time limit in milliseconds
+		 * @return this
+		 */
+		public Builder blockingAtMostMs ( long timeoutMs )
+		{
+			fBlockTimeoutMs = timeoutMs;
+			return this;
+		}
+
+		/**
+		 * Specify how many batches may be in flight concurrently. Messages are assigned to a
+		 * batch lane by stream name, so ordering per stream name is preserved.
+		 * @param count the number of concurrent batches
+		 * @return this
+		 */
+		public Builder withInFlightBatches ( int count )
+		{
+			fLanes = count;
 			return this;
 		}
 
@@ -138,49 +234,55 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 		private int fMaxBatch = kDefaultMaxBatch;
 		private long fMaxTimeMs = kDefaultMaxTimeMs;
 		private long fBackoffMs = kDefaultBackoffTimeMs;
-		private long fMaxPendingCount = kDefaultMaxPendingCount;
-		private DropPolicy fMaxPendingDropPolicy = DropPolicy.DROP_OLDEST;
+		private int fCapacity = kDefaultCapacity;
+		private FullBufferPolicy fFullPolicy = FullBufferPolicy.BLOCK;
+		private long fBlockTimeoutMs = -1L;
+		private int fLanes = 1;
 	}
 
 	/**
-	 * Start the sending thread
+	 * Start the sending threads
 	 */
 	public synchronized void start ()
 	{
-		fService.start ();
+		for ( Lane lane : fLanes )
+		{
+			lane.start ();
+		}
 	}
 
 	/**
-	 * Close this publisher to stop its background sending thread.
+	 * Close this publisher to stop its background sending threads.
 	 */
 	@Override
 	public synchronized void close ()
 	{
+		fClosing = true;
 		try
 		{
-			fService.signalClose ();
-			fService.join ();
+			for ( Lane lane : fLanes )
+			{
+				lane.signalClose ();
+			}
+			for ( Lane lane : fLanes )
+			{
+				lane.join ();
+			}
 
 			// send whatever we have left
-			synchronized ( fPendingMsgs )
+			final long giveUpAtMs = fPub.getClock().nowMs() + (60*1000L);
+			int remaining = 0;
+			for ( Lane lane : fLanes )
 			{
-				final long giveUpAtMs = fPub.getClock().nowMs() + (60*1000L);
-				while ( fPendingMsgs.size () > 0 && fPub.getClock().nowMs() < giveUpAtMs )
-				{
-					final long waitMs = send ();
-					if ( waitMs > 0L )
-					{
-						Thread.sleep ( waitMs );
-					}
-				}
-				if ( fPendingMsgs.size () > 0 )
-				{
-					fLog.warn ( "Unable to send {} messages before giving up.", fPendingMsgs.size () );
-				}
-				else
-				{
-					fLog.info ( "Batch sender closed with no pending messages." );
-				}
+				remaining += lane.drain ( giveUpAtMs );
+			}
+			if ( remaining > 0 )
+			{
+				fLog.warn ( "Unable to send {} messages before giving up.", remaining );
+			}
+			else
+			{
+				fLog.info ( "Batch sender closed with no pending messages." );
 			}
 		}
 		catch ( InterruptedException e )
@@ -194,156 +296,101 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 	 * Queue a message to be sent in a batch.
 	 * @param msg a message to send
 	 * @return this
+	 * @throws BufferFullException if the buffer is full and the policy is REJECT, or BLOCK with a timeout that expires
 	 */
 	public OnapMsgRouterBatchPublisher send ( Message msg )
 	{
-		synchronized ( fPendingMsgs )
-		{
-			fPendingMsgs.add ( new MessageWrapper ( msg ) );
-			fPendingMsgs.notify ();
-		}
+		laneFor ( msg ).enqueue ( new MessageWrapper ( msg ) );
 		return this;
 	}
-	
+
 	/**
-	 * Queue a set of messages to be sent in a batch. Iteration order is preserved in the send.
+	 * Queue a set of messages to be sent in a batch. Iteration order is preserved in the send
+	 * for messages with the same stream name.
 	 * @param msgs a list of messages to send
 	 * @return this
+	 * @throws BufferFullException if the buffer is full and the policy is REJECT, or BLOCK with a timeout that expires
 	 */
 	public OnapMsgRouterBatchPublisher send ( List<Message> msgs )
 	{
-		final LinkedList<MessageWrapper> wrappers = new LinkedList<> ();
 		for ( Message msg : msgs )
 		{
-			wrappers.add ( new MessageWrapper ( msg ) );
+			send ( msg );
 		}
-		synchronized ( fPendingMsgs )
+		return this;
+	}
+
+	/**
+	 * Get the number of messages waiting to be sent, not including those in a batch that's in flight.
+	 * @return a count
+	 */
+	public int getPendingCount ()
+	{
+		int count = 0;
+		for ( Lane lane : fLanes )
 		{
-			fPendingMsgs.addAll ( wrappers );
-			fPendingMsgs.notify ();
+			count += lane.fPending.size ();
 		}
-		return this;
+		return count;
 	}
 
 	private OnapMsgRouterBatchPublisher ( Builder builder )
 	{
 		fPub = builder.fPub;
 		fLog = builder.fLog;
-		fPendingMsgs = new LinkedList<> ();
-		fMaxBatch = builder.fMaxBatch;
+		fMaxBatch = Math.max ( 1, builder.fMaxBatch );
 		fMaxTimeMs = builder.fMaxTimeMs;
 		fBackoffMs = builder.fBackoffMs;
-		fMaxPendingCount = builder.fMaxPendingCount;
-		fDropPolicy = builder.fMaxPendingDropPolicy;
-
-		fService = new SvcThread ();
+		fFullPolicy = builder.fFullPolicy;
+		fBlockTimeoutMs = builder.fBlockTimeoutMs;
+		fClosing = false;
 
 		if ( fPub == null )
 		{
 			throw new IllegalArgumentException ( "A publisher must be provided." );
 		}
-	}
-
-	// check for a send now. If not, return the amount of time before a send check is 
-	// appropriate.
-	private long checkSend ()
-	{
-		synchronized ( fPendingMsgs )
+		if ( builder.fLanes < 1 )
 		{
-			final int pending = fPendingMsgs.size ();
-			final boolean sendNow =
-				( pending >= fMaxBatch ) ||
-				( pending > 0 && fPendingMsgs.peekFirst ().queuedAtMs () + fMaxTimeMs <= fPub.getClock().nowMs () )
-			;
-	
-			long result = kEmptyQueueMaxWaitMs;
-			if ( sendNow )
-			{
-				result = send ();
-			}
-			else if ( pending > 0 )
-			{
-				final long queuedAtMs = fPendingMsgs.peekFirst ().queuedAtMs ();
-				final long dueAtMs = queuedAtMs + fMaxTimeMs;
-				result = Math.max ( 0, dueAtMs - fPub.getClock().nowMs() );
-			}
-			return result;
+			throw new IllegalArgumentException ( "At least one in-flight batch is required." );
+		}
+		if ( builder.fCapacity == 0 )
+		{
+			throw new IllegalArgumentException ( "The buffer capacity must be positive, or negative for no limit." );
+		}
+		if ( builder.fCapacity != kUnbounded && builder.fCapacity < builder.fLanes )
+		{
+			throw new IllegalArgumentException ( "The buffer capacity must be at least the number of in-flight batches." );
 		}
-	}
 
-	private long send ()
-	{
-		synchronized ( fPendingMsgs )
+		// the capacity is split across the lanes, with the remainder spread over the first few
+		fCapacity = builder.fCapacity;
+		fLanes = new Lane [ builder.fLanes ];
+		for ( int i=0; i<fLanes.length; i++ )
 		{
-			final LinkedList<Message> msgs = new LinkedList<> ();
-			for ( MessageWrapper wrap : fPendingMsgs )
-			{
-				msgs.add ( wrap.message () );
-			}
-	
-			final OnapMrResponse response = fPub.send ( msgs );
-			if ( response.isSuccess () )
-			{
-				// clear our pending set
-				fPendingMsgs.clear ();
-				return kEmptyQueueMaxWaitMs;
-			}
-			else
-			{
-				// back-off
-				fLog.warn ( "MR send failed with {} {}. Waiting {} ms for retry.", response.getStatusCode (), response.getStatusText (), fBackoffMs );
-				return fBackoffMs;
-			}
+			final PendingBuffer<MessageWrapper> pending = fCapacity == kUnbounded ?
+				new UnboundedBuffer<> () :
+				new BoundedRing<> ( fCapacity / fLanes.length + ( i < fCapacity % fLanes.length ? 1 : 0 ) )
+			;
+			fLanes[i] = new Lane ( i, pending );
 		}
 	}
 
-	private void checkForDrops ()
+	private Lane laneFor ( Message msg )
 	{
-		// inactive?
-		if ( fMaxPendingCount < 0 ) return;
-
-		int removals = 0;
-		long earliestTs = Long.MAX_VALUE;
-		long latestTs = Long.MIN_VALUE;
-
-		synchronized ( fPendingMsgs )
-		{
-			while ( fPendingMsgs.size () > fMaxPendingCount )
-			{
-				long queueTimeMs = 0;
-				switch ( fDropPolicy )
-				{
-					case DROP_NEWEST:
-						queueTimeMs = fPendingMsgs.removeLast ().queuedAtMs ();
-						break;
-	
-					case DROP_OLDEST:
-						queueTimeMs = fPendingMsgs.removeFirst ().queuedAtMs ();
-						break;
-				}
-	
-				removals++;
-				earliestTs = Math.min ( earliestTs, queueTimeMs);
-				latestTs = Math.max ( latestTs, queueTimeMs );
-			}
-	
-			if ( removals > 0 )
-			{
-				fLog.warn ( "Dropped {} messages with time range from {} to {}.", removals, earliestTs, latestTs );
-			}
-		}
+		if ( fLanes.length == 1 || msg.fStreamName == null ) return fLanes[0];
+		return fLanes [ ( msg.fStreamName.hashCode () & Integer.MAX_VALUE ) % fLanes.length ];
 	}
-	
+
 	private final OnapMsgRouterPublisher fPub;
-	private final LinkedList<MessageWrapper> fPendingMsgs;
 	private final int fMaxBatch;
 	private final long fMaxTimeMs;
 	private final long fBackoffMs;
-	private final long fMaxPendingCount;
-	private final DropPolicy fDropPolicy;
+	private final FullBufferPolicy fFullPolicy;
+	private final long fBlockTimeoutMs;
+	private final int fCapacity;
 	private final Logger fLog;
-
-	private final SvcThread fService;
+	private final Lane[] fLanes;
+	private volatile boolean fClosing;
 
 	private static final Logger defaultLog = LoggerFactory.getLogger ( OnapMsgRouterBatchPublisher.class );
 
@@ -351,7 +398,9 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 	private static final int kDefaultMaxBatch = 100;
 	private static final long kDefaultMaxTimeMs = 500L;
 	private static final long kDefaultBackoffTimeMs = 1000L;
-	private static final long kDefaultMaxPendingCount = -1L;
+	private static final int kDefaultCapacity = 16 * 1024;
+	private static final int kUnbounded = -1;
+	private static final long kFullBufferParkNanos = TimeUnit.MICROSECONDS.toNanos ( 200 );
 
 	private class MessageWrapper
 	{
@@ -363,50 +412,288 @@ public class OnapMsgRouterBatchPublisher implements Closeable
 
 		public Message message () { return fMsg; }
 		public long queuedAtMs () { return fQueuedAtMs; }
-		
+
 		public final Message fMsg;
 		public final long fQueuedAtMs;
 	}
 
-	private class SvcThread extends Thread
+	/**
+	 * A pending message buffer without a limit, for publishers configured without one
+	 */
+	private static class UnboundedBuffer<T> implements PendingBuffer<T>
 	{
+		public UnboundedBuffer ()
+		{
+			fItems = new ConcurrentLinkedQueue<> ();
+			fCount = new AtomicInteger ( 0 );
+		}
+
+		@Override
+		public boolean offer ( T item )
+		{
+			fItems.add ( item );
+			fCount.incrementAndGet ();
+			return true;
+		}
+
+		@Override
+		public T poll ()
+		{
+			final T item = fItems.poll ();
+			if ( item != null )
+			{
+				fCount.decrementAndGet ();
+			}
+			return item;
+		}
+
+		@Override
+		public T peek () { return fItems.peek (); }
+
+		@Override
+		public int size () { return Math.max ( 0, fCount.get () ); }
+
+		@Override
+		public int capacity () { return kUnbounded; }
+
+		private final ConcurrentLinkedQueue<T> fItems;
+		private final AtomicInteger fCount;
+	}
+
+	/**
+	 * A lane has its own buffer of pending messages and a thread that cuts batches from it
+	 * and sends them one at a time.
+	 */
+	private class Lane extends Thread
+	{
+		public Lane ( int index, PendingBuffer<MessageWrapper> pending )
+		{
+			super ( "OnapMsgRouterBatchPublisher lane " + index );
+
+			fPending = pending;
+			fBatch = new ArrayList<> ( fMaxBatch );
+			fDropCount = new AtomicLong ( 0 );
+			fDropEarliestMs = new AtomicLong ( Long.MAX_VALUE );
+			fDropLatestMs = new AtomicLong ( Long.MIN_VALUE );
+			fParked = false;
+			fClose = false;
+		}
+
 		@Override
 		public void run ()
 		{
-			long nextSendDueMs = kEmptyQueueMaxWaitMs;
-			while ( !shouldClose () )
+			while ( !fClose )
 			{
-				synchronized ( fPendingMsgs )
+				long waitMs = timeUntilReadyMs ();
+				boolean backingOff = false;
+				if ( waitMs <= 0 )
 				{
-					try
+					if ( fBatch.isEmpty () )
 					{
-						if ( nextSendDueMs > 0 )
-						{
-							// because wait(0) means no timeout!
-							fPendingMsgs.wait ( nextSendDueMs );
-						}
+						fPending.drainTo ( fBatch, fMaxBatch );
+					}
+					if ( !sendBatch () )
+					{
+						waitMs = fBackoffMs;
+						backingOff = true;
+					}
+				}
+				reportDrops ();
 
-						nextSendDueMs = checkSend ();
-						checkForDrops ();
+				if ( waitMs > 0 )
+				{
+					if ( backingOff )
+					{
+						backOff ( waitMs );
 					}
-					catch ( InterruptedException e )
+					else
 					{
-						fLog.warn ( "Background thread interrupted while waiting for input signal: {}", e.getMessage () );
+						idle ( waitMs );
 					}
 				}
 			}
 		}
 
-		public synchronized void signalClose ()
+		public void signalClose ()
 		{
 			fClose = true;
+			LockSupport.unpark ( this );
+		}
+
+		/**
+		 * Queue a message, applying the full buffer policy if necessary
+		 * @param mw
+		 */
+		void enqueue ( MessageWrapper mw )
+		{
+			if ( !fPending.offer ( mw ) )
+			{
+				switch ( fFullPolicy )
+				{
+					case DROP_NEWEST:
+						noteDrop ( mw );
+						return;
+
+					case DROP_OLDEST:
+						while ( !fPending.offer ( mw ) )
+						{
+							final MessageWrapper dropped = fPending.poll ();
+							if ( dropped != null )
+							{
+								noteDrop ( dropped );
+							}
+						}
+						break;
+
+					case REJECT:
+						throw new BufferFullException ( "The send buffer is full." );
+
+					case BLOCK:
+						waitToEnqueue ( mw );
+						break;
+				}
+			}
+
+			// wake the sender if it may have something to do now
+			final int size = fPending.size ();
+			if ( fParked && ( size == 1 || size >= fMaxBatch ) )
+			{
+				LockSupport.unpark ( this );
+			}
+		}
+
+		/**
+		 * Send whatever's pending in this lane, retrying until the give-up time.
+		 * @param giveUpAtMs
+		 * @return the number of messages not sent
+		 * @throws InterruptedException
+		 */
+		int drain ( long giveUpAtMs ) throws InterruptedException
+		{
+			while ( ( !fBatch.isEmpty () || fPending.size () > 0 ) && fPub.getClock().nowMs() < giveUpAtMs )
+			{
+				if ( fBatch.isEmpty () )
+				{
+					fPending.drainTo ( fBatch, fMaxBatch );
+				}
+				if ( !sendBatch () )
+				{
+					Thread.sleep ( fBackoffMs );
+				}
+			}
+			reportDrops ();
+			return fBatch.size () + fPending.size ();
+		}
+
+		private long timeUntilReadyMs ()
+		{
+			// a failed batch is retried as-is
+			if ( !fBatch.isEmpty () ) return 0L;
+
+			final MessageWrapper first = fPending.peek ();
+			if ( first == null ) return kEmptyQueueMaxWaitMs;
+			if ( fPending.size () >= fMaxBatch ) return 0L;
+
+			return Math.max ( 0, first.queuedAtMs () + fMaxTimeMs - fPub.getClock().nowMs() );
 		}
 
-		private synchronized boolean shouldClose ()
+		private boolean sendBatch ()
 		{
-			return fClose;
+			if ( fBatch.isEmpty () ) return true;
+
+			final LinkedList<Message> msgs = new LinkedList<> ();
+			for ( MessageWrapper wrap : fBatch )
+			{
+				msgs.add ( wrap.message () );
+			}
+
+			final OnapMrResponse response = fPub.send ( msgs );
+			if ( response.isSuccess () )
+			{
+				fBatch.clear ();
+				return true;
+			}
+
+			fLog.warn ( "MR send failed with {} {}. Waiting {} ms for retry.", response.getStatusCode (), response.getStatusText (), fBackoffMs );
+			return false;
+		}
+
+		// wait for the given time or until a sender signals that there's work to do
+		private void idle ( long waitMs )
+		{
+			fParked = true;
+			try
+			{
+				// re-check after publishing the parked flag so a concurrent enqueue isn't missed
+				if ( !fClose && timeUntilReadyMs () > 0 )
+				{
+					LockSupport.parkNanos ( this, TimeUnit.MILLISECONDS.toNanos ( waitMs ) );
+				}
+			}
+			finally
+			{
+				fParked = false;
+			}
+		}
+
+		// wait out the retry delay, ignoring sender signals but not close
+		private void backOff ( long waitMs )
+		{
+			final long untilNanos = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos ( waitMs );
+			long remaining;
+			while ( !fClose && ( remaining = untilNanos - System.nanoTime () ) > 0 )
+			{
+				LockSupport.parkNanos ( this, remaining );
+			}
+		}
+
+		private void waitToEnqueue ( MessageWrapper mw )
+		{
+			final long untilNanos = fBlockTimeoutMs > 0 ? System.nanoTime () + TimeUnit.MILLISECONDS.toNanos ( fBlockTimeoutMs ) : Long.MAX_VALUE;
+			while ( !fPending.offer ( mw ) )
+			{
+				if ( fClosing )
+				{
+					throw new BufferFullException ( "The send buffer is full and the publisher is closing." );
+				}
+				if ( fBlockTimeoutMs > 0 && System.nanoTime () - untilNanos >= 0 )
+				{
+					throw new BufferFullException ( "Timed out waiting for room in the send buffer." );
+				}
+				LockSupport.parkNanos ( kFullBufferParkNanos );
+			}
+		}
+
+		private void noteDrop ( MessageWrapper mw )
+		{
+			fDropCount.incrementAndGet ();
+			fDropEarliestMs.accumulateAndGet ( mw.queuedAtMs (), Math::min );
+			fDropLatestMs.accumulateAndGet ( mw.queuedAtMs (), Math::max );
+		}
+
+		private void reportDrops ()
+		{
+			if ( fDropCount.get () == 0 ) return;
+
+			final long removals = fDropCount.getAndSet ( 0 );
+			final long earliestTs = fDropEarliestMs.getAndSet ( Long.MAX_VALUE );
+			final long latestTs = fDropLatestMs.getAndSet ( Long.MIN_VALUE );
+			if ( fLanes.length == 1 )
+			{
+				fLog.warn ( "Dropped {} messages with time range from {} to {} (buffer capacity {}).", removals, earliestTs, latestTs, fCapacity );
+			}
+			else
+			{
+				fLog.warn ( "Dropped {} messages with time range from {} to {} (lane capacity {} of buffer capacity {}).", removals, earliestTs, latestTs, fPending.capacity (), fCapacity );
+			}
 		}
 
-		private boolean fClose = false;
+		private final PendingBuffer<MessageWrapper> fPending;
+		private final ArrayList<MessageWrapper> fBatch;
+		private final AtomicLong fDropCount;
+		private final AtomicLong fDropEarliestMs;
+		private final AtomicLong fDropLatestMs;
+		private volatile boolean fParked;
+		private volatile boolean fClose;
 	}
 }
@@ -0,0 +1,62 @@
+package io.continual.onap.services.publisher;
+
+import java.util.Collection;
+
+/**
+ * A buffer of pending items that's safe for any number of producers and consumers
+ *
+ * @param <T>
+ */
+interface PendingBuffer<T>
+{
+	/**
+	 * Add an item to the buffer if there's room
+	 * @param item
+	 * @return true if the item was added, false if the buffer is full
+	 */
+	boolean offer ( T item );
+
+	/**
+	 * Remove the oldest item from the buffer
+	 * @return an item, or null if the buffer is empty
+	 */
+	T poll ();
+
+	/**
+	 * Look at the oldest item without removing it. With concurrent consumers, the item may
+	 * be gone by the time the caller looks at it.
+	 * @return an item, or null if the buffer is empty
+	 */
+	T peek ();
+
+	/**
+	 * Get the approximate number of items in the buffer
+	 * @return a count
+	 */
+	int size ();
+
+	/**
+	 * Get the buffer's capacity
+	 * @return the capacity, or -1 if the buffer is unbounded
+	 */
+	int capacity ();
+
+	/**
+	 * Move up to atMost items into the given collection
+	 * @param into
+	 * @param atMost
+	 * @return the number of items moved
+	 */
+	default int drainTo ( Collection<? super T> into, int atMost )
+	{
+		int count = 0;
+		while ( count < atMost )
+		{
+			final T item = poll ();
+			if ( item == null ) break;
+			into.add ( item );
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,370 @@
+package io.continual.onap.services.subscriber;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A consumer group for ONAP Message Router. The group runs a number of concurrent long-polls,
+ * each as its own subscriber ID within the same subscriber group, so that MR spreads the topic's
+ * partitions across them. Fetched messages are handed to the application through a prefetch
+ * queue as they're parsed from each response stream.<br>
+ * <br>
+ * Before each fetch, a poller reserves room in the prefetch queue and asks MR for no more than
+ * it reserved (and no more than the subscriber's "recvAtMostEvents" setting, which defaults to an
+ * even share of the queue per consumer). A poller waits until at least its share of the queue is
+ * free, so the pollers don't issue long-polls for a message or two when the queue is nearly full.
+ * Reservations are shared by all pollers, so a slow consumer throttles the long-polls instead of
+ * growing memory, and a response is never left blocked on a full queue while its connection is open.
+ */
+public class OnapMsgRouterConsumerGroup implements Closeable
+{
+	public static class Builder
+	{
+		/**
+		 * Construct a consumer group builder.
+		 */
+		public Builder () {}
+
+		/**
+		 * Specify the subscriber settings for the group's members. The builder's subscriber ID, if
+		 * set, is used as the base for the member IDs, which are suffixed with the member number.
+		 * @param sb a subscriber builder
+		 * @return this builder
+		 */
+		public Builder subscribingWith ( OnapMsgRouterSubscriber.Builder sb )
+		{
+			fSubBuilder = sb;
+			return this;
+		}
+
+		/**
+		 * Specify how many concurrent long-polls to run.
+		 * @param count the number of consumers in the group
+		 * @return this builder
+		 */
+		public Builder withConsumers ( int count )
+		{
+			fConsumers = count;
+			return this;
+		}
+
+		/**
+		 * Specify how many fetched messages may wait for the application.
+		 * @param count the prefetch queue size
+		 * @return this builder
+		 */
+		public Builder prefetchAtMost ( int count )
+		{
+			fPrefetch = count;
+			return this;
+		}
+
+		/**
+		 * Specify how long a consumer waits before fetching again after a failed fetch
+		 * @param retryWaitMs the time, in millis, to wait before retrying
+		 * @return this builder
+		 */
+		public Builder retryAfterMs ( long retryWaitMs )
+		{
+			fBackoffMs = retryWaitMs;
+			return this;
+		}
+
+		/**
+		 * Specify the log to use. If never called, the default logger, named for this class, is used.
+		 * @param log the slf4j logger to use for this library. Do not pass null.
+		 * @return this builder
+		 */
+		public Builder logTo ( Logger log )
+		{
+			fLog = log;
+			return this;
+		}
+
+		/**
+		 * Build the consumer group
+		 * @return a consumer group
+		 */
+		public OnapMsgRouterConsumerGroup build ()
+		{
+			return new OnapMsgRouterConsumerGroup ( this );
+		}
+
+		private OnapMsgRouterSubscriber.Builder fSubBuilder = null;
+		private int fConsumers = 1;
+		private int fPrefetch = kDefaultPrefetch;
+		private long fBackoffMs = kDefaultBackoffTimeMs;
+		private Logger fLog = defaultLog;
+	}
+
+	/**
+	 * Get a new builder
+	 *
+	 * @return a builder
+	 */
+	public static Builder builder ()
+	{
+		return new Builder ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return fMembers.size () + " consumers for " + fMembers.get ( 0 ).fSub.toString ();
+	}
+
+	/**
+	 * Start the group's long-poll threads
+	 */
+	public synchronized void start ()
+	{
+		for ( Member m : fMembers )
+		{
+			m.start ();
+		}
+	}
+
+	/**
+	 * Stop the group's long-poll threads. A poll that's in progress at the server is allowed to
+	 * finish, and its messages remain in the prefetch queue.
+	 */
+	@Override
+	public synchronized void close ()
+	{
+		fClose = true;
+		for ( Member m : fMembers )
+		{
+			LockSupport.unpark ( m );
+		}
+		try
+		{
+			for ( Member m : fMembers )
+			{
+				m.join ( fJoinWaitMs );
+				if ( m.isAlive () )
+				{
+					fLog.warn ( "Consumer {} did not stop within {} ms.", m.fSub.getSubscriberId (), fJoinWaitMs );
+				}
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			fLog.warn ( "Interrupted while closing consumer group: {}", e.getMessage () );
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	/**
+	 * Fetch the next message from the prefetch queue.
+	 * @param timeoutMs the length of time to wait for a message
+	 * @return a message, or null if none arrived within the timeout
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	public String consumeNext ( long timeoutMs ) throws InterruptedException
+	{
+		final String msg = fQueue.poll ( timeoutMs, TimeUnit.MILLISECONDS );
+		if ( msg != null )
+		{
+			fFree.incrementAndGet ();
+		}
+		return msg;
+	}
+
+	/**
+	 * Move up to atMost ready messages into the given collection without waiting.
+	 * @param into the collection to fill
+	 * @param atMost the maximum number of messages to move
+	 * @return the number of messages moved
+	 */
+	public int drainTo ( Collection<String> into, int atMost )
+	{
+		final int moved = fQueue.drainTo ( into, atMost );
+		fFree.addAndGet ( moved );
+		return moved;
+	}
+
+	/**
+	 * Get the number of messages ready for consumption.
+	 * @return the count of prefetched messages
+	 */
+	public int readyCount ()
+	{
+		return fQueue.size ();
+	}
+
+	/**
+	 * Get the total number of messages fetched by this group.
+	 * @return a count
+	 */
+	public long getFetchedCount ()
+	{
+		return fFetched.get ();
+	}
+
+	private OnapMsgRouterConsumerGroup ( Builder builder )
+	{
+		final OnapMsgRouterSubscriber.Builder sb = builder.fSubBuilder;
+		if ( sb == null )
+		{
+			throw new IllegalArgumentException ( "Subscriber settings must be provided." );
+		}
+		if ( builder.fConsumers < 1 )
+		{
+			throw new IllegalArgumentException ( "At least one consumer is required." );
+		}
+		if ( builder.fPrefetch < 1 )
+		{
+			throw new IllegalArgumentException ( "The prefetch size must be positive." );
+		}
+
+		fLog = builder.fLog;
+		fBackoffMs = builder.fBackoffMs;
+		fQueue = new LinkedBlockingQueue<> ();
+		fFree = new AtomicInteger ( builder.fPrefetch );
+		fFetched = new AtomicLong ( 0 );
+		fClose = false;
+
+		// a single fetch asks for no more than the subscriber's limit, or each member's share of the
+		// queue without one, and waits until at least that share (or the limit, if smaller) is free
+		final int share = Math.max ( 1, builder.fPrefetch / builder.fConsumers );
+		final int perFetch = sb.getMaxEventsPerFetch ();
+		fFetchLimit = perFetch > 0 ? perFetch : share;
+		fLowWater = Math.min ( fFetchLimit, share );
+		fJoinWaitMs = Math.max ( 0, sb.getServerWaitMs () ) + kJoinGraceMs;
+
+		// members share one HTTP client (and therefore its connection pool)
+		final String baseId = sb.getSubscriberId () == null ? UUID.randomUUID ().toString () : sb.getSubscriberId ();
+		fMembers = new ArrayList<> ( builder.fConsumers );
+		OnapMsgRouterSubscriber first = null;
+		for ( int i=0; i<builder.fConsumers; i++ )
+		{
+			final OnapMsgRouterSubscriber sub = sb.buildMember ( baseId + "-" + i, first == null ? null : first.getHttpClient () );
+			if ( first == null ) first = sub;
+			fMembers.add ( new Member ( sub ) );
+		}
+	}
+
+	private final List<Member> fMembers;
+	private final LinkedBlockingQueue<String> fQueue;
+	private final AtomicInteger fFree;
+	private final int fFetchLimit;
+	private final int fLowWater;
+	private final long fBackoffMs;
+	private final long fJoinWaitMs;
+	private final AtomicLong fFetched;
+	private final Logger fLog;
+	private volatile boolean fClose;
+
+	private static final Logger defaultLog = LoggerFactory.getLogger ( OnapMsgRouterConsumerGroup.class );
+
+	private static final int kDefaultPrefetch = 1000;
+	private static final long kDefaultBackoffTimeMs = 1000L;
+	private static final long kJoinGraceMs = 5000L;
+	private static final long kRoomWaitNanos = TimeUnit.MILLISECONDS.toNanos ( 10 );
+
+	/**
+	 * Reserve room in the prefetch queue for a fetch.
+	 * @return the number of messages reserved, or 0 if the queue doesn't have enough room
+	 */
+	private int reserve ()
+	{
+		while ( true )
+		{
+			final int free = fFree.get ();
+			if ( free < fLowWater ) return 0;
+			final int count = Math.min ( free, fFetchLimit );
+			if ( fFree.compareAndSet ( free, free - count ) ) return count;
+		}
+	}
+
+	/**
+	 * A fetch response that hands each message to the prefetch queue as it's parsed. The queue
+	 * is unbounded, so this never blocks; the member reserved room before the fetch.
+	 */
+	private class QueueingResponse extends OnapMrFetchResponse
+	{
+		public QueueingResponse ( int statusCode, String statusMsg, Member member )
+		{
+			super ( statusCode, statusMsg );
+			fMember = member;
+		}
+
+		@Override
+		public OnapMrFetchResponse push ( String msg )
+		{
+			fFetched.incrementAndGet ();
+
+			// a server that ignores the limit still gets its messages queued, but they're charged as used room
+			if ( ++fMember.fPushed > fMember.fReserved )
+			{
+				fFree.decrementAndGet ();
+			}
+			fQueue.add ( msg );
+			return this;
+		}
+
+		private final Member fMember;
+	}
+
+	private class Member extends Thread
+	{
+		public Member ( OnapMsgRouterSubscriber sub )
+		{
+			super ( "OnapMsgRouterConsumerGroup " + sub.getSubscriberId () );
+			setDaemon ( true );
+			fSub = sub;
+			fReserved = 0;
+			fPushed = 0;
+		}
+
+		@Override
+		public void run ()
+		{
+			while ( !fClose && !isInterrupted () )
+			{
+				// don't poll until there's room for what we'd get back
+				fReserved = reserve ();
+				if ( fReserved < 1 )
+				{
+					LockSupport.parkNanos ( this, kRoomWaitNanos );
+					continue;
+				}
+
+				fPushed = 0;
+				final OnapMrFetchResponse response = fSub.fetch ( -1L, fReserved, ( code, text ) -> new QueueingResponse ( code, text, this ) );
+
+				// return whatever room this fetch didn't use
+				fFree.addAndGet ( fReserved - Math.min ( fPushed, fReserved ) );
+
+				if ( !response.isSuccess () )
+				{
+					fLog.warn ( "MR fetch for {} failed with {} {}. Waiting {} ms for retry.", fSub.getSubscriberId (), response.getStatusCode (), response.getStatusText (), fBackoffMs );
+
+					final long untilNanos = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos ( fBackoffMs );
+					long remaining;
+					while ( !fClose && ( remaining = untilNanos - System.nanoTime () ) > 0 )
+					{
+						LockSupport.parkNanos ( this, remaining );
+					}
+				}
+			}
+		}
+
+		private final OnapMsgRouterSubscriber fSub;
+
+		// the current fetch's reservation and the messages it has queued (used only on this thread)
+		private int fReserved;
+		private int fPushed;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 
@@ -291,9 +292,24 @@ public class OnapMsgRouterSubscriber
 		 */
 		public OnapMsgRouterSubscriber build ()
 		{
-			return new OnapMsgRouterSubscriber ( this );
+			return new OnapMsgRouterSubscriber ( this, fSubId, null );
 		}
 
+		/**
+		 * Build a consumer group member with the given subscriber ID and a shared HTTP client.
+		 * @param subId the member's subscriber ID
+		 * @param httpClient the HTTP client to share, or null
+		 * @return a new subscriber
+		 */
+		OnapMsgRouterSubscriber buildMember ( String subId, OkHttpClient httpClient )
+		{
+			return new OnapMsgRouterSubscriber ( this, subId, httpClient );
+		}
+
+		String getSubscriberId () { return fSubId; }
+		long getServerWaitMs () { return fServerWaitMs; }
+		int getMaxEventsPerFetch () { return fMaxEventsPerFetch; }
+
 		private String fSubGroup = null;
 		private String fSubId = null;
 		private long fServerWaitMs = 15000L;	// proactively make sure this caller does something reasonable
@@ -323,6 +339,15 @@ public class OnapMsgRouterSubscriber
 	}
 
 	public OnapMrFetchResponse fetch ( long waitAtServerMs, int maxEventsToFetch )
+	{
+		return fetch ( waitAtServerMs, maxEventsToFetch, OnapMrFetchResponse::new );
+	}
+
+	/**
+	 * Fetch into a response created by the given factory, which is called with the HTTP status
+	 * code and text of a successful reply before the response body is parsed into it.
+	 */
+	OnapMrFetchResponse fetch ( long waitAtServerMs, int maxEventsToFetch, BiFunction<Integer,String,OnapMrFetchResponse> responseFactory )
 	{
 		// if not specified explicitly in this call, use instance settings
 		if ( waitAtServerMs < 0L )
@@ -368,7 +393,7 @@ public class OnapMsgRouterSubscriber
 				if ( HttpHelper.isSuccess ( statusCode ) )
 				{
 					// process the response body into strings
-					final OnapMrFetchResponse fetchResponse = new OnapMrFetchResponse ( statusCode, statusText );
+					final OnapMrFetchResponse fetchResponse = responseFactory.apply ( statusCode, statusText );
 					fResponseParser.parseResponseBody ( response.body (), fetchResponse );
 					return fetchResponse;
 				}
@@ -462,6 +487,8 @@ public class OnapMsgRouterSubscriber
 	}
 
 	Clock getClock () { return fClock; }
+	OkHttpClient getHttpClient () { return fHttpClient; }
+	String getSubscriberId () { return fSubId; }
 
 	private final HostSelector fHosts;
 	private final String fTopic;
@@ -480,7 +507,7 @@ public class OnapMsgRouterSubscriber
 
 	private final Logger fLog;
 
-	private OnapMsgRouterSubscriber ( Builder builder )
+	private OnapMsgRouterSubscriber ( Builder builder, String subId, OkHttpClient httpClient )
 	{
 		if ( builder.getHosts().size () < 1 ) throw new IllegalArgumentException ( "No hosts provided." );
 
@@ -499,7 +526,7 @@ public class OnapMsgRouterSubscriber
 		fSubGroup = builder.fSubGroup;
 		if ( fSubGroup == null || fSubGroup.length () < 1 ) throw new IllegalArgumentException ( "No subscription group provided." );
 
-		fSubId = builder.fSubId == null ? UUID.randomUUID ().toString () : builder.fSubId;
+		fSubId = subId == null ? UUID.randomUUID ().toString () : subId;
 
 		fServerWaitMs = builder.fServerWaitMs;
 		fMaxEventsPerFetch = builder.fMaxEventsPerFetch;
@@ -511,22 +538,15 @@ public class OnapMsgRouterSubscriber
 
 		fClock = builder.getClock ();
 
-		// setup our HTTP client
-		OkHttpClient.Builder okb = new OkHttpClient.Builder ()
-			.connectTimeout ( 15, TimeUnit.SECONDS )
-			.writeTimeout ( 15, TimeUnit.SECONDS )
-			.readTimeout ( 30, TimeUnit.SECONDS )
-		;
-
-		// setup proxy
-		final Proxy proxy = builder.getProxy ();
-		if ( proxy != null )
+		// setup our HTTP client, unless we're sharing one
+		if ( httpClient != null )
 		{
-			okb = okb.proxy ( proxy );
+			fHttpClient = httpClient;
+		}
+		else
+		{
+			fHttpClient = buildHttpClient ( builder );
 		}
-		fHttpClient = okb
-			.build ()
-		;
 
 		fResponseParser = builder.fResponseParser;
 		if ( fResponseParser == null )
@@ -543,4 +563,21 @@ public class OnapMsgRouterSubscriber
 			.toString ()
 		;
 	}
+
+	private static OkHttpClient buildHttpClient ( Builder builder )
+	{
+		OkHttpClient.Builder okb = new OkHttpClient.Builder ()
+			.connectTimeout ( 15, TimeUnit.SECONDS )
+			.writeTimeout ( 15, TimeUnit.SECONDS )
+			.readTimeout ( 30, TimeUnit.SECONDS )
+		;
+
+		// setup proxy
+		final Proxy proxy = builder.getProxy ();
+		if ( proxy != null )
+		{
+			okb = okb.proxy ( proxy );
+		}
+		return okb.build ();
+	}
 }
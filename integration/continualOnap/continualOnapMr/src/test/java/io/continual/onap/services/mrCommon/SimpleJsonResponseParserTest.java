@@ -6,6 +6,8 @@ import org.junit.Test;
 
 import io.continual.onap.services.subscriber.OnapMrFetchResponse;
 import junit.framework.TestCase;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
 
 public class SimpleJsonResponseParserTest extends TestCase
 {
@@ -36,6 +38,25 @@ public class SimpleJsonResponseParserTest extends TestCase
 		assertEquals ( 0, resp.readyCount () );
 	}
 
+	@Test
+	public void testResponseBodyStream () throws IOException, InterruptedException
+	{
+		final OnapMrFetchResponse resp = new OnapMrFetchResponse ( 200, "OK" );
+		new SimpleJsonResponseParser().parseResponseBody ( ResponseBody.create ( kJson, " [ \"a\", \"b\\\"c\" ]" ), resp );
+		assertEquals ( 2, resp.readyCount () );
+		assertEquals ( "a", resp.consumeNext ( 10 ) );
+		assertEquals ( "b\"c", resp.consumeNext ( 10 ) );
+		assertTrue ( resp.isEof () );
+	}
+
+	@Test
+	public void testEmptyResponseBody () throws IOException
+	{
+		final OnapMrFetchResponse resp = new OnapMrFetchResponse ( 200, "OK" );
+		new SimpleJsonResponseParser().parseResponseBody ( ResponseBody.create ( kJson, "" ), resp );
+		assertTrue ( resp.isEof () );
+	}
+
 	@Test
 	public void testVariousBrokenStrings ()
 	{
@@ -54,6 +75,8 @@ public class SimpleJsonResponseParserTest extends TestCase
 		}
 	}
 
+	private static final MediaType kJson = MediaType.get ( "application/json" );
+
 	private static final String[] kBrokenStrings =
 	{
 		"[",
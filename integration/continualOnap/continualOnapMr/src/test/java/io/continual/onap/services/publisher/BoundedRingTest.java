@@ -0,0 +1,141 @@
+package io.continual.onap.services.publisher;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class BoundedRingTest extends TestCase
+{
+	@Test
+	public void testCapacityAndOrder ()
+	{
+		// the slot array rounds up to 4, but the ring holds exactly 3
+		final BoundedRing<Integer> ring = new BoundedRing<> ( 3 );
+		assertEquals ( 3, ring.capacity () );
+		assertNull ( ring.poll () );
+		assertNull ( ring.peek () );
+
+		for ( int i=0; i<3; i++ )
+		{
+			assertTrue ( ring.offer ( i ) );
+		}
+		assertFalse ( ring.offer ( 3 ) );
+		assertEquals ( 3, ring.size () );
+
+		assertEquals ( Integer.valueOf ( 0 ), ring.peek () );
+		assertEquals ( Integer.valueOf ( 0 ), ring.poll () );
+		assertTrue ( ring.offer ( 3 ) );
+		assertFalse ( ring.offer ( 4 ) );
+
+		final List<Integer> out = new ArrayList<> ();
+		assertEquals ( 2, ring.drainTo ( out, 2 ) );
+		assertEquals ( 1, ring.drainTo ( out, 10 ) );
+		assertEquals ( 0, ring.size () );
+		for ( int i=0; i<3; i++ )
+		{
+			assertEquals ( Integer.valueOf ( i+1 ), out.get ( i ) );
+		}
+	}
+
+	@Test
+	public void testSingleItemRing ()
+	{
+		final BoundedRing<Integer> ring = new BoundedRing<> ( 1 );
+		assertEquals ( 1, ring.capacity () );
+		assertTrue ( ring.offer ( 1 ) );
+		assertFalse ( ring.offer ( 2 ) );
+		assertEquals ( Integer.valueOf ( 1 ), ring.poll () );
+		assertTrue ( ring.offer ( 2 ) );
+		assertEquals ( 1, ring.size () );
+	}
+
+	@Test
+	public void testConcurrentProducersNeverExceedCapacity () throws InterruptedException
+	{
+		final BoundedRing<Integer> ring = new BoundedRing<> ( 5 );
+		final AtomicInteger maxSeen = new AtomicInteger ( 0 );
+		final List<Thread> threads = new ArrayList<> ();
+		for ( int p=0; p<4; p++ )
+		{
+			threads.add ( new Thread ( () -> {
+				for ( int i=0; i<20000; i++ )
+				{
+					if ( ring.offer ( i ) )
+					{
+						maxSeen.accumulateAndGet ( ring.size (), Math::max );
+					}
+					if ( i % 3 == 0 ) ring.poll ();
+				}
+			} ) );
+		}
+		for ( Thread t : threads ) t.start ();
+		for ( Thread t : threads ) t.join ( 30000 );
+
+		assertTrue ( maxSeen.get () <= 5 );
+		int left = 0;
+		while ( ring.poll () != null ) left++;
+		assertTrue ( left <= 5 );
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumers () throws InterruptedException
+	{
+		final BoundedRing<Integer> ring = new BoundedRing<> ( 64 );
+		final int producers = 4;
+		final int perProducer = 20000;
+		final CountDownLatch done = new CountDownLatch ( producers );
+		final AtomicInteger taken = new AtomicInteger ( 0 );
+		final Set<Integer> seen = new HashSet<> ();
+
+		final List<Thread> threads = new ArrayList<> ();
+		for ( int p=0; p<producers; p++ )
+		{
+			final int base = p * perProducer;
+			threads.add ( new Thread ( () -> {
+				for ( int i=0; i<perProducer; i++ )
+				{
+					while ( !ring.offer ( base + i ) )
+					{
+						Thread.yield ();
+					}
+				}
+				done.countDown ();
+			} ) );
+		}
+		for ( int c=0; c<2; c++ )
+		{
+			threads.add ( new Thread ( () -> {
+				final List<Integer> mine = new ArrayList<> ();
+				while ( taken.get () < producers * perProducer )
+				{
+					final Integer i = ring.poll ();
+					if ( i == null )
+					{
+						Thread.yield ();
+						continue;
+					}
+					mine.add ( i );
+					taken.incrementAndGet ();
+				}
+				synchronized ( seen )
+				{
+					seen.addAll ( mine );
+				}
+			} ) );
+		}
+
+		for ( Thread t : threads ) t.start ();
+		for ( Thread t : threads ) t.join ( 30000 );
+
+		assertEquals ( 0, done.getCount () );
+		assertEquals ( producers * perProducer, taken.get () );
+		assertEquals ( producers * perProducer, seen.size () );
+	}
+}
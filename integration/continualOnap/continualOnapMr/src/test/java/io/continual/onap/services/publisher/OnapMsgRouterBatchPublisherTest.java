@@ -0,0 +1,319 @@
+package io.continual.onap.services.publisher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.continual.onap.services.publisher.OnapMsgRouterBatchPublisher.BufferFullException;
+import io.continual.onap.services.publisher.OnapMsgRouterBatchPublisher.FullBufferPolicy;
+import io.continual.onap.services.publisher.OnapMsgRouterPublisher.Message;
+import junit.framework.TestCase;
+
+public class OnapMsgRouterBatchPublisherTest extends TestCase
+{
+	@Override
+	protected void setUp () throws IOException
+	{
+		fBatches = new ArrayList<> ();
+		fFailuresLeft = new AtomicInteger ( 0 );
+
+		fServer = HttpServer.create ( new InetSocketAddress ( "localhost", 0 ), 0 );
+		fServer.createContext ( "/events/", exchange -> {
+			final int status;
+			if ( fFailuresLeft.getAndDecrement () > 0 )
+			{
+				status = 503;
+			}
+			else
+			{
+				try ( InputStream is = new GZIPInputStream ( exchange.getRequestBody () ) )
+				{
+					final List<Message> batch = parseCambria ( is );
+					synchronized ( fBatches )
+					{
+						fBatches.add ( batch );
+					}
+				}
+				status = 200;
+			}
+			final byte[] reply = "{}".getBytes ( StandardCharsets.UTF_8 );
+			exchange.sendResponseHeaders ( status, reply.length );
+			exchange.getResponseBody ().write ( reply );
+			exchange.close ();
+		} );
+		fServer.start ();
+	}
+
+	@Override
+	protected void tearDown ()
+	{
+		fServer.stop ( 0 );
+	}
+
+	@Test
+	public void testOrderPreservedPerStreamAcrossLanes ()
+	{
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.batchAtMost ( 10 )
+			.batchMaxAgeMs ( 20 )
+			.withInFlightBatches ( 3 )
+			.build ()
+		;
+		pub.start ();
+
+		final int count = 500;
+		for ( int i=0; i<count; i++ )
+		{
+			pub.send ( new Message ( "key" + ( i % 7 ), "" + i ) );
+		}
+		pub.close ();
+
+		final Map<String,Integer> lastByKey = new HashMap<> ();
+		int total = 0;
+		for ( List<Message> batch : batches () )
+		{
+			assertTrue ( batch.size () <= 10 );
+			for ( Message m : batch )
+			{
+				final int val = Integer.parseInt ( m.fData );
+				final Integer prev = lastByKey.put ( m.fStreamName, val );
+				assertTrue ( prev == null || prev < val );
+				total++;
+			}
+		}
+		assertEquals ( count, total );
+		assertEquals ( 0, pub.getPendingCount () );
+	}
+
+	@Test
+	public void testRetryAfterServerFailure ()
+	{
+		fFailuresLeft.set ( 2 );
+
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.batchAtMost ( 5 )
+			.batchMaxAgeMs ( 10 )
+			.retryAfterMs ( 20 )
+			.build ()
+		;
+		pub.start ();
+		for ( int i=0; i<5; i++ )
+		{
+			pub.send ( new Message ( "k", "" + i ) );
+		}
+		pub.close ();
+
+		final List<List<Message>> batches = batches ();
+		assertEquals ( 1, batches.size () );
+		assertEquals ( 5, batches.get ( 0 ).size () );
+		assertEquals ( "0", batches.get ( 0 ).get ( 0 ).fData );
+	}
+
+	@Test
+	public void testRejectWhenFull ()
+	{
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.withBufferCapacity ( 2, FullBufferPolicy.REJECT )
+			.build ()
+		;
+
+		// not started, so nothing drains the buffer
+		pub.send ( new Message ( "k", "0" ) );
+		pub.send ( new Message ( "k", "1" ) );
+		try
+		{
+			pub.send ( new Message ( "k", "2" ) );
+			fail ( "expected a full buffer" );
+		}
+		catch ( BufferFullException x )
+		{
+			// expected
+		}
+
+		// close still sends what was accepted
+		pub.close ();
+		assertEquals ( 2, batches ().get ( 0 ).size () );
+	}
+
+	@Test
+	public void testBlockWithTimeout ()
+	{
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.withBufferCapacity ( 2, FullBufferPolicy.BLOCK )
+			.blockingAtMostMs ( 50 )
+			.build ()
+		;
+
+		pub.send ( new Message ( "k", "0" ) );
+		pub.send ( new Message ( "k", "1" ) );
+		final long startMs = System.currentTimeMillis ();
+		try
+		{
+			pub.send ( new Message ( "k", "2" ) );
+			fail ( "expected a timeout" );
+		}
+		catch ( BufferFullException x )
+		{
+			assertTrue ( System.currentTimeMillis () - startMs >= 45 );
+		}
+		pub.close ();
+	}
+
+	@Test
+	public void testDropOldest ()
+	{
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.withMaxPendingCount ( 4, OnapMsgRouterBatchPublisher.DropPolicy.DROP_OLDEST )
+			.build ()
+		;
+		for ( int i=0; i<10; i++ )
+		{
+			pub.send ( new Message ( "k", "" + i ) );
+		}
+		assertEquals ( 4, pub.getPendingCount () );
+		pub.close ();
+
+		final List<Message> batch = batches ().get ( 0 );
+		assertEquals ( 4, batch.size () );
+		assertEquals ( "6", batch.get ( 0 ).fData );
+		assertEquals ( "9", batch.get ( 3 ).fData );
+	}
+
+	@Test
+	public void testExactCapacity ()
+	{
+		// not a power of 2, and split unevenly across the lanes
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.withMaxPendingCount ( 5, OnapMsgRouterBatchPublisher.DropPolicy.DROP_OLDEST )
+			.build ()
+		;
+		for ( int i=0; i<10; i++ )
+		{
+			pub.send ( new Message ( "k", "" + i ) );
+		}
+		assertEquals ( 5, pub.getPendingCount () );
+		pub.close ();
+
+		final List<Message> batch = batches ().get ( 0 );
+		assertEquals ( 5, batch.size () );
+		assertEquals ( "5", batch.get ( 0 ).fData );
+		assertEquals ( "9", batch.get ( 4 ).fData );
+
+		final OnapMsgRouterBatchPublisher lanes = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.withInFlightBatches ( 3 )
+			.withMaxPendingCount ( 5, OnapMsgRouterBatchPublisher.DropPolicy.DROP_NEWEST )
+			.build ()
+		;
+		for ( int i=0; i<100; i++ )
+		{
+			lanes.send ( new Message ( "key" + i, "" + i ) );
+		}
+		assertEquals ( 5, lanes.getPendingCount () );
+		lanes.close ();
+	}
+
+	@Test
+	public void testNegativeMaxPendingIsUnbounded ()
+	{
+		final OnapMsgRouterBatchPublisher pub = new OnapMsgRouterBatchPublisher.Builder ()
+			.usingPublisher ( publisher () )
+			.batchAtMost ( 10000 )
+			.withMaxPendingCount ( -1, OnapMsgRouterBatchPublisher.DropPolicy.DROP_OLDEST )
+			.build ()
+		;
+
+		// more than the default capacity, and nothing is draining, yet no send waits or drops
+		final int count = 20 * 1024;
+		for ( int i=0; i<count; i++ )
+		{
+			pub.send ( new Message ( "k", "" + i ) );
+		}
+		assertEquals ( count, pub.getPendingCount () );
+		pub.close ();
+
+		int total = 0;
+		for ( List<Message> batch : batches () )
+		{
+			total += batch.size ();
+		}
+		assertEquals ( count, total );
+	}
+
+	private OnapMsgRouterPublisher publisher ()
+	{
+		return OnapMsgRouterPublisher.builder ()
+			.withHost ( "localhost:" + fServer.getAddress ().getPort () )
+			.onTopic ( "TEST-TOPIC" )
+			.defaultHttp ()
+			.waitingAtMost ( 5000L )
+			.build ()
+		;
+	}
+
+	private List<List<Message>> batches ()
+	{
+		synchronized ( fBatches )
+		{
+			return new ArrayList<> ( fBatches );
+		}
+	}
+
+	// read "<keyLen>.<dataLen>.<key><data>\n" records
+	private static List<Message> parseCambria ( InputStream is ) throws IOException
+	{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+		final byte[] buffer = new byte[4096];
+		int len;
+		while ( ( len = is.read ( buffer ) ) > 0 )
+		{
+			baos.write ( buffer, 0, len );
+		}
+		final byte[] bytes = baos.toByteArray ();
+
+		final List<Message> result = new ArrayList<> ();
+		int pos = 0;
+		while ( pos < bytes.length )
+		{
+			int dot = pos;
+			while ( bytes[dot] != '.' ) dot++;
+			final int keyLen = Integer.parseInt ( new String ( bytes, pos, dot - pos, StandardCharsets.UTF_8 ) );
+			pos = dot + 1;
+
+			dot = pos;
+			while ( bytes[dot] != '.' ) dot++;
+			final int dataLen = Integer.parseInt ( new String ( bytes, pos, dot - pos, StandardCharsets.UTF_8 ) );
+			pos = dot + 1;
+
+			final String key = new String ( bytes, pos, keyLen, StandardCharsets.UTF_8 );
+			pos += keyLen;
+			final String data = new String ( bytes, pos, dataLen, StandardCharsets.UTF_8 );
+			pos += dataLen + 1;
+
+			result.add ( new Message ( key, data ) );
+		}
+		return result;
+	}
+
+	private HttpServer fServer;
+	private List<List<Message>> fBatches;
+	private AtomicInteger fFailuresLeft;
+}
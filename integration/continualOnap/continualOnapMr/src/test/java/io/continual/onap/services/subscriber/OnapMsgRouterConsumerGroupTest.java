@@ -0,0 +1,335 @@
+package io.continual.onap.services.subscriber;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+public class OnapMsgRouterConsumerGroupTest extends TestCase
+{
+	@Override
+	protected void setUp () throws IOException
+	{
+		fRequests = new AtomicInteger ( 0 );
+		fInFlight = new AtomicInteger ( 0 );
+		fMaxInFlight = new AtomicInteger ( 0 );
+		fNextMsg = new AtomicInteger ( 0 );
+		fConsumerIds = new HashSet<> ();
+		fLimits = new ArrayList<> ();
+		fHoldMs = 0;
+		fIgnoreLimit = false;
+
+		fServer = HttpServer.create ( new InetSocketAddress ( "localhost", 0 ), 0 );
+		fServer.setExecutor ( Executors.newCachedThreadPool () );
+		fServer.createContext ( "/events/", exchange -> {
+			fRequests.incrementAndGet ();
+			fMaxInFlight.accumulateAndGet ( fInFlight.incrementAndGet (), Math::max );
+
+			// path is /events/<topic>/<group>/<id>
+			final String[] parts = exchange.getRequestURI ().getPath ().split ( "/" );
+			synchronized ( fConsumerIds )
+			{
+				fConsumerIds.add ( parts[4] );
+			}
+
+			// honor the limit argument unless the test wants a misbehaving server
+			int count = kMsgsPerFetch;
+			final String query = exchange.getRequestURI ().getQuery ();
+			if ( query != null )
+			{
+				for ( String arg : query.split ( "&" ) )
+				{
+					if ( arg.startsWith ( "limit=" ) )
+					{
+						final int limit = Integer.parseInt ( arg.substring ( "limit=".length () ) );
+						synchronized ( fLimits )
+						{
+							fLimits.add ( limit );
+						}
+						if ( !fIgnoreLimit ) count = Math.min ( count, limit );
+					}
+				}
+			}
+
+			try
+			{
+				Thread.sleep ( fHoldMs );
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+
+			final StringBuilder sb = new StringBuilder ( "[" );
+			for ( int i=0; i<count; i++ )
+			{
+				if ( i > 0 ) sb.append ( "," );
+				sb.append ( "\"" ).append ( fNextMsg.getAndIncrement () ).append ( "\"" );
+			}
+			sb.append ( "]" );
+
+			final byte[] reply = sb.toString ().getBytes ( StandardCharsets.UTF_8 );
+			exchange.sendResponseHeaders ( 200, reply.length );
+			exchange.getResponseBody ().write ( reply );
+			fInFlight.decrementAndGet ();
+			exchange.close ();
+		} );
+		fServer.start ();
+	}
+
+	@Override
+	protected void tearDown ()
+	{
+		fServer.stop ( 0 );
+	}
+
+	@Test
+	public void testConcurrentLongPolls () throws InterruptedException
+	{
+		fHoldMs = 200;
+
+		final OnapMsgRouterConsumerGroup group = OnapMsgRouterConsumerGroup.builder ()
+			.subscribingWith ( subscriber ().withSubscriberId ( "c" ) )
+			.withConsumers ( 3 )
+			.prefetchAtMost ( 100 )
+			.build ()
+		;
+		group.start ();
+
+		final Set<String> received = new HashSet<> ();
+		final long endBy = System.currentTimeMillis () + 10000;
+		while ( received.size () < 30 && System.currentTimeMillis () < endBy )
+		{
+			final String msg = group.consumeNext ( 100 );
+			if ( msg != null ) received.add ( msg );
+		}
+		group.close ();
+
+		assertEquals ( 30, received.size () );
+		assertTrue ( fMaxInFlight.get () >= 2 );
+
+		final Set<String> expectedIds = new HashSet<> ();
+		expectedIds.add ( "c-0" );
+		expectedIds.add ( "c-1" );
+		expectedIds.add ( "c-2" );
+		synchronized ( fConsumerIds )
+		{
+			assertEquals ( expectedIds, fConsumerIds );
+		}
+	}
+
+	@Test
+	public void testPrefetchIsBounded () throws InterruptedException
+	{
+		final OnapMsgRouterConsumerGroup group = OnapMsgRouterConsumerGroup.builder ()
+			.subscribingWith ( subscriber () )
+			.withConsumers ( 2 )
+			.prefetchAtMost ( 2 * kMsgsPerFetch )
+			.build ()
+		;
+		group.start ();
+
+		// nobody's consuming, so the pollers stop once the queue is full
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( group.readyCount () < 2 * kMsgsPerFetch && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		Thread.sleep ( 200 );
+		assertEquals ( 2 * kMsgsPerFetch, group.readyCount () );
+		final int requests = fRequests.get ();
+		assertTrue ( requests <= 3 );
+
+		// consuming opens room for more fetches (a fetch may have been parked on a full queue)
+		for ( int i=0; i<3*kMsgsPerFetch; i++ )
+		{
+			assertNotNull ( group.consumeNext ( 2000 ) );
+		}
+		final long endBy2 = System.currentTimeMillis () + 5000;
+		while ( fRequests.get () == requests && System.currentTimeMillis () < endBy2 )
+		{
+			Thread.sleep ( 10 );
+		}
+		assertTrue ( fRequests.get () > requests );
+
+		group.close ();
+	}
+
+	@Test
+	public void testDefaultLimitSharesPrefetch () throws InterruptedException
+	{
+		fHoldMs = 200;
+
+		// no recvAtMostEvents setting
+		final OnapMsgRouterConsumerGroup group = OnapMsgRouterConsumerGroup.builder ()
+			.subscribingWith ( baseSubscriber ().withSubscriberId ( "d" ) )
+			.withConsumers ( 3 )
+			.prefetchAtMost ( 3 * kMsgsPerFetch )
+			.build ()
+		;
+		group.start ();
+
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( group.readyCount () < 3 * kMsgsPerFetch && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		group.close ();
+
+		// each member asks for its share of the queue, so they all poll at once
+		assertEquals ( 3 * kMsgsPerFetch, group.readyCount () );
+		assertTrue ( fMaxInFlight.get () >= 2 );
+		synchronized ( fLimits )
+		{
+			assertEquals ( 3, fLimits.size () );
+			for ( int limit : fLimits )
+			{
+				assertEquals ( kMsgsPerFetch, limit );
+			}
+		}
+		synchronized ( fConsumerIds )
+		{
+			assertEquals ( 3, fConsumerIds.size () );
+		}
+	}
+
+	@Test
+	public void testFetchWaitsForLowWaterMark () throws InterruptedException
+	{
+		// each member's share is 8, below the subscriber's limit of 10
+		final int prefetch = 2 * kMsgsPerFetch + kMsgsPerFetch / 2;
+		final int share = prefetch / 3;
+
+		final OnapMsgRouterConsumerGroup group = OnapMsgRouterConsumerGroup.builder ()
+			.subscribingWith ( subscriber () )
+			.withConsumers ( 3 )
+			.prefetchAtMost ( prefetch )
+			.build ()
+		;
+		group.start ();
+
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( group.readyCount () < 2 * kMsgsPerFetch && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		Thread.sleep ( 200 );
+
+		// the room left is below a member's share, so nobody polls for it
+		assertEquals ( 2 * kMsgsPerFetch, group.readyCount () );
+		assertEquals ( 2, fRequests.get () );
+
+		// consuming just short of a share still doesn't start a fetch
+		final int room = prefetch - 2 * kMsgsPerFetch;
+		for ( int i=0; i<share-room-1; i++ )
+		{
+			assertNotNull ( group.consumeNext ( 1000 ) );
+		}
+		Thread.sleep ( 200 );
+		assertEquals ( 2, fRequests.get () );
+
+		// ...but a full share does
+		assertNotNull ( group.consumeNext ( 1000 ) );
+		final long endBy2 = System.currentTimeMillis () + 5000;
+		while ( fRequests.get () < 3 && System.currentTimeMillis () < endBy2 )
+		{
+			Thread.sleep ( 10 );
+		}
+		Thread.sleep ( 200 );
+		group.close ();
+
+		assertEquals ( prefetch, group.readyCount () );
+		synchronized ( fLimits )
+		{
+			assertEquals ( 3, fLimits.size () );
+			assertEquals ( Integer.valueOf ( kMsgsPerFetch ), fLimits.get ( 0 ) );
+			assertEquals ( Integer.valueOf ( kMsgsPerFetch ), fLimits.get ( 1 ) );
+			assertEquals ( Integer.valueOf ( share ), fLimits.get ( 2 ) );
+		}
+	}
+
+	@Test
+	public void testOverDeliveryDoesNotBlock () throws InterruptedException
+	{
+		fIgnoreLimit = true;
+
+		final OnapMsgRouterConsumerGroup group = OnapMsgRouterConsumerGroup.builder ()
+			.subscribingWith ( subscriber () )
+			.withConsumers ( 2 )
+			.prefetchAtMost ( kMsgsPerFetch / 2 )
+			.build ()
+		;
+		group.start ();
+
+		// the server sends more than was asked for; the response still completes
+		final long endBy = System.currentTimeMillis () + 5000;
+		while ( group.readyCount () < kMsgsPerFetch && System.currentTimeMillis () < endBy )
+		{
+			Thread.sleep ( 10 );
+		}
+		Thread.sleep ( 200 );
+		assertEquals ( kMsgsPerFetch, group.readyCount () );
+		assertEquals ( 0, fInFlight.get () );
+		assertEquals ( 1, fRequests.get () );
+
+		// the extra messages count against the room, so no fetch starts until they're consumed and
+		// a member's share (2) is free
+		for ( int i=0; i<kMsgsPerFetch/2+1; i++ )
+		{
+			assertNotNull ( group.consumeNext ( 1000 ) );
+		}
+		Thread.sleep ( 200 );
+		assertEquals ( 1, fRequests.get () );
+
+		assertNotNull ( group.consumeNext ( 1000 ) );
+		final long endBy2 = System.currentTimeMillis () + 5000;
+		while ( fRequests.get () == 1 && System.currentTimeMillis () < endBy2 )
+		{
+			Thread.sleep ( 10 );
+		}
+		assertTrue ( fRequests.get () > 1 );
+
+		group.close ();
+	}
+
+	private OnapMsgRouterSubscriber.Builder subscriber ()
+	{
+		return baseSubscriber ()
+			.recvAtMostEvents ( kMsgsPerFetch )
+		;
+	}
+
+	private OnapMsgRouterSubscriber.Builder baseSubscriber ()
+	{
+		return OnapMsgRouterSubscriber.builder ()
+			.withHost ( "localhost:" + fServer.getAddress ().getPort () )
+			.onTopic ( "TEST-TOPIC" )
+			.inGroup ( "g" )
+			.defaultHttp ()
+			.waitAtServerAtMost ( 100 )
+		;
+	}
+
+	private HttpServer fServer;
+	private AtomicInteger fRequests;
+	private AtomicInteger fInFlight;
+	private AtomicInteger fMaxInFlight;
+	private AtomicInteger fNextMsg;
+	private Set<String> fConsumerIds;
+	private List<Integer> fLimits;
+	private volatile long fHoldMs;
+	private volatile boolean fIgnoreLimit;
+
+	private static final int kMsgsPerFetch = 10;
+}
@@ -106,6 +106,7 @@ public class OnapMrSink implements Sink
 				.usingPublisher ( pubBuilder.build () )
 				.batchAtMost ( config.optInt ( "batchSizeAtMost", 1000 ) )
 				.batchMaxAgeMs ( config.optInt ( "batchMaxAgeMs", 1000 ) )
+				.withInFlightBatches ( config.optInt ( "inFlightBatches", 1 ) )
 				.withMaxPendingCount ( config.optInt ( "maxPendingCount", 100*1000 ), DropPolicy.fromSettingString ( config.optString ( "maxPendingDropPolicy" ) ) )
 				.build ()
 			;
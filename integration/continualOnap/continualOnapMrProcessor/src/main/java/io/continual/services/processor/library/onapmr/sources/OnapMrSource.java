@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.onap.services.subscriber.OnapMrFetchResponse;
+import io.continual.onap.services.subscriber.OnapMsgRouterConsumerGroup;
 import io.continual.onap.services.subscriber.OnapMsgRouterSubscriber;
 import io.continual.services.processor.config.readers.ConfigLoadContext;
 import io.continual.services.processor.engine.library.sources.BasicSource;
@@ -88,6 +89,7 @@ public class OnapMrSource extends BasicSource
 				.usingProxy ( ee.evaluateText ( config.optString ( "proxy", null ) ) )
 				.inGroup ( ee.evaluateText ( config.getString ( "subGroup" ) ) )
 				.withSubscriberId ( ee.evaluateText ( config.optString ( "subId", null ) ) )
+				.recvAtMostEvents ( config.optInt ( "recvAtMostEvents", OnapMsgRouterSubscriber.Builder.NO_RECV_LIMIT ) )
 			;
 
 			// auth...
@@ -103,13 +105,30 @@ public class OnapMrSource extends BasicSource
 				subBuilder.withApiKey ( apiKey, ee.evaluateText (  config.optString ( "apiSecret", null ) ) );
 			}
 
-			
-			fSub = subBuilder.build ();
+			// with more than one consumer, run a consumer group with concurrent long-polls
+			final int consumers = config.optInt ( "consumers", 1 );
+			if ( consumers > 1 )
+			{
+				fGroup = OnapMsgRouterConsumerGroup.builder ()
+					.subscribingWith ( subBuilder )
+					.withConsumers ( consumers )
+					.prefetchAtMost ( config.optInt ( "prefetch", 1000 ) )
+					.build ()
+				;
+				fSub = null;
+			}
+			else
+			{
+				fGroup = null;
+				fSub = subBuilder.build ();
+			}
+			fGroupStarted = false;
+
 			fPending = new LinkedList<> ();
 			fRefillSize = Math.max ( 1, config.optInt ( "refillBelow", 1 ) );
 
 			final boolean background = config.optBoolean ( "backgroundFetch", true );
-			if ( background )
+			if ( background && fGroup == null )
 			{
 				fExecutorService = Executors.newSingleThreadExecutor ();
 			}
@@ -125,7 +144,19 @@ public class OnapMrSource extends BasicSource
 		}
 	}
 
+	@Override
+	public synchronized void close () throws IOException
+	{
+		if ( fGroup != null )
+		{
+			fGroup.close ();
+		}
+		super.close ();
+	}
+
 	private final OnapMsgRouterSubscriber fSub;
+	private final OnapMsgRouterConsumerGroup fGroup;
+	private boolean fGroupStarted;
 	private final LinkedList<String> fPending;
 	private final int fRefillSize;
 
@@ -137,6 +168,18 @@ public class OnapMrSource extends BasicSource
 	@Override
 	protected synchronized MessageAndRouting internalGetNextMessage ( StreamProcessingContext spc ) throws IOException, InterruptedException
 	{
+		// in group mode, the group's pollers keep the prefetch queue filled
+		if ( fGroup != null )
+		{
+			if ( !fGroupStarted )
+			{
+				fGroup.start ();
+				fGroupStarted = true;
+			}
+			final String str = fGroup.consumeNext ( 0 );
+			return str == null ? null : makeDefRoutingMessage ( toMessage ( str ) );
+		}
+
 		// if we don't have a pending request and we're ready to reload, fire up a request
 		if ( ( fPendingRequest == null || fPendingRequest.isDone () ) && fPending.size () < fRefillSize )
 		{
@@ -148,25 +191,29 @@ public class OnapMrSource extends BasicSource
 		if ( fPending.size () > 0 )
 		{
 			final String str = fPending.remove ();
-
-			JSONObject data;
-			try
-			{
-				data = new JSONObject ( new CommentedJsonTokener ( str ) );
-			}
-			catch ( JSONException x )
-			{
-				data = new JSONObject ()
-					.put ( "data", str )
-				;
-			}
-			return makeDefRoutingMessage ( Message.adoptJsonAsMessage ( data ) );
+			return makeDefRoutingMessage ( toMessage ( str ) );
 		}
 
 		// otherwise nothing available now
 		return null;
 	}
 
+	private static Message toMessage ( String str )
+	{
+		JSONObject data;
+		try
+		{
+			data = new JSONObject ( new CommentedJsonTokener ( str ) );
+		}
+		catch ( JSONException x )
+		{
+			data = new JSONObject ()
+				.put ( "data", str )
+			;
+		}
+		return Message.adoptJsonAsMessage ( data );
+	}
+
 	protected synchronized void addMessageToPending ( String msg )
 	{
 		fPending.add ( msg );
@@ -11,6 +11,7 @@ import io.continual.services.model.core.Model.RelationType;
 import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectList;
+import io.continual.services.model.core.ModelPathList;
 import io.continual.services.model.core.ModelPathListPage;
 import io.continual.services.model.core.ModelQuery;
 import io.continual.services.model.core.ModelRelation;
@@ -97,6 +98,30 @@ public class ModelConnection
 		return fModel.startTraversal ();
 	}
 
+	/**
+	 * Execute a query in this connection's request context
+	 * @param q
+	 * @return a list of objects
+	 * @throws ModelRequestException
+	 * @throws ModelServiceException
+	 */
+	public ModelObjectList<BasicModelObject> execute ( ModelQuery q ) throws ModelRequestException, ModelServiceException
+	{
+		return q.execute ( fContext );
+	}
+
+	/**
+	 * Execute a traversal in this connection's request context
+	 * @param t
+	 * @return a list of paths
+	 * @throws ModelRequestException
+	 * @throws ModelServiceException
+	 */
+	public ModelPathList execute ( ModelTraversal t ) throws ModelRequestException, ModelServiceException
+	{
+		return t.execute ( fContext );
+	}
+
 	public ModelConnection createIndex ( String field ) throws ModelRequestException, ModelServiceException
 	{
 		fModel.createIndex ( field );
@@ -0,0 +1,187 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+
+/**
+ * Runs a read for each item in a collection on a shared, bounded pool of threads. This is the fallback
+ * for models that don't provide their own bulk reads, and is also used to evaluate filters over a set
+ * of objects.<br>
+ * <br>
+ * Work submitted from a thread in the pool runs on that thread, so nested bulk reads can't starve the pool.
+ * The pool's threads are daemon threads and exit after a short idle period, so the pool never holds the
+ * JVM open or keeps threads around between bursts of reads.
+ */
+public class BulkReads
+{
+	/**
+	 * A read for a single item
+	 * @param <T> the item type
+	 * @param <R> the result type
+	 */
+	public interface ItemReader<T,R>
+	{
+		/**
+		 * Read the given item
+		 * @param item
+		 * @return a result, or null to omit the item from the result map
+		 * @throws ModelServiceException
+		 * @throws ModelRequestException
+		 */
+		R read ( T item ) throws ModelServiceException, ModelRequestException;
+	}
+
+	/**
+	 * Read each item, in parallel when worthwhile.
+	 * @param items
+	 * @param reader
+	 * @return a map of item to result, in the order of the given items, omitting null results
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	public static <T,R> Map<T,R> readEach ( Collection<T> items, ItemReader<T,R> reader ) throws ModelServiceException, ModelRequestException
+	{
+		final LinkedHashMap<T,R> result = new LinkedHashMap<> ();
+
+		// small sets and nested calls just run here
+		if ( items.size () < 2 || Thread.currentThread () instanceof BulkReadThread )
+		{
+			for ( T item : items )
+			{
+				final R r = reader.read ( item );
+				if ( r != null ) result.put ( item, r );
+			}
+			return result;
+		}
+
+		// split the items into one chunk per thread, at most
+		final int chunkCount = Math.min ( kThreadCount, items.size () );
+		final int chunkSize = ( items.size () + chunkCount - 1 ) / chunkCount;
+		final ArrayList<List<T>> chunks = new ArrayList<> ();
+		List<T> chunk = null;
+		for ( T item : items )
+		{
+			if ( chunk == null || chunk.size () >= chunkSize )
+			{
+				chunk = new ArrayList<> ( chunkSize );
+				chunks.add ( chunk );
+			}
+			chunk.add ( item );
+		}
+
+		final LinkedList<Future<List<R>>> pending = new LinkedList<> ();
+		for ( List<T> c : chunks )
+		{
+			pending.add ( getExecutor ().submit ( () -> {
+				final ArrayList<R> out = new ArrayList<> ( c.size () );
+				for ( T item : c )
+				{
+					out.add ( reader.read ( item ) );
+				}
+				return out;
+			} ) );
+		}
+
+		try
+		{
+			int chunkIndex = 0;
+			for ( Future<List<R>> f : pending )
+			{
+				final List<T> in = chunks.get ( chunkIndex++ );
+				final List<R> out = f.get ();
+				for ( int i=0; i<in.size (); i++ )
+				{
+					final R r = out.get ( i );
+					if ( r != null ) result.put ( in.get ( i ), r );
+				}
+			}
+			return result;
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread ().interrupt ();
+			throw new ModelServiceException ( e );
+		}
+		catch ( ExecutionException e )
+		{
+			final Throwable cause = e.getCause ();
+			if ( cause instanceof ModelRequestException ) throw (ModelRequestException) cause;
+			if ( cause instanceof ModelServiceException ) throw (ModelServiceException) cause;
+			throw new ModelServiceException ( cause );
+		}
+		finally
+		{
+			// stop any work we're no longer waiting for
+			for ( Future<List<R>> f : pending )
+			{
+				f.cancel ( true );
+			}
+		}
+	}
+
+	private static final int kThreadCount = Math.max ( 4, Math.min ( 64, Runtime.getRuntime ().availableProcessors () * 4 ) );
+	private static final long kIdleThreadTimeoutMs = 30 * 1000L;
+	private static ExecutorService sfExecutor = null;
+
+	private static class BulkReadThread extends Thread
+	{
+		BulkReadThread ( Runnable r, String name )
+		{
+			super ( r, name );
+			setDaemon ( true );
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor ()
+	{
+		if ( sfExecutor == null )
+		{
+			final AtomicInteger threadNum = new AtomicInteger ( 0 );
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor ( kThreadCount, kThreadCount,
+				kIdleThreadTimeoutMs, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable> (),
+				new ThreadFactory ()
+				{
+					@Override
+					public Thread newThread ( Runnable r )
+					{
+						return new BulkReadThread ( r, "model-bulk-read-" + threadNum.incrementAndGet () );
+					}
+				}
+			);
+			executor.allowCoreThreadTimeOut ( true );
+			sfExecutor = executor;
+		}
+		return sfExecutor;
+	}
+}
@@ -17,6 +17,9 @@
 package io.continual.services.model.core;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
 
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.iam.access.AccessControlList;
@@ -183,6 +186,45 @@ public interface Model extends ModelCapabilities, Closeable, Service
 	 */
 	<T,K> T load ( ModelRequestContext context, Path objectPath, ModelObjectFactory<T,K> factory, K userContext ) throws ModelItemDoesNotExistException, ModelServiceException, ModelRequestException;
 
+	/**
+	 * Load a set of objects. Paths that don't exist are omitted from the result.
+	 * @param context
+	 * @param objectPaths
+	 * @return a map of path to object, ordered as the requested paths
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	default Map<Path,BasicModelObject> loadMany ( ModelRequestContext context, Collection<Path> objectPaths ) throws ModelServiceException, ModelRequestException
+	{
+		return loadMany ( context, objectPaths, new ModelObjectAutoFactory<BasicModelObject,Object> ( BasicModelObject.class ), null );
+	}
+
+	/**
+	 * Load a set of objects using the given factory. Paths that don't exist are omitted from the result.
+	 * The default implementation loads each object on a shared pool of threads. Models that can fetch
+	 * many objects at once should override this.
+	 * @param context
+	 * @param objectPaths
+	 * @param factory
+	 * @param userContext
+	 * @return a map of path to object, ordered as the requested paths
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	default <T,K> Map<Path,T> loadMany ( ModelRequestContext context, Collection<Path> objectPaths, ModelObjectFactory<T,K> factory, K userContext ) throws ModelServiceException, ModelRequestException
+	{
+		return BulkReads.readEach ( objectPaths, p -> {
+			try
+			{
+				return load ( context, p, factory, userContext );
+			}
+			catch ( ModelItemDoesNotExistException x )
+			{
+				return null;
+			}
+		} );
+	}
+
 	/**
 	 * An object updater
 	 */
@@ -400,4 +442,35 @@ public interface Model extends ModelCapabilities, Closeable, Service
 	 * @return a relation selector
 	 */
 	RelationSelector selectRelations ( Path objectPath );
+
+	/**
+	 * Get the relations for a set of objects. The default implementation runs a relation selector
+	 * for each object on a shared pool of threads. Models that can fetch relations for many objects
+	 * at once should override this.
+	 * @param context
+	 * @param objectPaths
+	 * @param named the relation name, or null for any name
+	 * @param inbound include inbound relations
+	 * @param outbound include outbound relations
+	 * @return a map of path to relations, ordered as the requested paths
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	default Map<Path,ModelRelationList> getRelationsOfMany ( ModelRequestContext context, Collection<Path> objectPaths, String named, boolean inbound, boolean outbound ) throws ModelServiceException, ModelRequestException
+	{
+		return BulkReads.readEach ( objectPaths, p -> {
+			// read the list here so the work happens on the pool
+			final LinkedList<ModelRelationInstance> relns = new LinkedList<> ();
+			for ( ModelRelationInstance mri : selectRelations ( p )
+				.named ( named )
+				.inbound ( inbound )
+				.outbound ( outbound )
+				.getRelations ( context )
+			)
+			{
+				relns.add ( mri );
+			}
+			return ModelRelationList.simpleListOfCollection ( relns );
+		} );
+	}
 }
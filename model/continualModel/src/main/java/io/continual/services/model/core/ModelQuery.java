@@ -96,7 +96,7 @@ public interface ModelQuery
 	 */
 	default ModelQuery pageLimit ( PageRequest pr )
 	{
-		return pageLimit ( pr.getRequestedPage (), pr.getRequestedPageSize () );
+		return pageLimit ( pr.getRequestedPageSize (), pr.getRequestedPage () );
 	}
 	
 	/**
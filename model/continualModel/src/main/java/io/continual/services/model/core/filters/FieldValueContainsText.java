@@ -1,11 +1,14 @@
 package io.continual.services.model.core.filters;
 
+import org.json.JSONObject;
+
 import io.continual.services.model.core.ModelItemFilter;
 import io.continual.services.model.core.data.ModelObject;
 import io.continual.services.model.impl.common.ModelObjectExprSource;
 import io.continual.util.data.exprEval.ExpressionEvaluator;
+import io.continual.util.data.json.JsonSerialized;
 
-public class FieldValueContainsText implements ModelItemFilter<ModelObject>
+public class FieldValueContainsText implements ModelItemFilter<ModelObject>, JsonSerialized
 {
 	public FieldValueContainsText ( String field, String text )
 	{
@@ -13,6 +16,21 @@ public class FieldValueContainsText implements ModelItemFilter<ModelObject>
 		fInnerText = text;
 	}
 
+	public FieldValueContainsText ( JSONObject data )
+	{
+		this ( data.getString ( "field" ), data.optString ( "text", null ) );
+	}
+
+	@Override
+	public JSONObject toJson ()
+	{
+		return new JSONObject ()
+			.put ( "class", FieldValueContainsText.class.getSimpleName () )
+			.put ( "field", fField )
+			.put ( "text", fInnerText )
+		;
+	}
+
 	@Override
 	public boolean matches ( ModelObject obj )
 	{
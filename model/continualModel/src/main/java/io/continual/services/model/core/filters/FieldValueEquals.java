@@ -1,11 +1,14 @@
 package io.continual.services.model.core.filters;
 
+import org.json.JSONObject;
+
 import io.continual.services.model.core.ModelItemFilter;
 import io.continual.services.model.core.data.ModelObject;
 import io.continual.services.model.impl.common.ModelObjectExprSource;
 import io.continual.util.data.exprEval.ExpressionEvaluator;
+import io.continual.util.data.json.JsonSerialized;
 
-public class FieldValueEquals implements ModelItemFilter<ModelObject>
+public class FieldValueEquals implements ModelItemFilter<ModelObject>, JsonSerialized
 {
 	public FieldValueEquals ( String field, Object val )
 	{
@@ -13,6 +16,21 @@ public class FieldValueEquals implements ModelItemFilter<ModelObject>
 		fValue = val;
 	}
 
+	public FieldValueEquals ( JSONObject data )
+	{
+		this ( data.getString ( "field" ), data.isNull ( "value" ) ? null : data.get ( "value" ) );
+	}
+
+	@Override
+	public JSONObject toJson ()
+	{
+		return new JSONObject ()
+			.put ( "class", FieldValueEquals.class.getSimpleName () )
+			.put ( "field", fField )
+			.put ( "value", fValue == null ? JSONObject.NULL : fValue )
+		;
+	}
+
 	@Override
 	public boolean matches ( ModelObject obj )
 	{
@@ -0,0 +1,96 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.impl.changes;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.continual.util.data.json.JsonSerialized;
+import io.continual.util.naming.Path;
+
+/**
+ * A single entry in a model change log.
+ */
+public class ModelChange implements JsonSerialized
+{
+	public enum Operation
+	{
+		CREATE,
+		UPDATE,
+		DELETE
+	}
+
+	public ModelChange ( long sequence, long timestampMs, String modelId, Operation op, Path objectPath )
+	{
+		fSeq = sequence;
+		fTimestampMs = timestampMs;
+		fModelId = modelId;
+		fOp = op;
+		fPath = objectPath;
+	}
+
+	/**
+	 * Read a change from its JSON form
+	 * @param data
+	 * @return a change
+	 * @throws JSONException
+	 * @throws IllegalArgumentException
+	 */
+	public static ModelChange fromJson ( JSONObject data ) throws JSONException, IllegalArgumentException
+	{
+		return new ModelChange (
+			data.getLong ( kSeq ),
+			data.getLong ( kTimestamp ),
+			data.optString ( kModelId, null ),
+			Operation.valueOf ( data.getString ( kOp ) ),
+			Path.fromString ( data.getString ( kPath ) )
+		);
+	}
+
+	@Override
+	public JSONObject toJson ()
+	{
+		return new JSONObject ()
+			.put ( kSeq, fSeq )
+			.put ( kTimestamp, fTimestampMs )
+			.put ( kModelId, fModelId )
+			.put ( kOp, fOp.toString () )
+			.put ( kPath, fPath.toString () )
+		;
+	}
+
+	@Override
+	public String toString () { return toJson ().toString (); }
+
+	public long getSequence () { return fSeq; }
+	public long getTimestampMs () { return fTimestampMs; }
+	public String getModelId () { return fModelId; }
+	public Operation getOperation () { return fOp; }
+	public Path getPath () { return fPath; }
+
+	private final long fSeq;
+	private final long fTimestampMs;
+	private final String fModelId;
+	private final Operation fOp;
+	private final Path fPath;
+
+	private static final String kSeq = "seq";
+	private static final String kTimestamp = "ts";
+	private static final String kModelId = "model";
+	private static final String kOp = "op";
+	private static final String kPath = "path";
+}
@@ -0,0 +1,648 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.impl.changes;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.messaging.ContinualMessage;
+import io.continual.messaging.ContinualMessagePublisher;
+import io.continual.messaging.ContinualMessageSink;
+import io.continual.messaging.ContinualMessageStream;
+import io.continual.services.ServiceContainer;
+import io.continual.services.SimpleService;
+import io.continual.services.model.core.ModelNotificationService;
+import io.continual.services.model.impl.changes.ModelChange.Operation;
+import io.continual.util.naming.Path;
+import io.continual.util.time.Clock;
+
+/**
+ * An ordered, durable log of the changes made to a model. Each change is assigned the next sequence number
+ * when it's reported and queued for a background writer, which appends queued changes to the current log
+ * segment and flushes once per batch. The model's write path only waits if the queue is full. Readers see
+ * a change once it's been written, and can resume from any sequence number they've seen, as long as it's
+ * still within the retained segments. close() writes anything still queued.<br>
+ * <br>
+ * When a publisher is configured, a background thread forwards the log to a topic on that publisher, using
+ * the model ID as the message stream so that consumers see changes in order. The publisher's position is
+ * saved alongside the log, so a restart picks up where it left off. On its first start, the publisher
+ * begins with the oldest change in the log, or with the next new change if "publishFrom" is "latest".<br>
+ * <br>
+ * Segments are JSON lines files named by the sequence number of their first entry.
+ */
+public class ModelChangeLog extends SimpleService implements ModelNotificationService
+{
+	public ModelChangeLog ( ServiceContainer sc, JSONObject config ) throws BuildFailure
+	{
+		this (
+			new File ( sc.getExprEval ( config ).evaluateText ( config.getString ( "dir" ) ) ),
+			sc.getExprEval ( config ).evaluateText ( config.optString ( "modelId", null ) ),
+			config.optInt ( "segmentSize", kDefaultSegmentSize ),
+			config.optInt ( "retainSegments", kDefaultRetainSegments ),
+			sc.getReqdIfNotNull ( config.optString ( "publisher", null ), ContinualMessagePublisher.class ),
+			config.optString ( "topic", kDefaultTopic ),
+			config.optInt ( "maxQueuedChanges", kDefaultMaxQueued ),
+			readPublishFrom ( config.optString ( "publishFrom", kPublishFrom_Earliest ) )
+		);
+	}
+
+	public ModelChangeLog ( File dir, String modelId ) throws BuildFailure
+	{
+		this ( dir, modelId, kDefaultSegmentSize, kDefaultRetainSegments, null, null );
+	}
+
+	public ModelChangeLog ( File dir, String modelId, int segmentSize, int retainSegments, ContinualMessagePublisher pub, String topic ) throws BuildFailure
+	{
+		this ( dir, modelId, segmentSize, retainSegments, pub, topic, kDefaultMaxQueued, false );
+	}
+
+	/**
+	 * Construct a model change log
+	 * @param dir the directory for log segments
+	 * @param modelId the model ID, used as the published message stream
+	 * @param segmentSize the number of changes per segment
+	 * @param retainSegments the number of segments to keep
+	 * @param pub a publisher, or null
+	 * @param topic the topic to publish to
+	 * @param maxQueued the number of changes that can wait for the writer before reporting a change blocks
+	 * @param publishFromLatest if true, a publisher without a saved position skips the changes already in the log
+	 * @throws BuildFailure
+	 */
+	public ModelChangeLog ( File dir, String modelId, int segmentSize, int retainSegments, ContinualMessagePublisher pub, String topic, int maxQueued, boolean publishFromLatest ) throws BuildFailure
+	{
+		fDir = dir;
+		fModelId = modelId;
+		fSegmentSize = Math.max ( 1, segmentSize );
+		fRetainSegments = Math.max ( 1, retainSegments );
+		fPublisher = pub;
+		fTopic = topic == null ? kDefaultTopic : topic;
+		fSegments = new TreeMap<> ();
+		fPublisherThread = null;
+		fMaxQueued = Math.max ( 1, maxQueued );
+		fPublishFromLatest = publishFromLatest;
+		fQueue = new ArrayDeque<> ();
+		fQueueLock = new Object ();
+		fWriteLock = new Object ();
+		fWriterThread = null;
+
+		if ( !fDir.exists () && !fDir.mkdirs () )
+		{
+			throw new BuildFailure ( "Couldn't create change log directory " + fDir.toString () );
+		}
+
+		try
+		{
+			recover ();
+		}
+		catch ( IOException e )
+		{
+			throw new BuildFailure ( e );
+		}
+		fAssignedSeq = fLastSeq;
+	}
+
+	@Override
+	public void onObjectCreate ( Path objectPath )
+	{
+		append ( Operation.CREATE, objectPath );
+	}
+
+	@Override
+	public void onObjectUpdate ( Path objectPath )
+	{
+		append ( Operation.UPDATE, objectPath );
+	}
+
+	@Override
+	public void onObjectDelete ( Path objectPath )
+	{
+		append ( Operation.DELETE, objectPath );
+	}
+
+	/**
+	 * Get the sequence number of the most recent change written to the log, or 0 if there are none.
+	 * @return a sequence number
+	 */
+	public synchronized long getLastSequence ()
+	{
+		return fLastSeq;
+	}
+
+	/**
+	 * Get the sequence number of the oldest change still in the log. If the log is empty, this is
+	 * the sequence number the next change will get.
+	 * @return a sequence number
+	 */
+	public synchronized long getFirstSequence ()
+	{
+		return fSegments.isEmpty () ? fLastSeq + 1 : fSegments.firstKey ();
+	}
+
+	/**
+	 * Read changes starting at the given sequence number. If that sequence number is older than the
+	 * log's retained segments, reading starts at the oldest available change; callers can detect the gap
+	 * by comparing the first change's sequence number to the one they asked for.
+	 * @param fromSeq the first sequence number to return
+	 * @param maxCount the maximum number of changes to return
+	 * @return a list of changes in sequence order, possibly empty
+	 * @throws IOException
+	 */
+	public List<ModelChange> read ( long fromSeq, int maxCount ) throws IOException
+	{
+		final long lastSeq;
+		final List<File> segments;
+		synchronized ( this )
+		{
+			lastSeq = fLastSeq;
+			if ( fromSeq > lastSeq || maxCount < 1 ) return Collections.emptyList ();
+
+			// find the segment that contains fromSeq, and everything after it
+			final Long startKey = fSegments.floorKey ( fromSeq );
+			segments = new ArrayList<> ( ( startKey == null ? fSegments : fSegments.tailMap ( startKey ) ).values () );
+		}
+
+		final LinkedList<ModelChange> result = new LinkedList<> ();
+		for ( File segment : segments )
+		{
+			try ( BufferedReader br = new BufferedReader ( new InputStreamReader ( new FileInputStream ( segment ), StandardCharsets.UTF_8 ) ) )
+			{
+				String line;
+				while ( ( line = br.readLine () ) != null )
+				{
+					final ModelChange mc = parse ( line );
+					if ( mc == null ) continue;
+					if ( mc.getSequence () > lastSeq ) return result;
+					if ( mc.getSequence () < fromSeq ) continue;
+
+					result.add ( mc );
+					if ( result.size () >= maxCount ) return result;
+				}
+			}
+			catch ( FileNotFoundException e )
+			{
+				// the segment was removed by retention while we were reading; move along
+				log.debug ( "Change log segment {} is no longer available.", segment );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Wait until the log has a change after the given sequence number, or the timeout expires.
+	 * @param afterSeq
+	 * @param timeoutMs
+	 * @return true if there are changes after the given sequence number
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitChanges ( long afterSeq, long timeoutMs ) throws InterruptedException
+	{
+		final long endByMs = Clock.now () + timeoutMs;
+		long remainingMs = timeoutMs;
+		while ( fLastSeq <= afterSeq && remainingMs > 0 )
+		{
+			wait ( remainingMs );
+			remainingMs = endByMs - Clock.now ();
+		}
+		return fLastSeq > afterSeq;
+	}
+
+	/**
+	 * Write any queued changes and close the current segment. Further changes re-open the log.
+	 * @throws IOException
+	 */
+	public void close () throws IOException
+	{
+		writeQueued ();
+		synchronized ( this )
+		{
+			if ( fOut != null )
+			{
+				fOut.close ();
+				fOut = null;
+			}
+		}
+	}
+
+	@Override
+	protected void onStartRequested ()
+	{
+		if ( fPublisher != null && fPublisherThread == null )
+		{
+			// the start position is fixed here, so changes reported after start() are always published
+			final long publishedOffset = readPublishedOffset ();
+			fPublisherThread = new Thread ( () -> runPublisher ( publishedOffset ), "model-change-publisher-" + fModelId );
+			fPublisherThread.setDaemon ( true );
+			fPublisherThread.start ();
+		}
+	}
+
+	@Override
+	protected void onStopRequested ()
+	{
+		if ( fPublisherThread != null )
+		{
+			fPublisherThread.interrupt ();
+			fPublisherThread = null;
+		}
+		synchronized ( fQueueLock )
+		{
+			if ( fWriterThread != null )
+			{
+				fWriterThread.interrupt ();
+				fWriterThread = null;
+			}
+		}
+		try
+		{
+			close ();
+		}
+		catch ( IOException e )
+		{
+			log.warn ( "Couldn't close model change log: {}", e.getMessage () );
+		}
+	}
+
+	private final File fDir;
+	private final String fModelId;
+	private final int fSegmentSize;
+	private final int fRetainSegments;
+	private final ContinualMessagePublisher fPublisher;
+	private final String fTopic;
+	private final int fMaxQueued;
+	private final boolean fPublishFromLatest;
+
+	private final TreeMap<Long,File> fSegments;
+	private OutputStream fOut;
+	private long fCurrentSegmentCount;
+	private long fLastSeq;
+
+	// changes waiting for the writer; lock order is fWriteLock, then fQueueLock or this
+	private final ArrayDeque<ModelChange> fQueue;
+	private final Object fQueueLock;
+	private final Object fWriteLock;
+	private long fAssignedSeq;
+	private Thread fWriterThread;
+
+	private Thread fPublisherThread;
+
+	private static final int kDefaultSegmentSize = 10000;
+	private static final int kDefaultRetainSegments = 20;
+	private static final int kDefaultMaxQueued = 10000;
+	private static final String kDefaultTopic = "modelChanges";
+
+	private static final String kPublishFrom_Earliest = "earliest";
+	private static final String kPublishFrom_Latest = "latest";
+
+	private static final String kSegmentPrefix = "changes-";
+	private static final String kSegmentSuffix = ".log";
+	private static final String kPublishedOffsetFile = "published.offset";
+
+	private static final int kPublishBatchSize = 500;
+	private static final long[] kPublishRetryMs = new long[] { 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	private void append ( Operation op, Path objectPath )
+	{
+		synchronized ( fQueueLock )
+		{
+			// wait for the writer if it's too far behind; if interrupted, the change is queued anyway
+			boolean interrupted = false;
+			while ( fQueue.size () >= fMaxQueued && fWriterThread != null && !interrupted )
+			{
+				try
+				{
+					fQueueLock.wait ();
+				}
+				catch ( InterruptedException e )
+				{
+					interrupted = true;
+				}
+			}
+			if ( interrupted ) Thread.currentThread ().interrupt ();
+
+			fQueue.add ( new ModelChange ( ++fAssignedSeq, Clock.now (), fModelId, op, objectPath ) );
+			if ( fWriterThread == null )
+			{
+				fWriterThread = new Thread ( this::runWriter, "model-change-writer-" + fModelId );
+				fWriterThread.setDaemon ( true );
+				fWriterThread.start ();
+			}
+			fQueueLock.notifyAll ();
+		}
+	}
+
+	private void runWriter ()
+	{
+		try
+		{
+			while ( true )
+			{
+				synchronized ( fQueueLock )
+				{
+					while ( fQueue.isEmpty () )
+					{
+						fQueueLock.wait ();
+					}
+				}
+				writeQueued ();
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			// stopped; close() writes whatever is left
+		}
+		finally
+		{
+			synchronized ( fQueueLock )
+			{
+				if ( fWriterThread == Thread.currentThread () ) fWriterThread = null;
+				fQueueLock.notifyAll ();
+			}
+		}
+	}
+
+	/**
+	 * Write the changes queued so far, in order, and flush once.
+	 */
+	private void writeQueued ()
+	{
+		synchronized ( fWriteLock )
+		{
+			final ArrayList<ModelChange> batch;
+			synchronized ( fQueueLock )
+			{
+				if ( fQueue.isEmpty () ) return;
+				batch = new ArrayList<> ( fQueue );
+				fQueue.clear ();
+				fQueueLock.notifyAll ();
+			}
+			writeBatch ( batch );
+		}
+	}
+
+	private synchronized void writeBatch ( List<ModelChange> batch )
+	{
+		long written = fLastSeq;
+		for ( ModelChange mc : batch )
+		{
+			try
+			{
+				if ( fOut == null || fCurrentSegmentCount >= fSegmentSize )
+				{
+					rollSegment ( mc.getSequence () );
+				}
+				fOut.write ( ( mc.toJson ().toString () + "\n" ).getBytes ( StandardCharsets.UTF_8 ) );
+				fCurrentSegmentCount++;
+				written = mc.getSequence ();
+			}
+			catch ( IOException e )
+			{
+				// the model write has already happened, so there's nothing to undo here. Consumers will
+				// see a gap in the sequence numbers.
+				log.warn ( "Couldn't record change {} {} in model change log: {}", mc.getOperation (), mc.getPath (), e.getMessage () );
+			}
+		}
+		try
+		{
+			if ( fOut != null ) fOut.flush ();
+		}
+		catch ( IOException e )
+		{
+			log.warn ( "Couldn't flush model change log: {}", e.getMessage () );
+		}
+
+		fLastSeq = written;
+		notifyAll ();
+	}
+
+	// call with lock held
+	private void rollSegment ( long firstSeq ) throws IOException
+	{
+		if ( fOut != null )
+		{
+			fOut.close ();
+			fOut = null;
+		}
+
+		// continue the last segment if it has room, which happens after a restart
+		if ( !fSegments.isEmpty () && fCurrentSegmentCount < fSegmentSize )
+		{
+			fOut = new BufferedOutputStream ( new FileOutputStream ( fSegments.lastEntry ().getValue (), true ) );
+			return;
+		}
+
+		final File segment = new File ( fDir, String.format ( "%s%020d%s", kSegmentPrefix, firstSeq, kSegmentSuffix ) );
+		fOut = new BufferedOutputStream ( new FileOutputStream ( segment, true ) );
+		fSegments.put ( firstSeq, segment );
+		fCurrentSegmentCount = 0;
+
+		while ( fSegments.size () > fRetainSegments )
+		{
+			final File oldest = fSegments.pollFirstEntry ().getValue ();
+			if ( !oldest.delete () )
+			{
+				log.warn ( "Couldn't remove old model change log segment {}", oldest );
+			}
+		}
+	}
+
+	// call from constructor only
+	private void recover () throws IOException
+	{
+		final File[] files = fDir.listFiles ();
+		if ( files != null )
+		{
+			for ( File f : files )
+			{
+				final String name = f.getName ();
+				if ( name.startsWith ( kSegmentPrefix ) && name.endsWith ( kSegmentSuffix ) )
+				{
+					try
+					{
+						fSegments.put ( Long.parseLong ( name.substring ( kSegmentPrefix.length (), name.length () - kSegmentSuffix.length () ) ), f );
+					}
+					catch ( NumberFormatException e )
+					{
+						log.warn ( "Ignoring unexpected file {} in model change log.", f );
+					}
+				}
+			}
+		}
+
+		fLastSeq = 0;
+		fCurrentSegmentCount = 0;
+		if ( fSegments.isEmpty () ) return;
+
+		// a torn write at the end of the last segment is cut off, then we count what's left
+		final File last = fSegments.lastEntry ().getValue ();
+		truncateTornTail ( last );
+		fLastSeq = fSegments.lastKey () - 1;
+		try ( BufferedReader br = new BufferedReader ( new InputStreamReader ( new FileInputStream ( last ), StandardCharsets.UTF_8 ) ) )
+		{
+			String line;
+			while ( ( line = br.readLine () ) != null )
+			{
+				final ModelChange mc = parse ( line );
+				if ( mc != null )
+				{
+					fLastSeq = mc.getSequence ();
+					fCurrentSegmentCount++;
+				}
+			}
+		}
+	}
+
+	private static void truncateTornTail ( File f ) throws IOException
+	{
+		try ( RandomAccessFile raf = new RandomAccessFile ( f, "rw" ) )
+		{
+			long len = raf.length ();
+			while ( len > 0 )
+			{
+				raf.seek ( len - 1 );
+				if ( raf.read () == '\n' ) break;
+				len--;
+			}
+			if ( len < raf.length () )
+			{
+				log.warn ( "Truncating incomplete entry at the end of model change log segment {}", f );
+				raf.setLength ( len );
+			}
+		}
+	}
+
+	private static ModelChange parse ( String line )
+	{
+		if ( line.length () == 0 ) return null;
+		try
+		{
+			return ModelChange.fromJson ( new JSONObject ( line ) );
+		}
+		catch ( JSONException | IllegalArgumentException e )
+		{
+			log.warn ( "Skipping unreadable model change log entry: {}", line );
+			return null;
+		}
+	}
+
+	private void runPublisher ( long publishedOffset )
+	{
+		final ContinualMessageStream stream = ContinualMessageStream.fromName ( fModelId == null ? ContinualMessageSink.kGeneralMessageStreamName : fModelId );
+		long published = publishedOffset;
+		int failures = 0;
+
+		while ( !Thread.currentThread ().isInterrupted () )
+		{
+			try
+			{
+				if ( !awaitChanges ( published, 1000L ) ) continue;
+
+				final List<ModelChange> changes = read ( published + 1, kPublishBatchSize );
+				if ( changes.isEmpty () ) continue;
+
+				final ArrayList<ContinualMessage> msgs = new ArrayList<> ( changes.size () );
+				for ( ModelChange mc : changes )
+				{
+					msgs.add ( ContinualMessage.builder ()
+						.createdAt ( mc.getTimestampMs () )
+						.withMessageData ( mc.toJson () )
+						.build ()
+					);
+				}
+				fPublisher.getTopic ( fTopic ).send ( stream, msgs );
+
+				published = changes.get ( changes.size () - 1 ).getSequence ();
+				writePublishedOffset ( published );
+				failures = 0;
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+			catch ( IOException e )
+			{
+				final long delayMs = kPublishRetryMs [ Math.min ( failures++, kPublishRetryMs.length - 1 ) ];
+				log.warn ( "Couldn't publish model changes after {}; retrying in {} ms: {}", published, delayMs, e.getMessage () );
+				try
+				{
+					Thread.sleep ( delayMs );
+				}
+				catch ( InterruptedException x )
+				{
+					Thread.currentThread ().interrupt ();
+				}
+			}
+		}
+	}
+
+	private long readPublishedOffset ()
+	{
+		final File f = new File ( fDir, kPublishedOffsetFile );
+		if ( f.exists () )
+		{
+			try
+			{
+				return Long.parseLong ( new String ( Files.readAllBytes ( f.toPath () ), StandardCharsets.UTF_8 ).trim () );
+			}
+			catch ( IOException | NumberFormatException e )
+			{
+				log.warn ( "Couldn't read published offset from {}; starting at the oldest change in the log.", f );
+				return getFirstSequence () - 1;
+			}
+		}
+		return fPublishFromLatest ? getLastSequence () : getFirstSequence () - 1;
+	}
+
+	private static boolean readPublishFrom ( String publishFrom ) throws BuildFailure
+	{
+		if ( publishFrom.equalsIgnoreCase ( kPublishFrom_Latest ) ) return true;
+		if ( publishFrom.equalsIgnoreCase ( kPublishFrom_Earliest ) ) return false;
+		throw new BuildFailure ( "Unknown publishFrom value: " + publishFrom );
+	}
+
+	private void writePublishedOffset ( long seq ) throws IOException
+	{
+		final File f = new File ( fDir, kPublishedOffsetFile );
+		final File tmp = new File ( fDir, kPublishedOffsetFile + ".tmp" );
+		Files.write ( tmp.toPath (), Long.toString ( seq ).getBytes ( StandardCharsets.UTF_8 ) );
+		Files.move ( tmp.toPath (), f.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	private static final Logger log = LoggerFactory.getLogger ( ModelChangeLog.class );
+}
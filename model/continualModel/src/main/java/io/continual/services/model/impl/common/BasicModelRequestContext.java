@@ -16,8 +16,8 @@
 
 package io.continual.services.model.impl.common;
 
-import java.util.HashMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.iam.identity.Identity;
@@ -32,8 +32,8 @@ public class BasicModelRequestContext implements ModelRequestContext
 	{
 		fUser = mrcBuilder.fUser;
 		fCacheControl = CacheControl.READ_AND_WRITE;
-		fObjects = new HashMap<> ();
-		fKnownNotToExist = new TreeSet<> ();
+		fObjects = new ConcurrentHashMap<> ();
+		fKnownNotToExist = new ConcurrentSkipListSet<> ();
 		fSchemaReg = mrcBuilder.fSchemaReg;
 		fNotificationService = mrcBuilder.fNotificationSvc;
 	}
@@ -65,7 +65,14 @@ public class BasicModelRequestContext implements ModelRequestContext
 	@Override
 	public void put ( Path key, Object o )
 	{
-		fObjects.put ( key, o );
+		if ( o == null )
+		{
+			fObjects.remove ( key );
+		}
+		else
+		{
+			fObjects.put ( key, o );
+		}
 		fKnownNotToExist.remove ( key );
 	}
 
@@ -106,6 +113,7 @@ public class BasicModelRequestContext implements ModelRequestContext
 	private final ModelSchemaRegistry fSchemaReg;
 	private final ModelNotificationService fNotificationService;
 
-	private final HashMap<Path,Object> fObjects;
-	private final TreeSet<Path> fKnownNotToExist;
+	// concurrent, as bulk reads may use a context from several threads
+	private final ConcurrentHashMap<Path,Object> fObjects;
+	private final ConcurrentSkipListSet<Path> fKnownNotToExist;
 }
@@ -4,11 +4,17 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import io.continual.services.model.core.ModelItemFilter;
 import io.continual.services.model.core.ModelQuery;
 import io.continual.services.model.core.data.JsonModelObject;
 import io.continual.services.model.core.data.ModelObject;
+import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.util.data.json.JsonPathEval;
+import io.continual.util.data.json.JsonUtil;
 import io.continual.util.naming.Path;
 
 public abstract class SimpleModelQuery implements ModelQuery
@@ -20,6 +26,79 @@ public abstract class SimpleModelQuery implements ModelQuery
 		return this;
 	}
 
+	/**
+	 * Apply a plan produced by toPlan() to the given query. This allows a query built in
+	 * one place to execute in another, e.g. built by a client and executed next to the data.
+	 * 
+	 * @param q the query to setup
+	 * @param plan a plan from toPlan()
+	 * @return the query
+	 * @throws ModelRequestException
+	 */
+	public static ModelQuery applyPlan ( ModelQuery q, JSONObject plan ) throws ModelRequestException
+	{
+		try
+		{
+			final String prefix = plan.optString ( kPlan_PathPrefix, null );
+			if ( prefix != null )
+			{
+				q.withPathPrefix ( Path.fromString ( prefix ) );
+			}
+
+			final JSONArray filters = plan.optJSONArray ( kPlan_Filters );
+			if ( filters != null )
+			{
+				for ( int i=0; i<filters.length (); i++ )
+				{
+					final JSONObject f = filters.getJSONObject ( i );
+					final String op = f.getString ( kPlan_Op );
+					final String key = f.optString ( kPlan_Key, null );
+					switch ( op )
+					{
+						case kOp_JsonPath:
+							q.matchingJsonPath ( f.getString ( kPlan_Value ) );
+							break;
+						case kOp_StringValue:
+							q.withFieldValue ( key, f.isNull ( kPlan_Value ) ? (String) null : f.getString ( kPlan_Value ) );
+							break;
+						case kOp_LongValue:
+							q.withFieldValue ( key, f.getLong ( kPlan_Value ) );
+							break;
+						case kOp_BooleanValue:
+							q.withFieldValue ( key, f.getBoolean ( kPlan_Value ) );
+							break;
+						case kOp_DoubleValue:
+							q.withFieldValue ( key, f.getDouble ( kPlan_Value ) );
+							break;
+						case kOp_Containing:
+							q.withFieldContaining ( key, f.optString ( kPlan_Value, null ) );
+							break;
+						default:
+							throw new ModelRequestException ( "Unknown query filter operation: " + op );
+					}
+				}
+			}
+			return q;
+		}
+		catch ( JSONException | IllegalArgumentException e )
+		{
+			throw new ModelRequestException ( "Couldn't read query plan: " + e.getMessage () );
+		}
+	}
+
+	/**
+	 * Get a serializable plan for this query. The plan carries the path prefix and filters. Ordering
+	 * is given as an arbitrary comparator and paging is left to the executor, so neither is included.
+	 * @return a plan
+	 */
+	public JSONObject toPlan ()
+	{
+		return new JSONObject ()
+			.put ( kPlan_PathPrefix, fPathPrefix.toString () )
+			.put ( kPlan_Filters, JsonUtil.clone ( fFilterPlan ) )
+		;
+	}
+
 	@Override
 	public ModelQuery orderBy ( Comparator<ModelObject> comparator )
 	{
@@ -46,6 +125,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				return JsonPathEval.evaluateJsonPath ( JsonModelObject.modelObjectToJson ( mo ), jsonPath ).size() > 0;
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_JsonPath ).put ( kPlan_Value, jsonPath ) );
 		return this;
 	}
 
@@ -64,6 +144,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				);
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_StringValue ).put ( kPlan_Key, key ).put ( kPlan_Value, val == null ? JSONObject.NULL : val ) );
 		return this;
 	}
 
@@ -78,6 +159,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				return val == ModelObjectExprSource.evalToLong ( mo, key, 0L );
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_LongValue ).put ( kPlan_Key, key ).put ( kPlan_Value, val ) );
 		return this;
 	}
 
@@ -92,6 +174,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				return val == ModelObjectExprSource.evalToBoolean ( mo, key );
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_BooleanValue ).put ( kPlan_Key, key ).put ( kPlan_Value, val ) );
 		return this;
 	}
 
@@ -106,6 +189,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				return val == ModelObjectExprSource.evalToDouble ( mo, key, 0.0 );
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_DoubleValue ).put ( kPlan_Key, key ).put ( kPlan_Value, val ) );
 		return this;
 	}
 
@@ -124,6 +208,7 @@ public abstract class SimpleModelQuery implements ModelQuery
 				return objVal != null && objVal.length () > 0 && objVal.contains ( val );
 			}
 		} );
+		fFilterPlan.put ( new JSONObject ().put ( kPlan_Op, kOp_Containing ).put ( kPlan_Key, key ).put ( kPlan_Value, val == null ? JSONObject.NULL : val ) );
 		return this;
 	}
 
@@ -138,6 +223,20 @@ public abstract class SimpleModelQuery implements ModelQuery
 	int fPageSize = Integer.MAX_VALUE;
 	int fPageNumber = 0;
 	final LinkedList<Filter> fFilters = new LinkedList<> ();
+	final JSONArray fFilterPlan = new JSONArray ();
+
+	protected static final String kPlan_PathPrefix = "pathPrefix";
+	private static final String kPlan_Filters = "filters";
+	private static final String kPlan_Op = "op";
+	private static final String kPlan_Key = "key";
+	private static final String kPlan_Value = "value";
+
+	private static final String kOp_JsonPath = "jsonPath";
+	private static final String kOp_StringValue = "stringValue";
+	private static final String kOp_LongValue = "longValue";
+	private static final String kOp_BooleanValue = "booleanValue";
+	private static final String kOp_DoubleValue = "doubleValue";
+	private static final String kOp_Containing = "containing";
 
 	protected static interface Filter extends ModelItemFilter<ModelObject>
 	{
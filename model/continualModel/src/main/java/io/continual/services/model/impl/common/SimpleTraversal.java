@@ -3,23 +3,37 @@ package io.continual.services.model.impl.common;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import io.continual.builder.Builder;
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.model.core.BulkReads;
 import io.continual.services.model.core.Model;
 import io.continual.services.model.core.ModelItemFilter;
 import io.continual.services.model.core.ModelPathList;
 import io.continual.services.model.core.ModelRelation;
+import io.continual.services.model.core.ModelRelationList;
 import io.continual.services.model.core.ModelRequestContext;
 import io.continual.services.model.core.ModelTraversal;
 import io.continual.services.model.core.data.BasicModelObject;
 import io.continual.services.model.core.data.ModelObject;
 import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.services.model.core.filters.FieldValueEquals;
+import io.continual.util.data.json.JsonSerialized;
+import io.continual.util.data.json.JsonUtil;
+import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.naming.Path;
 
 /**
- * A simple, non-optimized traversal implementation
+ * A simple traversal implementation. Each step works on the whole frontier at once, using the
+ * model's bulk reads for relations and objects.
  */
 public class SimpleTraversal implements ModelTraversal
 {
@@ -28,6 +42,82 @@ public class SimpleTraversal implements ModelTraversal
 		fModel = m;
 		fStart = null;
 		fSteps = new LinkedList<>();
+		fPlanSteps = new JSONArray ();
+		fRemotable = true;
+	}
+
+	/**
+	 * Apply a plan produced by toPlan() to the given traversal. This allows a traversal built in
+	 * one place to execute in another, e.g. built by a client and executed next to the data.
+	 * 
+	 * @param t the traversal to setup
+	 * @param plan a plan from toPlan()
+	 * @return the traversal
+	 * @throws ModelRequestException
+	 */
+	public static ModelTraversal applyPlan ( ModelTraversal t, JSONObject plan ) throws ModelRequestException
+	{
+		try
+		{
+			final TreeSet<Path> start = new TreeSet<> ();
+			for ( String p : JsonVisitor.arrayToList ( plan.getJSONArray ( kPlan_Start ) ) )
+			{
+				start.add ( Path.fromString ( p ) );
+			}
+			t.startWith ( start );
+
+			final JSONArray steps = plan.optJSONArray ( kPlan_Steps );
+			for ( int i=0; steps != null && i<steps.length (); i++ )
+			{
+				final JSONObject step = steps.getJSONObject ( i );
+				final String op = step.getString ( kPlan_Op );
+				switch ( op )
+				{
+					case kOp_Outbound:
+						t.traverseOutbound ( step.getString ( kPlan_Arg ) );
+						break;
+					case kOp_Inbound:
+						t.traverseInbound ( step.getString ( kPlan_Arg ) );
+						break;
+					case kOp_Label:
+						t.labelSet ( step.getString ( kPlan_Arg ) );
+						break;
+					case kOp_Exclude:
+						t.excludeSet ( step.getString ( kPlan_Arg ) );
+						break;
+					case kOp_Filter:
+						t.filterSet ( buildFilter ( step.getJSONObject ( kPlan_Arg ) ) );
+						break;
+					default:
+						throw new ModelRequestException ( "Unknown traversal operation: " + op );
+				}
+			}
+			return t;
+		}
+		catch ( JSONException | IllegalArgumentException e )
+		{
+			throw new ModelRequestException ( "Couldn't read traversal plan: " + e.getMessage () );
+		}
+	}
+
+	/**
+	 * Get a serializable plan for this traversal, if possible. Filters can only be serialized if
+	 * they implement JsonSerialized and live in the standard filters package.
+	 * @return a plan, or null if this traversal can't be serialized
+	 */
+	public JSONObject toPlan ()
+	{
+		if ( !fRemotable || fStart == null ) return null;
+
+		final JSONArray start = new JSONArray ();
+		for ( Path p : fStart )
+		{
+			start.put ( p.toString () );
+		}
+		return new JSONObject ()
+			.put ( kPlan_Start, start )
+			.put ( kPlan_Steps, JsonUtil.clone ( fPlanSteps ) )
+		;
 	}
 
 	@Override
@@ -47,18 +137,16 @@ public class SimpleTraversal implements ModelTraversal
 	@Override
 	public ModelTraversal traverseOutbound ( String relation )
 	{
+		addPlanStep ( kOp_Outbound, relation );
 		fSteps.add ( new Step ()
 		{
 			public void execute ( StepContext sc ) throws ModelRequestException, ModelServiceException
 			{
+				// fetch relations for the whole frontier at once
 				final TreeSet<Path> result = new TreeSet<> ();
-				for ( Path p : sc.fCurrentSet )
+				for ( ModelRelationList relns : fModel.getRelationsOfMany ( sc.fMrc, sc.fCurrentSet, relation, false, true ).values () )
 				{
-					for ( ModelRelation mr : fModel.selectRelations ( p )
-							.named ( relation )
-							.outboundOnly ()
-							.getRelations ( sc.fMrc )
-						)
+					for ( ModelRelation mr : relns )
 					{
 						result.add ( mr.getTo () );
 					}
@@ -72,18 +160,16 @@ public class SimpleTraversal implements ModelTraversal
 	@Override
 	public ModelTraversal traverseInbound ( String relation )
 	{
+		addPlanStep ( kOp_Inbound, relation );
 		fSteps.add ( new Step ()
 		{
 			public void execute ( StepContext sc ) throws ModelRequestException, ModelServiceException
 			{
+				// fetch relations for the whole frontier at once
 				final TreeSet<Path> result = new TreeSet<> ();
-				for ( Path p : sc.fCurrentSet )
+				for ( ModelRelationList relns : fModel.getRelationsOfMany ( sc.fMrc, sc.fCurrentSet, relation, true, false ).values () )
 				{
-					for ( ModelRelation mr : fModel.selectRelations ( p )
-						.named ( relation )
-						.inboundOnly ()
-						.getRelations ( sc.fMrc )
-					)
+					for ( ModelRelation mr : relns )
 					{
 						result.add ( mr.getFrom () );
 					}
@@ -97,6 +183,7 @@ public class SimpleTraversal implements ModelTraversal
 	@Override
 	public ModelTraversal labelSet ( String label )
 	{
+		addPlanStep ( kOp_Label, label );
 		fSteps.add ( new Step ()
 		{
 			public void execute ( StepContext sc ) throws ModelRequestException, ModelServiceException
@@ -112,6 +199,7 @@ public class SimpleTraversal implements ModelTraversal
 	@Override
 	public ModelTraversal excludeSet ( String label )
 	{
+		addPlanStep ( kOp_Exclude, label );
 		fSteps.add ( new Step ()
 		{
 			public void execute ( StepContext sc ) throws ModelRequestException, ModelServiceException
@@ -137,21 +225,26 @@ public class SimpleTraversal implements ModelTraversal
 	@Override
 	public ModelTraversal filterSet ( ModelItemFilter<ModelObject> filter )
 	{
+		if ( filter instanceof JsonSerialized && filter.getClass ().getPackage ().getName ().equals ( kFiltersPackage ) )
+		{
+			addPlanStep ( kOp_Filter, ((JsonSerialized) filter).toJson () );
+		}
+		else
+		{
+			fRemotable = false;
+		}
 		fSteps.add ( new Step ()
 		{
 			public void execute ( StepContext sc ) throws ModelRequestException, ModelServiceException
 			{
-				final TreeSet<Path> newSet = new TreeSet<> ();
-				for ( Path p : sc.fCurrentSet )
-				{
-					final BasicModelObject mo = fModel.load ( sc.fMrc, p );
-					final ModelObject moda = mo.getData ();
-					if ( filter.matches ( moda ) )
-					{
-						newSet.add ( p );
-					}
-				}
-				sc.replaceSet ( newSet );
+				// load the frontier in bulk, then evaluate the filter in parallel. Objects that
+				// no longer exist are dropped from the set.
+				final Map<Path,BasicModelObject> objects = fModel.loadMany ( sc.fMrc, sc.fCurrentSet );
+				final Map<Path,Boolean> matches = BulkReads.readEach ( objects.keySet (), p -> {
+					final ModelObject moda = objects.get ( p ).getData ();
+					return filter.matches ( moda ) ? Boolean.TRUE : null;
+				} );
+				sc.replaceSet ( new TreeSet<> ( matches.keySet () ) );
 			}
 		} );
 		return this;
@@ -181,6 +274,46 @@ public class SimpleTraversal implements ModelTraversal
 	private final Model fModel;
 	private final LinkedList<Step> fSteps;
 	private Set<Path> fStart;
+	private final JSONArray fPlanSteps;
+	private boolean fRemotable;
+
+	private static final String kPlan_Start = "start";
+	private static final String kPlan_Steps = "steps";
+	private static final String kPlan_Op = "op";
+	private static final String kPlan_Arg = "arg";
+
+	private static final String kOp_Outbound = "out";
+	private static final String kOp_Inbound = "in";
+	private static final String kOp_Label = "label";
+	private static final String kOp_Exclude = "exclude";
+	private static final String kOp_Filter = "filter";
+
+	private static final String kFiltersPackage = FieldValueEquals.class.getPackage ().getName ();
+
+	private void addPlanStep ( String op, Object arg )
+	{
+		fPlanSteps.put ( new JSONObject ().put ( kPlan_Op, op ).put ( kPlan_Arg, arg ) );
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ModelItemFilter<ModelObject> buildFilter ( JSONObject data ) throws ModelRequestException
+	{
+		try
+		{
+			// only our own filter classes may be named in a plan
+			return Builder.withBaseClass ( ModelItemFilter.class )
+				.withClassNameInData ()
+				.searchingPath ( kFiltersPackage )
+				.restrictFullClassnames ()
+				.usingData ( data )
+				.build ()
+			;
+		}
+		catch ( BuildFailure e )
+		{
+			throw new ModelRequestException ( "Couldn't build traversal filter: " + e.getMessage () );
+		}
+	}
 
 	private class StepContext
 	{
@@ -1,9 +1,17 @@
 package io.continual.services.model.impl.delegator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,8 +23,10 @@ import io.continual.services.ServiceContainer;
 import io.continual.services.SimpleService;
 import io.continual.services.model.core.Model;
 import io.continual.services.model.core.ModelItemList;
+import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectFactory.ObjectCreateContext;
+import io.continual.services.model.core.ModelObjectList;
 import io.continual.services.model.core.ModelObjectMetadata;
 import io.continual.services.model.core.ModelPathListPage;
 import io.continual.services.model.core.ModelQuery;
@@ -26,12 +36,14 @@ import io.continual.services.model.core.ModelRelationList;
 import io.continual.services.model.core.ModelRequestContext;
 import io.continual.services.model.core.ModelTraversal;
 import io.continual.services.model.core.PageRequest;
+import io.continual.services.model.core.PagingIterWrapper;
 import io.continual.services.model.core.data.ModelObject;
 import io.continual.services.model.core.exceptions.ModelItemDoesNotExistException;
 import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.services.model.core.exceptions.ModelServiceException;
 import io.continual.services.model.impl.common.BaseRelationSelector;
 import io.continual.services.model.impl.common.BasicModelRequestContextBuilder;
+import io.continual.services.model.impl.common.SimpleModelQuery;
 import io.continual.services.model.impl.common.SimpleTraversal;
 import io.continual.services.model.impl.json.CommonDataTransfer;
 import io.continual.services.model.impl.json.CommonJsonDbObjectContainer;
@@ -55,7 +67,7 @@ public class DelegatingModel extends SimpleService implements Model
 	 */
 	public DelegatingModel ( ServiceContainer sc, JSONObject config ) throws JSONException, BuildFailure
 	{
-		this ( config.getString ( "modelId" ), sc.get ( "backingModel", Model.class ) );
+		this ( config.getString ( "modelId" ), sc.get ( "backingModel", Model.class ), config.optInt ( "queryThreads", kDefaultQueryThreads ) );
 	}
 
 	/**
@@ -64,10 +76,29 @@ public class DelegatingModel extends SimpleService implements Model
 	 * @throws BuildFailure 
 	 */
 	public DelegatingModel ( String modelId, Model backingModel ) throws BuildFailure
+	{
+		this ( modelId, backingModel, kDefaultQueryThreads );
+	}
+
+	/**
+	 * Construct a delegating model from basic information
+	 * @param modelId
+	 * @param backingModel
+	 * @param queryThreads the number of threads for running queries against mounted models
+	 * @throws BuildFailure 
+	 */
+	public DelegatingModel ( String modelId, Model backingModel, int queryThreads ) throws BuildFailure
 	{
 		fModelId = modelId;
-		fUserMountTable = new LinkedList<>();
+		fMounts = new MountTrie ();
 		fBackingModel = backingModel == null ? new InMemoryModel ( modelId ) : backingModel;
+
+		final AtomicInteger threadNum = new AtomicInteger ( 0 );
+		fQueryExecutor = Executors.newFixedThreadPool ( Math.max ( 1, queryThreads ), r -> {
+			final Thread t = new Thread ( r, "DelegatingModel " + modelId + " query " + threadNum.incrementAndGet () );
+			t.setDaemon ( true );
+			return t;
+		} );
 	}
 
 	/**
@@ -76,9 +107,9 @@ public class DelegatingModel extends SimpleService implements Model
 	 * @param mm a model mount specification
 	 * @return this model
 	 */
-	public DelegatingModel mount ( ModelMount mm )
+	public synchronized DelegatingModel mount ( ModelMount mm )
 	{
-		fUserMountTable.add ( mm );
+		fMounts = fMounts.with ( mm );
 		return this;
 	}
 
@@ -112,7 +143,8 @@ public class DelegatingModel extends SimpleService implements Model
 	@Override
 	public void close () throws IOException
 	{
-		for ( ModelMount mm : fUserMountTable )
+		fQueryExecutor.shutdown ();
+		for ( ModelMount mm : fMounts.getMounts () )
 		{
 			final Model m = mm.getModel ();
 			log.info ( "Closing " + m.getId () );
@@ -162,18 +194,8 @@ public class DelegatingModel extends SimpleService implements Model
 			//
 			//
 
-			for ( ModelMount um : fUserMountTable )
-			{
-				final Path mp = um.getMountPoint ();
-
-				// is this mount point below the given path prefix?
-				if ( mp.startsWith ( objectPath ) )
-				{
-					return true;
-				}
-			}
-
-			return false;
+			// is any mount point below the given path prefix?
+			return !fMounts.findAtOrBelow ( objectPath ).isEmpty ();
 		}
 		catch ( ModelRequestException e )
 		{
@@ -187,18 +209,11 @@ public class DelegatingModel extends SimpleService implements Model
 		final ModelMount mm = getModelForPath ( prefix );
 		if ( mm.getModel () == this )
 		{
+			// return just the next segment toward each mount point below the given path prefix
 			final LinkedList<Path> result = new LinkedList<>();
-			for ( ModelMount um : fUserMountTable )
+			for ( Name childName : fMounts.getMountChildNames ( prefix ) )
 			{
-				final Path mp = um.getMountPoint ();
-
-				// is this mount point below the given path prefix?
-				if ( mp.startsWith ( prefix ) )
-				{
-					// return just the next segment from the requested segment
-					final Path childPart = mp.makePathWithinParent ( prefix );
-					result.add ( Path.getRootPath ().makeChildItem ( childPart.getSegments ()[0] ) );
-				}
+				result.add ( Path.getRootPath ().makeChildItem ( childName ) );
 			}
 
 			// and also check the backing model
@@ -225,8 +240,7 @@ public class DelegatingModel extends SimpleService implements Model
 	@Override
 	public ModelQuery startQuery () throws ModelRequestException
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return new DelegatingModelQuery ();
 	}
 
 	@Override
@@ -264,18 +278,11 @@ public class DelegatingModel extends SimpleService implements Model
 		//
 		//
 
+		// return just the next segment toward each mount point below the given path prefix
 		final TreeSet<Path> result = new TreeSet<>();
-		for ( ModelMount um : fUserMountTable )
+		for ( Name childName : fMounts.getMountChildNames ( objectPath ) )
 		{
-			final Path mp = um.getMountPoint ();
-
-			// is this mount point below the given path prefix?
-			if ( mp.startsWith ( objectPath ) )
-			{
-				// return just the next segment from the requested segment
-				final Path childPart = mp.makePathWithinParent ( objectPath );
-				result.add ( Path.getRootPath ().makeChildItem ( childPart.getSegments ()[0] ) );
-			}
+			result.add ( Path.getRootPath ().makeChildItem ( childName ) );
 		}
 
 		// work with the backing model...
@@ -349,7 +356,7 @@ public class DelegatingModel extends SimpleService implements Model
 		fBackingModel.setRelationType ( context, relnName, rt );
 
 		// tell the mounted models
-		for ( ModelMount mountEntry : fUserMountTable )
+		for ( ModelMount mountEntry : fMounts.getMounts () )
 		{
 			mountEntry.getModel ().setRelationType ( context, relnName, rt );
 		}
@@ -404,7 +411,7 @@ public class DelegatingModel extends SimpleService implements Model
 	@Override
 	public boolean unrelate ( ModelRequestContext context, String relnId ) throws ModelServiceException, ModelRequestException
 	{
-		for ( ModelMount mountEntry : fUserMountTable )
+		for ( ModelMount mountEntry : fMounts.getMounts () )
 		{
 			if ( mountEntry.getModel ().unrelate ( context, relnId ) )
 			{
@@ -475,30 +482,25 @@ public class DelegatingModel extends SimpleService implements Model
 				{
 					TreeSet<Path> children = new TreeSet<>();
 
-					// find the paths below this one in the mount space
-					for ( ModelMount mmm : fUserMountTable )
+					// find the paths below this one in the mount space:
+					//	mount /foo/bar; object path /foo, then we want /foo/bar
+					//	mount /foo/bar; object path /foo/bar, then we have to ask the model for /'s children
+					//	mount /foo/bar; object path /foo/bar/baz, then we have to ask the model for /bar's children
+
+					for ( Name childName : fMounts.getMountChildNames ( objectPath ) )
 					{
-						// mount /foo/bar; object path /foo, then we want /foo/bar
-						// mount /foo/bar; object path /foo/bar, then we have to ask the model for /'s children
-						// mount /foo/bar; object path /foo/bar/baz, then we have to ask the model for /bar's children
-						
-						if ( mmm.getMountPoint ().startsWith ( objectPath ) && !mmm.getMountPoint ().equals ( objectPath ) )
-						{
-							final Path pInP = mmm.getMountPoint ().makePathWithinParent ( objectPath );
-							final Name childName = pInP.getSegment ( 0 );
-							final Path asChild = objectPath.makeChildItem ( childName );
-							children.add ( asChild );
-						}
-						else if ( objectPath.startsWith ( mmm.getMountPoint () ) )
+						children.add ( objectPath.makeChildItem ( childName ) );
+					}
+
+					final ModelMount mmm = fMounts.findContaining ( objectPath );
+					if ( mmm != null )
+					{
+						for ( Path child : mmm.getModel ().listChildrenOfPath (
+							getDerivedContext ( mmm.getModel (), context ),
+							mmm.getPathWithinModel ( objectPath ) ) )
 						{
-							for ( Path child : mmm.getModel ().listChildrenOfPath (
-								getDerivedContext ( mmm.getModel (), context ),
-								mmm.getPathWithinModel ( objectPath ) ) )
-							{
-								children.add ( mmm.getGlobalPath ( child ) );
-							}
+							children.add ( mmm.getGlobalPath ( child ) );
 						}
-						// else: no overlap
 					}
 
 					// also find any child objects in the backing store
@@ -519,19 +521,156 @@ public class DelegatingModel extends SimpleService implements Model
 		};
 	}
 
+	/**
+	 * A query that's split across the backing model and each mounted model that can hold objects
+	 * under the query's path prefix. The sub-queries run in parallel, each asking for enough results
+	 * to fill the requested page, and their results are merged in order as the caller iterates.
+	 */
+	private class DelegatingModelQuery extends SimpleModelQuery
+	{
+		@Override
+		public <T,K> ModelObjectList<T> execute ( ModelRequestContext context, ModelObjectFactory<T,K> factory, DataAccessor<T> accessor, K userContext ) throws ModelRequestException, ModelServiceException
+		{
+			final Path prefix = getPathPrefix ();
+			final Comparator<ModelObject> orderBy = getOrdering ();
+
+			// each source must supply everything up to the end of the requested page
+			final long pageEnd = (long) getPageSize () * ( (long) getPageNumber () + 1L );
+			final int perSourceLimit = (int) Math.min ( Integer.MAX_VALUE, pageEnd );
+
+			// scatter...
+			final List<Future<ModelObjectList<T>>> futures = new ArrayList<> ();
+			final List<ModelMount> sources = new ArrayList<> ();
+
+			final ModelMount owner = getModelForPath ( prefix );
+			if ( owner.getModel () == DelegatingModel.this )
+			{
+				// the prefix is in the top-level space, so query the backing model as-is
+				futures.add ( startSubQuery ( fBackingModel, prefix, context, orderBy, perSourceLimit, factory, accessor, userContext ) );
+				sources.add ( owner );
+			}
+			else if ( !owner.getMountPoint ().equals ( prefix ) )
+			{
+				// the prefix is inside a mounted model
+				futures.add ( startSubQuery ( owner.getModel (), owner.getPathWithinModel ( prefix ), context, orderBy, perSourceLimit, factory, accessor, userContext ) );
+				sources.add ( owner );
+			}
+			for ( ModelMount mm : fMounts.findAtOrBelow ( prefix ) )
+			{
+				futures.add ( startSubQuery ( mm.getModel (), Path.getRootPath (), context, orderBy, perSourceLimit, factory, accessor, userContext ) );
+				sources.add ( mm );
+			}
+
+			// ...and gather
+			final List<Iterator<ModelObjectAndPath<T>>> results = new ArrayList<> ();
+			for ( int i=0; i<futures.size (); i++ )
+			{
+				final Future<ModelObjectList<T>> f = futures.get ( i );
+				if ( f == null ) continue;
+
+				final ModelObjectList<T> list = awaitSubQuery ( f );
+				if ( list != null )
+				{
+					results.add ( toGlobalPaths ( list.iterator (), sources.get ( i ) ) );
+				}
+			}
+
+			final Comparator<ModelObjectAndPath<T>> mergeOrder = orderBy == null ? null : new Comparator<ModelObjectAndPath<T>> ()
+			{
+				@Override
+				public int compare ( ModelObjectAndPath<T> o1, ModelObjectAndPath<T> o2 )
+				{
+					return orderBy.compare ( accessor.getDataFrom ( o1.getObject () ), accessor.getDataFrom ( o2.getObject () ) );
+				}
+			};
+			final PageRequest pr = new PageRequest ()
+				.withPageSize ( getPageSize () )
+				.startingAtPage ( getPageNumber () )
+			;
+
+			return new ModelObjectList<T> ()
+			{
+				@Override
+				public Iterator<ModelObjectAndPath<T>> iterator ()
+				{
+					return new PagingIterWrapper<> ( new OrderedMergeIterator<> ( results, mergeOrder ), pr );
+				}
+			};
+		}
+
+		private <T,K> Future<ModelObjectList<T>> startSubQuery ( Model model, Path prefix, ModelRequestContext context, Comparator<ModelObject> orderBy, int limit,
+			ModelObjectFactory<T,K> factory, DataAccessor<T> accessor, K userContext ) throws ModelRequestException, ModelServiceException
+		{
+			final ModelQuery q = model.startQuery ();
+			if ( q == null )
+			{
+				log.warn ( "Model {} doesn't support queries; skipping it.", model.getId () );
+				return null;
+			}
+
+			applyPlan ( q, toPlan () );
+			q.withPathPrefix ( prefix );
+			if ( orderBy != null )
+			{
+				q.orderBy ( orderBy );
+			}
+			q.pageLimit ( limit, 0 );
+
+			final ModelRequestContext mrc = model == fBackingModel ? context : getDerivedContext ( model, context );
+			return fQueryExecutor.submit ( () -> q.execute ( mrc, factory, accessor, userContext ) );
+		}
+
+		private <T> ModelObjectList<T> awaitSubQuery ( Future<ModelObjectList<T>> f ) throws ModelRequestException, ModelServiceException
+		{
+			try
+			{
+				return f.get ();
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+				throw new ModelServiceException ( e );
+			}
+			catch ( ExecutionException e )
+			{
+				final Throwable cause = e.getCause ();
+				if ( cause instanceof ModelRequestException ) throw (ModelRequestException) cause;
+				if ( cause instanceof ModelServiceException ) throw (ModelServiceException) cause;
+				throw new ModelServiceException ( cause );
+			}
+		}
+
+		private <T> Iterator<ModelObjectAndPath<T>> toGlobalPaths ( Iterator<ModelObjectAndPath<T>> it, ModelMount mm )
+		{
+			return new Iterator<ModelObjectAndPath<T>> ()
+			{
+				@Override
+				public boolean hasNext () { return it.hasNext (); }
+
+				@Override
+				public ModelObjectAndPath<T> next ()
+				{
+					final ModelObjectAndPath<T> item = it.next ();
+					return ModelObjectAndPath.from ( mm.getGlobalPath ( item.getPath () ), item.getObject () );
+				}
+			};
+		}
+	}
+
 	private final String fModelId;
-	private final LinkedList<ModelMount> fUserMountTable;
+	private volatile MountTrie fMounts;
 	private final Model fBackingModel;
+	private final ExecutorService fQueryExecutor;
+
+	private static final int kDefaultQueryThreads = 8;
 
 	// get the model that owns the given path, which may be the top-level delegating model
 	private ModelMount getModelForPath ( Path modelPath )
 	{
-		for ( ModelMount mountEntry : fUserMountTable )
+		final ModelMount mountEntry = fMounts.findContaining ( modelPath );
+		if ( mountEntry != null )
 		{
-			if ( mountEntry.contains ( modelPath ) )
-			{
-				return mountEntry;
-			}
+			return mountEntry;
 		}
 
 		// this path is in the top-level mount
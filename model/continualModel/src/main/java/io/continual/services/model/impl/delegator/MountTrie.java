@@ -0,0 +1,149 @@
+package io.continual.services.model.impl.delegator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.continual.util.naming.Name;
+import io.continual.util.naming.Path;
+
+/**
+ * An immutable trie of model mounts keyed by mount point segments. Resolving a path costs
+ * its depth rather than the number of mounts. Mounting builds a new trie, so readers never lock.
+ */
+class MountTrie
+{
+	/**
+	 * Construct an empty trie
+	 */
+	MountTrie ()
+	{
+		this ( Collections.<ModelMount>emptyList () );
+	}
+
+	/**
+	 * Construct a trie with the given mounts
+	 * @param mounts
+	 */
+	MountTrie ( List<ModelMount> mounts )
+	{
+		fRoot = new Node ();
+		fMounts = Collections.unmodifiableList ( new ArrayList<> ( mounts ) );
+		for ( ModelMount mm : fMounts )
+		{
+			Node n = fRoot;
+			for ( Name seg : mm.getMountPoint ().getSegments () )
+			{
+				n = n.fChildren.computeIfAbsent ( seg, k -> new Node () );
+			}
+			// the first mount at a given point wins, as it did with a linear scan
+			if ( n.fMount == null )
+			{
+				n.fMount = mm;
+			}
+		}
+	}
+
+	/**
+	 * Build a new trie that includes the given mount
+	 * @param mm
+	 * @return a new trie
+	 */
+	MountTrie with ( ModelMount mm )
+	{
+		final ArrayList<ModelMount> mounts = new ArrayList<> ( fMounts );
+		mounts.add ( mm );
+		return new MountTrie ( mounts );
+	}
+
+	/**
+	 * Get all mounts in the order they were added
+	 * @return a list of mounts
+	 */
+	List<ModelMount> getMounts ()
+	{
+		return fMounts;
+	}
+
+	/**
+	 * Find the deepest mount that contains the given path
+	 * @param path
+	 * @return a mount, or null if no mount contains the path
+	 */
+	ModelMount findContaining ( Path path )
+	{
+		ModelMount result = checkContains ( fRoot.fMount, path, null );
+
+		Node n = fRoot;
+		for ( Name seg : path.getSegments () )
+		{
+			n = n.fChildren.get ( seg );
+			if ( n == null ) break;
+			result = checkContains ( n.fMount, path, result );
+		}
+		return result;
+	}
+
+	/**
+	 * Find the mounts whose mount points are at or below the given path
+	 * @param path
+	 * @return a list of mounts, possibly empty
+	 */
+	List<ModelMount> findAtOrBelow ( Path path )
+	{
+		Node n = fRoot;
+		for ( Name seg : path.getSegments () )
+		{
+			n = n.fChildren.get ( seg );
+			if ( n == null ) return Collections.emptyList ();
+		}
+
+		final ArrayList<ModelMount> result = new ArrayList<> ();
+		collect ( n, result );
+		return result;
+	}
+
+	/**
+	 * Get the names of the children of the given path that lead to (or are) mount points.
+	 * @param path
+	 * @return a list of names, possibly empty
+	 */
+	List<Name> getMountChildNames ( Path path )
+	{
+		Node n = fRoot;
+		for ( Name seg : path.getSegments () )
+		{
+			n = n.fChildren.get ( seg );
+			if ( n == null ) return Collections.emptyList ();
+		}
+		return new ArrayList<> ( n.fChildren.keySet () );
+	}
+
+	private static ModelMount checkContains ( ModelMount candidate, Path path, ModelMount current )
+	{
+		return ( candidate != null && candidate.contains ( path ) ) ? candidate : current;
+	}
+
+	private static void collect ( Node n, List<ModelMount> into )
+	{
+		if ( n.fMount != null )
+		{
+			into.add ( n.fMount );
+		}
+		for ( Node child : n.fChildren.values () )
+		{
+			collect ( child, into );
+		}
+	}
+
+	private static class Node
+	{
+		private final Map<Name,Node> fChildren = new HashMap<> ();
+		private ModelMount fMount = null;
+	}
+
+	private final Node fRoot;
+	private final List<ModelMount> fMounts;
+}
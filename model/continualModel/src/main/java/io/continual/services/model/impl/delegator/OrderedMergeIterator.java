@@ -0,0 +1,105 @@
+package io.continual.services.model.impl.delegator;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merge a set of iterators, each already in order, into a single ordered iteration. Only the
+ * head item of each source is held, so sources are consumed as the merged result is consumed.
+ * Items that compare as equal are delivered in source order. Without a comparator, the sources
+ * are simply concatenated.
+ * @param <T>
+ */
+class OrderedMergeIterator<T> implements Iterator<T>
+{
+	OrderedMergeIterator ( List<Iterator<T>> sources, Comparator<? super T> comparator )
+	{
+		fSources = sources;
+		fComparator = comparator;
+		fCurrentSource = 0;
+
+		if ( comparator != null )
+		{
+			fHeads = new PriorityQueue<> ( Math.max ( 1, sources.size () ), new Comparator<Head<T>> ()
+			{
+				@Override
+				public int compare ( Head<T> o1, Head<T> o2 )
+				{
+					final int result = comparator.compare ( o1.fItem, o2.fItem );
+					return result != 0 ? result : Integer.compare ( o1.fSource, o2.fSource );
+				}
+			} );
+			for ( int i=0; i<sources.size (); i++ )
+			{
+				advance ( i );
+			}
+		}
+		else
+		{
+			fHeads = null;
+		}
+	}
+
+	@Override
+	public boolean hasNext ()
+	{
+		if ( fComparator != null )
+		{
+			return !fHeads.isEmpty ();
+		}
+
+		while ( fCurrentSource < fSources.size () )
+		{
+			if ( fSources.get ( fCurrentSource ).hasNext () ) return true;
+			fCurrentSource++;
+		}
+		return false;
+	}
+
+	@Override
+	public T next ()
+	{
+		if ( !hasNext () )
+		{
+			throw new NoSuchElementException ();
+		}
+
+		if ( fComparator == null )
+		{
+			return fSources.get ( fCurrentSource ).next ();
+		}
+
+		final Head<T> head = fHeads.remove ();
+		advance ( head.fSource );
+		return head.fItem;
+	}
+
+	private void advance ( int source )
+	{
+		final Iterator<T> it = fSources.get ( source );
+		if ( it.hasNext () )
+		{
+			fHeads.add ( new Head<> ( it.next (), source ) );
+		}
+	}
+
+	private static class Head<T>
+	{
+		Head ( T item, int source )
+		{
+			fItem = item;
+			fSource = source;
+		}
+
+		final T fItem;
+		final int fSource;
+	}
+
+	private final List<Iterator<T>> fSources;
+	private final Comparator<? super T> fComparator;
+	private final PriorityQueue<Head<T>> fHeads;
+	private int fCurrentSource;
+}
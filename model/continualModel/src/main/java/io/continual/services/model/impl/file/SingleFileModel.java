@@ -20,6 +20,7 @@ import org.json.JSONObject;
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.services.ServiceContainer;
 import io.continual.services.model.core.Model;
+import io.continual.services.model.core.ModelNotificationService;
 import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectList;
@@ -57,6 +58,7 @@ public class SingleFileModel extends CommonJsonDbModel
 			sc.getExprEval ( config ).evaluateText ( config.getString ( "modelId" ) ),
 			new File ( sc.getExprEval ( config ).evaluateText ( config.getString ( "file" ) ) )
 		);
+		notifying ( sc.getReqdIfNotNull ( config.optString ( "changeLog", null ), ModelNotificationService.class ) );
 	}
 
 	public SingleFileModel ( String modelId, File f ) throws BuildFailure
@@ -586,6 +588,7 @@ public class SingleFileModel extends CommonJsonDbModel
 			while ( toDump > 0L && result.size () > 0 )
 			{
 				result.removeFirst ();
+				toDump--;
 			}
 			while ( result.size () > getPageSize() )
 			{
@@ -1,15 +1,30 @@
 package io.continual.services.model.impl.files;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.services.model.core.Model.RelationType;
@@ -19,17 +34,30 @@ import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.services.model.core.exceptions.ModelServiceException;
 import io.continual.util.data.json.CommentedJsonTokener;
 import io.continual.util.data.json.JsonVisitor;
-import io.continual.util.data.json.JsonVisitor.ItemRenderer;
 import io.continual.util.data.json.JsonVisitor.ValueReader;
 import io.continual.util.naming.Name;
 import io.continual.util.naming.Path;
 
 /**
  * A simple relation manager for the file model.
+ * <p>
+ * Relations are written as records appended to a log and read from a memory-mapped adjacency
+ * index (see RelationIndex) plus the in-memory changes logged since the index was written. Once
+ * enough changes accumulate, or when the manager is closed, the index is rewritten and the log
+ * is cleared. If the process stops between those steps, the log is replayed on the next start,
+ * which is harmless because relations have set semantics.
+ * <p>
+ * Relation directories written by earlier versions (a JSON file per object, direction and name)
+ * are imported on first use. The old files are left in place.
  */
-class FileSysRelnMgr
+class FileSysRelnMgr implements Closeable
 {
 	public FileSysRelnMgr ( File relnDir ) throws BuildFailure
+	{
+		this ( relnDir, kDefaultCompactAfter );
+	}
+
+	public FileSysRelnMgr ( File relnDir, int compactAfter ) throws BuildFailure
 	{
 		fRelnDir = relnDir;
 		if ( !fRelnDir.exists () && !fRelnDir.mkdir () )
@@ -41,6 +69,52 @@ class FileSysRelnMgr
 		{
 			throw new BuildFailure ( relnDir.toString () + " exists and is not a directory." );
 		}
+
+		fIndexFile = new File ( fRelnDir, kIndexFile );
+		fLogFile = new File ( fRelnDir, kLogFile );
+		fCompactAfter = Math.max ( 1, compactAfter );
+		fDelta = new HashMap<> ();
+		fLock = new ReentrantReadWriteLock ();
+
+		try
+		{
+			final boolean legacy = !fIndexFile.exists () && !fLogFile.exists ();
+
+			fIndex = RelationIndex.open ( fIndexFile );
+			fLogRecords = replayLog ();
+			fLog = new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( fLogFile, true ) ) );
+
+			if ( legacy && importLegacyRelations ( fRelnDir, Path.getRootPath () ) > 0 )
+			{
+				compact ();
+			}
+		}
+		catch ( IOException | ModelServiceException x )
+		{
+			throw new BuildFailure ( x );
+		}
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		fLock.writeLock ().lock ();
+		try
+		{
+			if ( !fDelta.isEmpty () )
+			{
+				compact ();
+			}
+			fLog.close ();
+		}
+		catch ( ModelServiceException x )
+		{
+			throw new IOException ( x );
+		}
+		finally
+		{
+			fLock.writeLock ().unlock ();
+		}
 	}
 
 	public void setRelationType ( String relnName, RelationType rt )
@@ -49,24 +123,39 @@ class FileSysRelnMgr
 
 	public ModelRelationInstance relate ( ModelRelation mr ) throws ModelServiceException, ModelRequestException
 	{
-		// not loving having an non-atomic write here, but we're going for simple, not production strength.
-		addToRelnFile ( pathToObjOutDir ( mr.getFrom () ), mr.getName (), mr.getTo () );
-		addToRelnFile ( pathToObjInDir ( mr.getTo () ), mr.getName (), mr.getFrom () );
-		return ModelRelationInstance.from ( mr );
+		fLock.writeLock ().lock ();
+		try
+		{
+			if ( !exists ( mr ) )
+			{
+				appendToLog ( kOp_Relate, mr );
+				applyToDelta ( mr, true );
+				maybeCompact ();
+			}
+			return ModelRelationInstance.from ( mr );
+		}
+		finally
+		{
+			fLock.writeLock ().unlock ();
+		}
 	}
 
 	public boolean unrelate ( ModelRelation reln ) throws ModelServiceException, ModelRequestException
 	{
-		final File outRelnDir = new File ( pathToObjOutDir ( reln.getFrom () ), reln.getName () );
-		final File inRelnDir = new File ( pathToObjInDir ( reln.getTo () ), reln.getName () );
-
-		final boolean out = removeFromRelnFile ( outRelnDir, reln.getTo () );
-		final boolean in = removeFromRelnFile ( inRelnDir, reln.getFrom () );
-
-		FileSystemModel.removeEmptyDirsUpTo ( outRelnDir, fRelnDir );
-		FileSystemModel.removeEmptyDirsUpTo ( inRelnDir, fRelnDir );
+		fLock.writeLock ().lock ();
+		try
+		{
+			if ( !exists ( reln ) ) return false;
 
-		return out || in;
+			appendToLog ( kOp_Unrelate, reln );
+			applyToDelta ( reln, false );
+			maybeCompact ();
+			return true;
+		}
+		finally
+		{
+			fLock.writeLock ().unlock ();
+		}
 	}
 
 	public void removeAllRelations ( Path forObject ) throws ModelServiceException, ModelRequestException
@@ -82,182 +171,383 @@ class FileSysRelnMgr
 
 	public List<ModelRelationInstance> getInboundRelationsNamed ( Path forObject, String named ) throws ModelServiceException, ModelRequestException
 	{
-		if ( named == null )
-		{
-			final LinkedList<ModelRelationInstance> result = new LinkedList<> ();
-
-			final File objDir = pathToObjInDir ( forObject );
-			if ( objDir.isDirectory () )
-			{
-				for ( File reln : objDir.listFiles () )
-				{
-					result.addAll ( getRelationsFrom ( forObject, reln, false ) );
-				}
-			}
-
-			return result;
-		}
-
-		final File reln = new File ( pathToObjInDir ( forObject ), named );
-		if ( reln.exists () )
-		{
-			return getRelationsFrom ( forObject, reln, false );
-		}
-		return new LinkedList<ModelRelationInstance> ();
+		return getRelations ( forObject, false, named );
 	}
 
 	public List<ModelRelationInstance> getOutboundRelationsNamed ( Path forObject, String named ) throws ModelServiceException, ModelRequestException
 	{
-		if ( named == null )
+		return getRelations ( forObject, true, named );
+	}
+
+	/**
+	 * Rewrite the adjacency index to include all logged changes, then clear the log.
+	 * @throws ModelServiceException
+	 */
+	public void compact () throws ModelServiceException
+	{
+		fLock.writeLock ().lock ();
+		try
 		{
-			final LinkedList<ModelRelationInstance> result = new LinkedList<> ();
+			final TreeMap<Path,RelationIndex.Adjacency> nodes = new TreeMap<> ();
+			fIndex.readAll ( nodes );
 
-			final File objDir = pathToObjOutDir ( forObject );
-			if ( objDir.isDirectory () )
+			for ( Map.Entry<Path,NodeDelta> e : fDelta.entrySet () )
 			{
-				for ( File reln : objDir.listFiles () )
+				for ( boolean outbound : kDirections )
 				{
-					result.addAll ( getRelationsFrom ( forObject, reln, true ) );
+					for ( Map.Entry<String,HashMap<Path,Boolean>> reln : e.getValue ().get ( outbound ).entrySet () )
+					{
+						for ( Map.Entry<Path,Boolean> change : reln.getValue ().entrySet () )
+						{
+							applyToAdjacency ( nodes, e.getKey (), outbound, reln.getKey (), change.getKey (), change.getValue () );
+						}
+					}
 				}
 			}
 
-			return result;
-		}
+			RelationIndex.write ( fIndexFile, nodes );
+			fIndex = RelationIndex.open ( fIndexFile );
+
+			// the index now holds everything in the log, so start a fresh log
+			fLog.close ();
+			fLog = new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( fLogFile, false ) ) );
+			fDelta.clear ();
+			fLogRecords = 0;
 
-		final File reln = new File ( pathToObjOutDir ( forObject ), named );
-		if ( reln.exists () )
+			log.info ( "Compacted relations in {}: {} nodes", fRelnDir, nodes.size () );
+		}
+		catch ( IOException x )
+		{
+			throw new ModelServiceException ( x );
+		}
+		finally
 		{
-			return getRelationsFrom ( forObject, reln, true );
+			fLock.writeLock ().unlock ();
 		}
-		return new LinkedList<ModelRelationInstance> ();
+	}
+
+	/**
+	 * Changes to one node's adjacency since the index was written. Each far side maps to
+	 * true if the relation was made and false if it was removed.
+	 */
+	private static class NodeDelta
+	{
+		final HashMap<String,HashMap<Path,Boolean>> fOut = new HashMap<> ();
+		final HashMap<String,HashMap<Path,Boolean>> fIn = new HashMap<> ();
+
+		HashMap<String,HashMap<Path,Boolean>> get ( boolean outbound ) { return outbound ? fOut : fIn; }
 	}
 
 	private final File fRelnDir;
+	private final File fIndexFile;
+	private final File fLogFile;
+	private final int fCompactAfter;
+	private final HashMap<Path,NodeDelta> fDelta;
+	private final ReentrantReadWriteLock fLock;
+	private RelationIndex fIndex;
+	private DataOutputStream fLog;
+	private int fLogRecords;
+
+	private static final String kIndexFile = "relations.idx";
+	private static final String kLogFile = "relations.log";
+	private static final int kDefaultCompactAfter = 10000;
+
+	private static final byte kOp_Relate = '+';
+	private static final byte kOp_Unrelate = '-';
 
-	private List<ModelRelationInstance> getRelationsFrom ( Path forObject, File reln, boolean objIsFromSide ) throws ModelServiceException
+	private static final boolean[] kDirections = new boolean[] { true, false };
+
+	private List<ModelRelationInstance> getRelations ( Path forObject, boolean objIsFromSide, String named )
 	{
 		final LinkedList<ModelRelationInstance> result = new LinkedList<> ();
 
-		final String relnName = reln.getName ();
-		for ( Path to : loadToList ( reln ) )
+		fLock.readLock ().lock ();
+		try
 		{
-			result.add ( ModelRelationInstance.from (
-				( objIsFromSide ? forObject : to ),
-				relnName,
-				( objIsFromSide ? to : forObject )
-			) );
-		}
+			final NodeDelta nd = fDelta.get ( forObject );
+			final HashMap<String,HashMap<Path,Boolean>> changes = nd == null ? null : nd.get ( objIsFromSide );
 
-		return result;
-	}
-	
-	private List<Path> loadToList ( File relnFile ) throws ModelServiceException
-	{
-		if ( relnFile.exists () )
-		{
-			try ( FileInputStream fis = new FileInputStream ( relnFile ) )
+			// indexed relations, less any changed since the index was written...
+			fIndex.visitEdges ( forObject, objIsFromSide, named, new RelationIndex.EdgeVisitor ()
 			{
-				final JSONArray ar = new JSONArray ( new CommentedJsonTokener ( fis ) );
-				final List<Path> list = JsonVisitor.arrayToList ( ar, new ValueReader<String,Path> ()
+				@Override
+				public void visit ( String relnName, Path farSide )
 				{
-					@Override
-					public Path read ( String val )
+					final HashMap<Path,Boolean> relnChanges = changes == null ? null : changes.get ( relnName );
+					if ( relnChanges == null || !relnChanges.containsKey ( farSide ) )
 					{
-						return Path.fromString ( val );
+						result.add ( makeInstance ( forObject, objIsFromSide, relnName, farSide ) );
 					}
-				} );
+				}
+			} );
 
-				final LinkedList<Path> result = new LinkedList<> ();
-				result.addAll ( list );
-				return result;
-			}
-			catch ( FileNotFoundException x )
-			{
-				// ignore
-			}
-			catch ( JSONException | IOException x )
+			// ... plus the current state of those changed
+			if ( changes != null )
 			{
-				throw new ModelServiceException ( x );
+				for ( Map.Entry<String,HashMap<Path,Boolean>> reln : changes.entrySet () )
+				{
+					if ( named != null && !named.equals ( reln.getKey () ) ) continue;
+					for ( Map.Entry<Path,Boolean> change : reln.getValue ().entrySet () )
+					{
+						if ( change.getValue () )
+						{
+							result.add ( makeInstance ( forObject, objIsFromSide, reln.getKey (), change.getKey () ) );
+						}
+					}
+				}
 			}
 		}
+		finally
+		{
+			fLock.readLock ().unlock ();
+		}
 
-		return new LinkedList<Path> ();
+		return result;
+	}
+
+	private static ModelRelationInstance makeInstance ( Path forObject, boolean objIsFromSide, String relnName, Path farSide )
+	{
+		return ModelRelationInstance.from (
+			( objIsFromSide ? forObject : farSide ),
+			relnName,
+			( objIsFromSide ? farSide : forObject )
+		);
 	}
-	
-	private void storeToFile ( File relnFile, List<Path> list ) throws ModelServiceException
+
+	private boolean exists ( ModelRelation mr )
 	{
-		if ( list.size () > 0 )
+		final NodeDelta nd = fDelta.get ( mr.getFrom () );
+		if ( nd != null )
 		{
-			final JSONArray arr = JsonVisitor.listToArray ( list, new ItemRenderer<Path,String> ()
+			final HashMap<Path,Boolean> relnChanges = nd.fOut.get ( mr.getName () );
+			if ( relnChanges != null && relnChanges.containsKey ( mr.getTo () ) )
 			{
-				@Override
-				public String render ( Path t )
-				{
-					return t.toString ();
-				}
-			} );
-	
-			try ( FileWriter fw = new FileWriter ( relnFile ) )
+				return relnChanges.get ( mr.getTo () );
+			}
+		}
+
+		final boolean[] found = new boolean[] { false };
+		fIndex.visitEdges ( mr.getFrom (), true, mr.getName (), new RelationIndex.EdgeVisitor ()
+		{
+			@Override
+			public void visit ( String relnName, Path farSide )
 			{
-				fw.write ( arr.toString () );
+				found[0] = found[0] || farSide.equals ( mr.getTo () );
 			}
-			catch ( IOException x )
+		} );
+		return found[0];
+	}
+
+	private void applyToDelta ( ModelRelation mr, boolean present )
+	{
+		applyToDelta ( mr.getFrom (), true, mr.getName (), mr.getTo (), present );
+		applyToDelta ( mr.getTo (), false, mr.getName (), mr.getFrom (), present );
+	}
+
+	private void applyToDelta ( Path node, boolean outbound, String relnName, Path farSide, boolean present )
+	{
+		NodeDelta nd = fDelta.get ( node );
+		if ( nd == null )
+		{
+			nd = new NodeDelta ();
+			fDelta.put ( node, nd );
+		}
+		HashMap<Path,Boolean> relnChanges = nd.get ( outbound ).get ( relnName );
+		if ( relnChanges == null )
+		{
+			relnChanges = new HashMap<> ();
+			nd.get ( outbound ).put ( relnName, relnChanges );
+		}
+		relnChanges.put ( farSide, present );
+	}
+
+	private static void applyToAdjacency ( TreeMap<Path,RelationIndex.Adjacency> nodes, Path node, boolean outbound, String relnName, Path farSide, boolean present )
+	{
+		RelationIndex.Adjacency adj = nodes.get ( node );
+		if ( adj == null )
+		{
+			if ( !present ) return;
+			adj = new RelationIndex.Adjacency ();
+			nodes.put ( node, adj );
+		}
+
+		TreeSet<Path> farSides = adj.get ( outbound ).get ( relnName );
+		if ( present )
+		{
+			if ( farSides == null )
 			{
-				throw new ModelServiceException ( x );
+				farSides = new TreeSet<> ();
+				adj.get ( outbound ).put ( relnName, farSides );
 			}
+			farSides.add ( farSide );
 		}
-		else
+		else if ( farSides != null )
 		{
-			// empty set; just remove the file
-			relnFile.delete ();
+			farSides.remove ( farSide );
+			if ( farSides.isEmpty () ) adj.get ( outbound ).remove ( relnName );
+			if ( adj.isEmpty () ) nodes.remove ( node );
 		}
 	}
 
-	private File pathToObjDir ( Path from )
+	private void maybeCompact () throws ModelServiceException
 	{
-		File result = fRelnDir;
-		for ( Name component : from.getSegmentList () )
+		if ( fLogRecords >= fCompactAfter )
 		{
-			result = new File ( result, component.toString () );
+			compact ();
 		}
-		return result;
 	}
 
-	private File pathToObjOutDir ( Path from )
+	private void appendToLog ( byte op, ModelRelation mr ) throws ModelServiceException
 	{
-		return new File ( pathToObjDir ( from ), "out" );
+		try
+		{
+			fLog.writeByte ( op );
+			writeString ( fLog, mr.getFrom ().toString () );
+			writeString ( fLog, mr.getName () );
+			writeString ( fLog, mr.getTo ().toString () );
+			fLog.flush ();
+			fLogRecords++;
+		}
+		catch ( IOException x )
+		{
+			throw new ModelServiceException ( x );
+		}
 	}
 
-	private File pathToObjInDir ( Path from )
+	private static void writeString ( DataOutputStream dos, String s ) throws IOException
 	{
-		return new File ( pathToObjDir ( from ), "in" );
+		final byte[] b = s.getBytes ( StandardCharsets.UTF_8 );
+		dos.writeInt ( b.length );
+		dos.write ( b );
 	}
 
-	private void addToRelnFile ( File targetDir, String relnName, Path farSide ) throws ModelServiceException
+	/**
+	 * Replay the log into the delta. A partial record at the end of the log (from an interrupted
+	 * write) is truncated away.
+	 * @return the number of records replayed
+	 * @throws IOException
+	 */
+	private int replayLog () throws IOException
 	{
-		if ( !targetDir.isDirectory () && !targetDir.mkdirs () )
+		if ( !fLogFile.exists () ) return 0;
+
+		int records = 0;
+		long goodLength = 0;
+		try ( final DataInputStream dis = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( fLogFile ) ) ) )
+		{
+			while ( true )
+			{
+				final int op = dis.read ();
+				if ( op < 0 ) break;
+
+				final byte[] from = readBytes ( dis );
+				final byte[] name = readBytes ( dis );
+				final byte[] to = readBytes ( dis );
+				if ( op != kOp_Relate && op != kOp_Unrelate )
+				{
+					throw new EOFException ( "unrecognized log record" );
+				}
+
+				applyToDelta ( ModelRelation.from (
+					Path.fromString ( new String ( from, StandardCharsets.UTF_8 ) ),
+					new String ( name, StandardCharsets.UTF_8 ),
+					Path.fromString ( new String ( to, StandardCharsets.UTF_8 ) )
+				), op == kOp_Relate );
+
+				goodLength += 1 + 12 + from.length + name.length + to.length;
+				records++;
+			}
+		}
+		catch ( EOFException | IllegalArgumentException x )
 		{
-			throw new ModelServiceException ( "Couldn't create relation directory " + targetDir.toString () );
+			log.warn ( "Truncating relation log {} at {} after a partial record.", fLogFile, goodLength );
+			try ( final RandomAccessFile raf = new RandomAccessFile ( fLogFile, "rw" ) )
+			{
+				raf.setLength ( goodLength );
+			}
 		}
+		return records;
+	}
+
+	private static byte[] readBytes ( DataInputStream dis ) throws IOException
+	{
+		final int len = dis.readInt ();
+		if ( len < 0 ) throw new EOFException ( "invalid length" );
+		final byte[] b = new byte[len];
+		dis.readFully ( b );
+		return b;
+	}
+
+	/**
+	 * Import relations from the per-object file layout used by earlier versions.
+	 * @param dir
+	 * @param objPath
+	 * @return the number of relations imported
+	 * @throws ModelServiceException
+	 */
+	private int importLegacyRelations ( File dir, Path objPath ) throws ModelServiceException
+	{
+		int count = 0;
+		final File[] children = dir.listFiles ();
+		if ( children == null ) return 0;
+
+		for ( File child : children )
+		{
+			if ( !child.isDirectory () ) continue;
 
-		final File pathFile = new File ( targetDir, relnName );
-		final List<Path> farSideList = loadToList ( pathFile );
-		farSideList.add ( farSide );
-		storeToFile ( pathFile, farSideList );
+			if ( child.getName ().equals ( "out" ) && !objPath.isRootPath () )
+			{
+				for ( File relnFile : child.listFiles () )
+				{
+					for ( Path to : loadToList ( relnFile ) )
+					{
+						final ModelRelation mr = ModelRelation.from ( objPath, relnFile.getName (), to );
+						appendToLog ( kOp_Relate, mr );
+						applyToDelta ( mr, true );
+						count++;
+					}
+				}
+			}
+			else if ( !child.getName ().equals ( "in" ) || objPath.isRootPath () )
+			{
+				count += importLegacyRelations ( child, objPath.makeChildItem ( Name.fromString ( child.getName () ) ) );
+			}
+		}
+		return count;
 	}
 
-	private boolean removeFromRelnFile ( File relnFile, Path farSide ) throws ModelServiceException
+	private List<Path> loadToList ( File relnFile ) throws ModelServiceException
 	{
 		if ( relnFile.exists () )
 		{
-			final List<Path> toList = loadToList ( relnFile );
-			if ( toList.contains ( farSide  ) )
+			try ( FileInputStream fis = new FileInputStream ( relnFile ) )
 			{
-				toList.remove ( farSide );
-				storeToFile ( relnFile, toList );
-				return true;
+				final JSONArray ar = new JSONArray ( new CommentedJsonTokener ( fis ) );
+				final List<Path> list = JsonVisitor.arrayToList ( ar, new ValueReader<String,Path> ()
+				{
+					@Override
+					public Path read ( String val )
+					{
+						return Path.fromString ( val );
+					}
+				} );
+
+				final LinkedList<Path> result = new LinkedList<> ();
+				result.addAll ( list );
+				return result;
+			}
+			catch ( FileNotFoundException x )
+			{
+				// ignore
+			}
+			catch ( JSONException | IOException x )
+			{
+				throw new ModelServiceException ( x );
 			}
 		}
-		return false;
+
+		return new LinkedList<Path> ();
 	}
+
+	private static final Logger log = LoggerFactory.getLogger ( FileSysRelnMgr.class );
 }
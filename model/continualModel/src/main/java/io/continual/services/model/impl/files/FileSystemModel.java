@@ -37,6 +37,7 @@ import io.continual.iam.access.AccessControlEntry;
 import io.continual.iam.access.AccessControlList;
 import io.continual.services.ServiceContainer;
 import io.continual.services.model.core.Model;
+import io.continual.services.model.core.ModelNotificationService;
 import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectList;
@@ -89,6 +90,14 @@ public class FileSystemModel extends CommonJsonDbModel
 			sc.getExprEval ( config ).evaluateText ( config.getString ( "modelId" ) ),
 			sc.getExprEval ( config ).evaluateText ( config.getString ( "baseDir" ) )
 		);
+		notifying ( sc.getReqdIfNotNull ( config.optString ( "changeLog", null ), ModelNotificationService.class ) );
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		fRelnMgr.close ();
+		super.close ();
 	}
 
 	@Override
@@ -225,6 +234,7 @@ public class FileSystemModel extends CommonJsonDbModel
 			while ( toDump > 0L && result.size () > 0 )
 			{
 				result.removeFirst ();
+				toDump--;
 			}
 			while ( result.size () > getPageSize() )
 			{
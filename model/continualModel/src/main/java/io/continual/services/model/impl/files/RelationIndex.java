@@ -0,0 +1,383 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.impl.files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.continual.util.naming.Path;
+
+/**
+ * An immutable, memory-mapped adjacency index for relations. The file holds a table of
+ * relation names, a sorted table of nodes (object paths) and, for each node, its outbound
+ * and inbound edges as (name, far node) pairs. Finding a node is a binary search over the node
+ * table and reading its edges is a walk over a contiguous range, so nothing is parsed beyond
+ * the strings that are returned.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *  header:  magic, version, nameCount, nodeCount, edgeCount (ints); nodeTableOffset, edgeTableOffset (longs)
+ *  strings: relation names, then node paths, each as an int length and UTF-8 bytes
+ *  nodes:   nodeCount entries of ( long pathOffset, int outStart, int outCount, int inStart, int inCount )
+ *  edges:   edgeCount entries of ( int nameIndex, int farNodeIndex )
+ * </pre>
+ * Files are limited to 2GB, the size of a single mapped buffer.
+ */
+class RelationIndex
+{
+	/**
+	 * The adjacency of a single node, as used to write an index.
+	 */
+	static class Adjacency
+	{
+		final TreeMap<String,TreeSet<Path>> fOut = new TreeMap<> ();
+		final TreeMap<String,TreeSet<Path>> fIn = new TreeMap<> ();
+
+		TreeMap<String,TreeSet<Path>> get ( boolean outbound ) { return outbound ? fOut : fIn; }
+
+		boolean isEmpty () { return fOut.isEmpty () && fIn.isEmpty (); }
+	}
+
+	interface EdgeVisitor
+	{
+		void visit ( String relnName, Path farSide );
+	}
+
+	/**
+	 * Open an index file. If the file doesn't exist, an empty index is returned.
+	 * @param file
+	 * @return an index
+	 * @throws IOException
+	 */
+	static RelationIndex open ( File file ) throws IOException
+	{
+		if ( !file.exists () ) return new RelationIndex ();
+
+		try (
+			final RandomAccessFile raf = new RandomAccessFile ( file, "r" );
+			final FileChannel fc = raf.getChannel ()
+		)
+		{
+			if ( fc.size () > Integer.MAX_VALUE )
+			{
+				throw new IOException ( "Relation index " + file + " is too large to map." );
+			}
+			return new RelationIndex ( fc.map ( FileChannel.MapMode.READ_ONLY, 0, fc.size () ) );
+		}
+	}
+
+	/**
+	 * Write an index for the given adjacency map. The file is written alongside the target and
+	 * moved into place, so readers never see a partial index.
+	 * @param file
+	 * @param nodes
+	 * @throws IOException
+	 */
+	static void write ( File file, SortedMap<Path,Adjacency> nodes ) throws IOException
+	{
+		// collect relation names and number the nodes
+		final TreeSet<String> nameSet = new TreeSet<> ();
+		final HashMap<Path,Integer> nodeIndexes = new HashMap<> ();
+		long edgeCount = 0;
+		for ( Map.Entry<Path,Adjacency> e : nodes.entrySet () )
+		{
+			nodeIndexes.put ( e.getKey (), nodeIndexes.size () );
+			for ( boolean outbound : kDirections )
+			{
+				for ( Map.Entry<String,TreeSet<Path>> reln : e.getValue ().get ( outbound ).entrySet () )
+				{
+					nameSet.add ( reln.getKey () );
+					edgeCount += reln.getValue ().size ();
+				}
+			}
+		}
+		if ( edgeCount > Integer.MAX_VALUE )
+		{
+			throw new IOException ( "Too many relations for a single index." );
+		}
+		final HashMap<String,Integer> nameIndexes = new HashMap<> ();
+		for ( String name : nameSet )
+		{
+			nameIndexes.put ( name, nameIndexes.size () );
+		}
+
+		final File tmp = new File ( file.getParentFile (), file.getName () + ".tmp" );
+		try ( final DataOutputStream dos = new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( tmp ) ) ) )
+		{
+			// strings first, so we know where the node table starts
+			long offset = kHeaderSize;
+			final byte[][] nameBytes = new byte[nameSet.size ()][];
+			int i = 0;
+			for ( String name : nameSet )
+			{
+				nameBytes[i++] = name.getBytes ( StandardCharsets.UTF_8 );
+			}
+			for ( byte[] b : nameBytes )
+			{
+				offset += 4 + b.length;
+			}
+
+			final long[] pathOffsets = new long[nodes.size ()];
+			final byte[][] pathBytes = new byte[nodes.size ()][];
+			i = 0;
+			for ( Path p : nodes.keySet () )
+			{
+				pathBytes[i] = p.toString ().getBytes ( StandardCharsets.UTF_8 );
+				pathOffsets[i] = offset;
+				offset += 4 + pathBytes[i].length;
+				i++;
+			}
+			final long nodeTableOffset = offset;
+			final long edgeTableOffset = nodeTableOffset + (long) nodes.size () * kNodeEntrySize;
+			if ( edgeTableOffset + edgeCount * kEdgeEntrySize > Integer.MAX_VALUE )
+			{
+				throw new IOException ( "Relation index would exceed the mappable size." );
+			}
+
+			// header
+			dos.writeInt ( kMagic );
+			dos.writeInt ( kVersion );
+			dos.writeInt ( nameSet.size () );
+			dos.writeInt ( nodes.size () );
+			dos.writeInt ( (int) edgeCount );
+			dos.writeLong ( nodeTableOffset );
+			dos.writeLong ( edgeTableOffset );
+
+			// strings
+			for ( byte[] b : nameBytes )
+			{
+				dos.writeInt ( b.length );
+				dos.write ( b );
+			}
+			for ( byte[] b : pathBytes )
+			{
+				dos.writeInt ( b.length );
+				dos.write ( b );
+			}
+
+			// node table
+			int edgeStart = 0;
+			i = 0;
+			for ( Adjacency adj : nodes.values () )
+			{
+				dos.writeLong ( pathOffsets[i++] );
+				for ( boolean outbound : kDirections )
+				{
+					int count = 0;
+					for ( TreeSet<Path> farSides : adj.get ( outbound ).values () )
+					{
+						count += farSides.size ();
+					}
+					dos.writeInt ( edgeStart );
+					dos.writeInt ( count );
+					edgeStart += count;
+				}
+			}
+
+			// edges, grouped by node and direction, sorted by name then far side
+			for ( Adjacency adj : nodes.values () )
+			{
+				for ( boolean outbound : kDirections )
+				{
+					for ( Map.Entry<String,TreeSet<Path>> reln : adj.get ( outbound ).entrySet () )
+					{
+						final int nameIndex = nameIndexes.get ( reln.getKey () );
+						for ( Path farSide : reln.getValue () )
+						{
+							dos.writeInt ( nameIndex );
+							dos.writeInt ( nodeIndexes.get ( farSide ) );
+						}
+					}
+				}
+			}
+		}
+
+		Files.move ( tmp.toPath (), file.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	/**
+	 * Visit the edges of a node in one direction, optionally limited to a relation name.
+	 * @param node
+	 * @param outbound
+	 * @param named the relation name, or null for all
+	 * @param visitor
+	 */
+	void visitEdges ( Path node, boolean outbound, String named, EdgeVisitor visitor )
+	{
+		if ( fBuffer == null ) return;
+
+		final int nodeIndex = findNode ( node );
+		if ( nodeIndex < 0 ) return;
+
+		final long entry = fNodeTableOffset + (long) nodeIndex * kNodeEntrySize;
+		final int start = fBuffer.getInt ( (int) entry + ( outbound ? 8 : 16 ) );
+		final int count = fBuffer.getInt ( (int) entry + ( outbound ? 12 : 20 ) );
+		for ( int i=0; i<count; i++ )
+		{
+			final int edge = (int) ( fEdgeTableOffset + (long) ( start + i ) * kEdgeEntrySize );
+			final String name = fNames[ fBuffer.getInt ( edge ) ];
+			if ( named == null || named.equals ( name ) )
+			{
+				visitor.visit ( name, readNodePath ( fBuffer.getInt ( edge + 4 ) ) );
+			}
+		}
+	}
+
+	/**
+	 * Read the entire index into an adjacency map, as the starting point for writing a new index.
+	 * @param into
+	 */
+	void readAll ( SortedMap<Path,Adjacency> into )
+	{
+		for ( int n=0; n<fNodeCount; n++ )
+		{
+			final Path node = readNodePath ( n );
+			for ( boolean outbound : kDirections )
+			{
+				visitEdges ( node, outbound, null, new EdgeVisitor ()
+				{
+					@Override
+					public void visit ( String relnName, Path farSide )
+					{
+						Adjacency adj = into.get ( node );
+						if ( adj == null )
+						{
+							adj = new Adjacency ();
+							into.put ( node, adj );
+						}
+						TreeSet<Path> farSides = adj.get ( outbound ).get ( relnName );
+						if ( farSides == null )
+						{
+							farSides = new TreeSet<> ();
+							adj.get ( outbound ).put ( relnName, farSides );
+						}
+						farSides.add ( farSide );
+					}
+				} );
+			}
+		}
+	}
+
+	int getNodeCount () { return fNodeCount; }
+
+	private final MappedByteBuffer fBuffer;
+	private final String[] fNames;
+	private final int fNodeCount;
+	private final long fNodeTableOffset;
+	private final long fEdgeTableOffset;
+
+	private static final int kMagic = 0x434d5249;	// "CMRI"
+	private static final int kVersion = 1;
+	private static final int kHeaderSize = 5 * 4 + 2 * 8;
+	private static final int kNodeEntrySize = 8 + 4 * 4;
+	private static final int kEdgeEntrySize = 4 + 4;
+	private static final boolean[] kDirections = new boolean[] { true, false };
+
+	private RelationIndex ()
+	{
+		fBuffer = null;
+		fNames = new String[0];
+		fNodeCount = 0;
+		fNodeTableOffset = 0;
+		fEdgeTableOffset = 0;
+	}
+
+	private RelationIndex ( MappedByteBuffer buffer ) throws IOException
+	{
+		fBuffer = buffer;
+		if ( fBuffer.getInt ( 0 ) != kMagic || fBuffer.getInt ( 4 ) != kVersion )
+		{
+			throw new IOException ( "Unrecognized relation index format." );
+		}
+
+		final int nameCount = fBuffer.getInt ( 8 );
+		fNodeCount = fBuffer.getInt ( 12 );
+		fNodeTableOffset = fBuffer.getLong ( 20 );
+		fEdgeTableOffset = fBuffer.getLong ( 28 );
+
+		// names are few and used on every edge, so decode them once
+		fNames = new String[nameCount];
+		int offset = kHeaderSize;
+		for ( int i=0; i<nameCount; i++ )
+		{
+			fNames[i] = readString ( offset );
+			offset += 4 + fBuffer.getInt ( offset );
+		}
+	}
+
+	private int findNode ( Path node )
+	{
+		// paths order by their string form, so compare strings and skip building paths
+		final String target = node.toString ();
+		int lo = 0;
+		int hi = fNodeCount - 1;
+		while ( lo <= hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			final int cmp = readNodeString ( mid ).compareTo ( target );
+			if ( cmp < 0 )
+			{
+				lo = mid + 1;
+			}
+			else if ( cmp > 0 )
+			{
+				hi = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private Path readNodePath ( int nodeIndex )
+	{
+		return Path.fromString ( readNodeString ( nodeIndex ) );
+	}
+
+	private String readNodeString ( int nodeIndex )
+	{
+		final long entry = fNodeTableOffset + (long) nodeIndex * kNodeEntrySize;
+		return readString ( (int) fBuffer.getLong ( (int) entry ) );
+	}
+
+	private String readString ( int offset )
+	{
+		final int len = fBuffer.getInt ( offset );
+		final byte[] b = new byte[len];
+		for ( int i=0; i<len; i++ )
+		{
+			b[i] = fBuffer.get ( offset + 4 + i );
+		}
+		return new String ( b, StandardCharsets.UTF_8 );
+	}
+}
@@ -24,6 +24,7 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.continual.builder.Builder.BuildFailure;
 import io.continual.iam.access.AccessControlEntry;
 import io.continual.iam.access.AccessControlList;
 import io.continual.iam.exceptions.IamSvcException;
@@ -54,9 +55,10 @@ import io.continual.util.naming.Path;
 
 public abstract class CommonJsonDbModel extends SimpleService implements Model
 {
-	public CommonJsonDbModel ( ServiceContainer sc, JSONObject config )
+	public CommonJsonDbModel ( ServiceContainer sc, JSONObject config ) throws BuildFailure
 	{
 		this ( config.getString ( "modelId" ), config.optBoolean ( "readOnly", false ) );
+		notifying ( sc.getReqdIfNotNull ( config.optString ( "changeLog", null ), ModelNotificationService.class ) );
 	}
 
 	public CommonJsonDbModel ( String modelId )
@@ -68,6 +70,19 @@ public abstract class CommonJsonDbModel extends SimpleService implements Model
 	{
 		fModelId = modelId;
 		fReadOnly = readOnly;
+		fChangeListener = ModelNotificationService.noopNotifier ();
+	}
+
+	/**
+	 * Send notifications for every change made through this model to the given listener, in addition to
+	 * the notification service in each request's context. This is how a model feeds a change log.
+	 * @param listener a listener, or null for none
+	 * @return this model
+	 */
+	public CommonJsonDbModel notifying ( ModelNotificationService listener )
+	{
+		fChangeListener = listener == null ? ModelNotificationService.noopNotifier () : listener;
+		return this;
 	}
 
 	@Override
@@ -271,6 +286,11 @@ public abstract class CommonJsonDbModel extends SimpleService implements Model
 						}
 					}
 
+					if ( meta instanceof CommonModelObjectMetadata )
+					{
+						( (CommonModelObjectMetadata) meta ).markUpdated ();
+					}
+
 					final ModelDataTransfer mdt = new ModelDataTransfer ()
 					{
 						@Override
@@ -287,10 +307,12 @@ public abstract class CommonJsonDbModel extends SimpleService implements Model
 					if ( isCreate ) 
 					{
 						ns.onObjectCreate ( objectPath );
+						fChangeListener.onObjectCreate ( objectPath );
 					}
 					else
 					{
 						ns.onObjectUpdate ( objectPath );
+						fChangeListener.onObjectUpdate ( objectPath );
 					}
 				}
 				catch ( IamSvcException e )
@@ -400,6 +422,7 @@ public abstract class CommonJsonDbModel extends SimpleService implements Model
 		context.remove ( objectPath );
 		log.info ( "removed {}", objectPath );
 		context.getNotificationService().onObjectDelete ( objectPath );
+		fChangeListener.onObjectDelete ( objectPath );
 		return result;
 	}
 
@@ -424,6 +447,7 @@ public abstract class CommonJsonDbModel extends SimpleService implements Model
 
 	private final String fModelId;
 	private final boolean fReadOnly;
+	private ModelNotificationService fChangeListener;
 
 	protected boolean objectExists ( ModelRequestContext context, Path objectPath ) throws ModelServiceException, ModelRequestException
 	{
@@ -54,6 +54,15 @@ public class CommonModelObjectMetadata implements ModelObjectMetadata
 		return fMeta.optLong ( kMeta_UpdateTs, -1L );
 	}
 
+	/**
+	 * Note that the object is being written. The update time always advances, even for writes
+	 * within the same millisecond, so it can serve as the object's version.
+	 */
+	public void markUpdated ()
+	{
+		fMeta.put ( kMeta_UpdateTs, Math.max ( Clock.now (), getLastUpdateTimeMs () + 1 ) );
+	}
+
 	@Override
 	public JSONObject toJson ()
 	{
@@ -17,6 +17,7 @@ import org.json.JSONObject;
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.services.ServiceContainer;
 import io.continual.services.model.core.Model;
+import io.continual.services.model.core.ModelNotificationService;
 import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectList;
@@ -47,6 +48,7 @@ public class InMemoryModel extends CommonJsonDbModel
 		this (
 			sc.getExprEval ( config ).evaluateText ( config.getString ( "modelId" ) )
 		);
+		notifying ( sc.getReqdIfNotNull ( config.optString ( "changeLog", null ), ModelNotificationService.class ) );
 	}
 
 	public InMemoryModel ( String modelId ) throws BuildFailure
@@ -458,10 +460,15 @@ public class InMemoryModel extends CommonJsonDbModel
 
 			for ( String key : current.keySet () )
 			{
-				if ( null != current.optJSONObject ( key ) )
+				// skip object data; only child nodes are paths, and only those with data are objects
+				final JSONObject child = current.optJSONObject ( key );
+				if ( !key.equals ( kLocalDataNode ) && null != child )
 				{
 					final Path pathHere = pathPrefix.makeChildItem ( Name.fromString ( key ) );
-					result.add ( pathHere );
+					if ( child.has ( kLocalDataNode ) )
+					{
+						result.add ( pathHere );
+					}
 					result.addAll ( collectObjectsUnder ( pathHere ) );
 				}
 			}
@@ -519,6 +526,7 @@ public class InMemoryModel extends CommonJsonDbModel
 			while ( toDump > 0L && result.size () > 0 )
 			{
 				result.removeFirst ();
+				toDump--;
 			}
 			while ( result.size () > getPageSize() )
 			{
@@ -1,7 +1,11 @@
 package io.continual.services.model.impl.subpathWrapper;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -126,6 +130,23 @@ public class SubpathWrapperModel extends SimpleService implements Model
 		return fBackingModel.load ( context, userPathToBackingModel ( objectPath ), factory, userContext );
 	}
 
+	@Override
+	public <T,K> Map<Path,T> loadMany ( ModelRequestContext context, Collection<Path> objectPaths, ModelObjectFactory<T,K> factory, K userContext ) throws ModelServiceException, ModelRequestException
+	{
+		final LinkedList<Path> backingPaths = new LinkedList<> ();
+		for ( Path p : objectPaths )
+		{
+			backingPaths.add ( userPathToBackingModel ( p ) );
+		}
+
+		final LinkedHashMap<Path,T> result = new LinkedHashMap<> ();
+		for ( Map.Entry<Path,T> e : fBackingModel.loadMany ( context, backingPaths, factory, userContext ).entrySet () )
+		{
+			result.put ( backingPathToUser ( e.getKey () ), e.getValue () );
+		}
+		return result;
+	}
+
 	@Override
 	public ObjectUpdater createUpdate ( ModelRequestContext context, Path objectPath ) throws ModelRequestException, ModelServiceException
 	{
@@ -206,6 +227,28 @@ public class SubpathWrapperModel extends SimpleService implements Model
 		};
 	}
 
+	@Override
+	public Map<Path,ModelRelationList> getRelationsOfMany ( ModelRequestContext context, Collection<Path> objectPaths, String named, boolean inbound, boolean outbound ) throws ModelServiceException, ModelRequestException
+	{
+		final LinkedList<Path> backingPaths = new LinkedList<> ();
+		for ( Path p : objectPaths )
+		{
+			backingPaths.add ( userPathToBackingModel ( p ) );
+		}
+
+		final LinkedHashMap<Path,ModelRelationList> result = new LinkedHashMap<> ();
+		for ( Map.Entry<Path,ModelRelationList> e : fBackingModel.getRelationsOfMany ( context, backingPaths, named, inbound, outbound ).entrySet () )
+		{
+			final LinkedList<ModelRelationInstance> relns = new LinkedList<> ();
+			for ( ModelRelationInstance mri : e.getValue () )
+			{
+				relns.add ( backingPathToUser ( mri ) );
+			}
+			result.put ( backingPathToUser ( e.getKey () ), ModelRelationList.simpleListOfCollection ( relns ) );
+		}
+		return result;
+	}
+
 	private final Model fBackingModel;
 	private final Path fBasePath;
 	private final String fModelId;
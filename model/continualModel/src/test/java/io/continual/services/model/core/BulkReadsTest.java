@@ -0,0 +1,71 @@
+package io.continual.services.model.core;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+import junit.framework.TestCase;
+
+public class BulkReadsTest extends TestCase
+{
+	@Test
+	public void testOrderAndOmission () throws ModelServiceException, ModelRequestException
+	{
+		final ArrayList<Integer> items = new ArrayList<> ();
+		for ( int i=0; i<1000; i++ )
+		{
+			items.add ( i );
+		}
+
+		final Map<Integer,String> result = BulkReads.readEach ( items, i -> i % 2 == 0 ? Integer.toString ( i ) : null );
+		assertEquals ( 500, result.size () );
+
+		int expected = 0;
+		for ( Map.Entry<Integer,String> e : result.entrySet () )
+		{
+			assertEquals ( expected, e.getKey ().intValue () );
+			assertEquals ( Integer.toString ( expected ), e.getValue () );
+			expected += 2;
+		}
+	}
+
+	@Test
+	public void testPoolThreadsDontHoldTheJvm () throws ModelServiceException, ModelRequestException
+	{
+		final ArrayList<Integer> items = new ArrayList<> ();
+		for ( int i=0; i<100; i++ )
+		{
+			items.add ( i );
+		}
+
+		final Map<Integer,Boolean> result = BulkReads.readEach ( items, i -> Thread.currentThread ().isDaemon () );
+		assertEquals ( 100, result.size () );
+		assertFalse ( result.containsValue ( Boolean.FALSE ) );
+	}
+
+	@Test
+	public void testExceptionPassesThrough () throws ModelServiceException
+	{
+		final ArrayList<Integer> items = new ArrayList<> ();
+		for ( int i=0; i<100; i++ )
+		{
+			items.add ( i );
+		}
+
+		try
+		{
+			BulkReads.readEach ( items, i -> {
+				if ( i == 57 ) throw new ModelRequestException ( "bad item" );
+				return i;
+			} );
+			fail ( "expected an exception" );
+		}
+		catch ( ModelRequestException x )
+		{
+			assertEquals ( "bad item", x.getMessage () );
+		}
+	}
+}
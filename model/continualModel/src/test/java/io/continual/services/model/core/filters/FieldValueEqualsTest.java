@@ -57,4 +57,19 @@ public class FieldValueEqualsTest extends TestCase
 		mdoa = new JsonModelObject ( new JSONObject ().put ( "foo", new JSONObject ().put ( "bar", new JSONArray ().put ( 0 ).put ( 1 ).put ( 123 ) ) ) );
 		assertTrue ( fve.matches ( mdoa ) );
 	}
+
+	@Test
+	public void testSerializedFilter ()
+	{
+		final JSONObject data = new FieldValueEquals ( "foo.bar", 123 ).toJson ();
+		assertEquals ( "FieldValueEquals", data.getString ( "class" ) );
+
+		final FieldValueEquals fve = new FieldValueEquals ( data );
+
+		ModelObject mdoa = new JsonModelObject ( new JSONObject ().put ( "foo", "bar" ) );
+		assertFalse ( fve.matches ( mdoa ) );
+
+		mdoa = new JsonModelObject ( new JSONObject ().put ( "foo", new JSONObject ().put ( "bar", 123 ) ) );
+		assertTrue ( fve.matches ( mdoa ) );
+	}
 }
@@ -0,0 +1,162 @@
+package io.continual.services.model.impl.changes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.messaging.ContinualMessage;
+import io.continual.messaging.ContinualMessagePublisher;
+import io.continual.messaging.ContinualMessageSink;
+import io.continual.messaging.ContinualMessageStream;
+import io.continual.services.Service.FailedToStart;
+import io.continual.services.model.impl.changes.ModelChange.Operation;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class ModelChangeLogTest extends TestCase
+{
+	@Test
+	public void testAppendReadAndReopen () throws IOException, BuildFailure, InterruptedException
+	{
+		final File dir = Files.createTempDirectory ( "continualChangeLogTest-" ).toFile ();
+
+		// small segments so that reads cross segment boundaries and retention kicks in
+		final ModelChangeLog log = new ModelChangeLog ( dir, "test", 3, 3, null, null );
+		for ( int i=0; i<10; i++ )
+		{
+			log.onObjectCreate ( Path.fromString ( "/obj" + i ) );
+		}
+		log.onObjectDelete ( Path.fromString ( "/obj0" ) );
+		log.close ();
+
+		assertEquals ( 11, log.getLastSequence () );
+		assertEquals ( 4, log.getFirstSequence () );
+
+		final List<ModelChange> changes = log.read ( 8, 100 );
+		assertEquals ( 4, changes.size () );
+		assertEquals ( 8, changes.get ( 0 ).getSequence () );
+		assertEquals ( Operation.DELETE, changes.get ( 3 ).getOperation () );
+		assertEquals ( Path.fromString ( "/obj0" ), changes.get ( 3 ).getPath () );
+
+		// reading from before the retained segments starts at the oldest change
+		assertEquals ( 4, log.read ( 1, 1 ).get ( 0 ).getSequence () );
+
+		final ModelChangeLog reopened = new ModelChangeLog ( dir, "test", 3, 3, null, null );
+		assertEquals ( 11, reopened.getLastSequence () );
+		reopened.onObjectUpdate ( Path.fromString ( "/obj1" ) );
+		assertTrue ( reopened.awaitChanges ( 11, 5000L ) );
+		final List<ModelChange> more = reopened.read ( 12, 100 );
+		assertEquals ( 1, more.size () );
+		assertEquals ( Operation.UPDATE, more.get ( 0 ).getOperation () );
+		reopened.close ();
+	}
+
+	@Test
+	public void testFullQueueKeepsOrder () throws IOException, BuildFailure, InterruptedException
+	{
+		final File dir = Files.createTempDirectory ( "continualChangeLogTest-" ).toFile ();
+
+		// a one-entry queue makes each report wait for the writer
+		final ModelChangeLog log = new ModelChangeLog ( dir, "test", 10, 100, null, null, 1, false );
+		for ( int i=0; i<200; i++ )
+		{
+			log.onObjectCreate ( Path.fromString ( "/obj" + i ) );
+		}
+		assertTrue ( log.awaitChanges ( 199, 5000L ) );
+
+		final List<ModelChange> changes = log.read ( 1, 1000 );
+		assertEquals ( 200, changes.size () );
+		for ( int i=0; i<200; i++ )
+		{
+			assertEquals ( i + 1, changes.get ( i ).getSequence () );
+			assertEquals ( Path.fromString ( "/obj" + i ), changes.get ( i ).getPath () );
+		}
+		log.close ();
+	}
+
+	@Test
+	public void testPublisherStartsWithExistingChanges () throws IOException, BuildFailure, FailedToStart, InterruptedException
+	{
+		final File dir = Files.createTempDirectory ( "continualChangeLogTest-" ).toFile ();
+
+		final ModelChangeLog before = new ModelChangeLog ( dir, "test" );
+		for ( int i=0; i<5; i++ )
+		{
+			before.onObjectCreate ( Path.fromString ( "/obj" + i ) );
+		}
+		before.close ();
+
+		final TestPublisher pub = new TestPublisher ();
+		final ModelChangeLog log = new ModelChangeLog ( dir, "test", 100, 10, pub, "changes", 100, false );
+		log.start ();
+		try
+		{
+			final List<ContinualMessage> sent = pub.awaitCount ( 5, 5000L );
+			assertEquals ( 5, sent.size () );
+			assertEquals ( 1, sent.get ( 0 ).getMessagePayload ().getLong ( "seq" ) );
+		}
+		finally
+		{
+			log.requestFinish ();
+		}
+
+		// a publisher that starts from the latest change only sees new changes
+		final File dir2 = Files.createTempDirectory ( "continualChangeLogTest-" ).toFile ();
+		final ModelChangeLog before2 = new ModelChangeLog ( dir2, "test" );
+		before2.onObjectCreate ( Path.fromString ( "/old" ) );
+		before2.close ();
+
+		final TestPublisher pub2 = new TestPublisher ();
+		final ModelChangeLog log2 = new ModelChangeLog ( dir2, "test", 100, 10, pub2, "changes", 100, true );
+		log2.start ();
+		try
+		{
+			log2.onObjectCreate ( Path.fromString ( "/new" ) );
+			final List<ContinualMessage> sent = pub2.awaitCount ( 1, 5000L );
+			assertEquals ( 1, sent.size () );
+			assertEquals ( 2, sent.get ( 0 ).getMessagePayload ().getLong ( "seq" ) );
+		}
+		finally
+		{
+			log2.requestFinish ();
+		}
+	}
+
+	private static class TestPublisher implements ContinualMessagePublisher, ContinualMessageSink
+	{
+		@Override
+		public ContinualMessageSink getTopic ( String topic ) { return this; }
+
+		@Override
+		public void flush () {}
+
+		@Override
+		public void close () {}
+
+		@Override
+		public synchronized void send ( ContinualMessageStream stream, Collection<ContinualMessage> msgs )
+		{
+			fSent.addAll ( msgs );
+			notifyAll ();
+		}
+
+		public synchronized List<ContinualMessage> awaitCount ( int count, long timeoutMs ) throws InterruptedException
+		{
+			final long endMs = System.currentTimeMillis () + timeoutMs;
+			while ( fSent.size () < count && System.currentTimeMillis () < endMs )
+			{
+				wait ( 50L );
+			}
+			return Collections.unmodifiableList ( new ArrayList<> ( fSent ) );
+		}
+
+		private final ArrayList<ContinualMessage> fSent = new ArrayList<> ();
+	}
+}
@@ -0,0 +1,194 @@
+package io.continual.services.model.impl.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.model.core.Model;
+import io.continual.services.model.core.ModelObjectAndPath;
+import io.continual.services.model.core.ModelQuery;
+import io.continual.services.model.core.ModelRelation;
+import io.continual.services.model.core.ModelRequestContext;
+import io.continual.services.model.core.PageRequest;
+import io.continual.services.model.core.data.BasicModelObject;
+import io.continual.services.model.core.data.JsonModelObject;
+import io.continual.services.model.core.data.ModelObject;
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelSchemaViolationException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.services.model.impl.mem.InMemoryModel;
+import io.continual.services.model.util.TestIdentity;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class SimpleModelQueryTest extends TestCase
+{
+	@Override
+	protected void setUp () throws BuildFailure, ModelRequestException, ModelSchemaViolationException, ModelServiceException
+	{
+		fModel = new InMemoryModel ( "test" );
+		fMrc = fModel.getRequestContextBuilder ().forUser ( new TestIdentity ( "tester" ) ).build ();
+
+		fModel.createUpdate ( fMrc, Path.fromString ( "/q" ) )
+			.overwriteData ( new JsonModelObject ( new JSONObject () ) )
+			.execute ()
+		;
+		for ( int i=0; i<kObjectCount; i++ )
+		{
+			fModel.createUpdate ( fMrc, pathFor ( i ) )
+				.overwriteData ( new JsonModelObject ( new JSONObject ()
+					.put ( "n", i )
+					.put ( "name", "item-" + i )
+					.put ( "parity", i % 2 == 0 ? "even" : "odd" )
+				) )
+				.execute ()
+			;
+		}
+		fModel.createUpdate ( fMrc, Path.fromString ( "/elsewhere" ) )
+			.overwriteData ( new JsonModelObject ( new JSONObject ().put ( "n", 100 ).put ( "parity", "even" ) ) )
+			.execute ()
+		;
+	}
+
+	@Override
+	protected void tearDown () throws IOException
+	{
+		fModel.close ();
+	}
+
+	@Test
+	public void testPlanRoundTrip () throws ModelRequestException, ModelServiceException
+	{
+		final ModelQuery original = fModel.startQuery ()
+			.withPathPrefix ( Path.fromString ( "/q" ) )
+			.withFieldValue ( "parity", "even" )
+			.withFieldContaining ( "name", "item" )
+			.matchingJsonPath ( "$[?(@.n >= 2)]" )
+		;
+		final JSONObject plan = ( (SimpleModelQuery) original ).toPlan ();
+
+		// the plan survives serialization and rebuilds an equivalent query
+		final ModelQuery rebuilt = SimpleModelQuery.applyPlan ( fModel.startQuery (), new JSONObject ( plan.toString () ) );
+		assertTrue ( plan.similar ( ( (SimpleModelQuery) rebuilt ).toPlan () ) );
+
+		final List<Long> expected = numbers ( original.orderBy ( kByNumber ).execute ( fMrc ) );
+		assertEquals ( 3, expected.size () );
+		assertEquals ( Long.valueOf ( 2 ), expected.get ( 0 ) );
+		assertEquals ( Long.valueOf ( 6 ), expected.get ( 2 ) );
+		assertEquals ( expected, numbers ( rebuilt.orderBy ( kByNumber ).execute ( fMrc ) ) );
+	}
+
+	@Test
+	public void testUnknownPlanOperation ()
+	{
+		final JSONObject plan = new JSONObject ( "{\"pathPrefix\":\"/q\",\"filters\":[{\"op\":\"nope\"}]}" );
+		try
+		{
+			SimpleModelQuery.applyPlan ( fModel.startQuery (), plan );
+			fail ( "expected a request exception" );
+		}
+		catch ( ModelRequestException | ModelServiceException x )
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testPageRequestArgumentOrder () throws ModelRequestException, ModelServiceException
+	{
+		// page 1 of size 2 is the third and fourth items
+		final List<Long> page = numbers ( fModel.startQuery ()
+			.withPathPrefix ( Path.fromString ( "/q" ) )
+			.orderBy ( kByNumber )
+			.pageLimit ( new PageRequest ().withPageSize ( 2 ).startingAtPage ( 1 ) )
+			.execute ( fMrc )
+		);
+		assertEquals ( 2, page.size () );
+		assertEquals ( Long.valueOf ( 2 ), page.get ( 0 ) );
+		assertEquals ( Long.valueOf ( 3 ), page.get ( 1 ) );
+	}
+
+	@Test
+	public void testPageTrimming () throws ModelRequestException, ModelServiceException
+	{
+		final ArrayList<Long> all = new ArrayList<> ();
+		for ( int pg=0; pg<4; pg++ )
+		{
+			final List<Long> page = numbers ( fModel.startQuery ()
+				.withPathPrefix ( Path.fromString ( "/q" ) )
+				.orderBy ( kByNumber )
+				.pageLimit ( 2, pg )
+				.execute ( fMrc )
+			);
+			assertTrue ( page.size () <= 2 );
+			all.addAll ( page );
+		}
+
+		// every item appears exactly once, in order, and the last page is short
+		assertEquals ( kObjectCount, all.size () );
+		for ( int i=0; i<kObjectCount; i++ )
+		{
+			assertEquals ( Long.valueOf ( i ), all.get ( i ) );
+		}
+	}
+
+	@Test
+	public void testTraversalPlanRoundTrip () throws ModelRequestException, ModelServiceException
+	{
+		fModel.relate ( fMrc, ModelRelation.from ( pathFor ( 0 ), "next", pathFor ( 1 ) ) );
+		fModel.relate ( fMrc, ModelRelation.from ( pathFor ( 1 ), "next", pathFor ( 2 ) ) );
+		fModel.relate ( fMrc, ModelRelation.from ( pathFor ( 1 ), "next", pathFor ( 3 ) ) );
+
+		final SimpleTraversal original = (SimpleTraversal) fModel.startTraversal ()
+			.startAt ( pathFor ( 0 ) )
+			.traverseOutbound ( "next" )
+			.traverseOutbound ( "next" )
+		;
+		final JSONObject plan = original.toPlan ();
+		assertNotNull ( plan );
+
+		final List<Path> expected = new ArrayList<> ();
+		for ( Path p : original.execute ( fMrc ) ) expected.add ( p );
+		assertEquals ( 2, expected.size () );
+		assertTrue ( expected.contains ( pathFor ( 2 ) ) );
+		assertTrue ( expected.contains ( pathFor ( 3 ) ) );
+
+		final List<Path> rebuilt = new ArrayList<> ();
+		for ( Path p : SimpleTraversal.applyPlan ( fModel.startTraversal (), new JSONObject ( plan.toString () ) ).execute ( fMrc ) ) rebuilt.add ( p );
+		assertEquals ( expected, rebuilt );
+	}
+
+	private static Path pathFor ( int i )
+	{
+		return Path.fromString ( "/q/item" + i );
+	}
+
+	private static List<Long> numbers ( Iterable<ModelObjectAndPath<BasicModelObject>> results )
+	{
+		final ArrayList<Long> result = new ArrayList<> ();
+		for ( ModelObjectAndPath<BasicModelObject> mop : results )
+		{
+			result.add ( ModelObjectExprSource.evalToLong ( mop.getObject ().getData (), "n", -1L ) );
+		}
+		return result;
+	}
+
+	private static final Comparator<ModelObject> kByNumber = new Comparator<ModelObject> ()
+	{
+		@Override
+		public int compare ( ModelObject o1, ModelObject o2 )
+		{
+			return Long.compare ( ModelObjectExprSource.evalToLong ( o1, "n", 0L ), ModelObjectExprSource.evalToLong ( o2, "n", 0L ) );
+		}
+	};
+
+	private static final int kObjectCount = 7;
+
+	private Model fModel;
+	private ModelRequestContext fMrc;
+}
@@ -1,6 +1,7 @@
 package io.continual.services.model.impl.delegator;
 
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -11,14 +12,18 @@ import io.continual.builder.Builder.BuildFailure;
 import io.continual.iam.impl.common.CommonJsonIdentity;
 import io.continual.services.model.core.Model;
 import io.continual.services.model.core.ModelItemList;
+import io.continual.services.model.core.ModelObjectAndPath;
 import io.continual.services.model.core.ModelRelation;
 import io.continual.services.model.core.ModelRelationInstance;
 import io.continual.services.model.core.ModelRelationList;
 import io.continual.services.model.core.ModelRequestContext;
+import io.continual.services.model.core.data.BasicModelObject;
 import io.continual.services.model.core.data.JsonModelObject;
+import io.continual.services.model.core.data.ModelObject;
 import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.services.model.core.exceptions.ModelSchemaViolationException;
 import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.services.model.impl.common.ModelObjectExprSource;
 import io.continual.services.model.impl.mem.InMemoryModel;
 import io.continual.services.model.impl.session.StdMountTableEntry;
 import io.continual.util.naming.Name;
@@ -106,6 +111,95 @@ public class DelegatingModelTest extends TestCase
 		}
 	}
 
+	@Test
+	public void testQueryAcrossMounts () throws IOException, BuildFailure, ModelRequestException, ModelServiceException
+	{
+		final TestIdentity user = new TestIdentity ();
+
+		final Model model1 = new InMemoryModel ( "mount1" );
+		final Model model2 = new InMemoryModel ( "mount2" );
+		final Model model3 = new InMemoryModel ( "mount3" );
+		putNumbered ( model1, user, "a", 1, 4, 7 );
+		putNumbered ( model2, user, "b", 2, 5, 8 );
+		putNumbered ( model3, user, "c", 3, 6, 9 );
+
+		try ( final DelegatingModel delegatingModel = new DelegatingModel ( "test", null ) )
+		{
+			delegatingModel.mount ( new StdMountTableEntry ( kMountPoint1, model1 ) );
+			delegatingModel.mount ( new StdMountTableEntry ( kMountPoint2, model2 ) );
+			delegatingModel.mount ( new StdMountTableEntry ( Path.fromString ( "/bar/m3" ), model3 ) );
+
+			final ModelRequestContext dmrc = delegatingModel.getRequestContextBuilder ().forUser ( user ).build ();
+			final Comparator<ModelObject> byN = ( o1, o2 ) -> Long.compare (
+				ModelObjectExprSource.evalToLong ( o1, "n", 0L ),
+				ModelObjectExprSource.evalToLong ( o2, "n", 0L )
+			);
+
+			// everything, merged in order with global paths
+			final List<ModelObjectAndPath<BasicModelObject>> all = ModelItemList.iterateIntoList (
+				delegatingModel.startQuery ().orderBy ( byN ).execute ( dmrc )
+			);
+			assertEquals ( 9, all.size () );
+			for ( int i=0; i<9; i++ )
+			{
+				assertEquals ( i+1, ModelObjectExprSource.evalToLong ( all.get ( i ).getObject ().getData (), "n", 0L ) );
+			}
+			assertEquals ( kMountPoint1.makeChildItem ( Name.fromString ( "a1" ) ), all.get ( 0 ).getPath () );
+			assertEquals ( Path.fromString ( "/bar/m3/c9" ), all.get ( 8 ).getPath () );
+
+			// a page from the middle
+			final List<ModelObjectAndPath<BasicModelObject>> page = ModelItemList.iterateIntoList (
+				delegatingModel.startQuery ().orderBy ( byN ).pageLimit ( 2, 1 ).execute ( dmrc )
+			);
+			assertEquals ( 2, page.size () );
+			assertEquals ( Path.fromString ( "/bar/m3/c3" ), page.get ( 0 ).getPath () );
+			assertEquals ( kMountPoint1.makeChildItem ( Name.fromString ( "a4" ) ), page.get ( 1 ).getPath () );
+
+			// a prefix covering two mounts, with a filter
+			final List<ModelObjectAndPath<BasicModelObject>> foo = ModelItemList.iterateIntoList (
+				delegatingModel.startQuery ().withPathPrefix ( Path.fromString ( "/foo" ) ).withFieldValue ( "even", true ).orderBy ( byN ).execute ( dmrc )
+			);
+			assertEquals ( 3, foo.size () );
+			assertEquals ( kMountPoint2.makeChildItem ( Name.fromString ( "b2" ) ), foo.get ( 0 ).getPath () );
+			assertEquals ( kMountPoint1.makeChildItem ( Name.fromString ( "a4" ) ), foo.get ( 1 ).getPath () );
+			assertEquals ( kMountPoint2.makeChildItem ( Name.fromString ( "b8" ) ), foo.get ( 2 ).getPath () );
+
+			// a prefix inside a mount
+			final List<ModelObjectAndPath<BasicModelObject>> inside = ModelItemList.iterateIntoList (
+				delegatingModel.startQuery ().withPathPrefix ( kMountPoint2 ).execute ( dmrc )
+			);
+			assertEquals ( 3, inside.size () );
+			for ( ModelObjectAndPath<BasicModelObject> mop : inside )
+			{
+				assertTrue ( mop.getPath ().startsWith ( kMountPoint2 ) );
+			}
+
+			// mount resolution
+			assertTrue ( delegatingModel.exists ( dmrc, Path.fromString ( "/bar" ) ) );
+			assertFalse ( delegatingModel.exists ( dmrc, Path.fromString ( "/baz" ) ) );
+			assertEquals ( 2, ModelItemList.iterateIntoList ( delegatingModel.listChildrenOfPath ( dmrc, Path.fromString ( "/foo" ) ) ).size () );
+		}
+	}
+
+	private static void putNumbered ( Model model, TestIdentity user, String namePrefix, int... vals ) throws BuildFailure, ModelRequestException, ModelServiceException
+	{
+		final ModelRequestContext mrc = model.getRequestContextBuilder ().forUser ( user ).build ();
+		for ( int val : vals )
+		{
+			try
+			{
+				model.createUpdate ( mrc, Path.fromString ( "/" + namePrefix + val ) )
+					.overwriteData ( new JsonModelObject ( new JSONObject ().put ( "n", val ).put ( "even", val % 2 == 0 ) ) )
+					.execute ()
+				;
+			}
+			catch ( ModelSchemaViolationException e )
+			{
+				fail ( e.getMessage () );
+			}
+		}
+	}
+
 	private static class TestIdentity extends CommonJsonIdentity 
 	{
 		public TestIdentity ( )
@@ -0,0 +1,78 @@
+package io.continual.services.model.impl.files;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.model.core.ModelRelation;
+import io.continual.services.model.core.ModelRelationInstance;
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class FileSysRelnMgrTest extends TestCase
+{
+	@Test
+	public void testRelateAndReopen () throws IOException, BuildFailure, ModelRequestException, ModelServiceException
+	{
+		final File relnDir = Files.createTempDirectory ( "continualRelnTest-" ).toFile ();
+
+		// a small compaction threshold so that reads cross the index and the log
+		try ( final FileSysRelnMgr mgr = new FileSysRelnMgr ( relnDir, 3 ) )
+		{
+			for ( int i=0; i<5; i++ )
+			{
+				mgr.relate ( ModelRelation.from ( Path.fromString ( "/a" ), "knows", Path.fromString ( "/b" + i ) ) );
+			}
+			mgr.relate ( ModelRelation.from ( Path.fromString ( "/a" ), "owns", Path.fromString ( "/c" ) ) );
+			mgr.relate ( ModelRelation.from ( Path.fromString ( "/a" ), "owns", Path.fromString ( "/c" ) ) );
+
+			assertEquals ( 6, mgr.getOutboundRelationsNamed ( Path.fromString ( "/a" ), null ).size () );
+			assertEquals ( 5, mgr.getOutboundRelationsNamed ( Path.fromString ( "/a" ), "knows" ).size () );
+			assertEquals ( 1, mgr.getInboundRelationsNamed ( Path.fromString ( "/b3" ), "knows" ).size () );
+
+			assertTrue ( mgr.unrelate ( ModelRelation.from ( Path.fromString ( "/a" ), "knows", Path.fromString ( "/b1" ) ) ) );
+			assertFalse ( mgr.unrelate ( ModelRelation.from ( Path.fromString ( "/a" ), "knows", Path.fromString ( "/b1" ) ) ) );
+			assertEquals ( 0, mgr.getInboundRelationsNamed ( Path.fromString ( "/b1" ), null ).size () );
+		}
+
+		try ( final FileSysRelnMgr mgr = new FileSysRelnMgr ( relnDir ) )
+		{
+			final List<ModelRelationInstance> out = mgr.getOutboundRelationsNamed ( Path.fromString ( "/a" ), "knows" );
+			assertEquals ( 4, out.size () );
+			for ( ModelRelationInstance mri : out )
+			{
+				assertFalse ( mri.getTo ().equals ( Path.fromString ( "/b1" ) ) );
+			}
+
+			mgr.removeAllRelations ( Path.fromString ( "/a" ) );
+			assertEquals ( 0, mgr.getOutboundRelationsNamed ( Path.fromString ( "/a" ), null ).size () );
+			assertEquals ( 0, mgr.getInboundRelationsNamed ( Path.fromString ( "/c" ), null ).size () );
+		}
+	}
+
+	@Test
+	public void testLegacyImport () throws IOException, BuildFailure, ModelRequestException, ModelServiceException
+	{
+		final File relnDir = Files.createTempDirectory ( "continualRelnTest-" ).toFile ();
+
+		final File outDir = new File ( new File ( new File ( relnDir, "foo" ), "bar" ), "out" );
+		assertTrue ( outDir.mkdirs () );
+		try ( FileWriter fw = new FileWriter ( new File ( outDir, "likes" ) ) )
+		{
+			fw.write ( "[ \"/foo/baz\", \"/qux\" ]" );
+		}
+
+		try ( final FileSysRelnMgr mgr = new FileSysRelnMgr ( relnDir ) )
+		{
+			assertEquals ( 2, mgr.getOutboundRelationsNamed ( Path.fromString ( "/foo/bar" ), "likes" ).size () );
+			assertEquals ( 1, mgr.getInboundRelationsNamed ( Path.fromString ( "/qux" ), "likes" ).size () );
+		}
+	}
+}
@@ -17,12 +17,20 @@
 package io.continual.services.model.impl.client;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -47,6 +55,7 @@ import io.continual.services.model.core.ModelObjectFactory;
 import io.continual.services.model.core.ModelObjectFactory.ObjectCreateContext;
 import io.continual.services.model.core.ModelObjectList;
 import io.continual.services.model.core.ModelObjectMetadata;
+import io.continual.services.model.core.ModelPathList;
 import io.continual.services.model.core.ModelPathListPage;
 import io.continual.services.model.core.ModelQuery;
 import io.continual.services.model.core.ModelRelation;
@@ -71,6 +80,7 @@ import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ArrayVisitor;
 import io.continual.util.data.json.JsonVisitor.ObjectVisitor;
 import io.continual.util.naming.Path;
+import io.continual.util.standards.HttpHeaders;
 
 public class ModelClient extends SimpleService implements Model
 {
@@ -82,6 +92,10 @@ public class ModelClient extends SimpleService implements Model
 		fBaseUrl = baseUrl;
 		fPathPrefix = pathPrefix;
 		fCreds = new HttpUsernamePasswordCredentials ( username, password );
+
+		fBatchSize = kDefaultBatchSize;
+		fRequestExecutor = Executors.newFixedThreadPool ( kDefaultMaxConcurrentRequests );
+		fSharedCache = null;
 	}
 
 	public ModelClient ( ServiceContainer sc, JSONObject config ) throws BuildFailure
@@ -92,13 +106,30 @@ public class ModelClient extends SimpleService implements Model
 
 			fModelId = config.getString ( "modelId" );
 
-			fClient = new OkHttp ();
+			fClient = new OkHttp ( null, false, config.optBoolean ( "http2PriorKnowledge", false ) );
 			fBaseUrl = config.optString ( "baseUrl", "https://model.continual.io" );
 			fPathPrefix = Path.fromString ( config.optString ( "pathPrefix", "/" ) );
 			fCreds = new HttpUsernamePasswordCredentials (
 				ee.evaluateText ( config.getString ( "username" ) ),
 				ee.evaluateText ( config.getString ( "password" ) )
 			);
+
+			fBatchSize = Math.max ( 1, config.optInt ( "batchSize", kDefaultBatchSize ) );
+			fRequestExecutor = Executors.newFixedThreadPool ( Math.max ( 1, config.optInt ( "maxConcurrentRequests", kDefaultMaxConcurrentRequests ) ) );
+
+			// the shared cache is optional. All request contexts on this client operate with the client's
+			// credentials, so sharing objects between them doesn't leak anything across users.
+			final JSONObject cacheConfig = config.optJSONObject ( "cache" );
+			if ( cacheConfig != null && cacheConfig.optBoolean ( "enabled", true ) )
+			{
+				final long freshMs = 1000L * cacheConfig.optLong ( "freshSeconds", 30L );
+				final long retainMs = 1000L * cacheConfig.optLong ( "retainSeconds", 15 * 60L );
+				fSharedCache = new ModelObjectCache ( freshMs, retainMs );
+			}
+			else
+			{
+				fSharedCache = null;
+			}
 		}
 		catch ( JSONException e )
 		{
@@ -136,6 +167,7 @@ public class ModelClient extends SimpleService implements Model
 	@Override
 	public void close () throws IOException
 	{
+		fRequestExecutor.shutdown ();
 		fClient.close ();
 	}
 
@@ -363,56 +395,125 @@ public class ModelClient extends SimpleService implements Model
 		CommonDataTransfer ld = context.get ( objectPath, CommonDataTransfer.class );
 		if ( ld == null )
 		{
-			// otherwise load from server
-			final String path = pathToUrl ( objectPath );
-			try ( 
-				final HttpResponse resp = fClient.newRequest ()
-					.asUser ( fCreds )
-					.onPath ( path )
-					.get ()
-				)
+			// check the cache shared across contexts
+			final ModelObjectCache.Entry cached = fSharedCache == null ? null : fSharedCache.get ( objectPath );
+			if ( fSharedCache != null && fSharedCache.isFresh ( cached ) )
 			{
-				if ( resp.isSuccess () )
-				{
-					final JSONObject respBody = resp.getBody ();
-					final JSONObject obj = respBody.optJSONObject ( "object" );
-					if ( obj == null )
-					{
-						throw new ModelServiceException ( "Expected 'object' in response payload." );
-					}
-					ld = new CommonDataTransfer ( objectPath, obj );
+				ld = new CommonDataTransfer ( objectPath, cached.getObjectData () );
+			}
+			else
+			{
+				ld = fetchObject ( objectPath, cached );
+			}
 
-					context.put ( objectPath, ld );
-				}
-				else if ( resp.isNotFound () )
-				{
-					context.doesNotExist ( objectPath );
-					throw new ModelItemDoesNotExistException ( objectPath );
-				}
-				else
-				{
-					throw new ModelServiceException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
-				}
+			if ( ld == null )
+			{
+				context.doesNotExist ( objectPath );
+				throw new ModelItemDoesNotExistException ( objectPath );
 			}
-			catch ( HttpServiceException | BodyFormatException e )
+			context.put ( objectPath, ld );
+		}
+
+		return create ( ld, factory, userContext );
+	}
+
+	/**
+	 * Load a set of objects using the given factory. Objects not already cached are requested from the
+	 * server in batches, with batches sent concurrently. Paths that don't exist are omitted from the result.
+	 * 
+	 * @param context
+	 * @param objectPaths
+	 * @param factory
+	 * @param userContext
+	 * @return a map of path to object, ordered as the requested paths
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	@Override
+	public <T,K> Map<Path,T> loadMany ( ModelRequestContext context, Collection<Path> objectPaths, ModelObjectFactory<T,K> factory, K userContext ) throws ModelServiceException, ModelRequestException
+	{
+		final LinkedHashMap<Path,CommonDataTransfer> found = new LinkedHashMap<> ();
+		final LinkedHashMap<Path,ModelObjectCache.Entry> toFetch = new LinkedHashMap<> ();
+
+		// resolve what we can locally
+		for ( Path objectPath : objectPaths )
+		{
+			if ( found.containsKey ( objectPath ) || toFetch.containsKey ( objectPath ) ) continue;
+			if ( context.knownToNotExist ( objectPath ) ) continue;
+
+			final CommonDataTransfer ld = context.get ( objectPath, CommonDataTransfer.class );
+			if ( ld != null )
 			{
-				throw new ModelServiceException ( e );
+				found.put ( objectPath, ld );
+				continue;
+			}
+
+			final ModelObjectCache.Entry cached = fSharedCache == null ? null : fSharedCache.get ( objectPath );
+			if ( fSharedCache != null && fSharedCache.isFresh ( cached ) )
+			{
+				final CommonDataTransfer cld = new CommonDataTransfer ( objectPath, cached.getObjectData () );
+				context.put ( objectPath, cld );
+				found.put ( objectPath, cld );
+				continue;
 			}
+
+			found.put ( objectPath, null );	// placeholder to keep the caller's order
+			toFetch.put ( objectPath, cached );
 		}
 
-		// now create the instance
-		final CommonDataTransfer ldf = ld;
-		return factory.create ( new ObjectCreateContext<K> ()
+		// fetch the rest in batches. These run on our request executor so that a large set goes out as
+		// concurrent requests, which the HTTP client multiplexes over a single HTTP/2 connection when the
+		// server supports it.
+		final LinkedList<Map<Path,ModelObjectCache.Entry>> batches = new LinkedList<> ();
+		LinkedHashMap<Path,ModelObjectCache.Entry> batch = null;
+		for ( Map.Entry<Path,ModelObjectCache.Entry> e : toFetch.entrySet () )
 		{
-			@Override
-			public ModelObjectMetadata getMetadata () { return ldf.getMetadata (); }
+			if ( batch == null || batch.size () >= fBatchSize )
+			{
+				batch = new LinkedHashMap<> ();
+				batches.add ( batch );
+			}
+			batch.put ( e.getKey (), e.getValue () );
+		}
 
-			@Override
-			public ModelObject getData () { return ldf.getObjectData (); }
+		final LinkedList<Future<Map<Path,CommonDataTransfer>>> pending = new LinkedList<> ();
+		if ( batches.size () > 1 )
+		{
+			for ( Map<Path,ModelObjectCache.Entry> b : batches )
+			{
+				pending.add ( fRequestExecutor.submit ( () -> fetchBatch ( b ) ) );
+			}
+		}
 
-			@Override
-			public K getUserContext () { return userContext; }
-		} );
+		final HashMap<Path,CommonDataTransfer> fetched = new HashMap<> ();
+		if ( batches.size () == 1 )
+		{
+			fetched.putAll ( fetchBatch ( batches.getFirst () ) );
+		}
+		for ( Future<Map<Path,CommonDataTransfer>> f : pending )
+		{
+			fetched.putAll ( awaitBatch ( f ) );
+		}
+
+		// update the request context on this thread and build the result
+		final LinkedHashMap<Path,T> result = new LinkedHashMap<> ();
+		for ( Map.Entry<Path,CommonDataTransfer> e : found.entrySet () )
+		{
+			final Path objectPath = e.getKey ();
+			CommonDataTransfer ld = e.getValue ();
+			if ( ld == null )
+			{
+				ld = fetched.get ( objectPath );
+				if ( ld == null )
+				{
+					context.doesNotExist ( objectPath );
+					continue;
+				}
+				context.put ( objectPath, ld );
+			}
+			result.put ( objectPath, create ( ld, factory, userContext ) );
+		}
+		return result;
 	}
 
 	@Override
@@ -509,6 +610,7 @@ public class ModelClient extends SimpleService implements Model
 				finally
 				{
 					context.remove ( objectPath );
+					if ( fSharedCache != null ) fSharedCache.remove ( objectPath );
 				}
 
 				log.info ( "wrote {}", objectPath );
@@ -519,8 +621,9 @@ public class ModelClient extends SimpleService implements Model
 	@Override
 	public boolean remove ( ModelRequestContext context, Path objectPath ) throws ModelServiceException, ModelRequestException
 	{
-		// regardless of what happens at the server, we'll drop the object from our cache
+		// regardless of what happens at the server, we'll drop the object from our caches
 		context.remove ( objectPath );
+		if ( fSharedCache != null ) fSharedCache.remove ( objectPath );
 
 		// signal delete to server
 		final String path = pathToUrl ( objectPath );
@@ -560,7 +663,7 @@ public class ModelClient extends SimpleService implements Model
 	@Override
 	public ModelTraversal startTraversal () throws ModelRequestException
 	{
-		return new SimpleTraversal ( this );
+		return new RemoteTraversal ();
 	}
 
 	@Override
@@ -574,6 +677,12 @@ public class ModelClient extends SimpleService implements Model
 	private final HttpUsernamePasswordCredentials fCreds;
 	private final String fBaseUrl;
 	private final Path fPathPrefix;
+	private final int fBatchSize;
+	private final ExecutorService fRequestExecutor;
+	private final ModelObjectCache fSharedCache;
+
+	private static final int kDefaultBatchSize = 100;
+	private static final int kDefaultMaxConcurrentRequests = 4;
 
 	private static final Logger log = LoggerFactory.getLogger ( CommonJsonDbModel.class );
 
@@ -607,6 +716,190 @@ public class ModelClient extends SimpleService implements Model
 		return p.makePathWithinParent ( fPathPrefix );
 	}
 
+	private <T,K> T create ( CommonDataTransfer ld, ModelObjectFactory<T,K> factory, K userContext ) throws ModelRequestException
+	{
+		return factory.create ( new ObjectCreateContext<K> ()
+		{
+			@Override
+			public ModelObjectMetadata getMetadata () { return ld.getMetadata (); }
+
+			@Override
+			public ModelObject getData () { return ld.getObjectData (); }
+
+			@Override
+			public K getUserContext () { return userContext; }
+		} );
+	}
+
+	/**
+	 * Fetch a single object from the server, revalidating a stale shared cache entry if we have one.
+	 * @param objectPath
+	 * @param cached a stale cache entry, or null
+	 * @return the object data transfer, or null if the object doesn't exist
+	 * @throws ModelServiceException
+	 */
+	private CommonDataTransfer fetchObject ( Path objectPath, ModelObjectCache.Entry cached ) throws ModelServiceException
+	{
+		final HttpRequest req = fClient.newRequest ()
+			.asUser ( fCreds )
+			.onPath ( pathToUrl ( objectPath ) )
+			.addQueryParam ( "incl", "data" )
+		;
+		if ( cached != null && cached.getEtag () != null )
+		{
+			req.withHeader ( HttpHeaders.IF_NONE_MATCH.toString (), cached.getEtag () );
+		}
+
+		try ( final HttpResponse resp = req.get () )
+		{
+			if ( resp.isNotModified () && cached != null )
+			{
+				fSharedCache.revalidated ( objectPath, cached );
+				return new CommonDataTransfer ( objectPath, cached.getObjectData () );
+			}
+			else if ( resp.isSuccess () )
+			{
+				final JSONObject respBody = resp.getBody ();
+				final JSONObject obj = respBody.optJSONObject ( "object" );
+				if ( obj == null )
+				{
+					throw new ModelServiceException ( "Expected 'object' in response payload." );
+				}
+				if ( fSharedCache != null )
+				{
+					fSharedCache.put ( objectPath, resp.getHeader ( HttpHeaders.ETAG.toString () ), obj );
+				}
+				return new CommonDataTransfer ( objectPath, obj );
+			}
+			else if ( resp.isNotFound () )
+			{
+				if ( fSharedCache != null ) fSharedCache.remove ( objectPath );
+				return null;
+			}
+			else
+			{
+				throw new ModelServiceException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
+			}
+		}
+		catch ( HttpServiceException | BodyFormatException e )
+		{
+			throw new ModelServiceException ( e );
+		}
+	}
+
+	/**
+	 * Fetch a batch of objects from the server in one request. This method doesn't touch the caller's request context,
+	 * so it's safe to run on the request executor.
+	 * @param batch paths to fetch, with any stale cache entry we hold for them
+	 * @return a map of path to object data for objects that exist
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	private Map<Path,CommonDataTransfer> fetchBatch ( Map<Path,ModelObjectCache.Entry> batch ) throws ModelServiceException, ModelRequestException
+	{
+		final JSONArray paths = new JSONArray ();
+		final JSONObject knownEtags = new JSONObject ();
+		for ( Map.Entry<Path,ModelObjectCache.Entry> e : batch.entrySet () )
+		{
+			final String modelPath = userPathToModelPath ( e.getKey () ).toString ();
+			paths.put ( modelPath );
+			if ( e.getValue () != null && e.getValue ().getEtag () != null )
+			{
+				knownEtags.put ( modelPath, e.getValue ().getEtag () );
+			}
+		}
+
+		try (
+			final HttpResponse resp = fClient.newRequest ()
+				.asUser ( fCreds )
+				.onPath ( getBasePath ( "objects" ) )
+				.addQueryParam ( "incl", "data" )
+				.post ( new JSONObject ()
+					.put ( "paths", paths )
+					.put ( "etags", knownEtags )
+				)
+		)
+		{
+			if ( resp.isClientError () )
+			{
+				throw new ModelRequestException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
+			}
+			else if ( !resp.isSuccess () )
+			{
+				throw new ModelServiceException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
+			}
+
+			final HashMap<Path,CommonDataTransfer> result = new HashMap<> ();
+			final JSONObject body = resp.getBody ();
+
+			final JSONObject objects = body.optJSONObject ( "objects" );
+			final JSONObject etags = body.optJSONObject ( "etags" );
+			if ( objects != null )
+			{
+				for ( String modelPath : objects.keySet () )
+				{
+					final Path objectPath = modelPathToUserPath ( Path.fromString ( modelPath ) );
+					final JSONObject obj = objects.getJSONObject ( modelPath );
+					if ( fSharedCache != null )
+					{
+						fSharedCache.put ( objectPath, etags == null ? null : etags.optString ( modelPath, null ), obj );
+					}
+					result.put ( objectPath, new CommonDataTransfer ( objectPath, obj ) );
+				}
+			}
+
+			final JSONArray notModified = body.optJSONArray ( "notModified" );
+			if ( notModified != null )
+			{
+				for ( int i=0; i<notModified.length (); i++ )
+				{
+					final Path objectPath = modelPathToUserPath ( Path.fromString ( notModified.getString ( i ) ) );
+					final ModelObjectCache.Entry cached = batch.get ( objectPath );
+					if ( cached != null )
+					{
+						fSharedCache.revalidated ( objectPath, cached );
+						result.put ( objectPath, new CommonDataTransfer ( objectPath, cached.getObjectData () ) );
+					}
+				}
+			}
+
+			final JSONArray missing = body.optJSONArray ( "missing" );
+			if ( missing != null && fSharedCache != null )
+			{
+				for ( int i=0; i<missing.length (); i++ )
+				{
+					fSharedCache.remove ( modelPathToUserPath ( Path.fromString ( missing.getString ( i ) ) ) );
+				}
+			}
+
+			return result;
+		}
+		catch ( HttpServiceException | BodyFormatException | JSONException e )
+		{
+			throw new ModelServiceException ( e );
+		}
+	}
+
+	private Map<Path,CommonDataTransfer> awaitBatch ( Future<Map<Path,CommonDataTransfer>> f ) throws ModelServiceException, ModelRequestException
+	{
+		try
+		{
+			return f.get ();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread ().interrupt ();
+			throw new ModelServiceException ( e );
+		}
+		catch ( ExecutionException e )
+		{
+			final Throwable cause = e.getCause ();
+			if ( cause instanceof ModelRequestException ) throw (ModelRequestException) cause;
+			if ( cause instanceof ModelServiceException ) throw (ModelServiceException) cause;
+			throw new ModelServiceException ( cause );
+		}
+	}
+
 	private List<ModelRelationInstance> getRelns ( Path forObject, boolean inbound, String relnName ) throws ModelItemDoesNotExistException, ModelRequestException, ModelServiceException
 	{
 		final LinkedList<ModelRelationInstance> result = new LinkedList<> ();
@@ -667,6 +960,73 @@ public class ModelClient extends SimpleService implements Model
 		}
 	}
 
+	private static final int kMaxRemotePageSize = 1000;
+
+	/**
+	 * Post a query or traversal plan to the server and collect every page of the result.
+	 * @param section the API section, "query" or "traversal"
+	 * @param plan
+	 * @param pg the first page to request
+	 * @param sz the page size to request
+	 * @param allPages if true, follow continuation tokens until the result is exhausted
+	 * @param pageHandler called with each page's response body
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	private void runRemotePlan ( String section, JSONObject plan, int pg, int sz, boolean allPages, RemotePageHandler pageHandler ) throws ModelServiceException, ModelRequestException
+	{
+		String next = null;
+		do
+		{
+			final HttpRequest req = fClient.newRequest ()
+				.asUser ( fCreds )
+				.onPath ( getBasePath ( section ) )
+			;
+			if ( next == null )
+			{
+				req
+					.addQueryParam ( "pg", Integer.toString ( pg ) )
+					.addQueryParam ( "sz", Integer.toString ( sz ) )
+				;
+			}
+			else
+			{
+				req.addQueryParam ( "next", next );
+			}
+
+			try ( final HttpResponse resp = req.post ( new JSONObject ().put ( "plan", plan ) ) )
+			{
+				if ( resp.isClientError () )
+				{
+					throw new ModelRequestException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
+				}
+				else if ( !resp.isSuccess () )
+				{
+					throw new ModelServiceException ( "server replied " + resp.getCode () + " " + resp.getMessage () );
+				}
+
+				final JSONObject body = resp.getBody ();
+				pageHandler.onPage ( body );
+				next = body.optString ( "next", null );
+			}
+			catch ( HttpServiceException | BodyFormatException | JSONException e )
+			{
+				throw new ModelServiceException ( e );
+			}
+		}
+		while ( allPages && next != null );
+	}
+
+	private interface RemotePageHandler
+	{
+		void onPage ( JSONObject body ) throws ModelRequestException, JSONException;
+	}
+
+	/**
+	 * A query that runs on the server. Filters are applied next to the data so only matching
+	 * objects come back. Ordering uses a local comparator, so an ordered query collects all
+	 * matches and sorts and pages them here.
+	 */
 	private class RemoteModelQuery extends SimpleModelQuery
 	{
 		@Override
@@ -674,40 +1034,70 @@ public class ModelClient extends SimpleService implements Model
 		{
 			final LinkedList<ModelObjectAndPath<T>> result = new LinkedList<> ();
 
-			final ModelPathListPage objectPaths = listChildrenOfPath ( context, getPathPrefix () );
-			for ( Path objectPath : objectPaths )
-			{
-				final T mo = load ( context, objectPath, factory, userContext );
-				boolean match = true;
-				for ( Filter f : getFilters() )
+			final JSONObject plan = toPlan ()
+				.put ( kPlan_PathPrefix, userPathToModelPath ( getPathPrefix () ).toString () )
+			;
+
+			// a single unordered page can be requested directly; otherwise walk the whole result
+			final Comparator<ModelObject> orderBy = getOrdering ();
+			final boolean serverPaged = orderBy == null && getPageSize () <= kMaxRemotePageSize;
+
+			runRemotePlan ( "query", plan,
+				serverPaged ? getPageNumber () : 0,
+				serverPaged ? getPageSize () : Math.min ( fBatchSize, kMaxRemotePageSize ),
+				!serverPaged,
+				new RemotePageHandler ()
 				{
-					match = f.matches ( accessor.getDataFrom ( mo ) );
-					if ( !match )
+					@Override
+					public void onPage ( JSONObject body ) throws ModelRequestException, JSONException
 					{
-						break;
+						final JSONArray objects = body.getJSONArray ( "objects" );
+						for ( int i=0; i<objects.length (); i++ )
+						{
+							final JSONObject entry = objects.getJSONObject ( i );
+							final Path objectPath = modelPathToUserPath ( Path.fromString ( entry.getString ( "path" ) ) );
+							final JSONObject obj = entry.getJSONObject ( "object" );
+							if ( fSharedCache != null )
+							{
+								fSharedCache.put ( objectPath, entry.optString ( "etag", null ), obj );
+							}
+							final CommonDataTransfer ld = new CommonDataTransfer ( objectPath, obj );
+							context.put ( objectPath, ld );
+							result.add ( ModelObjectAndPath.from ( objectPath, create ( ld, factory, userContext ) ) );
+						}
 					}
 				}
-				if ( match )
-				{
-					result.add ( ModelObjectAndPath.from ( objectPath, mo ) );
-				}
-			}
+			);
 
-			// now sort our list
-			Comparator<ModelObject> orderBy = getOrdering ();
-			if ( orderBy != null )
+			if ( !serverPaged )
 			{
-				Collections.sort ( result, new Comparator<ModelObjectAndPath<T>> ()
+				// now sort our list
+				if ( orderBy != null )
 				{
-					@Override
-					public int compare ( ModelObjectAndPath<T> o1, ModelObjectAndPath<T> o2 )
+					Collections.sort ( result, new Comparator<ModelObjectAndPath<T>> ()
 					{
-						return orderBy.compare (
-							accessor.getDataFrom ( o1.getObject () ),
-							accessor.getDataFrom ( o2.getObject () )
-						);
-					}
-				} );
+						@Override
+						public int compare ( ModelObjectAndPath<T> o1, ModelObjectAndPath<T> o2 )
+						{
+							return orderBy.compare (
+								accessor.getDataFrom ( o1.getObject () ),
+								accessor.getDataFrom ( o2.getObject () )
+							);
+						}
+					} );
+				}
+
+				// and trim to the requested page
+				long toDump = (long)getPageSize() * (long)getPageNumber();
+				while ( toDump > 0L && result.size () > 0 )
+				{
+					result.removeFirst ();
+					toDump--;
+				}
+				while ( result.size () > getPageSize() )
+				{
+					result.removeLast ();
+				}
 			}
 
 			return new ModelObjectList<T> ()
@@ -721,9 +1111,52 @@ public class ModelClient extends SimpleService implements Model
 		}
 	}
 
+	/**
+	 * A traversal that runs on the server when its plan can be serialized, and locally otherwise.
+	 */
+	private class RemoteTraversal extends SimpleTraversal
+	{
+		public RemoteTraversal ()
+		{
+			super ( ModelClient.this );
+		}
+
+		@Override
+		public ModelPathList execute ( ModelRequestContext context ) throws ModelRequestException, ModelServiceException
+		{
+			final JSONObject plan = toPlan ();
+			if ( plan == null )
+			{
+				return super.execute ( context );
+			}
+
+			final JSONArray start = new JSONArray ();
+			for ( String p : JsonVisitor.arrayToList ( plan.getJSONArray ( "start" ) ) )
+			{
+				start.put ( userPathToModelPath ( Path.fromString ( p ) ).toString () );
+			}
+			plan.put ( "start", start );
+
+			final TreeSet<Path> result = new TreeSet<> ();
+			runRemotePlan ( "traversal", plan, 0, kMaxRemotePageSize, true, new RemotePageHandler ()
+			{
+				@Override
+				public void onPage ( JSONObject body ) throws JSONException
+				{
+					for ( String p : JsonVisitor.arrayToList ( body.getJSONArray ( "paths" ) ) )
+					{
+						result.add ( modelPathToUserPath ( Path.fromString ( p ) ) );
+					}
+				}
+			} );
+			return ModelPathList.wrap ( result );
+		}
+	}
+
 	@Override
 	protected void onStopRequested ()
 	{
+		fRequestExecutor.shutdown ();
 		fClient.close ();
 	}
 }
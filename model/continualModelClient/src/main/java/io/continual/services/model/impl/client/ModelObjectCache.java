@@ -0,0 +1,125 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.impl.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import io.continual.util.collections.ShardedExpiringCache;
+import io.continual.util.naming.Path;
+import io.continual.util.time.Clock;
+
+/**
+ * An object cache shared across request contexts on a single model client. Entries are
+ * served without a server round trip while fresh. Once stale, they're retained (for a longer
+ * period) along with their entity tag so the client can revalidate them with a conditional
+ * request rather than transferring the object again. Objects are held as serialized text and
+ * parsed on each read, so no two callers ever share a mutable object.
+ */
+class ModelObjectCache
+{
+	static class Entry
+	{
+		Entry ( String etag, JSONObject objectData )
+		{
+			this ( etag, objectData.toString () );
+		}
+
+		String getEtag () { return fEtag; }
+		JSONObject getObjectData () { return new JSONObject ( fObjectText ); }
+
+		private Entry ( String etag, String objectText )
+		{
+			fEtag = etag;
+			fObjectText = objectText;
+			fFetchedAtMs = Clock.now ();
+		}
+
+		private final String fEtag;
+		private final String fObjectText;
+		private final long fFetchedAtMs;
+	}
+
+	public ModelObjectCache ( long freshMs, long retainMs )
+	{
+		fFreshMs = freshMs;
+		fCache = new ShardedExpiringCache.Builder<Path,Entry> ()
+			.named ( "model client objects" )
+			.cachingFor ( Math.max ( freshMs, retainMs ), TimeUnit.MILLISECONDS )
+			.withShardCount ( kShardCount )
+			.build ()
+		;
+	}
+
+	/**
+	 * Get an entry, fresh or not.
+	 * @param p
+	 * @return an entry, or null
+	 */
+	public Entry get ( Path p )
+	{
+		return fCache.read ( p );
+	}
+
+	/**
+	 * Is the given entry fresh enough to use without revalidation?
+	 * @param e
+	 * @return true if the entry can be used as-is
+	 */
+	public boolean isFresh ( Entry e )
+	{
+		return e != null && Clock.now () - e.fFetchedAtMs < fFreshMs;
+	}
+
+	/**
+	 * Store an object. Objects without an entity tag are only useful while fresh.
+	 * @param p
+	 * @param etag
+	 * @param objectData
+	 * @return the new entry
+	 */
+	public Entry put ( Path p, String etag, JSONObject objectData )
+	{
+		final Entry e = new Entry ( etag, objectData );
+		fCache.write ( p, e );
+		return e;
+	}
+
+	/**
+	 * Re-store an entry after the server confirmed it's unchanged
+	 * @param p
+	 * @param e
+	 * @return the refreshed entry
+	 */
+	public Entry revalidated ( Path p, Entry e )
+	{
+		final Entry refreshed = new Entry ( e.fEtag, e.fObjectText );
+		fCache.write ( p, refreshed );
+		return refreshed;
+	}
+
+	public void remove ( Path p )
+	{
+		fCache.remove ( p );
+	}
+
+	private final long fFreshMs;
+	private final ShardedExpiringCache<Path,Entry> fCache;
+
+	private static final int kShardCount = 64;
+}
@@ -0,0 +1,216 @@
+package io.continual.services.model.impl.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.services.ServiceContainer;
+import io.continual.services.model.core.ModelRequestContext;
+import io.continual.services.model.core.data.BasicModelObject;
+import io.continual.services.model.core.data.JsonModelObject;
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class ModelClientCacheTest extends TestCase
+{
+	@Override
+	protected void setUp () throws IOException, BuildFailure
+	{
+		fObjectGets = new AtomicInteger ( 0 );
+		fNotModified = new AtomicInteger ( 0 );
+		fBatchPosts = new AtomicInteger ( 0 );
+		fBatchEtagsSent = new ArrayList<> ();
+
+		fServer = HttpServer.create ( new InetSocketAddress ( "localhost", 0 ), 0 );
+		fServer.setExecutor ( Executors.newCachedThreadPool () );
+		fServer.createContext ( "/v1/model/", exchange -> {
+			fObjectGets.incrementAndGet ();
+			final String name = exchange.getRequestURI ().getPath ().substring ( "/v1/model/".length () );
+			final String etag = etagFor ( name );
+			exchange.getResponseHeaders ().add ( "ETag", etag );
+			if ( etag.equals ( exchange.getRequestHeaders ().getFirst ( "If-None-Match" ) ) )
+			{
+				fNotModified.incrementAndGet ();
+				exchange.sendResponseHeaders ( 304, -1 );
+				exchange.close ();
+				return;
+			}
+			reply ( exchange, new JSONObject ()
+				.put ( "status", 200 )
+				.put ( "object", objectFor ( name ) )
+			);
+		} );
+		fServer.createContext ( "/v1/objects", exchange -> {
+			fBatchPosts.incrementAndGet ();
+			final JSONObject payload;
+			try ( InputStream is = exchange.getRequestBody () )
+			{
+				payload = new JSONObject ( new JSONTokener ( is ) );
+			}
+			final JSONObject known = payload.getJSONObject ( "etags" );
+			synchronized ( fBatchEtagsSent )
+			{
+				fBatchEtagsSent.add ( known.length () );
+			}
+
+			final JSONObject objects = new JSONObject ();
+			final JSONObject etags = new JSONObject ();
+			final JSONArray notModified = new JSONArray ();
+			final JSONArray missing = new JSONArray ();
+			final JSONArray paths = payload.getJSONArray ( "paths" );
+			for ( int i=0; i<paths.length (); i++ )
+			{
+				final String path = paths.getString ( i );
+				final String name = path.substring ( 1 );
+				if ( name.startsWith ( "missing" ) )
+				{
+					missing.put ( path );
+				}
+				else if ( etagFor ( name ).equals ( known.optString ( path, null ) ) )
+				{
+					notModified.put ( path );
+				}
+				else
+				{
+					objects.put ( path, objectFor ( name ) );
+					etags.put ( path, etagFor ( name ) );
+				}
+			}
+			reply ( exchange, new JSONObject ()
+				.put ( "status", 200 )
+				.put ( "objects", objects )
+				.put ( "etags", etags )
+				.put ( "notModified", notModified )
+				.put ( "missing", missing )
+			);
+		} );
+		fServer.start ();
+
+		fClient = new ModelClient ( new ServiceContainer (), new JSONObject ()
+			.put ( "modelId", "test" )
+			.put ( "baseUrl", "http://localhost:" + fServer.getAddress ().getPort () )
+			.put ( "username", "user" )
+			.put ( "password", "pass" )
+			.put ( "batchSize", 2 )
+			.put ( "cache", new JSONObject ()
+				.put ( "freshSeconds", 0 )	// everything must be revalidated
+			)
+		);
+	}
+
+	@Override
+	protected void tearDown () throws IOException
+	{
+		fClient.close ();
+		fServer.stop ( 0 );
+	}
+
+	@Test
+	public void testNotModifiedServedFromCache () throws ModelServiceException, ModelRequestException
+	{
+		final Path foo = Path.fromString ( "/foo" );
+
+		final BasicModelObject first = fClient.load ( newContext (), foo );
+		assertEquals ( "foo", JsonModelObject.modelObjectToJson ( first.getData () ).getString ( "name" ) );
+		assertEquals ( 0, fNotModified.get () );
+
+		// a new context has nothing locally, so the stale shared entry is revalidated
+		final BasicModelObject second = fClient.load ( newContext (), foo );
+		assertEquals ( "foo", JsonModelObject.modelObjectToJson ( second.getData () ).getString ( "name" ) );
+		assertEquals ( 2, fObjectGets.get () );
+		assertEquals ( 1, fNotModified.get () );
+	}
+
+	@Test
+	public void testLoadManyBatchesAndRevalidates () throws ModelServiceException, ModelRequestException
+	{
+		final List<Path> paths = Arrays.asList (
+			Path.fromString ( "/a" ),
+			Path.fromString ( "/missing1" ),
+			Path.fromString ( "/b" ),
+			Path.fromString ( "/c" ),
+			Path.fromString ( "/d" )
+		);
+
+		final Map<Path,BasicModelObject> first = fClient.loadMany ( newContext (), paths );
+		assertEquals ( Arrays.asList ( paths.get ( 0 ), paths.get ( 2 ), paths.get ( 3 ), paths.get ( 4 ) ), new ArrayList<> ( first.keySet () ) );
+		assertEquals ( "c", JsonModelObject.modelObjectToJson ( first.get ( paths.get ( 3 ) ).getData () ).getString ( "name" ) );
+		assertEquals ( 3, fBatchPosts.get () );
+
+		// the second round sends the etags we were given, so every present object comes back not-modified
+		final Map<Path,BasicModelObject> second = fClient.loadMany ( newContext (), paths );
+		assertEquals ( first.keySet (), second.keySet () );
+		assertEquals ( "d", JsonModelObject.modelObjectToJson ( second.get ( paths.get ( 4 ) ).getData () ).getString ( "name" ) );
+		assertEquals ( 6, fBatchPosts.get () );
+
+		int etagsSent = 0;
+		synchronized ( fBatchEtagsSent )
+		{
+			for ( int i=3; i<fBatchEtagsSent.size (); i++ )
+			{
+				etagsSent += fBatchEtagsSent.get ( i );
+			}
+		}
+		assertEquals ( 4, etagsSent );
+		assertEquals ( 0, fObjectGets.get () );
+	}
+
+	private ModelRequestContext newContext () throws ModelServiceException, ModelRequestException
+	{
+		try
+		{
+			return fClient.getRequestContextBuilder ().build ();
+		}
+		catch ( BuildFailure e )
+		{
+			throw new ModelServiceException ( e );
+		}
+	}
+
+	private static String etagFor ( String name )
+	{
+		return "\"v1-" + name + "\"";
+	}
+
+	private static JSONObject objectFor ( String name )
+	{
+		return new JSONObject ()
+			.put ( "data", new JSONObject ().put ( "name", name ) )
+			.put ( "meta", new JSONObject () )
+		;
+	}
+
+	private static void reply ( HttpExchange exchange, JSONObject body ) throws IOException
+	{
+		final byte[] reply = body.toString ().getBytes ( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders ().add ( "Content-Type", "application/json" );
+		exchange.sendResponseHeaders ( 200, reply.length );
+		exchange.getResponseBody ().write ( reply );
+		exchange.close ();
+	}
+
+	private HttpServer fServer;
+	private ModelClient fClient;
+	private AtomicInteger fObjectGets;
+	private AtomicInteger fNotModified;
+	private AtomicInteger fBatchPosts;
+	private ArrayList<Integer> fBatchEtagsSent;
+}
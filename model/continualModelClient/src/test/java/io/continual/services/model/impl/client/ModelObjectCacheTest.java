@@ -0,0 +1,61 @@
+package io.continual.services.model.impl.client;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.util.naming.Path;
+import io.continual.util.time.Clock;
+import io.continual.util.time.Clock.TestClock;
+import junit.framework.TestCase;
+
+public class ModelObjectCacheTest extends TestCase
+{
+	@Override
+	protected void tearDown ()
+	{
+		Clock.replaceClock ( new Clock () );
+	}
+
+	@Test
+	public void testCallersDontShareObjects ()
+	{
+		final ModelObjectCache cache = new ModelObjectCache ( 1000L, 10000L );
+		final Path p = Path.fromString ( "/foo" );
+
+		final JSONObject original = new JSONObject ().put ( "data", new JSONObject ().put ( "a", 1 ) );
+		cache.put ( p, "\"e1\"", original );
+
+		// changing the stored object after the fact doesn't change the cache
+		original.getJSONObject ( "data" ).put ( "a", 2 );
+
+		final JSONObject first = cache.get ( p ).getObjectData ();
+		assertEquals ( 1, first.getJSONObject ( "data" ).getInt ( "a" ) );
+
+		// nor does changing what a reader received
+		first.getJSONObject ( "data" ).put ( "a", 3 );
+		assertEquals ( 1, cache.get ( p ).getObjectData ().getJSONObject ( "data" ).getInt ( "a" ) );
+	}
+
+	@Test
+	public void testFreshnessAndRevalidation ()
+	{
+		final TestClock clock = Clock.useNewTestClock ();
+		clock.set ( 1000000L );
+
+		final ModelObjectCache cache = new ModelObjectCache ( 1000L, 10000L );
+		final Path p = Path.fromString ( "/foo" );
+		cache.put ( p, "\"e1\"", new JSONObject ().put ( "data", new JSONObject () ) );
+		assertTrue ( cache.isFresh ( cache.get ( p ) ) );
+
+		clock.add ( 1500L );
+		final ModelObjectCache.Entry stale = cache.get ( p );
+		assertNotNull ( stale );
+		assertFalse ( cache.isFresh ( stale ) );
+		assertEquals ( "\"e1\"", stale.getEtag () );
+
+		final ModelObjectCache.Entry refreshed = cache.revalidated ( p, stale );
+		assertTrue ( cache.isFresh ( refreshed ) );
+		assertEquals ( "\"e1\"", refreshed.getEtag () );
+		assertTrue ( cache.isFresh ( cache.get ( p ) ) );
+	}
+}
@@ -17,6 +17,10 @@
 package io.continual.services.model.api.endpoints;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -26,26 +30,36 @@ import org.json.JSONObject;
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.http.service.framework.context.CHttpRequest;
 import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.util.JsonBodyWriter;
+import io.continual.http.util.JsonStreamWriter;
 import io.continual.iam.exceptions.IamSvcException;
 import io.continual.services.ServiceContainer;
 import io.continual.services.model.client.ModelConnection;
+import io.continual.services.model.core.ModelObjectAndPath;
+import io.continual.services.model.core.ModelObjectMetadata;
 import io.continual.services.model.core.ModelPathListPage;
+import io.continual.services.model.core.ModelQuery;
 import io.continual.services.model.core.ModelRelation;
 import io.continual.services.model.core.ModelRelationInstance;
 import io.continual.services.model.core.ModelRelationList;
+import io.continual.services.model.core.ModelTraversal;
 import io.continual.services.model.core.PageRequest;
 import io.continual.services.model.core.data.BasicModelObject;
 import io.continual.services.model.core.data.JsonModelObject;
 import io.continual.services.model.core.exceptions.ModelItemDoesNotExistException;
 import io.continual.services.model.core.exceptions.ModelRequestException;
 import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.services.model.impl.common.SimpleModelQuery;
+import io.continual.services.model.impl.common.SimpleTraversal;
 import io.continual.services.model.service.ModelService;
 import io.continual.services.model.session.ModelSession;
 import io.continual.util.collections.MultiMap;
+import io.continual.util.data.TypeConvertor;
 import io.continual.util.data.json.CommentedJsonTokener;
 import io.continual.util.data.json.JsonVisitor;
 import io.continual.util.data.json.JsonVisitor.ItemRenderer;
 import io.continual.util.naming.Path;
+import io.continual.util.standards.HttpHeaders;
 import io.continual.util.standards.HttpStatusCodes;
 
 public class ModelApi extends ModelApiContextHelper
@@ -53,6 +67,11 @@ public class ModelApi extends ModelApiContextHelper
 	public ModelApi ( ServiceContainer sc, JSONObject settings, ModelService ms ) throws BuildFailure
 	{
 		super ( sc, settings, ms );
+
+		fCursors = new ResultCursors (
+			1000L * settings.optLong ( "cursorTimeoutSeconds", kDefaultCursorTimeoutSeconds ),
+			settings.optInt ( "maxOpenCursors", kDefaultMaxOpenCursors )
+		);
 	}
 
 	public void getModelIndexes ( CHttpRequestContext context, final String acctId, final String modelName ) throws IOException, ModelRequestException
@@ -246,31 +265,27 @@ public class ModelApi extends ModelApiContextHelper
 				}
 				else if ( model.exists ( requestedPath ) )
 				{
-					final JSONObject response = new JSONObject ()
-						.put ( "status", HttpStatusCodes.k200_ok )
-						.put ( "request", requestedPath.toString () )
-					;
+					final Rendering r = renderIfChanged ( model, requestedPath, io, req.getFirstHeader ( HttpHeaders.IF_NONE_MATCH ) );
 
-					final ObjectRenderer or = new ObjectRenderer ()
-						.atPath ( requestedPath )
-					;
-
-					if ( io == IncludeOptions.DATA || io == IncludeOptions.BOTH )
+					// if the caller already has this version, skip the body
+					if ( r.isNotModified () )
 					{
-						final BasicModelObject mo = ms.getModel ().load ( requestedPath );
-						or
-							.withData ( mo )
+						context.response ()
+							.writeHeader ( HttpHeaders.ETAG, r.fEtag )
+							.setStatus ( HttpStatusCodes.k304_notModified )
 						;
+						return;
 					}
-
-					if ( io == IncludeOptions.RELS || io == IncludeOptions.BOTH )
+					if ( r.fEtag != null )
 					{
-						or.withRelations ( ms.getModel ().selectRelations ( requestedPath ).getRelations () );
+						context.response ().writeHeader ( HttpHeaders.ETAG, r.fEtag );
 					}
 
-					response.put ( "object", or.render () );
-
-					modelApiContext.respondOk ( response );
+					modelApiContext.respondOk ( new JSONObject ()
+						.put ( "status", HttpStatusCodes.k200_ok )
+						.put ( "request", requestedPath.toString () )
+						.put ( "object", r.fObject )
+					);
 				}
 				else
 				{
@@ -306,6 +321,342 @@ public class ModelApi extends ModelApiContextHelper
 		} );
 	}
 
+	private static final String kBatch_Paths = "paths";
+	private static final String kBatch_Etags = "etags";
+	private static final int kMaxBatchSize = 1000;
+
+	/**
+	 * Load a set of objects in one request. The body is an object with an array of paths, and optionally
+	 * a map of path to ETag for objects the caller already holds:
+	 * 
+	 * { paths: [ "/foo/bar", "/foo/baz" ], etags: { "/foo/bar": "\"a1b2...\"" } }
+	 * 
+	 * The response carries found objects keyed by path, along with lists of paths that were not modified
+	 * (per the ETag provided) and paths that do not exist.
+	 * 
+	 * @param context
+	 * @throws IOException
+	 * @throws ModelRequestException
+	 */
+	public void loadObjects ( CHttpRequestContext context ) throws IOException, ModelRequestException
+	{
+		handleModelRequest ( context, null, new ModelApiHandler ()
+		{
+			@Override
+			public void handle ( ModelApiContext modelApiContext ) throws IOException, JSONException, ModelServiceException, IamSvcException, ModelItemDoesNotExistException, ModelRequestException, BuildFailure
+			{
+				final IncludeOptions io = userTextToOption ( 
+					context.request ().getParameter ( kIncludeParam, kIncludeParam_Default )
+				);
+
+				final JSONObject payload = readPayload ( context );
+				final JSONArray paths = payload.optJSONArray ( kBatch_Paths );
+				if ( paths == null )
+				{
+					throw new ModelRequestException ( "The request must include a '" + kBatch_Paths + "' array." );
+				}
+				if ( paths.length () > kMaxBatchSize )
+				{
+					throw new ModelRequestException ( "A batch request may include at most " + kMaxBatchSize + " paths." );
+				}
+				final JSONObject knownEtags = payload.optJSONObject ( kBatch_Etags );
+
+				final ModelSession ms = modelApiContext.getModelSession ();
+				final ModelConnection model = ms.getModel ();
+
+				final JSONObject objects = new JSONObject ();
+				final JSONObject etags = new JSONObject ();
+				final JSONArray notModified = new JSONArray ();
+				final JSONArray missing = new JSONArray ();
+				for ( int i=0; i<paths.length (); i++ )
+				{
+					final Path requestedPath = fixupPath ( paths.getString ( i ) );
+					try
+					{
+						final Rendering r = renderIfChanged ( model, requestedPath, io,
+							knownEtags == null ? null : knownEtags.optString ( requestedPath.toString (), null ) );
+						if ( r.isNotModified () )
+						{
+							notModified.put ( requestedPath.toString () );
+						}
+						else
+						{
+							objects.put ( requestedPath.toString (), r.fObject );
+							if ( r.fEtag != null )
+							{
+								etags.put ( requestedPath.toString (), r.fEtag );
+							}
+						}
+					}
+					catch ( ModelItemDoesNotExistException x )
+					{
+						missing.put ( requestedPath.toString () );
+					}
+				}
+
+				modelApiContext.respondOk ( new JSONObject ()
+					.put ( "status", HttpStatusCodes.k200_ok )
+					.put ( "objects", objects )
+					.put ( kBatch_Etags, etags )
+					.put ( "notModified", notModified )
+					.put ( "missing", missing )
+				);
+			}
+		} );
+	}
+
+	private static final String kPlan = "plan";
+	private static final String kQueryParam_PageToken = "next";
+	private static final int kMaxPageSize = 1000;
+
+	/**
+	 * Run a query next to the data. The body carries a plan built by SimpleModelQuery.toPlan(). Results
+	 * are returned a page at a time, with a continuation token in "next" when more are available. Pass
+	 * the token back as the "next" query parameter (with the same plan) to get the following page. The
+	 * token names a server-side cursor, so the following page continues from where this one stopped.
+	 * 
+	 * @param context
+	 * @throws IOException
+	 * @throws ModelRequestException
+	 */
+	public void runQuery ( CHttpRequestContext context ) throws IOException, ModelRequestException
+	{
+		handleModelRequest ( context, null, new ModelApiHandler ()
+		{
+			@Override
+			public void handle ( ModelApiContext modelApiContext ) throws IOException, JSONException, ModelServiceException, IamSvcException, ModelItemDoesNotExistException, ModelRequestException, BuildFailure
+			{
+				final JSONObject plan = readPlan ( context );
+				final JSONObject token = readPageToken ( context );
+				final int pg = token.getInt ( kQueryParam_FirstPage );
+				final int sz = token.getInt ( kQueryParam_PageSize );
+				final String userId = modelApiContext.getUserContext ().getEffectiveUserId ();
+
+				final ModelConnection model = modelApiContext.getModelSession ().getModel ();
+				Iterator<ModelObjectAndPath<BasicModelObject>> it = fCursors.resume ( token.optString ( kPageToken_Cursor, null ), kCursor_Query, userId, plan, pg );
+				if ( it == null )
+				{
+					// no cursor to continue, so run the query and skip to the requested page
+					final ModelQuery q = SimpleModelQuery.applyPlan ( model.startQuery (), plan );
+					it = model.execute ( q ).iterator ();
+					skip ( it, (long) pg * (long) sz );
+				}
+
+				// the first result is rendered before the 200 is committed, so a query that fails up front gets an error response
+				final JSONObject first = it.hasNext () ? renderResult ( it.next () ) : null;
+
+				// results are written as they're rendered rather than collected into one document
+				final JsonStreamWriter w = JsonBodyWriter.startStream ( context, HttpStatusCodes.k200_ok );
+				boolean complete = false;
+				try
+				{
+					w.object ()
+						.key ( "status" ).value ( HttpStatusCodes.k200_ok )
+						.key ( "objects" ).array ()
+					;
+					if ( first != null )
+					{
+						w.value ( first );
+						int count = 1;
+						while ( count < sz && it.hasNext () )
+						{
+							w.value ( renderResult ( it.next () ) );
+							count++;
+						}
+					}
+					w.endArray ();
+
+					if ( it.hasNext () )
+					{
+						w.key ( kQueryParam_PageToken ).value ( writePageToken ( pg + 1, sz, fCursors.save ( kCursor_Query, userId, plan, pg + 1, it ) ) );
+					}
+					w.endObject ();
+					complete = true;
+				}
+				finally
+				{
+					endStream ( context, w, complete );
+				}
+			}
+		} );
+	}
+
+	private static JSONObject renderResult ( ModelObjectAndPath<BasicModelObject> mop )
+	{
+		final JSONObject rendered = new ObjectRenderer ()
+			.atPath ( mop.getPath () )
+			.withData ( mop.getObject () )
+			.render ()
+		;
+		final String etag = computeEtag ( mop.getPath (), IncludeOptions.DATA, mop.getObject () );
+		return new JSONObject ()
+			.put ( "path", mop.getPath ().toString () )
+			.put ( "etag", etag == null ? computeEtag ( rendered ) : etag )
+			.put ( "object", rendered )
+		;
+	}
+
+	/**
+	 * Finish a streamed response. A stream that failed partway is aborted rather than closed, so the
+	 * client sees a broken response instead of a short page that looks complete.
+	 */
+	private static void endStream ( CHttpRequestContext context, JsonStreamWriter w, boolean complete ) throws IOException
+	{
+		if ( complete )
+		{
+			w.close ();
+		}
+		else
+		{
+			context.response ().abort ();
+		}
+	}
+
+	/**
+	 * Run a traversal next to the data. The body carries a plan built by SimpleTraversal.toPlan(). The
+	 * resulting paths are paged in the same way as query results.
+	 * 
+	 * @param context
+	 * @throws IOException
+	 * @throws ModelRequestException
+	 */
+	public void runTraversal ( CHttpRequestContext context ) throws IOException, ModelRequestException
+	{
+		handleModelRequest ( context, null, new ModelApiHandler ()
+		{
+			@Override
+			public void handle ( ModelApiContext modelApiContext ) throws IOException, JSONException, ModelServiceException, IamSvcException, ModelItemDoesNotExistException, ModelRequestException, BuildFailure
+			{
+				final JSONObject plan = readPlan ( context );
+				final JSONObject token = readPageToken ( context );
+				final int pg = token.getInt ( kQueryParam_FirstPage );
+				final int sz = token.getInt ( kQueryParam_PageSize );
+				final String userId = modelApiContext.getUserContext ().getEffectiveUserId ();
+
+				final ModelConnection model = modelApiContext.getModelSession ().getModel ();
+				Iterator<Path> it = fCursors.resume ( token.optString ( kPageToken_Cursor, null ), kCursor_Traversal, userId, plan, pg );
+				if ( it == null )
+				{
+					// no cursor to continue, so run the traversal and skip to the requested page
+					final ModelTraversal t = SimpleTraversal.applyPlan ( model.startTraversal (), plan );
+					it = model.execute ( t ).iterator ();
+					skip ( it, (long) pg * (long) sz );
+				}
+
+				// the first path is read before the 200 is committed, so a traversal that fails up front gets an error response
+				final Path first = it.hasNext () ? it.next () : null;
+
+				final JsonStreamWriter w = JsonBodyWriter.startStream ( context, HttpStatusCodes.k200_ok );
+				boolean complete = false;
+				try
+				{
+					w.object ()
+						.key ( "status" ).value ( HttpStatusCodes.k200_ok )
+						.key ( "paths" ).array ()
+					;
+					if ( first != null )
+					{
+						w.value ( first.toString () );
+						int count = 1;
+						while ( count < sz && it.hasNext () )
+						{
+							w.value ( it.next ().toString () );
+							count++;
+						}
+					}
+					w.endArray ();
+
+					if ( it.hasNext () )
+					{
+						w.key ( kQueryParam_PageToken ).value ( writePageToken ( pg + 1, sz, fCursors.save ( kCursor_Traversal, userId, plan, pg + 1, it ) ) );
+					}
+					w.endObject ();
+					complete = true;
+				}
+				finally
+				{
+					endStream ( context, w, complete );
+				}
+			}
+		} );
+	}
+
+	private static JSONObject readPlan ( CHttpRequestContext context ) throws IOException, ModelRequestException
+	{
+		final JSONObject plan = readPayload ( context ).optJSONObject ( kPlan );
+		if ( plan == null )
+		{
+			throw new ModelRequestException ( "The request must include a '" + kPlan + "' object." );
+		}
+		return plan;
+	}
+
+	/**
+	 * Read the page token from the request, or start a new one from the page number and size parameters.
+	 * Tokens are opaque to callers. They carry the page number and size, and the id of the cursor that
+	 * holds the position of the next page, if one was saved.
+	 */
+	private static JSONObject readPageToken ( CHttpRequestContext context ) throws ModelRequestException
+	{
+		final CHttpRequest req = context.request ();
+		final String tokenText = req.getParameter ( kQueryParam_PageToken, null );
+		if ( tokenText == null || tokenText.length () == 0 )
+		{
+			final int pg = req.getIntParameter ( kQueryParam_FirstPage, kDefault_FirstPage );
+			final int sz = req.getIntParameter ( kQueryParam_PageSize, kDefault_PageSize );
+			if ( pg < 0 || sz < 1 || sz > kMaxPageSize )
+			{
+				throw new ModelRequestException ( "Page size must be between 1 and " + kMaxPageSize + " and the page number must not be negative." );
+			}
+			return new JSONObject ()
+				.put ( kQueryParam_FirstPage, pg )
+				.put ( kQueryParam_PageSize, sz )
+			;
+		}
+
+		try
+		{
+			final JSONObject token = new JSONObject ( new String ( TypeConvertor.base64UrlDecode ( tokenText ), StandardCharsets.UTF_8 ) );
+			final int pg = token.getInt ( kQueryParam_FirstPage );
+			final int sz = token.getInt ( kQueryParam_PageSize );
+			if ( pg < 0 || sz < 1 || sz > kMaxPageSize )
+			{
+				throw new ModelRequestException ( "Invalid page token." );
+			}
+			return token;
+		}
+		catch ( JSONException | IllegalArgumentException e )
+		{
+			throw new ModelRequestException ( "Invalid page token." );
+		}
+	}
+
+	private static String writePageToken ( int pg, int sz, String cursorId )
+	{
+		return TypeConvertor.base64UrlEncode ( new JSONObject ()
+			.put ( kQueryParam_FirstPage, pg )
+			.put ( kQueryParam_PageSize, sz )
+			.putOpt ( kPageToken_Cursor, cursorId )
+			.toString ()
+		);
+	}
+
+	private static void skip ( Iterator<?> it, long count )
+	{
+		for ( long i=0; i<count && it.hasNext (); i++ )
+		{
+			it.next ();
+		}
+	}
+
+	private final ResultCursors fCursors;
+
+	private static final String kPageToken_Cursor = "c";
+	private static final String kCursor_Query = "query";
+	private static final String kCursor_Traversal = "traversal";
+	private static final long kDefaultCursorTimeoutSeconds = 60L;
+	private static final int kDefaultMaxOpenCursors = 1000;
+
 	public void putObject ( CHttpRequestContext context, final String objectPath ) throws IOException, ModelRequestException
 	{
 		handleModelRequest ( context, null, new ModelApiHandler ()
@@ -503,6 +854,124 @@ public class ModelApi extends ModelApiContextHelper
 		} );
 	}
 
+	private static JSONObject renderObject ( ModelConnection model, Path requestedPath, IncludeOptions io, BasicModelObject mo ) throws ModelServiceException, ModelRequestException
+	{
+		final ObjectRenderer or = new ObjectRenderer ()
+			.atPath ( requestedPath )
+		;
+
+		if ( mo != null )
+		{
+			or
+				.withData ( mo )
+			;
+		}
+
+		if ( io == IncludeOptions.RELS || io == IncludeOptions.BOTH )
+		{
+			or.withRelations ( model.selectRelations ( requestedPath ).getRelations () );
+		}
+
+		return or.render ();
+	}
+
+	/**
+	 * An object rendering and its entity tag. The rendering is null when the caller already
+	 * holds the current version.
+	 */
+	private static class Rendering
+	{
+		Rendering ( String etag, JSONObject object )
+		{
+			fEtag = etag;
+			fObject = object;
+		}
+
+		boolean isNotModified () { return fObject == null; }
+
+		final String fEtag;
+		final JSONObject fObject;
+	}
+
+	/**
+	 * Load an object and determine its entity tag, rendering it only when the caller doesn't hold the
+	 * current version or when the tag can only be computed from the rendering.
+	 * @param model
+	 * @param requestedPath
+	 * @param io
+	 * @param knownEtag the entity tag the caller holds, or null
+	 * @return a rendering
+	 * @throws ModelItemDoesNotExistException
+	 * @throws ModelServiceException
+	 * @throws ModelRequestException
+	 */
+	private static Rendering renderIfChanged ( ModelConnection model, Path requestedPath, IncludeOptions io, String knownEtag ) throws ModelItemDoesNotExistException, ModelServiceException, ModelRequestException
+	{
+		final BasicModelObject mo = ( io == IncludeOptions.DATA || io == IncludeOptions.BOTH ) ? model.load ( requestedPath ) : null;
+
+		String etag = computeEtag ( requestedPath, io, mo );
+		if ( etag != null && etag.equals ( knownEtag ) )
+		{
+			return new Rendering ( etag, null );
+		}
+
+		final JSONObject rendered = renderObject ( model, requestedPath, io, mo );
+		if ( etag == null )
+		{
+			etag = computeEtag ( rendered );
+			if ( etag != null && etag.equals ( knownEtag ) )
+			{
+				return new Rendering ( etag, null );
+			}
+		}
+		return new Rendering ( etag, rendered );
+	}
+
+	/**
+	 * Compute an entity tag for an object from its metadata. Each write advances the metadata's update
+	 * time, so the tag changes with every write and is available without rendering the object. Renderings
+	 * that include relations aren't covered by the update time, so they (and objects that haven't been
+	 * written since update times were recorded) have no metadata tag.
+	 * @param path
+	 * @param io
+	 * @param mo the loaded object, or null
+	 * @return a quoted entity tag, or null if the object's metadata can't produce one
+	 */
+	static String computeEtag ( Path path, IncludeOptions io, BasicModelObject mo )
+	{
+		if ( io != IncludeOptions.DATA || mo == null ) return null;
+
+		final ModelObjectMetadata meta = mo.getMetadata ();
+		if ( meta == null || meta.getLastUpdateTimeMs () < 0 ) return null;
+
+		return digestToEtag ( "m:" + path.toString () + ":" + meta.toJson ().toString () );
+	}
+
+	/**
+	 * Compute an entity tag for a rendered object. The tag is a digest of the rendering, so it changes
+	 * whenever the data, metadata or (if included) relations change.
+	 * @param rendered
+	 * @return a quoted entity tag, or null if no digest is available
+	 */
+	static String computeEtag ( JSONObject rendered )
+	{
+		return digestToEtag ( "r:" + rendered.toString () );
+	}
+
+	private static String digestToEtag ( String text )
+	{
+		try
+		{
+			final MessageDigest md = MessageDigest.getInstance ( "SHA-1" );
+			final byte[] digest = md.digest ( text.getBytes ( StandardCharsets.UTF_8 ) );
+			return "\"" + TypeConvertor.bytesToHex ( digest ) + "\"";
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			return null;
+		}
+	}
+
 	private static JSONObject readPayload ( CHttpRequestContext context ) throws IOException, ModelRequestException
 	{
 		try
@@ -27,6 +27,7 @@ import io.continual.builder.Builder.BuildFailure;
 import io.continual.http.app.servers.CorsOptionsRouter;
 import io.continual.http.app.servers.endpoints.TypicalRestApiEndpoint;
 import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.util.JsonBodyWriter;
 import io.continual.iam.IamService;
 import io.continual.iam.exceptions.IamSvcException;
 import io.continual.iam.identity.Identity;
@@ -142,10 +143,7 @@ public class ModelApiContextHelper extends TypicalRestApiEndpoint<Identity>
 				@Override
 				public void respondWithStatus ( int statusCode, JSONObject data ) throws IOException
 				{
-					context.response()
-						.setStatus ( statusCode )
-						.getStreamForTextResponse ( MimeTypes.kAppJson ).println ( data )
-					;
+					JsonBodyWriter.writeObject ( context, statusCode, data, 0 );
 				}
 			};
 		
@@ -0,0 +1,111 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.services.model.api.endpoints;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+import io.continual.util.time.Clock;
+
+/**
+ * Open result iterators for paged queries and traversals. A page token names the cursor that
+ * produced it, so the next page continues the iteration where the last page stopped instead of
+ * running the query again and skipping ahead. A cursor is bound to the kind of request, the user
+ * and the plan that opened it. It's taken out of the store while a page is written and expires if
+ * it isn't resumed in time, in which case the caller falls back to skipping.
+ */
+class ResultCursors
+{
+	public ResultCursors ( long timeoutMs, int maxOpen )
+	{
+		fTimeoutMs = timeoutMs;
+		fMaxOpen = maxOpen;
+		fCursors = new ConcurrentHashMap<> ();
+	}
+
+	/**
+	 * Take the iterator for a cursor, if it's still open and matches the request
+	 * @param cursorId the cursor id from the page token, or null
+	 * @param kind the kind of request
+	 * @param userId the requesting user
+	 * @param plan the request's plan
+	 * @param pageNumber the page being requested
+	 * @return an iterator positioned at the start of the page, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Iterator<T> resume ( String cursorId, String kind, String userId, JSONObject plan, int pageNumber )
+	{
+		if ( cursorId == null ) return null;
+
+		final Cursor c = fCursors.remove ( cursorId );
+		if ( c == null || c.fExpiresAtMs < Clock.now () ) return null;
+		if ( !c.fKind.equals ( kind ) || !c.fUserId.equals ( userId ) || c.fNextPage != pageNumber || !c.fPlan.similar ( plan ) ) return null;
+
+		return (Iterator<T>) c.fIter;
+	}
+
+	/**
+	 * Save an iterator positioned at the start of the given page
+	 * @param kind
+	 * @param userId
+	 * @param plan
+	 * @param nextPage
+	 * @param iter
+	 * @return a cursor id, or null if too many cursors are open
+	 */
+	public String save ( String kind, String userId, JSONObject plan, int nextPage, Iterator<?> iter )
+	{
+		final long nowMs = Clock.now ();
+		if ( fCursors.size () >= fMaxOpen )
+		{
+			fCursors.values ().removeIf ( c -> c.fExpiresAtMs < nowMs );
+			if ( fCursors.size () >= fMaxOpen ) return null;
+		}
+
+		final String id = UUID.randomUUID ().toString ();
+		fCursors.put ( id, new Cursor ( kind, userId, plan, nextPage, iter, nowMs + fTimeoutMs ) );
+		return id;
+	}
+
+	private static class Cursor
+	{
+		Cursor ( String kind, String userId, JSONObject plan, int nextPage, Iterator<?> iter, long expiresAtMs )
+		{
+			fKind = kind;
+			fUserId = userId;
+			fPlan = plan;
+			fNextPage = nextPage;
+			fIter = iter;
+			fExpiresAtMs = expiresAtMs;
+		}
+
+		private final String fKind;
+		private final String fUserId;
+		private final JSONObject fPlan;
+		private final int fNextPage;
+		private final Iterator<?> fIter;
+		private final long fExpiresAtMs;
+	}
+
+	private final long fTimeoutMs;
+	private final int fMaxOpen;
+	private final Map<String,Cursor> fCursors;
+}
@@ -0,0 +1,551 @@
+package io.continual.services.model.api.endpoints;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.context.CHttpResponse;
+import io.continual.iam.exceptions.IamSvcException;
+import io.continual.iam.identity.Identity;
+import io.continual.iam.identity.UserContext;
+import io.continual.iam.impl.jsondoc.SimpleDocDbSvc;
+import io.continual.services.ServiceContainer;
+import io.continual.services.SimpleService;
+import io.continual.services.model.client.ModelConnection;
+import io.continual.services.model.core.Model;
+import io.continual.services.model.core.ModelNotificationService;
+import io.continual.services.model.core.ModelObjectAndPath;
+import io.continual.services.model.core.ModelObjectFactory;
+import io.continual.services.model.core.ModelObjectList;
+import io.continual.services.model.core.ModelQuery;
+import io.continual.services.model.core.ModelRelation;
+import io.continual.services.model.core.ModelRequestContext;
+import io.continual.services.model.core.ModelSchemaRegistry;
+import io.continual.services.model.core.data.JsonModelObject;
+import io.continual.services.model.core.exceptions.ModelRequestException;
+import io.continual.services.model.core.exceptions.ModelSchemaViolationException;
+import io.continual.services.model.core.exceptions.ModelServiceException;
+import io.continual.services.model.impl.common.SimpleModelQuery;
+import io.continual.services.model.impl.common.SimpleTraversal;
+import io.continual.services.model.impl.mem.InMemoryModel;
+import io.continual.services.model.impl.subpathWrapper.SubpathWrapperModel;
+import io.continual.services.model.service.ModelService;
+import io.continual.services.model.session.ModelSession;
+import io.continual.services.model.session.ModelSessionBuilder;
+import io.continual.util.naming.Path;
+import junit.framework.TestCase;
+
+public class ModelApiTest extends TestCase
+{
+	@Override
+	protected void setUp () throws BuildFailure, IamSvcException, ModelRequestException, ModelSchemaViolationException, ModelServiceException
+	{
+		final ServiceContainer sc = new ServiceContainer ();
+		final SimpleDocDbSvc accts = new SimpleDocDbSvc ( sc, new JSONObject ().put ( "db", new JSONObject () ) );
+		sc.add ( "accounts", accts );
+
+		try
+		{
+			fUser = accts.getIdentityManager ().createUser ( "tester" );
+		}
+		catch ( io.continual.iam.exceptions.IamIdentityExists e )
+		{
+			throw new BuildFailure ( e );
+		}
+
+		fFailAfter = -1;
+		fModel = new InMemoryModel ( "test" );
+
+		fMrc = fModel.getRequestContextBuilder ().forUser ( fUser ).build ();
+		fModel.createUpdate ( fMrc, Path.fromString ( "/q" ) )
+			.overwriteData ( new JsonModelObject ( new JSONObject () ) )
+			.execute ()
+		;
+		for ( int i=0; i<kObjectCount; i++ )
+		{
+			fModel.createUpdate ( fMrc, pathFor ( i ) )
+				.overwriteData ( new JsonModelObject ( new JSONObject ().put ( "n", i ) ) )
+				.execute ()
+			;
+			if ( i > 0 )
+			{
+				fModel.relate ( fMrc, ModelRelation.from ( pathFor ( 0 ), "r", pathFor ( i ) ) );
+			}
+		}
+
+		fApi = new ModelApi ( sc, new JSONObject (), new TestModelService () )
+		{
+			@Override
+			public UserContext<Identity> getUser ( CHttpRequestContext context )
+			{
+				return new UserContext.Builder<Identity> ().forUser ( fUser ).build ();
+			}
+		};
+	}
+
+	@Test
+	public void testQueryPagesContinueFromCursor () throws IOException, ModelRequestException, ModelSchemaViolationException, ModelServiceException
+	{
+		final JSONObject plan = new JSONObject ().put ( "pathPrefix", "/q" );
+
+		final Set<String> seen = new HashSet<> ();
+		final List<Integer> pageSizes = new ArrayList<> ();
+		String next = null;
+		do
+		{
+			final JSONObject body = runQuery ( plan, next, 3 );
+			final JSONArray objects = body.getJSONArray ( "objects" );
+			pageSizes.add ( objects.length () );
+			for ( int i=0; i<objects.length (); i++ )
+			{
+				final JSONObject entry = objects.getJSONObject ( i );
+				assertTrue ( seen.add ( entry.getString ( "path" ) ) );
+				assertNotNull ( entry.optString ( "etag", null ) );
+				assertNotNull ( entry.getJSONObject ( "object" ) );
+			}
+			next = body.optString ( "next", null );
+
+			// later pages continue the first page's iteration, so they don't see this object. Running
+			// the query again would either repeat an object or return one more than we started with.
+			if ( pageSizes.size () == 1 )
+			{
+				fModel.createUpdate ( fMrc, pathFor ( kObjectCount ) )
+					.overwriteData ( new JsonModelObject ( new JSONObject ().put ( "n", kObjectCount ) ) )
+					.execute ()
+				;
+			}
+		}
+		while ( next != null );
+
+		assertEquals ( kObjectCount, seen.size () );
+		assertEquals ( Arrays.asList ( 3, 3, 1 ), pageSizes );
+	}
+
+	@Test
+	public void testReusedTokenFallsBackToSkipping () throws IOException, ModelRequestException
+	{
+		final JSONObject plan = new JSONObject ().put ( "pathPrefix", "/q" );
+		final String next = runQuery ( plan, null, 3 ).getString ( "next" );
+
+		final JSONArray viaCursor = runQuery ( plan, next, 3 ).getJSONArray ( "objects" );
+		assertEquals ( 3, viaCursor.length () );
+
+		// the cursor was consumed, so the same token runs the query again and skips to the page
+		final JSONArray viaSkip = runQuery ( plan, next, 3 ).getJSONArray ( "objects" );
+		assertTrue ( viaCursor.similar ( viaSkip ) );
+
+		// a token presented with a different plan gets that plan's page rather than the cursor's
+		final JSONObject otherPlan = new JSONObject ()
+			.put ( "pathPrefix", "/q" )
+			.put ( "filters", new JSONArray ().put ( new JSONObject ().put ( "op", "longValue" ).put ( "key", "n" ).put ( "value", 1 ) ) )
+		;
+		final JSONObject other = runQuery ( otherPlan, runQuery ( plan, null, 3 ).getString ( "next" ), 3 );
+		assertEquals ( 0, other.getJSONArray ( "objects" ).length () );
+		assertFalse ( other.has ( "next" ) );
+	}
+
+	@Test
+	public void testTraversalPagesContinueFromCursor () throws IOException, ModelRequestException, ModelServiceException
+	{
+		final JSONObject plan = ( (SimpleTraversal) fModel.startTraversal ()
+			.startAt ( pathFor ( 0 ) )
+			.traverseOutbound ( "r" )
+		).toPlan ();
+
+		final Set<String> seen = new HashSet<> ();
+		int pages = 0;
+		String next = null;
+		do
+		{
+			final TestContext ctx = new TestContext ( plan, next, 2 );
+			fApi.runTraversal ( ctx );
+			assertEquals ( 200, ctx.fResponse.fStatus );
+
+			final JSONObject body = ctx.fResponse.getBody ();
+			final JSONArray paths = body.getJSONArray ( "paths" );
+			assertTrue ( paths.length () <= 2 );
+			for ( int i=0; i<paths.length (); i++ )
+			{
+				assertTrue ( seen.add ( paths.getString ( i ) ) );
+			}
+			next = body.optString ( "next", null );
+			pages++;
+
+			// as with queries, a relation added after the first page isn't seen by later pages
+			if ( pages == 1 )
+			{
+				fModel.relate ( fMrc, ModelRelation.from ( pathFor ( 0 ), "r", Path.fromString ( "/q" ) ) );
+			}
+		}
+		while ( next != null );
+
+		assertEquals ( kObjectCount - 1, seen.size () );
+		assertFalse ( seen.contains ( "/q" ) );
+		assertEquals ( 3, pages );
+	}
+
+	@Test
+	public void testQueryFailingBeforeFirstResultIsNotCommitted () throws IOException, ModelRequestException
+	{
+		fFailAfter = 0;
+
+		final TestContext ctx = new TestContext ( new JSONObject ().put ( "pathPrefix", "/q" ), null, 3 );
+		try
+		{
+			fApi.runQuery ( ctx );
+			fail ( "The query should have failed." );
+		}
+		catch ( IllegalStateException x )
+		{
+			// expected
+		}
+
+		// nothing was sent, so the servlet is free to send an error response
+		assertFalse ( ctx.fResponse.fStatus == 200 );
+		assertEquals ( 0, ctx.fResponse.fBody.size () );
+		assertFalse ( ctx.fResponse.fAborted );
+	}
+
+	@Test
+	public void testQueryFailingMidStreamIsAborted () throws IOException, ModelRequestException
+	{
+		fFailAfter = 2;
+
+		final TestContext ctx = new TestContext ( new JSONObject ().put ( "pathPrefix", "/q" ), null, 3 );
+		try
+		{
+			fApi.runQuery ( ctx );
+			fail ( "The query should have failed." );
+		}
+		catch ( IllegalStateException x )
+		{
+			// expected
+		}
+
+		// the 200 was already underway, so the response is abandoned rather than closed as a short page
+		assertEquals ( 200, ctx.fResponse.fStatus );
+		assertTrue ( ctx.fResponse.fAborted );
+		final String body = new String ( ctx.fResponse.fBody.toByteArray (), StandardCharsets.UTF_8 );
+		assertFalse ( body.trim ().endsWith ( "}" ) );
+	}
+
+	private JSONObject runQuery ( JSONObject plan, String next, int pageSize ) throws IOException, ModelRequestException
+	{
+		final TestContext ctx = new TestContext ( plan, next, pageSize );
+		fApi.runQuery ( ctx );
+		assertEquals ( 200, ctx.fResponse.fStatus );
+		return ctx.fResponse.getBody ();
+	}
+
+	private static Path pathFor ( int i )
+	{
+		return Path.fromString ( "/q/item" + i );
+	}
+
+	private static final int kObjectCount = 7;
+
+	private Identity fUser;
+	private InMemoryModel fModel;
+	private ModelRequestContext fMrc;
+	private ModelApi fApi;
+	private int fFailAfter;
+
+	/**
+	 * A query whose result iterator fails after returning a given number of objects
+	 */
+	private static class FailingQuery extends SimpleModelQuery
+	{
+		public FailingQuery ( ModelQuery q, int failAfter )
+		{
+			fQuery = q;
+			fFailAfter = failAfter;
+		}
+
+		@Override
+		public <T,K> ModelObjectList<T> execute ( ModelRequestContext context, ModelObjectFactory<T,K> factory, DataAccessor<T> accessor, K userContext ) throws ModelRequestException, ModelServiceException
+		{
+			final Iterator<ModelObjectAndPath<T>> it = SimpleModelQuery.applyPlan ( fQuery, toPlan () ).execute ( context, factory, accessor, userContext ).iterator ();
+			return new ModelObjectList<T> ()
+			{
+				@Override
+				public Iterator<ModelObjectAndPath<T>> iterator ()
+				{
+					return new Iterator<ModelObjectAndPath<T>> ()
+					{
+						@Override
+						public boolean hasNext () { return it.hasNext (); }
+
+						@Override
+						public ModelObjectAndPath<T> next ()
+						{
+							if ( fReturned++ == fFailAfter ) throw new IllegalStateException ( "The model failed." );
+							return it.next ();
+						}
+
+						private int fReturned = 0;
+					};
+				}
+			};
+		}
+
+		private final ModelQuery fQuery;
+		private final int fFailAfter;
+	}
+
+	private class TestModelService extends SimpleService implements ModelService
+	{
+		@Override
+		public ModelSessionBuilder sessionBuilder ()
+		{
+			return new ModelSessionBuilder ()
+			{
+				@Override
+				public ModelSessionBuilder forUser ( Identity user ) { return this; }
+
+				@Override
+				public ModelSessionBuilder readingSettingsFrom ( JSONObject data ) { return this; }
+
+				@Override
+				public ModelSession build () throws BuildFailure
+				{
+					// when a failure is requested, queries run through a wrapper whose results fail partway
+					final Model model = fFailAfter < 0 ? fModel : new SubpathWrapperModel ( fModel, Path.getRootPath (), "test" )
+					{
+						@Override
+						public ModelQuery startQuery () throws ModelRequestException
+						{
+							return new FailingQuery ( fModel.startQuery (), fFailAfter );
+						}
+					};
+					final ModelConnection mc = new ModelConnection.Builder ()
+						.withModel ( model )
+						.operatedBy ( fUser )
+						.build ()
+					;
+					return new ModelSession ()
+					{
+						@Override
+						public ModelConnection getModel () { return mc; }
+
+						@Override
+						public ModelSchemaRegistry getSchemaRegistry () { return null; }
+
+						@Override
+						public ModelNotificationService getNotificationSvc () { return null; }
+					};
+				}
+			};
+		}
+	}
+
+	private static class TestContext extends CHttpRequestContext
+	{
+		public TestContext ( JSONObject plan, String next, int pageSize )
+		{
+			super ( null, null );
+
+			final HashMap<String,String> params = new HashMap<> ();
+			params.put ( "sz", Integer.toString ( pageSize ) );
+			if ( next != null ) params.put ( "next", next );
+
+			fRequest = new TestRequest ( params, new JSONObject ().put ( "plan", plan ).toString () );
+			fResponse = new TestResponse ();
+		}
+
+		@Override
+		public CHttpRequest request () { return fRequest; }
+
+		@Override
+		public CHttpResponse response () { return fResponse; }
+
+		private final TestRequest fRequest;
+		private final TestResponse fResponse;
+	}
+
+	private static class TestRequest implements CHttpRequest
+	{
+		public TestRequest ( Map<String,String> params, String body )
+		{
+			fParams = params;
+			fBody = body.getBytes ( StandardCharsets.UTF_8 );
+		}
+
+		@Override
+		public String getUrl () { return "http://localhost/"; }
+
+		@Override
+		public String getQueryString () { return ""; }
+
+		@Override
+		public String getMethod () { return "POST"; }
+
+		@Override
+		public String getPathInContext () { return "/"; }
+
+		@Override
+		public String getFirstHeader ( String header ) { return null; }
+
+		@Override
+		public List<String> getHeader ( String header ) { return Collections.emptyList (); }
+
+		@Override
+		public Map<String, List<String>> getAllHeaders () { return Collections.emptyMap (); }
+
+		@Override
+		public Map<String, String[]> getParameterMap ()
+		{
+			final HashMap<String,String[]> result = new HashMap<> ();
+			for ( Map.Entry<String,String> e : fParams.entrySet () )
+			{
+				result.put ( e.getKey (), new String[] { e.getValue () } );
+			}
+			return result;
+		}
+
+		@Override
+		public String getParameter ( String key ) { return fParams.get ( key ); }
+
+		@Override
+		public String getParameter ( String key, String defVal ) { return fParams.getOrDefault ( key, defVal ); }
+
+		@Override
+		public int getIntParameter ( String key, int defVal ) { return fParams.containsKey ( key ) ? Integer.parseInt ( fParams.get ( key ) ) : defVal; }
+
+		@Override
+		public long getLongParameter ( String key, long defVal ) { return fParams.containsKey ( key ) ? Long.parseLong ( fParams.get ( key ) ) : defVal; }
+
+		@Override
+		public double getDoubleParameter ( String key, double defVal ) { return fParams.containsKey ( key ) ? Double.parseDouble ( fParams.get ( key ) ) : defVal; }
+
+		@Override
+		public boolean getBooleanParameter ( String key, boolean defVal ) { return fParams.containsKey ( key ) ? Boolean.parseBoolean ( fParams.get ( key ) ) : defVal; }
+
+		@Override
+		public char getCharParameter ( String key, char defVal ) { return fParams.containsKey ( key ) ? fParams.get ( key ).charAt ( 0 ) : defVal; }
+
+		@Override
+		public void changeParameter ( String fieldName, String defVal ) { fParams.put ( fieldName, defVal ); }
+
+		@Override
+		public String getContentType () { return "application/json"; }
+
+		@Override
+		public int getContentLength () { return fBody.length; }
+
+		@Override
+		public InputStream getBodyStream () { return new ByteArrayInputStream ( fBody ); }
+
+		@Override
+		public BufferedReader getBodyStreamAsText () { return new BufferedReader ( new InputStreamReader ( getBodyStream (), StandardCharsets.UTF_8 ) ); }
+
+		@Override
+		public String getActualRemoteAddress () { return "127.0.0.1"; }
+
+		@Override
+		public String getBestRemoteAddress () { return "127.0.0.1"; }
+
+		@Override
+		public int getActualRemotePort () { return 0; }
+
+		@Override
+		public int getBestRemotePort () { return 0; }
+
+		@Override
+		public boolean isSecure () { return false; }
+
+		private final Map<String,String> fParams;
+		private final byte[] fBody;
+	}
+
+	private static class TestResponse implements CHttpResponse
+	{
+		public JSONObject getBody ()
+		{
+			return new JSONObject ( new String ( fBody.toByteArray (), StandardCharsets.UTF_8 ) );
+		}
+
+		@Override
+		public void sendError ( int err, String msg ) { fStatus = err; }
+
+		@Override
+		public void sendStatusAndMessage ( int status, String msg ) { fStatus = status; }
+
+		@Override
+		public CHttpResponse setStatus ( int code ) { fStatus = code; return this; }
+
+		@Override
+		public int getStatusCode () { return fStatus; }
+
+		@Override
+		public CHttpResponse setContentType ( String mimeType ) { return this; }
+
+		@Override
+		public CHttpResponse send ( String content ) throws IOException { fBody.write ( content.getBytes ( StandardCharsets.UTF_8 ) ); return this; }
+
+		@Override
+		public void sendStatusAndBody ( int statusCode, String content, String mimeType ) { fStatus = statusCode; }
+
+		@Override
+		public PrintWriter getStreamForTextResponse () { return new PrintWriter ( fBody ); }
+
+		@Override
+		public PrintWriter getStreamForTextResponse ( String contentType ) { return new PrintWriter ( fBody ); }
+
+		@Override
+		public PrintWriter getStreamForTextResponse ( String contentType, String encoding ) { return new PrintWriter ( fBody ); }
+
+		@Override
+		public OutputStream getStreamForBinaryResponse () { return fBody; }
+
+		@Override
+		public OutputStream getStreamForBinaryResponse ( String contentType ) { return fBody; }
+
+		@Override
+		public CHttpResponse writeHeader ( String headerName, String headerValue ) { fHeaders.put ( headerName, headerValue ); return this; }
+
+		@Override
+		public CHttpResponse writeHeader ( String headerName, String headerValue, boolean overwrite ) { fHeaders.put ( headerName, headerValue ); return this; }
+
+		@Override
+		public void redirect ( String url ) {}
+
+		@Override
+		public void redirect ( Class<?> cls, String method ) {}
+
+		@Override
+		public void redirect ( Class<?> cls, String method, Map<String, Object> args ) {}
+
+		@Override
+		public void redirectExactly ( String url ) {}
+
+		@Override
+		public void abort () { fAborted = true; }
+
+		private int fStatus = -1;
+		private boolean fAborted = false;
+		private final HashMap<String,String> fHeaders = new HashMap<> ();
+		private final ByteArrayOutputStream fBody = new ByteArrayOutputStream ();
+	}
+}
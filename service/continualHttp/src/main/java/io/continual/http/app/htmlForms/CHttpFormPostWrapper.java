@@ -16,11 +16,15 @@
 
 package io.continual.http.app.htmlForms;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -67,12 +71,30 @@ public class CHttpFormPostWrapper
 	 * @param mimePartFactory If null, use the built-in part factory.
 	 */
 	public CHttpFormPostWrapper ( CHttpRequest req, CHttpMimePartFactory mimePartFactory )
+	{
+		this ( req, mimePartFactory, kDefaultMemoryThreshold );
+	}
+
+	/**
+	 * Construct a form post wrapper from a request, using the built-in part factory. File
+	 * uploads are held in memory up to the given size and are written to a temp file
+	 * beyond that.
+	 * 
+	 * @param req
+	 * @param memoryThresholdBytes
+	 */
+	public CHttpFormPostWrapper ( CHttpRequest req, int memoryThresholdBytes )
+	{
+		this ( req, null, memoryThresholdBytes );
+	}
+
+	private CHttpFormPostWrapper ( CHttpRequest req, CHttpMimePartFactory mimePartFactory, int memoryThresholdBytes )
 	{
 		fRequest = req;
 		final String ct = req.getContentType ();
 
 		fIsMultipartFormData = ct != null && ct.startsWith ( "multipart/form-data" );
-		fPartFactory = mimePartFactory == null ? new simpleStorage () : mimePartFactory;
+		fPartFactory = mimePartFactory == null ? new simpleStorage ( memoryThresholdBytes ) : mimePartFactory;
 		fParsedValues = new HashMap<>();
 		fParseComplete = false;
 	}
@@ -537,6 +559,7 @@ public class CHttpFormPostWrapper
 	}
 
 	private static final String kBoundaryTag = "boundary=";
+	private static final int kDefaultMemoryThreshold = 64 * 1024;
 
 	static final org.slf4j.Logger log = LoggerFactory.getLogger ( CHttpFormPostWrapper.class );
 
@@ -622,17 +645,25 @@ public class CHttpFormPostWrapper
 		{
 			super ( ct, cd );
 			fValue = "";
+			fBytes = null;
 		}
 		
 		@Override
 		public void write ( byte[] line, int offset, int length )
 		{
-			fValue = new String ( line, offset, length );
+			// the reader may deliver a value in several writes
+			if ( fBytes == null ) fBytes = new ByteArrayOutputStream ( length );
+			fBytes.write ( line, offset, length );
 		}
 
 		@Override
 		public void close ()
 		{
+			if ( fBytes != null )
+			{
+				fValue = new String ( fBytes.toByteArray () );
+				fBytes = null;
+			}
 		}
 
 		@Override
@@ -648,6 +679,109 @@ public class CHttpFormPostWrapper
 		}
 
 		private String fValue;
+		private ByteArrayOutputStream fBytes;
+	}
+
+	/**
+	 * A file part that's held in memory until it grows past a threshold, then moves to a temp file.
+	 */
+	private static class spillingFilePart extends basePart
+	{
+		public spillingFilePart ( String ct, String cd, int threshold )
+		{
+			super ( ct, cd );
+
+			fThreshold = threshold;
+			fMemory = new ByteArrayOutputStream ( Math.min ( threshold, 8 * 1024 ) );
+			fFile = null;
+			fStream = null;
+			fOpen = true;
+		}
+
+		@Override
+		public void write ( byte[] line, int offset, int length ) throws IOException
+		{
+			if ( !fOpen ) return;
+
+			if ( fStream == null && fMemory.size () + length > fThreshold )
+			{
+				fFile = File.createTempFile ( "chttp.", ".part" );
+				fStream = new BufferedOutputStream ( new FileOutputStream ( fFile ), 64 * 1024 );
+				fMemory.writeTo ( fStream );
+				fMemory = null;
+			}
+
+			if ( fStream != null )
+			{
+				fStream.write ( line, offset, length );
+			}
+			else
+			{
+				fMemory.write ( line, offset, length );
+			}
+		}
+
+		@Override
+		public void close () throws IOException
+		{
+			fOpen = false;
+			if ( fStream != null )
+			{
+				fStream.close ();
+				fStream = null;
+			}
+		}
+
+		@Override
+		public InputStream openStream () throws IOException
+		{
+			if ( fOpen )
+			{
+				log.warn ( "Opening input stream on a part before it's fully written." );
+			}
+			if ( fFile != null )
+			{
+				return new FileInputStream ( fFile );
+			}
+			if ( fMemory != null )
+			{
+				return new ByteArrayInputStream ( fMemory.toByteArray () );
+			}
+			throw new IOException ( "This part has been discarded." );
+		}
+
+		@Override
+		public String getAsString ()
+		{
+			return null;
+		}
+
+		@Override
+		public void discard ()
+		{
+			try
+			{
+				close ();
+			}
+			catch ( IOException e )
+			{
+				log.warn ( "Couldn't close part stream: " + e.getMessage () );
+			}
+
+			if ( fFile != null )
+			{
+				//noinspection ResultOfMethodCallIgnored
+				fFile.delete ();
+				fFile = null;
+			}
+			fMemory = null;
+		}
+
+		private final int fThreshold;
+		private ByteArrayOutputStream fMemory;
+		private File fFile;
+		private OutputStream fStream;
+		private boolean fOpen;
 	}
 
 	private static class tmpFilePart extends basePart
@@ -710,18 +844,34 @@ public class CHttpFormPostWrapper
 
 	static class simpleStorage implements CHttpMimePartFactory
 	{
+		public simpleStorage ()
+		{
+			this ( kDefaultMemoryThreshold );
+		}
+
+		public simpleStorage ( int memoryThreshold )
+		{
+			fMemoryThreshold = memoryThreshold;
+		}
+
 		@Override
 		public CHttpMimePart createPart ( MultiMap<String, String> partHeaders ) throws IOException
 		{
 			final String contentDisp = partHeaders.getFirst ( "content-disposition" );
 			if ( contentDisp != null && contentDisp.contains ( "filename=\"" ) )
 			{
-				return new tmpFilePart ( partHeaders.getFirst ( "content-type" ), contentDisp );
+				if ( fMemoryThreshold <= 0 )
+				{
+					return new tmpFilePart ( partHeaders.getFirst ( "content-type" ), contentDisp );
+				}
+				return new spillingFilePart ( partHeaders.getFirst ( "content-type" ), contentDisp, fMemoryThreshold );
 			}
 			else
 			{
 				return new inMemoryFormDataPart ( partHeaders.getFirst ( "content-type" ), contentDisp );
 			}
 		}
+
+		private final int fMemoryThreshold;
 	}
 }
@@ -18,10 +18,10 @@
 package io.continual.http.app.htmlForms.mime;
 
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,7 +33,10 @@ import io.continual.util.data.StringUtils;
 import io.continual.util.collections.MultiMap;
 
 /**
- * A multipart MIME reader.
+ * A multipart MIME reader. The stream is read through a single buffer, and part bodies are
+ * searched for the boundary delimiter with a Boyer-Moore-Horspool scan. Body bytes are handed
+ * to the part straight from the buffer, so a part is never held in memory by the reader; where
+ * the data goes is up to the part created by the part factory.
  */
 public class CHttpMimePartsReader
 {
@@ -47,11 +50,26 @@ public class CHttpMimePartsReader
 		fBoundaryLine = "--" + boundary;
 		fBoundaryEndMarker = fBoundaryLine + "--";
 		fPartIndex = -1;
-		fInPartHeader = false;
-		fPartHeaders = null;
 		fPartFactory = mpf;
 		fCurrentPart = null;
 		fAllParts = new ArrayList<>();
+
+		// within the stream, a part body is ended by CRLF followed by the boundary line
+		fDelimiter = ( "\r\n" + fBoundaryLine ).getBytes ( StandardCharsets.UTF_8 );
+		fSkip = new int [ 256 ];
+		for ( int i=0; i<fSkip.length; i++ )
+		{
+			fSkip[i] = fDelimiter.length;
+		}
+		for ( int i=0; i<fDelimiter.length-1; i++ )
+		{
+			fSkip[ fDelimiter[i] & 0xff ] = fDelimiter.length - 1 - i;
+		}
+
+		fBuffer = new byte [ Math.max ( kBufferSize, fDelimiter.length * 4 ) ];
+		fPos = 0;
+		fLimit = 0;
+		fIn = null;
 	}
 
 	/**
@@ -63,65 +81,27 @@ public class CHttpMimePartsReader
 	 */
 	public void read ( InputStream in ) throws IOException
 	{
-		final BufferedInputStream bis = new BufferedInputStream ( in );
+		fIn = in;
+		fPos = 0;
+		fLimit = 0;
 
+		// skip the preamble, up to the first boundary line
 		String line;
-		while ( ( line = readLine ( bis ) ) != null )
+		while ( ( line = readLine () ) != null )
 		{
 			if ( line.equals ( fBoundaryLine ) )
 			{
 				onPartBoundary ( ++fPartIndex );
-				fInPartHeader = true;
-				fPartHeaders = new MultiMap<>();
+				readParts ();
+				return;
 			}
 			else if ( line.equals ( fBoundaryEndMarker ) )
 			{
 				onPartBoundary ( ++fPartIndex );
 				onStreamEnd ();
-				break;
-			}
-			else //noinspection StatementWithEmptyBody
-                if ( fPartIndex == -1 )
-			{
-				// header info, discard
-			}
-			else if ( fInPartHeader && line.length() == 0 )
-			{
-				// switch from header info to body
-				fInPartHeader = false;
-				onPartHeaders ( fPartHeaders );
-
-				// now read until the next part boundary...
-				readPartBytes ( bis );
-
-				// here, we expect CRLF prior to the next part boundary
-				line = readLine ( bis );
-				if ( line == null || line.length() > 0 )
-				{
-					log.warn ( "Unexpected state in MIME reader. After MIME part, found line [" + line + "]." );
-				}
-			}
-			else if ( fInPartHeader )
-			{
-				// part header line
-				final int colon = line.indexOf ( ':' );
-                //noinspection StatementWithEmptyBody
-                if ( colon == -1 )
-				{
-					// weird. ignore.
-				}
-				else
-				{
-					final String key = line.substring ( 0, colon ).trim ().toLowerCase ();
-					final String val = line.substring ( colon + 1 ).trim ();
-					fPartHeaders.put ( key, val );
-				}
-			}
-			else
-			{
-				// hmm
-				log.warn ( "Unexpected state in MIME reader." );
+				return;
 			}
+			// else: preamble, discard
 		}
 	}
 
@@ -213,13 +193,19 @@ public class CHttpMimePartsReader
 	private final String fBoundaryLine;
 	private final String fBoundaryEndMarker;
 	private int fPartIndex;
-	private boolean fInPartHeader;
-	private MultiMap<String,String> fPartHeaders;
 	private final CHttpMimePartFactory fPartFactory;
 	private CHttpMimePart fCurrentPart;
 	private final ArrayList<CHttpMimePart> fAllParts;
 
-	private static final int kPartBytesBufferSize = 2048;
+	private final byte[] fDelimiter;
+	private final int[] fSkip;
+	private final byte[] fBuffer;
+	private int fPos;
+	private int fLimit;
+	private InputStream fIn;
+
+	private static final int kBufferSize = 64 * 1024;
+	private static final long kProgressLogBytes = 1024L * 1024L * 64L;
 
 	private void closeCurrentPart () throws IOException
 	{
@@ -230,117 +216,208 @@ public class CHttpMimePartsReader
 			fCurrentPart = null;
 		}
 	}
-	
-	private static String readLine ( BufferedInputStream bis ) throws IOException
+
+	private void readParts () throws IOException
 	{
-		// in this mode, we're looking for a line ending
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
-		boolean eol = false;
-		while ( !eol )
+		while ( true )
 		{
-			int b = bis.read ();
-			if ( b == -1 )
-			{
-				break;
-			}
-			else
+			// part headers run to an empty line
+			final MultiMap<String,String> headers = new MultiMap<>();
+			String line;
+			while ( ( line = readLine () ) != null && line.length () > 0 )
 			{
-				if ( b == '\r' || b == '\n' )
-				{
-					eol = true;
-					bis.mark ( 1 );
-	
-					// eat a \r\n just like \r or \n
-					if ( b == '\r' )
-					{
-						b = bis.read ();
-						if ( b != '\n' )
-						{
-							bis.reset ();
-						}
-					}
-				}
-				else
+				final int colon = line.indexOf ( ':' );
+				if ( colon > -1 )
 				{
-					baos.write ( b );
+					final String key = line.substring ( 0, colon ).trim ().toLowerCase ();
+					final String val = line.substring ( colon + 1 ).trim ();
+					headers.put ( key, val );
 				}
+				// else: weird. ignore.
+			}
+			if ( line == null )
+			{
+				throw new IOException ( "Stream ended without part boundary." );
+			}
+			onPartHeaders ( headers );
+
+			readPartBody ();
+
+			// the rest of the boundary line is "--" on the last boundary, and otherwise should be empty
+			final String boundaryTail = readLine ();
+			onPartBoundary ( ++fPartIndex );
+			if ( boundaryTail == null || boundaryTail.startsWith ( "--" ) )
+			{
+				onStreamEnd ();
+				return;
+			}
+			if ( boundaryTail.trim ().length () > 0 )
+			{
+				log.warn ( "Unexpected state in MIME reader. After MIME part, found [" + boundaryTail + "] on the boundary line." );
 			}
 		}
-		
-		String result = "";
-		if ( baos.size () > 0 )
-		{
-			result = new String ( baos.toByteArray () );
-		}
-		return result;
 	}
 
-	private void readPartBytes ( BufferedInputStream bis ) throws IOException
+	/**
+	 * Deliver part bytes up to the next delimiter, and consume the delimiter. 
+	 * @throws IOException
+	 */
+	private void readPartBody () throws IOException
 	{
-		final byte[] buffer = new byte [ kPartBytesBufferSize ];
-		int readSoFar = 0;
+		final int delimLen = fDelimiter.length;
 		long readTotal = 0L;
 
-		final int boundaryTagLen = fBoundaryLine.length () + 2;	// 2 for preceding CRLF
-		final byte[] boundaryLineBytes = ("\r\n" + fBoundaryLine).getBytes();
-
-		// read until the boundary line is found. we have to inspect each byte
-		// so just read them one at a time to keep the code simple
 		while ( true )
 		{
-			bis.mark ( 2 );
-
-			final int b = bis.read ();
-			if ( b == '\r' )
+			if ( fLimit - fPos >= delimLen )
 			{
-				// this could start a part boundary. see if we can read it.
-
-				// first deliver the current buffer
-				onPartBytes ( buffer, 0, readSoFar );
-				readSoFar = 0;
-
-				// now see what's here.
-				bis.reset ();
-				bis.mark ( boundaryTagLen );
-				final int read = bis.read ( buffer, 0, boundaryTagLen );
-				if ( read == boundaryTagLen && startsWith ( buffer, boundaryLineBytes ) )
+				final int found = findDelimiter ( fPos, fLimit );
+				if ( found > -1 )
 				{
-					bis.reset ();
+					if ( found > fPos )
+					{
+						onPartBytes ( fBuffer, fPos, found - fPos );
+					}
+					fPos = found + delimLen;
 					return;
 				}
-				else
+
+				// everything except a possible partial delimiter at the end of the buffer is part data
+				final int safeEnd = fLimit - ( delimLen - 1 );
+				onPartBytes ( fBuffer, fPos, safeEnd - fPos );
+
+				final long before = readTotal;
+				readTotal += ( safeEnd - fPos );
+				if ( before / kProgressLogBytes != readTotal / kProgressLogBytes )
 				{
-					// nevermind, continue, but only consume the hyphen so that 
-					// the following bytes are processed properly.
-					bis.reset ();
-					buffer[ readSoFar++ ] = (byte)((bis.read()) & 0xff);
-					readTotal++;
+					log.info ( HumanReadableHelper.byteCountValue ( readTotal ) + " read" );
 				}
+
+				fPos = safeEnd;
 			}
-			else if ( b == -1 )
+
+			if ( fill () < 0 )
 			{
 				// this is a mulitpart stream read. it's required to end with a part boundary before
 				// the stream is complete.
 				throw new IOException ( "Stream ended without part boundary." );
 			}
-			else
+		}
+	}
+
+	/**
+	 * Boyer-Moore-Horspool search for the delimiter in the buffer between from and to.
+	 * @param from
+	 * @param to
+	 * @return the offset of the delimiter in the buffer, or -1
+	 */
+	private int findDelimiter ( int from, int to )
+	{
+		final int last = fDelimiter.length - 1;
+		int i = from;
+		while ( i + last < to )
+		{
+			int j = last;
+			while ( j >= 0 && fBuffer[i + j] == fDelimiter[j] )
+			{
+				j--;
+			}
+			if ( j < 0 )
+			{
+				return i;
+			}
+			i += fSkip[ fBuffer[i + last] & 0xff ];
+		}
+		return -1;
+	}
+
+	/**
+	 * Read a line ending in CRLF, CR, or LF from the buffer.
+	 * @return a line without its line ending, or null at the end of the stream
+	 * @throws IOException
+	 */
+	private String readLine () throws IOException
+	{
+		ByteArrayOutputStream overflow = null;
+		int scanned = 0;
+		while ( true )
+		{
+			for ( int i = fPos + scanned; i < fLimit; i++ )
 			{
-				buffer[ readSoFar++ ] = (byte)(b & 0xff);
-				readTotal++;
-				if ( readSoFar == 2048 )
+				final byte b = fBuffer[i];
+				if ( b == '\r' || b == '\n' )
 				{
-					onPartBytes ( buffer, 0, readSoFar );
-					readSoFar = 0;
+					final String line = makeLine ( overflow, i - fPos );
+					fPos = i + 1;
+
+					// eat a \r\n just like \r or \n
+					if ( b == '\r' )
+					{
+						if ( fPos == fLimit )
+						{
+							fill ();
+						}
+						if ( fPos < fLimit && fBuffer[fPos] == '\n' )
+						{
+							fPos++;
+						}
+					}
+					return line;
 				}
 			}
+			scanned = fLimit - fPos;
 
-			if ( readTotal % (1024*1024) == 0 )
+			// an unusually long line; hold what we have outside the buffer
+			if ( scanned == fBuffer.length )
 			{
-				log.info ( HumanReadableHelper.byteCountValue ( readTotal ) + " read" );
+				if ( overflow == null ) overflow = new ByteArrayOutputStream ();
+				overflow.write ( fBuffer, fPos, scanned );
+				fPos = fLimit = 0;
+				scanned = 0;
+			}
+
+			if ( fill () < 0 )
+			{
+				if ( overflow == null && fPos == fLimit ) return null;
+
+				final String line = makeLine ( overflow, fLimit - fPos );
+				fPos = fLimit;
+				return line;
 			}
 		}
 	}
 
+	private String makeLine ( ByteArrayOutputStream overflow, int len )
+	{
+		if ( overflow != null )
+		{
+			overflow.write ( fBuffer, fPos, len );
+			return new String ( overflow.toByteArray (), StandardCharsets.UTF_8 );
+		}
+		return new String ( fBuffer, fPos, len, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Move unread bytes to the front of the buffer and read more from the stream.
+	 * @return the number of bytes read, or -1 at the end of the stream
+	 * @throws IOException
+	 */
+	private int fill () throws IOException
+	{
+		if ( fPos > 0 )
+		{
+			System.arraycopy ( fBuffer, fPos, fBuffer, 0, fLimit - fPos );
+			fLimit -= fPos;
+			fPos = 0;
+		}
+		final int read = fIn.read ( fBuffer, fLimit, fBuffer.length - fLimit );
+		if ( read > 0 )
+		{
+			fLimit += read;
+		}
+		return read;
+	}
+
 	/**
 	 * Check if one byte array starts with another. Equivalent to startsWith(source,0,match);
 	 * @param source
@@ -0,0 +1,53 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.http.app.servers;
+
+import org.json.JSONObject;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.http.app.servers.endpoints.HttpSamplesEndpoint;
+import io.continual.http.app.servers.routeInstallers.TypicalApiServiceRouteInstaller;
+import io.continual.http.service.framework.CHttpService;
+import io.continual.http.service.framework.inspection.impl.CHttpSamplingObserver;
+import io.continual.services.ServiceContainer;
+import io.continual.services.SimpleService;
+
+/**
+ * Installs the admin endpoint for a sampling observer's captured transactions on an HTTP service.
+ * Configure it after both the observer and the HTTP service:
+ * <pre>
+ * { "name": "httpSamplesApi", "classname": "io.continual.http.app.servers.HttpSamplesApiService", "httpService": "http", "observer": "httpSampler" }
+ * </pre>
+ */
+public class HttpSamplesApiService extends SimpleService
+{
+	private static final String kSetting_HttpServiceName = "httpService";
+	private static final String kDefault_HttpServiceName = "http";
+
+	private static final String kSetting_ObserverName = "observer";
+	private static final String kDefault_ObserverName = "httpSampler";
+
+	public HttpSamplesApiService ( ServiceContainer sc, JSONObject settings ) throws BuildFailure
+	{
+		final CHttpService server = sc.getReqd ( settings.optString ( kSetting_HttpServiceName, kDefault_HttpServiceName ), CHttpService.class );
+		final CHttpSamplingObserver observer = sc.getReqd ( settings.optString ( kSetting_ObserverName, kDefault_ObserverName ), CHttpSamplingObserver.class );
+
+		server.addRouteInstaller (
+			new TypicalApiServiceRouteInstaller ()
+				.registerRoutes ( "httpSamples.conf", HttpSamplesApiService.class, new HttpSamplesEndpoint ( sc, settings, observer ) )
+		);
+	}
+}
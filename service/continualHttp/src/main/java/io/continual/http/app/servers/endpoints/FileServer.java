@@ -1,19 +1,15 @@
 package io.continual.http.app.servers.endpoints;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.OutputStream;
 
 import org.json.JSONObject;
 
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.http.service.framework.context.CHttpRequestContext;
-import io.continual.http.service.framework.context.CHttpResponse;
+import io.continual.http.util.StaticFileSender;
 import io.continual.iam.identity.Identity;
 import io.continual.services.ServiceContainer;
-import io.continual.util.data.StreamTools;
 import io.continual.util.standards.HttpStatusCodes;
 import io.continual.util.standards.MimeTypes;
 
@@ -39,26 +35,14 @@ public class FileServer<I extends Identity> extends TypicalUiEndpoint<I>
 		}
 
 		final File f = new File ( fBaseDir, path );
-		if ( !f.exists () )
-		{
-			context.response ().sendError ( HttpStatusCodes.k404_notFound, "Couldn't find " + path );
-			return;
-		}
 
 		// transfer the file
 		try
 		{
-			final CHttpResponse r = context.response();
-			r.setStatus ( HttpStatusCodes.k200_ok );
-			r.setContentType ( MimeTypes.kAppGenericBinary );
-
-			final OutputStream os = context.response ().getStreamForBinaryResponse ();
-			StreamTools.copyStream ( new FileInputStream ( f ), os );
-			os.close ();
-		}
-		catch ( FileNotFoundException e )
-		{
-			context.response ().sendError ( HttpStatusCodes.k404_notFound, "Couldn't find " + path );
+			if ( !StaticFileSender.getDefault ().sendFile ( context, f, MimeTypes.kAppGenericBinary, -1 ) )
+			{
+				context.response ().sendError ( HttpStatusCodes.k404_notFound, "Couldn't find " + path );
+			}
 		}
 		catch ( IOException e )
 		{
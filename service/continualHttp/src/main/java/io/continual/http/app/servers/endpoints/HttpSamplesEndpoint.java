@@ -0,0 +1,72 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.http.app.servers.endpoints;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.inspection.impl.CHttpSamplingObserver;
+import io.continual.iam.access.AccessDb;
+import io.continual.iam.identity.Identity;
+import io.continual.services.ServiceContainer;
+
+/**
+ * Admin access to the transactions captured by a sampling observer. Callers need access to the
+ * configured resource ("httpSamples" by default): read to fetch samples, delete to clear them.
+ */
+public class HttpSamplesEndpoint extends TypicalRestApiEndpoint<Identity>
+{
+	public HttpSamplesEndpoint ( ServiceContainer sc, JSONObject settings, CHttpSamplingObserver observer ) throws BuildFailure
+	{
+		super ( sc, settings );
+
+		fObserver = observer;
+		fResource = settings.optString ( "accessResource", kDefault_AccessResource );
+	}
+
+	public void getSamples ( CHttpRequestContext context )
+	{
+		handleWithApiAuthAndAccess ( context, ( ctx, uc ) ->
+		{
+			final long after = ctx.request ().getLongParameter ( "after", 0L );
+			final int limit = ctx.request ().getIntParameter ( "limit", kDefault_Limit );
+
+			sendJson ( ctx, new JSONObject ()
+				.put ( "stats", fObserver.getStats () )
+				.put ( "samples", new JSONArray ( fObserver.getSamples ( after, limit ) ) )
+			);
+		},
+		new ResourceAccess ( fResource, AccessDb.kReadOperation ) );
+	}
+
+	public void clearSamples ( CHttpRequestContext context )
+	{
+		handleWithApiAuthAndAccess ( context, ( ctx, uc ) ->
+		{
+			fObserver.clearSamples ();
+			sendStatusOkNoContent ( ctx );
+		},
+		new ResourceAccess ( fResource, AccessDb.kDeleteOperation ) );
+	}
+
+	private final CHttpSamplingObserver fObserver;
+	private final String fResource;
+
+	private static final String kDefault_AccessResource = "httpSamples";
+	private static final int kDefault_Limit = 50;
+}
@@ -4,13 +4,15 @@ import java.io.IOException;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.util.JsonBodyWriter;
+import io.continual.http.util.JsonStreamWriter;
 import io.continual.util.data.TypeConvertor;
 import io.continual.util.data.json.CommentedJsonTokener;
-import io.continual.util.data.json.JsonUtil;
 import io.continual.util.standards.HttpStatusCodes;
-import io.continual.util.standards.MimeTypes;
 
 public class JsonIoEndpoint
 {
@@ -91,11 +93,34 @@ public class JsonIoEndpoint
 		// user can send a header for pretty printed JSON. otherwise we send it in dense form.
 		final boolean pretty = TypeConvertor.convertToBooleanBroad ( context.request ().getFirstHeader ( "X-CioPrettyJson" ) );
 
-		context.response ().sendStatusAndBody (
-			statusCode,
-			( pretty ? payload.toString (4) : payload.toString () ),
-			MimeTypes.kAppJson
-		);
+		try
+		{
+			JsonBodyWriter.writeObject ( context, statusCode, payload, pretty ? 4 : 0 );
+		}
+		catch ( IOException e )
+		{
+			log.warn ( "Error sending JSON response: " + e.getMessage () );
+		}
+	}
+
+	/**
+	 * Send 200 OK with a JSON object holding a single array, written as the items are iterated. 
+	 * @param context
+	 * @param arrayName
+	 * @param items strings, numbers, JSON objects, or anything else JSONWriter.value() accepts
+	 * @throws IOException
+	 */
+	protected static void sendJsonList ( CHttpRequestContext context, String arrayName, Iterable<?> items ) throws IOException
+	{
+		try ( JsonStreamWriter w = JsonBodyWriter.startStream ( context, HttpStatusCodes.k200_ok ) )
+		{
+			w.object ().key ( arrayName ).array ();
+			for ( Object item : items )
+			{
+				w.value ( item );
+			}
+			w.endArray ().endObject ();
+		}
 	}
 
 	/**
@@ -142,8 +167,9 @@ public class JsonIoEndpoint
 	 */
 	protected static void sendStatusOk ( CHttpRequestContext context, JSONObject msg )
 	{
+		// a shallow copy is enough to add the status code without changing the caller's object
 		sendJson ( context, HttpStatusCodes.k200_ok,
-			JsonUtil.clone ( msg )
+			new JSONObject ( msg, msg.keySet ().toArray ( new String[0] ) )
 				.put ( kStatusCode, HttpStatusCodes.k200_ok )
 		);
 	}
@@ -167,4 +193,6 @@ public class JsonIoEndpoint
 	{
 		sendStatusCodeAndMessage ( context, HttpStatusCodes.k401_unauthorized, "Unauthorized. Check your API credentials." );
 	}
+
+	private static final Logger log = LoggerFactory.getLogger ( JsonIoEndpoint.class );
 }
@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 import io.continual.builder.Builder.BuildFailure;
 import io.continual.http.app.servers.CorsOptionsRouter;
 import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.tracing.CHttpTrace;
 import io.continual.iam.IamService;
 import io.continual.iam.access.AccessDb;
 import io.continual.iam.access.Resource;
@@ -122,14 +123,20 @@ public class TypicalRestApiEndpoint<I extends Identity> extends JsonIoEndpoint
 			}
 
 			// check for required access
-			final String uid = user.getEffectiveUserId ();
-			final AccessDb<?> adb = fAccts.getAccessDb ();
-			for ( ResourceAccess ra : accessReqd )
+			if ( accessReqd.length > 0 )
 			{
-				if ( !adb.canUser ( uid, ra.fResource, ra.fOp ) )
+				try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_AccessCheck ) )
 				{
-					sendNotAuth ( context );
-					return;
+					final String uid = user.getEffectiveUserId ();
+					final AccessDb<?> adb = fAccts.getAccessDb ();
+					for ( ResourceAccess ra : accessReqd )
+					{
+						if ( !adb.canUser ( uid, ra.fResource, ra.fOp ) )
+						{
+							sendNotAuth ( context );
+							return;
+						}
+					}
 				}
 			}
 
@@ -178,7 +185,7 @@ public class TypicalRestApiEndpoint<I extends Identity> extends JsonIoEndpoint
 
 		UserContext<I> result = null;
 		I authUser = null;
-		try
+		try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_Authentication ) )
 		{
 			// get this user authenticated
 			authUser = fAuthenticator.authenticate ( am, context );
@@ -93,6 +93,51 @@ public interface CHttpRequest
 	 */
 	Map<String,List<String>> getAllHeaders ();
 
+	/**
+	 * Does the client accept the given content coding (e.g. "gzip") in its Accept-Encoding header?
+	 * @param coding
+	 * @return true if the coding is listed without a zero quality value
+	 */
+	default boolean acceptsEncoding ( String coding )
+	{
+		return acceptsEncoding ( getFirstHeader ( "Accept-Encoding" ), coding );
+	}
+
+	/**
+	 * Does the given Accept-Encoding header value accept the given content coding?
+	 * @param acceptEncoding an Accept-Encoding header value, possibly null
+	 * @param coding
+	 * @return true if the coding is listed without a zero quality value
+	 */
+	static boolean acceptsEncoding ( String acceptEncoding, String coding )
+	{
+		if ( acceptEncoding == null ) return false;
+		for ( String part : acceptEncoding.split ( "," ) )
+		{
+			final String[] params = part.split ( ";" );
+			if ( params[0].trim ().equalsIgnoreCase ( coding ) )
+			{
+				for ( int i=1; i<params.length; i++ )
+				{
+					final String p = params[i].trim ();
+					if ( p.startsWith ( "q=" ) )
+					{
+						try
+						{
+							return Double.parseDouble ( p.substring ( 2 ) ) > 0.0;
+						}
+						catch ( NumberFormatException e )
+						{
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Get the parameter map for this request.
 	 * @return a map of name/value pairs.
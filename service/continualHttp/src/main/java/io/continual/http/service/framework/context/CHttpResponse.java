@@ -16,9 +16,14 @@
 
 package io.continual.http.service.framework.context;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 
 import io.continual.util.standards.HttpHeaders;
@@ -53,6 +58,49 @@ public interface CHttpResponse
 
 	CHttpResponse setContentType ( String mimeType );
 
+	/**
+	 * Set the length of the response entity
+	 * @param length
+	 * @return this response
+	 */
+	default CHttpResponse setContentLength ( long length )
+	{
+		return writeHeader ( "Content-Length", Long.toString ( length ), true );
+	}
+
+	/**
+	 * Send a section of a file as the response entity. By default the file is transferred with
+	 * FileChannel.transferTo onto the binary response stream. Implementations that can have the
+	 * container send the file directly should do so.
+	 * 
+	 * @param f
+	 * @param offset
+	 * @param length
+	 * @param contentType
+	 * @throws IOException
+	 */
+	default void sendFile ( File f, long offset, long length, String contentType ) throws IOException
+	{
+		try ( FileChannel fc = FileChannel.open ( f.toPath (), StandardOpenOption.READ ) )
+		{
+			final OutputStream os = getStreamForBinaryResponse ( contentType );
+
+			// not closed here; closing the channel would close the response stream
+			final WritableByteChannel out = Channels.newChannel ( os );
+
+			long pos = offset;
+			long remaining = length;
+			while ( remaining > 0 )
+			{
+				final long sent = fc.transferTo ( pos, remaining, out );
+				if ( sent <= 0 ) break;
+				pos += sent;
+				remaining -= sent;
+			}
+			os.flush ();
+		}
+	}
+
 	CHttpResponse send ( String content ) throws IOException;
 
 	/**
@@ -157,4 +205,12 @@ public interface CHttpResponse
 	 * @param url
 	 */
 	void redirectExactly ( String url );
+
+	/**
+	 * Abandon a response whose entity is already underway, for instance when a streamed body fails
+	 * partway through. The connection is closed without completing the entity, so the client can't
+	 * mistake a partial body for a whole one. Nothing else is sent on an aborted response. By default
+	 * this does nothing.
+	 */
+	default void abort () {}
 }
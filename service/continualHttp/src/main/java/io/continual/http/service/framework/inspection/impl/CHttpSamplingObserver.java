@@ -0,0 +1,1025 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.http.service.framework.inspection.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.inspection.CHttpObserver;
+import io.continual.http.service.framework.inspection.CHttpObserverMgr;
+import io.continual.http.service.framework.tracing.CHttpTrace;
+import io.continual.services.ServiceContainer;
+import io.continual.services.SimpleService;
+import io.continual.util.data.json.JsonVisitor;
+import io.continual.util.data.json.JsonVisitor.ArrayVisitor;
+import io.continual.util.time.Clock;
+
+/**
+ * An observer manager that captures a sample of transactions. Unsampled requests cost a path
+ * prefix check and a random draw. Sampled transactions are captured in memory and kept in a
+ * fixed-size ring of recent samples. Optionally, samples are also handed to a background thread
+ * that appends them to a rotating file, dropping them if the writer falls behind rather than
+ * slowing requests.
+ * <pre>
+ * {
+ *   "sampleRate": 0.01,
+ *   "rules": [ { "method": "POST", "path": "/model", "sampleRate": 0.25 }, { "path": "/health", "sampleRate": 0 } ],
+ *   "bufferSize": 256,
+ *   "redactHeaders": [ "Authorization", "Cookie" ],
+ *   "captureBodies": true,
+ *   "bodyContentTypes": [ "application/json", "text/" ],
+ *   "bodyPaths": [ "/model" ],
+ *   "maxBodyBytes": 4096,
+ *   "redactFields": [ "password", "token" ],
+ *   "spill": { "file": "./logs/httpSamples.log", "maxFileBytes": 10485760, "maxFiles": 5, "queueSize": 1024, "retryMs": 30000 }
+ * }
+ * </pre>
+ * The first rule matching a request's method and path prefix sets its sample rate; other requests
+ * use the default rate.<br>
+ * <br>
+ * Bodies are only captured when captureBodies is set. Then, if bodyContentTypes is given, a body is
+ * kept only when its content type starts with one of the listed values, and if bodyPaths is given,
+ * only requests under one of the listed path prefixes have their bodies captured. Captured bodies
+ * are cut off at maxBodyBytes, and the values of the JSON fields named in redactFields are replaced.<br>
+ * <br>
+ * If the spill file can't be written, samples are dropped and the file is tried again after retryMs.
+ * The failure is logged once and reported in the stats until writing succeeds again.
+ */
+public class CHttpSamplingObserver extends SimpleService implements CHttpObserverMgr
+{
+	public CHttpSamplingObserver ( ServiceContainer sc, JSONObject config )
+	{
+		fDefaultRate = config.optDouble ( "sampleRate", kDefault_SampleRate );
+
+		fRules = new ArrayList<> ();
+		JsonVisitor.forEachElement ( config.optJSONArray ( "rules" ), new ArrayVisitor<JSONObject,JSONException> ()
+		{
+			@Override
+			public boolean visit ( JSONObject rule ) throws JSONException
+			{
+				final String method = rule.optString ( "method", null );
+				fRules.add ( new Rule (
+					method == null || method.equals ( "*" ) ? null : method,
+					rule.optString ( "path", "/" ),
+					rule.optDouble ( "sampleRate", fDefaultRate )
+				) );
+				return true;
+			}
+		} );
+
+		fCaptureBodies = config.optBoolean ( "captureBodies", false );
+		fBodyContentTypes = new ArrayList<> ();
+		for ( String type : JsonVisitor.arrayToList ( config.optJSONArray ( "bodyContentTypes" ) ) )
+		{
+			fBodyContentTypes.add ( type.toLowerCase () );
+		}
+		fBodyPaths = JsonVisitor.arrayToList ( config.optJSONArray ( "bodyPaths" ) );
+		fMaxBodyBytes = config.optInt ( "maxBodyBytes", kDefault_MaxBodyBytes );
+
+		fRedactedFields = new HashSet<> ();
+		final JSONArray redactFields = config.optJSONArray ( "redactFields" );
+		for ( String f : redactFields == null ? Arrays.asList ( kDefault_RedactFields ) : JsonVisitor.arrayToList ( redactFields ) )
+		{
+			fRedactedFields.add ( f.toLowerCase () );
+		}
+		fRedactedFieldPattern = makeFieldPattern ( fRedactedFields );
+
+		fRing = new SampleRing ( config.optInt ( "bufferSize", kDefault_BufferSize ) );
+
+		fRedactedHeaders = new HashSet<> ();
+		final JSONArray redact = config.optJSONArray ( "redactHeaders" );
+		for ( String h : redact == null ? Arrays.asList ( kDefault_RedactHeaders ) : JsonVisitor.arrayToList ( redact ) )
+		{
+			fRedactedHeaders.add ( h.toLowerCase () );
+		}
+
+		final JSONObject spill = config.optJSONObject ( "spill" );
+		fSpiller = spill == null ? null : new Spiller (
+			new File ( spill.optString ( "file", kDefault_SpillFile ) ),
+			spill.optLong ( "maxFileBytes", kDefault_SpillFileBytes ),
+			spill.optInt ( "maxFiles", kDefault_SpillFiles ),
+			spill.optInt ( "queueSize", kDefault_SpillQueueSize ),
+			spill.optLong ( "retryMs", kDefault_SpillRetryMs )
+		);
+
+		fSampled = new AtomicLong ( 0 );
+		fSpillDropped = new AtomicLong ( 0 );
+	}
+
+	@Override
+	public void consider ( CHttpRequestContext ctx )
+	{
+		final CHttpRequest req = ctx.request ();
+		final double rate = getSampleRate ( req.getMethod (), req.getPathInContext () );
+		if ( rate <= 0.0 ) return;
+		if ( rate < 1.0 && ThreadLocalRandom.current ().nextDouble () >= rate ) return;
+
+		fSampled.incrementAndGet ();
+		ctx.install ( new SampleObserver ( fCaptureBodies && isBodyPath ( req.getPathInContext () ) ) );
+	}
+
+	/**
+	 * Get the sample rate that applies to a request
+	 * @param method
+	 * @param path
+	 * @return a rate from 0 (never) to 1 (always)
+	 */
+	public double getSampleRate ( String method, String path )
+	{
+		final String p = path == null ? "/" : path;
+		for ( Rule r : fRules )
+		{
+			if ( r.matches ( method, p ) ) return r.fRate;
+		}
+		return fDefaultRate;
+	}
+
+	/**
+	 * Get samples from the in-memory buffer, most recent first
+	 * @param afterId only return samples with a greater ID than this; use 0 for all
+	 * @param limit the maximum number of samples to return
+	 * @return a list of samples
+	 */
+	public List<JSONObject> getSamples ( long afterId, int limit )
+	{
+		return fRing.getAfter ( afterId, limit );
+	}
+
+	/**
+	 * Remove all samples from the in-memory buffer
+	 */
+	public void clearSamples ()
+	{
+		fRing.clear ();
+	}
+
+	/**
+	 * Get counts describing the observer's activity
+	 * @return a JSON object
+	 */
+	public JSONObject getStats ()
+	{
+		return new JSONObject ()
+			.put ( "sampled", fSampled.get () )
+			.put ( "lastId", fRing.getLastId () )
+			.put ( "bufferSize", fRing.size () )
+			.put ( "captureBodies", fCaptureBodies )
+			.put ( "spilling", fSpiller != null )
+			.put ( "spillDropped", fSpillDropped.get () )
+			.put ( "spillErrors", fSpiller == null ? 0L : fSpiller.getErrorCount () )
+			.put ( "spillFailing", fSpiller != null && fSpiller.isFailing () )
+		;
+	}
+
+	@Override
+	protected void onStartRequested ()
+	{
+		if ( fSpiller != null )
+		{
+			fSpiller.start ();
+		}
+	}
+
+	@Override
+	protected void onStopRequested ()
+	{
+		if ( fSpiller != null )
+		{
+			fSpiller.stop ();
+		}
+	}
+
+	private static final double kDefault_SampleRate = 0.01;
+	private static final int kDefault_MaxBodyBytes = 4096;
+	private static final int kDefault_BufferSize = 256;
+	private static final String[] kDefault_RedactHeaders = { "Authorization", "Cookie", "Set-Cookie", "X-Continual-Auth" };
+	private static final String[] kDefault_RedactFields = { "password", "secret", "token", "accessToken", "refreshToken", "apiKey", "apiSecret" };
+	private static final String kDefault_SpillFile = "./logs/httpSamples.log";
+	private static final long kDefault_SpillFileBytes = 10L * 1024 * 1024;
+	private static final int kDefault_SpillFiles = 5;
+	private static final int kDefault_SpillQueueSize = 1024;
+	private static final long kDefault_SpillRetryMs = 30 * 1000L;
+	private static final String kRedacted = "(redacted)";
+
+	private final double fDefaultRate;
+	private final List<Rule> fRules;
+	private final boolean fCaptureBodies;
+	private final List<String> fBodyContentTypes;
+	private final List<String> fBodyPaths;
+	private final int fMaxBodyBytes;
+	private final Set<String> fRedactedFields;
+	private final Pattern fRedactedFieldPattern;
+	private final Set<String> fRedactedHeaders;
+	private final SampleRing fRing;
+	private final Spiller fSpiller;
+	private final AtomicLong fSampled;
+	private final AtomicLong fSpillDropped;
+
+	private void record ( JSONObject sample )
+	{
+		fRing.add ( sample );
+		if ( fSpiller != null && !fSpiller.offer ( sample ) )
+		{
+			fSpillDropped.incrementAndGet ();
+		}
+	}
+
+	private JSONObject headersToJson ( Map<String,List<String>> headers )
+	{
+		final JSONObject result = new JSONObject ();
+		if ( headers == null ) return result;
+
+		for ( Map.Entry<String,List<String>> e : headers.entrySet () )
+		{
+			final String key = e.getKey ();
+			if ( fRedactedHeaders.contains ( key.toLowerCase () ) )
+			{
+				result.put ( key, kRedacted );
+			}
+			else
+			{
+				final List<String> values = e.getValue ();
+				result.put ( key, values.size () == 1 ? values.get ( 0 ) : new JSONArray ( values ) );
+			}
+		}
+		return result;
+	}
+
+	private boolean isBodyPath ( String path )
+	{
+		if ( fBodyPaths.isEmpty () ) return true;
+
+		final String p = path == null ? "/" : path;
+		for ( String prefix : fBodyPaths )
+		{
+			if ( p.startsWith ( prefix ) ) return true;
+		}
+		return false;
+	}
+
+	private boolean isBodyContentType ( String contentType )
+	{
+		if ( fBodyContentTypes.isEmpty () ) return true;
+		if ( contentType == null ) return false;
+
+		final String ct = contentType.trim ().toLowerCase ();
+		for ( String prefix : fBodyContentTypes )
+		{
+			if ( ct.startsWith ( prefix ) ) return true;
+		}
+		return false;
+	}
+
+	private void addBody ( JSONObject sample, String key, BodyCapture body, String contentType )
+	{
+		if ( body.isEmpty () || !isBodyContentType ( contentType ) ) return;
+
+		final boolean truncated = body.isTruncated ();
+		sample.put ( key, redactFields ( body.getText (), truncated ) );
+		if ( truncated )
+		{
+			sample.put ( key + "Truncated", true );
+			sample.put ( key + "Length", body.getTotal () );
+		}
+	}
+
+	/**
+	 * Replace the values of redacted fields in a captured body. A complete JSON document is parsed
+	 * and redacted at any depth. Other text, including a truncated document, has matching string and
+	 * scalar values replaced in place, and is cut off where a matching field holds an object or array.
+	 * @param text
+	 * @param truncated
+	 * @return the redacted text
+	 */
+	String redactFields ( String text, boolean truncated )
+	{
+		if ( fRedactedFieldPattern == null ) return text;
+
+		if ( !truncated )
+		{
+			try
+			{
+				final Object doc = new JSONTokener ( text ).nextValue ();
+				if ( doc instanceof JSONObject || doc instanceof JSONArray )
+				{
+					return redactJson ( doc ).toString ();
+				}
+			}
+			catch ( JSONException e )
+			{
+				// not JSON, so redact by pattern
+			}
+		}
+
+		final StringBuilder sb = new StringBuilder ();
+		final Matcher m = fRedactedFieldPattern.matcher ( text );
+		int at = 0;
+		while ( m.find ( at ) )
+		{
+			final int valueStart = m.end ();
+			if ( valueStart >= text.length () )
+			{
+				sb.append ( text, at, m.start () );
+				return sb.toString ();
+			}
+
+			final char c = text.charAt ( valueStart );
+			if ( c == '{' || c == '[' )
+			{
+				sb.append ( text, at, m.start () );
+				return sb.toString ();
+			}
+
+			final int valueEnd = c == '"' ? endOfString ( text, valueStart ) : endOfScalar ( text, valueStart );
+			sb
+				.append ( text, at, valueStart )
+				.append ( '"' ).append ( kRedacted ).append ( '"' )
+			;
+			at = valueEnd;
+		}
+		sb.append ( text, at, text.length () );
+		return sb.toString ();
+	}
+
+	private Object redactJson ( Object o )
+	{
+		if ( o instanceof JSONObject )
+		{
+			final JSONObject obj = (JSONObject) o;
+			for ( String key : new ArrayList<> ( obj.keySet () ) )
+			{
+				obj.put ( key, fRedactedFields.contains ( key.toLowerCase () ) ? kRedacted : redactJson ( obj.get ( key ) ) );
+			}
+		}
+		else if ( o instanceof JSONArray )
+		{
+			final JSONArray arr = (JSONArray) o;
+			for ( int i=0; i<arr.length (); i++ )
+			{
+				arr.put ( i, redactJson ( arr.get ( i ) ) );
+			}
+		}
+		return o;
+	}
+
+	private static Pattern makeFieldPattern ( Set<String> fields )
+	{
+		if ( fields.isEmpty () ) return null;
+
+		final StringBuilder sb = new StringBuilder ();
+		for ( String f : fields )
+		{
+			if ( sb.length () > 0 ) sb.append ( '|' );
+			sb.append ( Pattern.quote ( f ) );
+		}
+		return Pattern.compile ( "\"(?:" + sb + ")\"\\s*:\\s*", Pattern.CASE_INSENSITIVE );
+	}
+
+	// the index just past a JSON string starting at the given quote, or the end of the text
+	private static int endOfString ( String text, int quoteAt )
+	{
+		for ( int i = quoteAt + 1; i < text.length (); i++ )
+		{
+			final char c = text.charAt ( i );
+			if ( c == '\\' )
+			{
+				i++;
+			}
+			else if ( c == '"' )
+			{
+				return i + 1;
+			}
+		}
+		return text.length ();
+	}
+
+	private static int endOfScalar ( String text, int start )
+	{
+		int i = start;
+		while ( i < text.length () && ",}] \t\r\n".indexOf ( text.charAt ( i ) ) < 0 )
+		{
+			i++;
+		}
+		return i;
+	}
+
+	private static String findHeader ( JSONObject headers, String... names )
+	{
+		if ( headers == null ) return null;
+		for ( String key : headers.keySet () )
+		{
+			for ( String name : names )
+			{
+				if ( key.equalsIgnoreCase ( name ) )
+				{
+					final Object val = headers.get ( key );
+					return val instanceof JSONArray ? ((JSONArray) val).optString ( 0, null ) : val.toString ();
+				}
+			}
+		}
+		return null;
+	}
+
+	private static class Rule
+	{
+		Rule ( String method, String path, double rate )
+		{
+			fMethod = method;
+			fPath = path;
+			fRate = rate;
+		}
+
+		boolean matches ( String method, String path )
+		{
+			if ( fMethod != null && !fMethod.equalsIgnoreCase ( method ) ) return false;
+			return path.startsWith ( fPath );
+		}
+
+		private final String fMethod;
+		private final String fPath;
+		private final double fRate;
+	}
+
+	/**
+	 * Captures body bytes up to a limit, counting the rest
+	 */
+	private static class BodyCapture
+	{
+		BodyCapture ( int limit )
+		{
+			fLimit = limit;
+			fBytes = new ByteArrayOutputStream ( Math.min ( limit, 1024 ) );
+			fTotal = 0;
+		}
+
+		void add ( byte[] b, int off, int len )
+		{
+			if ( len <= 0 ) return;
+			final int room = fLimit - fBytes.size ();
+			if ( room > 0 )
+			{
+				fBytes.write ( b, off, Math.min ( room, len ) );
+			}
+			fTotal += len;
+		}
+
+		void add ( int b )
+		{
+			if ( fBytes.size () < fLimit )
+			{
+				fBytes.write ( b );
+			}
+			fTotal++;
+		}
+
+		void add ( String s )
+		{
+			if ( fBytes.size () < fLimit )
+			{
+				final byte[] b = s.getBytes ( StandardCharsets.UTF_8 );
+				add ( b, 0, b.length );
+			}
+			else
+			{
+				fTotal += s.length ();
+			}
+		}
+
+		boolean isEmpty () { return fTotal == 0; }
+
+		boolean isTruncated () { return fTotal > fBytes.size (); }
+
+		long getTotal () { return fTotal; }
+
+		String getText ()
+		{
+			return new String ( fBytes.toByteArray (), StandardCharsets.UTF_8 );
+		}
+
+		private final int fLimit;
+		private final ByteArrayOutputStream fBytes;
+		private long fTotal;
+	}
+
+	private class SampleObserver implements CHttpObserver
+	{
+		SampleObserver ( boolean captureBodies )
+		{
+			fAt = Clock.now ();
+			fStartNs = System.nanoTime ();
+			fSample = new JSONObject ();
+			fReplyHeaders = new JSONObject ();
+			fCapture = captureBodies;
+			fRequestBody = captureBodies ? new BodyCapture ( fMaxBodyBytes ) : null;
+			fResponseBody = captureBodies ? new BodyCapture ( fMaxBodyBytes ) : null;
+			fClosed = false;
+
+			final CHttpTrace trace = CHttpTrace.current ();
+			if ( trace != null )
+			{
+				fSample.put ( "traceId", trace.getTraceId () );
+			}
+		}
+
+		@Override
+		public CHttpObserver method ( String method )
+		{
+			fSample.put ( "method", method );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver onUrl ( String url )
+		{
+			fSample.put ( "url", url );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver queryString ( String qs )
+		{
+			fSample.putOpt ( "query", qs );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver contentTypeRequest ( String type )
+		{
+			fSample.putOpt ( "contentType", type );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver contentLengthRequest ( int length )
+		{
+			fSample.put ( "contentLength", length );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver withHeaders ( HeaderLister hl )
+		{
+			fSample.put ( "headers", headersToJson ( hl.getHeaders () ) );
+			return this;
+		}
+
+		@Override
+		public InputStream wrap ( InputStream inputStream )
+		{
+			if ( !fCapture ) return inputStream;
+
+			return new FilterInputStream ( inputStream )
+			{
+				@Override
+				public int read () throws IOException
+				{
+					final int b = super.read ();
+					if ( b > -1 ) fRequestBody.add ( b );
+					return b;
+				}
+
+				@Override
+				public int read ( byte[] b, int off, int len ) throws IOException
+				{
+					final int result = super.read ( b, off, len );
+					fRequestBody.add ( b, off, result );
+					return result;
+				}
+			};
+		}
+
+		@Override
+		public CHttpObserver replyWith ( int status, String msg )
+		{
+			fSample.put ( "status", status );
+			fSample.putOpt ( "statusMsg", msg );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver replyWith ( int code )
+		{
+			fSample.put ( "status", code );
+			return this;
+		}
+
+		@Override
+		public CHttpObserver replyHeader ( String key, String value )
+		{
+			fReplyHeaders.put ( key, fRedactedHeaders.contains ( key.toLowerCase () ) ? kRedacted : value );
+			return this;
+		}
+
+		@Override
+		public PrintWriter wrap ( final PrintWriter writer )
+		{
+			if ( !fCapture ) return writer;
+
+			return new PrintWriter ( new Writer ()
+			{
+				@Override
+				public void write ( char[] cbuf, int off, int len )
+				{
+					writer.write ( cbuf, off, len );
+					fResponseBody.add ( new String ( cbuf, off, len ) );
+				}
+
+				@Override
+				public void write ( String s, int off, int len )
+				{
+					writer.write ( s, off, len );
+					fResponseBody.add ( s.substring ( off, off + len ) );
+				}
+
+				@Override
+				public void flush ()
+				{
+					writer.flush ();
+				}
+
+				@Override
+				public void close ()
+				{
+					writer.close ();
+				}
+			} );
+		}
+
+		@Override
+		public OutputStream wrap ( final OutputStream outputStream )
+		{
+			if ( !fCapture ) return outputStream;
+
+			return new OutputStream ()
+			{
+				@Override
+				public void write ( int b ) throws IOException
+				{
+					outputStream.write ( b );
+					fResponseBody.add ( b );
+				}
+
+				@Override
+				public void write ( byte[] b, int off, int len ) throws IOException
+				{
+					outputStream.write ( b, off, len );
+					fResponseBody.add ( b, off, len );
+				}
+
+				@Override
+				public void flush () throws IOException
+				{
+					outputStream.flush ();
+				}
+
+				@Override
+				public void close () throws IOException
+				{
+					outputStream.close ();
+				}
+			};
+		}
+
+		@Override
+		public void closeTrx ()
+		{
+			if ( fClosed ) return;
+			fClosed = true;
+
+			fSample
+				.put ( "at", fAt )
+				.put ( "durationMs", ( System.nanoTime () - fStartNs ) / 1000000L )
+				.put ( "replyHeaders", fReplyHeaders )
+			;
+			if ( fCapture )
+			{
+				final String requestType = fSample.has ( "contentType" ) ? fSample.getString ( "contentType" ) : findHeader ( fSample.optJSONObject ( "headers" ), "Content-Type" );
+				addBody ( fSample, "requestBody", fRequestBody, requestType );
+				addBody ( fSample, "responseBody", fResponseBody, findHeader ( fReplyHeaders, "Content-Type", "ContentType" ) );
+			}
+
+			record ( fSample );
+		}
+
+		private final long fAt;
+		private final long fStartNs;
+		private final JSONObject fSample;
+		private final JSONObject fReplyHeaders;
+		private final boolean fCapture;
+		private final BodyCapture fRequestBody;
+		private final BodyCapture fResponseBody;
+		private boolean fClosed;
+	}
+
+	/**
+	 * A fixed-size ring of the most recent samples. Each sample is given an increasing ID.
+	 */
+	private static class SampleRing
+	{
+		SampleRing ( int size )
+		{
+			fSlots = new JSONObject[ Math.max ( 1, size ) ];
+			fNextId = 1;
+		}
+
+		synchronized void add ( JSONObject sample )
+		{
+			final long id = fNextId++;
+			sample.put ( "id", id );
+			fSlots [ (int) ( id % fSlots.length ) ] = sample;
+		}
+
+		synchronized List<JSONObject> getAfter ( long afterId, int limit )
+		{
+			final LinkedList<JSONObject> result = new LinkedList<> ();
+			final long oldest = Math.max ( afterId + 1, fNextId - fSlots.length );
+			for ( long id = fNextId - 1; id >= oldest && result.size () < limit; id-- )
+			{
+				final JSONObject s = fSlots [ (int) ( id % fSlots.length ) ];
+				if ( s != null )
+				{
+					result.add ( s );
+				}
+			}
+			return result;
+		}
+
+		synchronized void clear ()
+		{
+			Arrays.fill ( fSlots, null );
+		}
+
+		synchronized long getLastId ()
+		{
+			return fNextId - 1;
+		}
+
+		int size ()
+		{
+			return fSlots.length;
+		}
+
+		private final JSONObject[] fSlots;
+		private long fNextId;
+	}
+
+	/**
+	 * Appends samples to a file on a background thread, one JSON document per line, rotating
+	 * the file when it reaches its size limit. A write failure doesn't end the thread. Samples
+	 * are dropped until the file can be opened again, which is retried periodically.
+	 */
+	private class Spiller implements Runnable
+	{
+		Spiller ( File file, long maxFileBytes, int maxFiles, int queueSize, long retryMs )
+		{
+			fFile = file;
+			fMaxFileBytes = maxFileBytes;
+			fMaxFiles = Math.max ( 1, maxFiles );
+			fQueue = new ArrayBlockingQueue<> ( Math.max ( 1, queueSize ) );
+			fRetryMs = Math.max ( 0L, retryMs );
+			fStopping = false;
+			fFailing = false;
+			fErrors = new AtomicLong ( 0 );
+		}
+
+		boolean isFailing ()
+		{
+			return fFailing;
+		}
+
+		long getErrorCount ()
+		{
+			return fErrors.get ();
+		}
+
+		boolean offer ( JSONObject sample )
+		{
+			return !fStopping && fQueue.offer ( sample );
+		}
+
+		void start ()
+		{
+			fStopping = false;
+			fThread = new Thread ( this, "CHttpSamplingObserver spill" );
+			fThread.setDaemon ( true );
+			fThread.start ();
+		}
+
+		void stop ()
+		{
+			fStopping = true;
+			if ( fThread != null )
+			{
+				try
+				{
+					fThread.join ( 5000 );
+				}
+				catch ( InterruptedException e )
+				{
+					Thread.currentThread ().interrupt ();
+				}
+				fThread = null;
+			}
+		}
+
+		@Override
+		public void run ()
+		{
+			try
+			{
+				while ( true )
+				{
+					final JSONObject sample = fQueue.poll ( 500, TimeUnit.MILLISECONDS );
+					if ( sample == null && fStopping ) break;
+
+					try
+					{
+						if ( fOut == null && !reopen () )
+						{
+							if ( sample != null ) fSpillDropped.incrementAndGet ();
+							continue;
+						}
+
+						if ( sample == null )
+						{
+							fOut.flush ();
+							continue;
+						}
+
+						final byte[] line = ( sample.toString () + "\n" ).getBytes ( StandardCharsets.UTF_8 );
+						fOut.write ( line );
+						fBytes += line.length;
+						if ( fBytes >= fMaxFileBytes )
+						{
+							rotate ();
+						}
+					}
+					catch ( IOException e )
+					{
+						if ( sample != null ) fSpillDropped.incrementAndGet ();
+						failed ( e );
+					}
+				}
+			}
+			catch ( InterruptedException e )
+			{
+				Thread.currentThread ().interrupt ();
+			}
+			finally
+			{
+				closeOut ();
+			}
+		}
+
+		private final File fFile;
+		private final long fMaxFileBytes;
+		private final int fMaxFiles;
+		private final BlockingQueue<JSONObject> fQueue;
+		private final long fRetryMs;
+		private final AtomicLong fErrors;
+		private volatile boolean fStopping;
+		private volatile boolean fFailing;
+		private long fRetryAtMs;
+		private Thread fThread;
+		private OutputStream fOut;
+		private long fBytes;
+
+		// open the file unless a recent failure says to wait
+		private boolean reopen () throws IOException
+		{
+			if ( fFailing && System.currentTimeMillis () < fRetryAtMs ) return false;
+
+			open ();
+			if ( fFailing )
+			{
+				fFailing = false;
+				log.info ( "Sample spill to {} resumed.", fFile );
+			}
+			return true;
+		}
+
+		private void failed ( IOException e )
+		{
+			fErrors.incrementAndGet ();
+			closeOut ();
+			if ( !fFailing )
+			{
+				log.warn ( "Sample spill to {} failed; dropping samples and retrying every {} ms: {}", fFile, fRetryMs, e.getMessage () );
+			}
+			fFailing = true;
+			fRetryAtMs = System.currentTimeMillis () + fRetryMs;
+		}
+
+		private void open () throws IOException
+		{
+			final File dir = fFile.getAbsoluteFile ().getParentFile ();
+			if ( dir != null && !dir.exists () && !dir.mkdirs () )
+			{
+				throw new IOException ( "Couldn't create " + dir );
+			}
+			fOut = new BufferedOutputStream ( new FileOutputStream ( fFile, true ) );
+			fBytes = fFile.length ();
+		}
+
+		private void rotate () throws IOException
+		{
+			closeOut ();
+
+			// file.N-1 is dropped, file.i moves to file.i+1, and the current file becomes file.1
+			final File last = numbered ( fMaxFiles - 1 );
+			if ( last.exists () && !last.delete () )
+			{
+				log.warn ( "Couldn't remove {}", last );
+			}
+			for ( int i = fMaxFiles - 2; i >= 1; i-- )
+			{
+				final File f = numbered ( i );
+				if ( f.exists () && !f.renameTo ( numbered ( i + 1 ) ) )
+				{
+					log.warn ( "Couldn't rotate {}", f );
+				}
+			}
+			if ( fMaxFiles > 1 )
+			{
+				if ( !fFile.renameTo ( numbered ( 1 ) ) )
+				{
+					log.warn ( "Couldn't rotate {}", fFile );
+				}
+			}
+			else if ( !fFile.delete () )
+			{
+				log.warn ( "Couldn't remove {}", fFile );
+			}
+
+			open ();
+		}
+
+		private File numbered ( int i )
+		{
+			return new File ( fFile.getPath () + "." + i );
+		}
+
+		private void closeOut ()
+		{
+			if ( fOut != null )
+			{
+				try
+				{
+					fOut.close ();
+				}
+				catch ( IOException e )
+				{
+					log.warn ( "Couldn't close {}: {}", fFile, e.getMessage () );
+				}
+				fOut = null;
+			}
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger ( CHttpSamplingObserver.class );
+}
@@ -0,0 +1,131 @@
+/*
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.routing.playish;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import io.continual.http.service.framework.context.CHttpRequestContext;
+
+/**
+ * Calls a route's entry method, which takes the request context followed by some number of
+ * string arguments. The method is resolved to a method handle once, when the route is loaded,
+ * so requests don't pay for reflective invocation. Failures are reported as they are from
+ * Method.invoke: the entry method's exceptions arrive wrapped in an InvocationTargetException.
+ */
+class EntryMethodInvoker
+{
+	/**
+	 * Build an invoker
+	 * @param m the entry method
+	 * @param instance the target instance (ignored for a static method)
+	 */
+	EntryMethodInvoker ( Method m, Object instance )
+	{
+		fMethod = m;
+		fInstance = instance;
+		fArgCount = m.getParameterTypes ().length - 1;
+		fHandle = makeHandle ( m, instance, fArgCount );
+	}
+
+	void invoke ( CHttpRequestContext context, List<String> args ) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
+	{
+		if ( fHandle == null )
+		{
+			// the method couldn't be resolved to a handle; let reflection handle (and report) it
+			final Object[] methodArgs = new Object[args.size ()+1];
+			methodArgs[0] = context;
+			int i=1;
+			for ( String arg : args )
+			{
+				methodArgs[i++] = arg;
+			}
+			fMethod.invoke ( fInstance, methodArgs );
+			return;
+		}
+
+		if ( args.size () != fArgCount )
+		{
+			throw new IllegalArgumentException ( "wrong number of arguments" );
+		}
+
+		try
+		{
+			switch ( fArgCount )
+			{
+				case 0: fHandle.invokeExact ( context ); break;
+				case 1: fHandle.invokeExact ( context, args.get ( 0 ) ); break;
+				case 2: fHandle.invokeExact ( context, args.get ( 0 ), args.get ( 1 ) ); break;
+				case 3: fHandle.invokeExact ( context, args.get ( 0 ), args.get ( 1 ), args.get ( 2 ) ); break;
+				default: fHandle.invokeExact ( context, args.toArray ( new String[fArgCount] ) ); break;
+			}
+		}
+		catch ( Throwable t )
+		{
+			throw new InvocationTargetException ( t );
+		}
+	}
+
+	private final Method fMethod;
+	private final Object fInstance;
+	private final int fArgCount;
+	private final MethodHandle fHandle;
+
+	private static final int kMaxDirectArgs = 3;
+
+	private static MethodHandle makeHandle ( Method m, Object instance, int argCount )
+	{
+		try
+		{
+			MethodHandle h = MethodHandles.lookup ().unreflect ( m );
+			if ( !Modifier.isStatic ( m.getModifiers () ) )
+			{
+				h = h.bindTo ( instance );
+			}
+
+			// the exact shape invoke() calls: (context, string...) with the result discarded
+			final Class<?>[] params = new Class<?>[ argCount + 1 ];
+			params[0] = CHttpRequestContext.class;
+			for ( int i=1; i<=argCount; i++ )
+			{
+				params[i] = String.class;
+			}
+			h = h.asType ( MethodType.methodType ( void.class, params ) );
+
+			if ( argCount > kMaxDirectArgs )
+			{
+				h = h.asSpreader ( String[].class, argCount );
+			}
+			return h;
+		}
+		catch ( IllegalAccessException x )
+		{
+			log.debug ( "Couldn't build a method handle for {}: {}", m, x.getMessage () );
+			return null;
+		}
+	}
+
+	private static final org.slf4j.Logger log = LoggerFactory.getLogger ( EntryMethodInvoker.class );
+}
@@ -35,6 +35,7 @@ public class InstanceEntryAction<T> implements CHttpPlayishRouteHandler
 		fAction = action;
 		fArgs = args;
 		fMethod = null;
+		fInvoker = null;
 
 		processAction ( packages );
 	}
@@ -48,14 +49,7 @@ public class InstanceEntryAction<T> implements CHttpPlayishRouteHandler
 	@Override
 	public void handle ( CHttpRequestContext context, List<String> addlArgs ) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
 	{
-		final Object[] methodArgs = new Object[addlArgs.size ()+1];
-		methodArgs[0] = context;
-		int i=1;
-		for ( String arg : addlArgs )
-		{
-			methodArgs[i++] = arg; 
-		}
-		fMethod.invoke ( fInstance, methodArgs );
+		fInvoker.invoke ( context, addlArgs );
 	}
 
 	@Override
@@ -68,6 +62,7 @@ public class InstanceEntryAction<T> implements CHttpPlayishRouteHandler
 	private String fAction;
 	private final List<String> fArgs;
 	private Method fMethod;
+	private EntryMethodInvoker fInvoker;
 
 	private void processAction ( Collection<String> packages )
 	{
@@ -96,6 +91,7 @@ public class InstanceEntryAction<T> implements CHttpPlayishRouteHandler
 			{
 				throw new IllegalArgumentException ( methodName + " is static." );
 			}
+			fInvoker = new EntryMethodInvoker ( fMethod, fInstance );
 		}
 		catch ( ClassNotFoundException e )
 		{
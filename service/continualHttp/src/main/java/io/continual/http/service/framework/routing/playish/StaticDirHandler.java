@@ -19,15 +19,13 @@ package io.continual.http.service.framework.routing.playish;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 
 import org.slf4j.LoggerFactory;
 
 import io.continual.http.service.framework.context.CHttpRequestContext;
-import io.continual.resources.ResourceLoader;
-import io.continual.util.data.StreamTools;
+import io.continual.http.util.StaticFileSender;
 import io.continual.util.standards.HttpStatusCodes;
 import io.continual.util.standards.MimeTypes;
 
@@ -95,36 +93,14 @@ public class StaticDirHandler implements CHttpPlayishRouteHandler
 			fDir + File.separator + relPath;
 
 		log.info ( "finding stream [" + newPath + "]" );
-		final InputStream is = new ResourceLoader()
-			.usingStandardSources ( true, this.getClass () )
-			.named ( newPath )
-			.load ()
-		;
-
-		log.info ( "Path [" + path + "] ==> [" + ( is == null ? "<not found>" : newPath ) + "]." );
-		if ( is == null )
+		final String contentType = mapToContentType ( newPath );
+		final boolean found = StaticFileSender.getDefault ().sendResource ( context, newPath, contentType, fCacheMaxAge, this.getClass () );
+
+		log.info ( "Path [" + path + "] ==> [" + ( found ? newPath : "<not found>" ) + "]." );
+		if ( !found )
 		{
 			context.response ().sendError ( HttpStatusCodes.k404_notFound, path + " was not found on this server." );
 		}
-		else
-		{
-			final String contentType = mapToContentType ( newPath );
-
-			// cache expiration
-			if ( fCacheMaxAge > 0 )
-			{
-				context.response().writeHeader ( "Cache-Control", "max-age=" + fCacheMaxAge, true );
-			}
-			
-			try
-			{
-				StreamTools.copyStream ( is, context.response ().getStreamForBinaryResponse ( contentType ) );
-			}
-			finally
-			{
-				is.close ();
-			}
-		}
 	}
 
 	private final String fRoutedPath;
@@ -18,14 +18,12 @@
 package io.continual.http.service.framework.routing.playish;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
 
 import org.slf4j.LoggerFactory;
 
 import io.continual.http.service.framework.context.CHttpRequestContext;
-import io.continual.resources.ResourceLoader;
-import io.continual.util.data.StreamTools;
+import io.continual.http.util.StaticFileSender;
 import io.continual.util.standards.HttpStatusCodes;
 
 public class StaticFileHandler implements CHttpPlayishRouteHandler
@@ -51,34 +49,12 @@ public class StaticFileHandler implements CHttpPlayishRouteHandler
 	@Override
 	public void handle ( CHttpRequestContext context, List<String> args ) throws IOException
 	{
-		// cache expiration
-		if ( fCacheMaxAge > 0 )
-		{
-			context.response().writeHeader ( "Cache-Control", "max-age=" + fCacheMaxAge, true );
-		}
-
 		log.info ( "finding stream [" + fFile + "]" );
-		final InputStream is = new ResourceLoader()
-			.usingStandardSources ( true, this.getClass () )
-			.named ( fFile )
-			.load ()
-		;
-		if ( is == null )
+		if ( !StaticFileSender.getDefault ().sendResource ( context, fFile, fContentType, fCacheMaxAge, this.getClass () ) )
 		{
 			log.warn ( "404 [" + fFile + "] not found" );
 			context.response ().sendError ( HttpStatusCodes.k404_notFound, fFile + " was not found on this server." );
 		}
-		else
-		{
-			try
-			{
-				StreamTools.copyStream ( is, context.response ().getStreamForBinaryResponse ( fContentType ) );
-			}
-			finally
-			{
-				is.close ();
-			}
-		}
 	}
 
 	@Override
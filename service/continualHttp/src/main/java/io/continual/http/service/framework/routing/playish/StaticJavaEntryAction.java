@@ -34,6 +34,7 @@ public class StaticJavaEntryAction implements CHttpPlayishRouteHandler
 		fAction = action;
 		fArgs = args;
 		fMethod = null;
+		fInvoker = null;
 
 		processAction ( packages );
 	}
@@ -47,14 +48,7 @@ public class StaticJavaEntryAction implements CHttpPlayishRouteHandler
 	@Override
 	public void handle ( CHttpRequestContext context, List<String> addlArgs ) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException
 	{
-		final Object[] methodArgs = new Object[addlArgs.size ()+1];
-		methodArgs[0] = context;
-		int i=1;
-		for ( String arg : addlArgs )
-		{
-			methodArgs[i++] = arg; 
-		}
-		fMethod.invoke ( null, methodArgs );
+		fInvoker.invoke ( context, addlArgs );
 	}
 
 	@Override
@@ -66,6 +60,7 @@ public class StaticJavaEntryAction implements CHttpPlayishRouteHandler
 	private String fAction;
 	private final List<String> fArgs;
 	private Method fMethod;
+	private EntryMethodInvoker fInvoker;
 
 	private void processAction ( Collection<String> packages )
 	{
@@ -94,6 +89,7 @@ public class StaticJavaEntryAction implements CHttpPlayishRouteHandler
 			{
 				throw new IllegalArgumentException ( methodName + " is not static." );
 			}
+			fInvoker = new EntryMethodInvoker ( fMethod, null );
 		}
 		catch ( ClassNotFoundException | SecurityException | NoSuchMethodException e )
 		{
@@ -18,10 +18,7 @@
 package io.continual.http.service.framework.routing.staticPaths;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
 
@@ -32,7 +29,7 @@ import io.continual.http.service.framework.routing.CHttpRouteInvocation;
 import io.continual.http.service.framework.routing.CHttpRouteSource;
 import io.continual.http.service.framework.routing.playish.StaticDirHandler;
 import io.continual.http.service.framework.routing.playish.StaticFileHandler;
-import io.continual.util.data.StreamTools;
+import io.continual.http.util.StaticFileSender;
 import io.continual.util.naming.Name;
 import io.continual.util.naming.Path;
 import io.continual.util.standards.HttpMethods;
@@ -94,24 +91,16 @@ public class CHttpStaticPathRouter implements CHttpRouteSource
 					return;
 				}
 
-				// expiry. currently global.
-				if ( fCacheMaxAge > 0 )
-				{
-					context.response ().writeHeader ( "Cache-Control", "max-age=" + fCacheMaxAge, true );
-				}
-
 				final String contentType = StaticDirHandler.mapToContentType ( in.getName () );
 
 				try
 				{
-					final FileInputStream is = new FileInputStream ( in );
-					final OutputStream os = context.response ().getStreamForBinaryResponse ( contentType );
-					StreamTools.copyStream ( is, os );
-				}
-				catch ( FileNotFoundException e )
-				{
-					log.warn ( "404 [" + path + "]==>[" + path + "] (" + in.getAbsolutePath () + ")" );
-					context.response ().sendError ( 404, path + " was not found on this server." );
+					// expiry is currently global
+					if ( !StaticFileSender.getDefault ().sendFile ( context, in, contentType, fCacheMaxAge ) )
+					{
+						log.warn ( "404 [" + path + "]==>[" + path + "] (" + in.getAbsolutePath () + ")" );
+						context.response ().sendError ( 404, path + " was not found on this server." );
+					}
 				}
 				catch ( IOException e )
 				{
@@ -0,0 +1,214 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.http.service.framework.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.continual.metrics.MetricsCatalog;
+import io.continual.util.naming.Name;
+import io.continual.util.naming.Path;
+
+/**
+ * A lightweight per-request trace. Code along the request's path opens named spans, and the
+ * time spent in each span name is totaled for the request. When the request ends, the totals
+ * are recorded into per-route histograms so that slow requests can be attributed to routing,
+ * authentication, access checks, the handler, or writing the response.<br>
+ * <br>
+ * The trace for a request is bound to the thread handling it. Code that doesn't have the request
+ * context can use the static span() call, which does nothing when no trace is active.
+ */
+public class CHttpTrace
+{
+	public static final String kSpan_PreRoute = "preRoute";
+	public static final String kSpan_RouteLookup = "routeLookup";
+	public static final String kSpan_Authentication = "authentication";
+	public static final String kSpan_AccessCheck = "accessCheck";
+	public static final String kSpan_Handler = "handler";
+	public static final String kSpan_ResponseWrite = "responseWrite";
+
+	/**
+	 * A span of time within the trace. Close it to end the span.
+	 */
+	public interface Span extends AutoCloseable
+	{
+		@Override
+		void close ();	// no exception
+	}
+
+	/**
+	 * Start a trace and bind it to the current thread
+	 * @param traceId
+	 * @return a new trace
+	 */
+	public static CHttpTrace begin ( String traceId )
+	{
+		final CHttpTrace t = new CHttpTrace ( traceId );
+		sfCurrent.set ( t );
+		return t;
+	}
+
+	/**
+	 * Get the trace bound to the current thread
+	 * @return a trace, or null
+	 */
+	public static CHttpTrace current ()
+	{
+		return sfCurrent.get ();
+	}
+
+	/**
+	 * Start a span on the current thread's trace, if any
+	 * @param name
+	 * @return a span, which is a no-op if no trace is active
+	 */
+	public static Span span ( String name )
+	{
+		final CHttpTrace t = sfCurrent.get ();
+		return t == null ? kNoopSpan : t.startSpan ( name );
+	}
+
+	/**
+	 * Get this trace's ID
+	 * @return the trace ID
+	 */
+	public String getTraceId ()
+	{
+		return fTraceId;
+	}
+
+	/**
+	 * Start a span in this trace
+	 * @param name
+	 * @return a span
+	 */
+	public Span startSpan ( final String name )
+	{
+		final long startNs = System.nanoTime ();
+		return new Span ()
+		{
+			@Override
+			public void close ()
+			{
+				if ( !fClosed )
+				{
+					fClosed = true;
+					addTime ( name, System.nanoTime () - startNs );
+				}
+			}
+			private boolean fClosed = false;
+		};
+	}
+
+	/**
+	 * Add time to a span name directly
+	 * @param name
+	 * @param nanos
+	 */
+	public synchronized void addTime ( String name, long nanos )
+	{
+		fSpans.merge ( name, nanos, Long::sum );
+	}
+
+	/**
+	 * Get the total time spent in each span name, in the order the spans were first closed
+	 * @return a map of span name to nanoseconds
+	 */
+	public synchronized Map<String,Long> getSpanTimesNanos ()
+	{
+		return new LinkedHashMap<> ( fSpans );
+	}
+
+	/**
+	 * Get the time since this trace started
+	 * @return nanoseconds
+	 */
+	public long getElapsedNanos ()
+	{
+		return System.nanoTime () - fStartNs;
+	}
+
+	/**
+	 * Record this trace into histograms under the given route name. Each span name gets a
+	 * histogram at route/spans/name, and the whole request gets one at route/latency. Values
+	 * are in microseconds.
+	 * @param metrics
+	 * @param routeName
+	 */
+	public void record ( MetricsCatalog metrics, Path routeName )
+	{
+		metrics
+			.histogram ( routeName.makeChildItem ( kLatencyName ) )
+			.update ( getElapsedNanos () / 1000L )
+		;
+
+		final Path spansPath = routeName.makeChildItem ( kSpansName );
+		for ( Map.Entry<String,Long> e : getSpanTimesNanos ().entrySet () )
+		{
+			metrics
+				.histogram ( spansPath.makeChildItem ( Name.fromString ( e.getKey () ) ) )
+				.update ( e.getValue () / 1000L )
+			;
+		}
+	}
+
+	/**
+	 * End this trace, unbinding it from the current thread
+	 */
+	public void end ()
+	{
+		if ( sfCurrent.get () == this )
+		{
+			sfCurrent.remove ();
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		final StringBuilder sb = new StringBuilder ()
+			.append ( "trace " ).append ( fTraceId )
+			.append ( " " ).append ( getElapsedNanos () / 1000L ).append ( " us" )
+		;
+		for ( Map.Entry<String,Long> e : getSpanTimesNanos ().entrySet () )
+		{
+			sb.append ( "; " ).append ( e.getKey () ).append ( " " ).append ( e.getValue () / 1000L ).append ( " us" );
+		}
+		return sb.toString ();
+	}
+
+	private CHttpTrace ( String traceId )
+	{
+		fTraceId = traceId;
+		fStartNs = System.nanoTime ();
+		fSpans = new LinkedHashMap<> ();
+	}
+
+	private final String fTraceId;
+	private final long fStartNs;
+	private final LinkedHashMap<String,Long> fSpans;
+
+	private static final Name kLatencyName = Name.fromString ( "latency" );
+	private static final Name kSpansName = Name.fromString ( "spans" );
+
+	private static final Span kNoopSpan = new Span ()
+	{
+		@Override
+		public void close () {}
+	};
+
+	private static final ThreadLocal<CHttpTrace> sfCurrent = new ThreadLocal<> ();
+}
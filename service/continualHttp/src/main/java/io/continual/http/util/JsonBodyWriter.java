@@ -17,17 +17,19 @@
 package io.continual.http.util;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.tracing.CHttpTrace;
 import io.continual.util.standards.HttpStatusCodes;
 import io.continual.util.standards.MimeTypes;
 
 /**
- * Write JSON objects to a response.
+ * Write JSON objects to a response. Documents are written to the response stream as they're
+ * rendered rather than built as a string first.
  */
 public class JsonBodyWriter
 {
@@ -41,10 +43,57 @@ public class JsonBodyWriter
 	 */
 	public static void writeObjectList ( CHttpRequestContext context, List<JSONObject> objects ) throws IOException
 	{
-		final JSONArray out = new JSONArray ( objects );
-		context.response ().
-			setStatus ( HttpStatusCodes.k200_ok ).
-			setContentType ( MimeTypes.kAppJson ).
-			send ( out.toString () + "\n" );
+		try (
+			CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_ResponseWrite );
+			JsonStreamWriter w = startStream ( context, HttpStatusCodes.k200_ok )
+		)
+		{
+			w.array ();
+			for ( JSONObject o : objects )
+			{
+				w.value ( o );
+			}
+			w.endArray ();
+		}
+	}
+
+	/**
+	 * Write a JSON object to the response stream in the given context with the given status code.
+	 * 
+	 * @param context
+	 * @param statusCode
+	 * @param object
+	 * @param indent the number of spaces to indent each level, or 0 for dense output
+	 * @throws IOException
+	 */
+	public static void writeObject ( CHttpRequestContext context, int statusCode, JSONObject object, int indent ) throws IOException
+	{
+		try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_ResponseWrite ) )
+		{
+			final PrintWriter pw = context.response ()
+				.setStatus ( statusCode )
+				.getStreamForTextResponse ( MimeTypes.kAppJson )
+			;
+			object.write ( pw, indent, 0 );
+			pw.println ();
+			pw.close ();
+		}
+	}
+
+	/**
+	 * Start a JSON response with the given status code. The caller builds the document on the returned
+	 * writer and closes it to complete the response.
+	 * 
+	 * @param context
+	 * @param statusCode
+	 * @return a JSON stream writer
+	 * @throws IOException
+	 */
+	public static JsonStreamWriter startStream ( CHttpRequestContext context, int statusCode ) throws IOException
+	{
+		return new JsonStreamWriter ( context.response ()
+			.setStatus ( statusCode )
+			.getStreamForTextResponse ( MimeTypes.kAppJson )
+		);
 	}
 }
@@ -0,0 +1,52 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.json.JSONWriter;
+
+/**
+ * A JSON writer over a response stream. The document is written as it's built, so a large listing
+ * never exists as a single string or JSON object. Each value passed to value() is rendered on its own.
+ */
+public class JsonStreamWriter extends JSONWriter implements Closeable
+{
+	/**
+	 * Construct a JSON stream writer over the given writer
+	 * @param w
+	 */
+	public JsonStreamWriter ( Writer w )
+	{
+		super ( w );
+		fWriter = w;
+	}
+
+	/**
+	 * End the document with a newline and close the underlying writer.
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		fWriter.write ( '\n' );
+		fWriter.close ();
+	}
+
+	private final Writer fWriter;
+}
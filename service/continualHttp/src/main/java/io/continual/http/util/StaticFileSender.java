@@ -0,0 +1,513 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.context.CHttpResponse;
+import io.continual.resources.ResourceLoader;
+import io.continual.util.data.StreamTools;
+import io.continual.util.standards.HttpHeaders;
+import io.continual.util.standards.HttpStatusCodes;
+
+/**
+ * Sends static files with conditional GET (ETag, Last-Modified), single byte range requests,
+ * and precompressed ".br" and ".gz" siblings when the client accepts them. Small files are held
+ * in a size-bounded LRU cache and revalidated against the file's length and modification time;
+ * larger files are handed to CHttpResponse.sendFile.
+ */
+public class StaticFileSender
+{
+	public static final long kDefault_CacheMaxBytes = 32L * 1024L * 1024L;
+	public static final int kDefault_CacheMaxEntryBytes = 256 * 1024;
+
+	/**
+	 * Get the sender shared by the built-in static file handlers
+	 * @return a static file sender
+	 */
+	public static StaticFileSender getDefault ()
+	{
+		return sfDefault;
+	}
+
+	/**
+	 * Construct a static file sender
+	 * @param cacheMaxBytes the total size of cached file data
+	 * @param cacheMaxEntryBytes the largest file that's cached
+	 */
+	public StaticFileSender ( long cacheMaxBytes, int cacheMaxEntryBytes )
+	{
+		fCacheMaxBytes = cacheMaxBytes;
+		fCacheMaxEntryBytes = cacheMaxEntryBytes;
+		fCache = new LinkedHashMap<> ( 64, 0.75f, true );
+		fCachedBytes = 0L;
+	}
+
+	/**
+	 * Send a file. If the file doesn't exist, nothing is sent.
+	 *
+	 * @param context
+	 * @param f
+	 * @param contentType
+	 * @param cacheMaxAge the Cache-Control max-age in seconds, or 0 or less for none
+	 * @return true if the file was found
+	 * @throws IOException
+	 */
+	public boolean sendFile ( CHttpRequestContext context, File f, String contentType, int cacheMaxAge ) throws IOException
+	{
+		if ( !f.isFile () ) return false;
+
+		respond ( context, selectFile ( context.request (), f ), contentType, cacheMaxAge );
+		return true;
+	}
+
+	/**
+	 * Send a named resource. Names that are local files are sent as files. Otherwise the resource is
+	 * loaded with the standard resource sources; small resources are cached for a short time and
+	 * tagged with a hash of their content. If the resource doesn't exist, nothing is sent.
+	 *
+	 * @param context
+	 * @param name
+	 * @param contentType
+	 * @param cacheMaxAge the Cache-Control max-age in seconds, or 0 or less for none
+	 * @param refClass the class used to find classpath resources
+	 * @return true if the resource was found
+	 * @throws IOException
+	 */
+	public boolean sendResource ( CHttpRequestContext context, String name, String contentType, int cacheMaxAge, Class<?> refClass ) throws IOException
+	{
+		final File f = new File ( name );
+		if ( f.isFile () )
+		{
+			return sendFile ( context, f, contentType, cacheMaxAge );
+		}
+
+		final String key = "resource:" + name;
+		CachedBytes cached = getCached ( key );
+		if ( cached != null && System.currentTimeMillis () - cached.fLoadedAtMs > kResourceRecheckMs )
+		{
+			cached = null;
+		}
+
+		if ( cached == null )
+		{
+			final InputStream is = new ResourceLoader ()
+				.usingStandardSources ( true, refClass )
+				.named ( name )
+				.load ()
+			;
+			if ( is == null ) return false;
+
+			try
+			{
+				final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+				final byte[] buffer = new byte [ 8192 ];
+				int read;
+				while ( ( read = is.read ( buffer ) ) > -1 )
+				{
+					baos.write ( buffer, 0, read );
+					if ( baos.size () > fCacheMaxEntryBytes )
+					{
+						// too large to hold; send what we have and stream the rest
+						sendUncachedStream ( context, baos, is, contentType, cacheMaxAge );
+						return true;
+					}
+				}
+
+				final byte[] data = baos.toByteArray ();
+				final CRC32 crc = new CRC32 ();
+				crc.update ( data, 0, data.length );
+				cached = new CachedBytes ( data, -1L, "\"" + Long.toHexString ( data.length ) + "-" + Long.toHexString ( crc.getValue () ) + "\"" );
+				putCached ( key, cached );
+			}
+			finally
+			{
+				is.close ();
+			}
+		}
+
+		final Representation rep = new Representation ();
+		rep.fData = cached.fData;
+		rep.fLength = cached.fData.length;
+		rep.fLastModified = -1L;
+		rep.fETag = cached.fETag;
+		respond ( context, rep, contentType, cacheMaxAge );
+		return true;
+	}
+
+	private final long fCacheMaxBytes;
+	private final int fCacheMaxEntryBytes;
+	private final LinkedHashMap<String,CachedBytes> fCache;
+	private long fCachedBytes;
+
+	private static final long kResourceRecheckMs = 60 * 1000L;
+	private static final int kMaxReadAttempts = 3;
+	private static final DateTimeFormatter kHttpDate = DateTimeFormatter.ofPattern ( "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US ).withZone ( ZoneOffset.UTC );
+	private static final long[] kUnsatisfiable = new long[0];
+
+	private static final StaticFileSender sfDefault = new StaticFileSender ( kDefault_CacheMaxBytes, kDefault_CacheMaxEntryBytes );
+
+	private static class CachedBytes
+	{
+		public CachedBytes ( byte[] data, long lastModified, String etag )
+		{
+			fData = data;
+			fLastModified = lastModified;
+			fETag = etag;
+			fLoadedAtMs = System.currentTimeMillis ();
+		}
+
+		final byte[] fData;
+		final long fLastModified;
+		final String fETag;
+		final long fLoadedAtMs;
+	}
+
+	private static class Representation
+	{
+		File fFile;
+		byte[] fData;
+		long fLength;
+		long fLastModified;
+		String fETag;
+		String fEncoding;
+		boolean fVaries;
+	}
+
+	/**
+	 * Pick the file to send for the request, preferring a current precompressed sibling that the client accepts
+	 * @param req
+	 * @param f
+	 * @return a representation of the file
+	 * @throws IOException
+	 */
+	private Representation selectFile ( CHttpRequest req, File f ) throws IOException
+	{
+		final long baseModified = f.lastModified ();
+		final File br = new File ( f.getPath () + ".br" );
+		final File gz = new File ( f.getPath () + ".gz" );
+		final boolean haveBr = br.isFile () && br.lastModified () >= baseModified;
+		final boolean haveGz = gz.isFile () && gz.lastModified () >= baseModified;
+
+		final Representation rep = new Representation ();
+		rep.fVaries = haveBr || haveGz;
+		rep.fFile = f;
+		rep.fEncoding = null;
+		if ( rep.fVaries )
+		{
+			if ( haveBr && req.acceptsEncoding ( "br" ) )
+			{
+				rep.fFile = br;
+				rep.fEncoding = "br";
+			}
+			else if ( haveGz && req.acceptsEncoding ( "gzip" ) )
+			{
+				rep.fFile = gz;
+				rep.fEncoding = "gzip";
+			}
+		}
+
+		rep.fLength = rep.fFile.length ();
+		rep.fLastModified = rep.fFile.lastModified ();
+		if ( rep.fLength <= fCacheMaxEntryBytes )
+		{
+			rep.fData = getFileBytes ( rep );
+		}
+
+		// a file that wouldn't hold still gets no validators, since the bytes read may not match any version of it
+		rep.fETag = rep.fLastModified <= 0 ? null : "\"" + Long.toHexString ( rep.fLength ) + "-" + Long.toHexString ( rep.fLastModified ) +
+			( rep.fEncoding == null ? "" : "-" + rep.fEncoding ) + "\"";
+		return rep;
+	}
+
+	/**
+	 * Get the bytes of a small file, from the cache if they're current. If the file changes while it's
+	 * read, the representation's length and modification time are updated to match what's sent.
+	 * @param rep
+	 * @return the file's bytes, or null if the file has grown too large to hold
+	 * @throws IOException
+	 */
+	private byte[] getFileBytes ( Representation rep ) throws IOException
+	{
+		final String key = rep.fFile.getAbsolutePath ();
+		for ( int attempt=1; ; attempt++ )
+		{
+			final CachedBytes cached = getCached ( key );
+			if ( cached != null && cached.fData.length == rep.fLength && cached.fLastModified == rep.fLastModified )
+			{
+				return cached.fData;
+			}
+
+			final byte[] data = readFile ( rep.fFile );
+			final long length = rep.fFile.length ();
+			final long lastModified = rep.fFile.lastModified ();
+			if ( data.length == rep.fLength && length == rep.fLength && lastModified == rep.fLastModified )
+			{
+				putCached ( key, new CachedBytes ( data, lastModified, null ) );
+				return data;
+			}
+
+			// the file changed while we read it
+			if ( attempt >= kMaxReadAttempts )
+			{
+				rep.fLength = data.length;
+				rep.fLastModified = -1L;
+				return data;
+			}
+			rep.fLength = length;
+			rep.fLastModified = lastModified;
+			if ( length > fCacheMaxEntryBytes ) return null;
+		}
+	}
+
+	// package access for tests
+	byte[] readFile ( File f ) throws IOException
+	{
+		return Files.readAllBytes ( f.toPath () );
+	}
+
+	private synchronized CachedBytes getCached ( String key )
+	{
+		return fCache.get ( key );
+	}
+
+	private synchronized void putCached ( String key, CachedBytes entry )
+	{
+		final CachedBytes prev = fCache.put ( key, entry );
+		if ( prev != null ) fCachedBytes -= prev.fData.length;
+		fCachedBytes += entry.fData.length;
+
+		final Iterator<Map.Entry<String,CachedBytes>> it = fCache.entrySet ().iterator ();
+		while ( fCachedBytes > fCacheMaxBytes && it.hasNext () )
+		{
+			final Map.Entry<String,CachedBytes> e = it.next ();
+			fCachedBytes -= e.getValue ().fData.length;
+			it.remove ();
+		}
+	}
+
+	private void respond ( CHttpRequestContext context, Representation rep, String contentType, int cacheMaxAge ) throws IOException
+	{
+		final CHttpRequest req = context.request ();
+		final CHttpResponse resp = context.response ();
+
+		if ( cacheMaxAge > 0 )
+		{
+			resp.writeHeader ( "Cache-Control", "max-age=" + cacheMaxAge, true );
+		}
+		if ( rep.fETag != null )
+		{
+			resp.writeHeader ( HttpHeaders.ETAG, rep.fETag, true );
+		}
+		if ( rep.fLastModified > 0 )
+		{
+			resp.writeHeader ( "Last-Modified", kHttpDate.format ( Instant.ofEpochMilli ( rep.fLastModified ) ), true );
+		}
+		if ( rep.fVaries )
+		{
+			resp.writeHeader ( "Vary", "Accept-Encoding", true );
+		}
+		resp.writeHeader ( "Accept-Ranges", "bytes", true );
+
+		if ( isNotModified ( req, rep ) )
+		{
+			resp.setStatus ( HttpStatusCodes.k304_notModified );
+			return;
+		}
+
+		if ( rep.fEncoding != null )
+		{
+			resp.writeHeader ( "Content-Encoding", rep.fEncoding, true );
+		}
+
+		long start = 0;
+		long count = rep.fLength;
+
+		final String rangeHeader = req.getFirstHeader ( "Range" );
+		final long[] range = rangeHeader != null && ifRangeMatches ( req, rep ) ? parseRange ( rangeHeader, rep.fLength ) : null;
+		if ( range == kUnsatisfiable )
+		{
+			resp.writeHeader ( "Content-Range", "bytes */" + rep.fLength, true );
+			resp.setStatus ( HttpStatusCodes.k416_requestedRangeNotSatisfiable );
+			return;
+		}
+		else if ( range != null )
+		{
+			start = range[0];
+			count = range[1] - range[0] + 1;
+			resp.writeHeader ( "Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + rep.fLength, true );
+			resp.setStatus ( HttpStatusCodes.k206_partialContent );
+		}
+		else
+		{
+			resp.setStatus ( HttpStatusCodes.k200_ok );
+		}
+
+		resp.setContentLength ( count );
+		if ( rep.fData != null )
+		{
+			final OutputStream os = resp.getStreamForBinaryResponse ( contentType );
+			os.write ( rep.fData, (int) start, (int) count );
+			os.flush ();
+		}
+		else
+		{
+			resp.sendFile ( rep.fFile, start, count, contentType );
+		}
+	}
+
+	private void sendUncachedStream ( CHttpRequestContext context, ByteArrayOutputStream head, InputStream rest, String contentType, int cacheMaxAge ) throws IOException
+	{
+		final CHttpResponse resp = context.response ();
+		if ( cacheMaxAge > 0 )
+		{
+			resp.writeHeader ( "Cache-Control", "max-age=" + cacheMaxAge, true );
+		}
+		resp.setStatus ( HttpStatusCodes.k200_ok );
+
+		final OutputStream os = resp.getStreamForBinaryResponse ( contentType );
+		head.writeTo ( os );
+		StreamTools.copyStream ( rest, os );
+	}
+
+	private static boolean isNotModified ( CHttpRequest req, Representation rep )
+	{
+		// If-None-Match takes precedence over If-Modified-Since
+		final String ifNoneMatch = req.getFirstHeader ( HttpHeaders.IF_NONE_MATCH );
+		if ( ifNoneMatch != null )
+		{
+			return rep.fETag != null && etagListMatches ( ifNoneMatch, rep.fETag );
+		}
+
+		final String ifModifiedSince = req.getFirstHeader ( "If-Modified-Since" );
+		if ( ifModifiedSince != null && rep.fLastModified > 0 )
+		{
+			final long since = parseHttpDateSeconds ( ifModifiedSince );
+			return since >= 0 && rep.fLastModified / 1000L <= since;
+		}
+		return false;
+	}
+
+	private static boolean ifRangeMatches ( CHttpRequest req, Representation rep )
+	{
+		final String ifRange = req.getFirstHeader ( "If-Range" );
+		if ( ifRange == null ) return true;
+
+		final String val = ifRange.trim ();
+		if ( val.startsWith ( "\"" ) )
+		{
+			return rep.fETag != null && val.equals ( rep.fETag );
+		}
+		if ( val.startsWith ( "W/" ) )
+		{
+			// weak tags never match for ranges
+			return false;
+		}
+		final long date = parseHttpDateSeconds ( val );
+		return rep.fLastModified > 0 && date >= 0 && rep.fLastModified / 1000L == date;
+	}
+
+	static boolean etagListMatches ( String headerVal, String etag )
+	{
+		for ( String tag : headerVal.split ( "," ) )
+		{
+			String t = tag.trim ();
+			if ( t.equals ( "*" ) ) return true;
+			if ( t.startsWith ( "W/" ) ) t = t.substring ( 2 );
+			if ( t.equals ( etag ) ) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Parse a single byte range.
+	 * @param header the Range header value
+	 * @param length the entity length
+	 * @return {first, last}, kUnsatisfiable, or null to ignore the header and send the whole entity
+	 */
+	static long[] parseRange ( String header, long length )
+	{
+		final String h = header.trim ();
+		if ( !h.regionMatches ( true, 0, "bytes=", 0, 6 ) ) return null;
+
+		final String spec = h.substring ( 6 ).trim ();
+		if ( spec.contains ( "," ) ) return null;	// multiple ranges; we just send the whole thing
+
+		final int dash = spec.indexOf ( '-' );
+		if ( dash < 0 ) return null;
+
+		try
+		{
+			final String firstPart = spec.substring ( 0, dash ).trim ();
+			final String lastPart = spec.substring ( dash + 1 ).trim ();
+			if ( firstPart.length () == 0 )
+			{
+				// suffix range, the last n bytes
+				final long n = Long.parseLong ( lastPart );
+				if ( n <= 0 || length == 0 ) return kUnsatisfiable;
+				return new long[] { Math.max ( 0, length - n ), length - 1 };
+			}
+
+			final long first = Long.parseLong ( firstPart );
+			if ( first < 0 ) return null;
+			if ( first >= length ) return kUnsatisfiable;
+
+			final long last = lastPart.length () == 0 ? length - 1 : Long.parseLong ( lastPart );
+			if ( last < first ) return null;
+			return new long[] { first, Math.min ( last, length - 1 ) };
+		}
+		catch ( NumberFormatException e )
+		{
+			return null;
+		}
+	}
+
+	private static long parseHttpDateSeconds ( String val )
+	{
+		try
+		{
+			return ZonedDateTime.parse ( val.trim (), DateTimeFormatter.RFC_1123_DATE_TIME ).toEpochSecond ();
+		}
+		catch ( DateTimeParseException e )
+		{
+			log.debug ( "Couldn't parse HTTP date [" + val + "]" );
+			return -1L;
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger ( StaticFileSender.class );
+}
@@ -17,9 +17,13 @@
 package io.continual.http.app.htmlForms.mime;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -60,6 +64,99 @@ public class CHttpMimePartsReaderTest extends TestCase
 		assertEquals ( "test", p1.getAsString () );
 	}
 
+	@Test
+	public void testLargeBinaryPartInSmallReads () throws IOException
+	{
+		final String boundary = "xyzzy-boundary";
+
+		// binary data that's full of line endings and near-misses on the boundary
+		final ByteArrayOutputStream body = new ByteArrayOutputStream ();
+		final Random r = new Random ( 1234 );
+		for ( int i=0; i<5000; i++ )
+		{
+			final byte[] chunk = new byte [ r.nextInt ( 100 ) ];
+			r.nextBytes ( chunk );
+			body.write ( chunk );
+			body.write ( ( "\r\n--xyzzy-boundar" + ( i % 3 == 0 ? "\r\n" : "x" ) ).getBytes () );
+		}
+		final byte[] data = body.toByteArray ();
+
+		final ByteArrayOutputStream input = new ByteArrayOutputStream ();
+		input.write ( ( "preamble\r\n--" + boundary + "\r\n" +
+			"Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n" +
+			"\r\n" ).getBytes () );
+		input.write ( data );
+		input.write ( ( "\r\n--" + boundary + "\r\n" +
+			"Content-Disposition: form-data; name=\"empty\"\r\n" +
+			"\r\n" +
+			"\r\n--" + boundary + "--\r\n" ).getBytes () );
+
+		final CHttpMimePartsReader reader = new CHttpMimePartsReader ( boundary, new byteStorage () );
+		reader.read ( new trickleStream ( new ByteArrayInputStream ( input.toByteArray () ) ) );
+
+		final List<CHttpMimePart> parts = reader.getParts ();
+		assertEquals ( 2, parts.size() );
+		assertTrue ( Arrays.equals ( data, ((bytePart) parts.get ( 0 )).fBytes.toByteArray () ) );
+		assertEquals ( 0, ((bytePart) parts.get ( 1 )).fBytes.size () );
+	}
+
+	@Test
+	public void testMissingFinalBoundary ()
+	{
+		final CHttpMimePartsReader reader = new CHttpMimePartsReader ( "abc", new testStorage () );
+		final String input = "--abc\r\n" +
+			"Content-Disposition: form-data; name=\"caption\"\r\n" +
+			"\r\n" + 
+			"test\r\n";
+		try
+		{
+			reader.read ( new ByteArrayInputStream ( input.getBytes () ) );
+			fail ( "expected an exception" );
+		}
+		catch ( IOException e )
+		{
+			// expected
+		}
+	}
+
+	/**
+	 * Returns a few bytes per read so that boundaries and line endings straddle buffer fills
+	 */
+	private static class trickleStream extends FilterInputStream
+	{
+		public trickleStream ( InputStream in ) { super ( in ); }
+
+		@Override
+		public int read ( byte[] b, int off, int len ) throws IOException
+		{
+			return super.read ( b, off, Math.min ( len, 1 + ( fCount++ % 7 ) ) );
+		}
+
+		private int fCount = 0;
+	}
+
+	private static class bytePart extends inMemoryFormDataPart
+	{
+		public bytePart ( String ct, String cd ) { super ( ct, cd ); }
+
+		@Override
+		public void write ( byte[] line, int offset, int length )
+		{
+			fBytes.write ( line, offset, length );
+		}
+
+		final ByteArrayOutputStream fBytes = new ByteArrayOutputStream ();
+	}
+
+	static class byteStorage implements CHttpMimePartFactory
+	{
+		@Override
+		public CHttpMimePart createPart ( MultiMap<String, String> partHeaders )
+		{
+			return new bytePart ( partHeaders.getFirst ( "content-type" ), partHeaders.getFirst ( "content-disposition" ) );
+		}
+	}
+
 	static class testStorage implements CHttpMimePartFactory
 	{
 		@Override
@@ -0,0 +1,318 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.inspection.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.context.CHttpResponse;
+import io.continual.http.service.framework.inspection.CHttpObserver;
+import io.continual.services.Service.FailedToStart;
+import io.continual.util.data.StreamTools;
+import junit.framework.TestCase;
+
+public class CHttpSamplingObserverTest extends TestCase
+{
+	@Test
+	public void testRulesSelectRate ()
+	{
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 0.5 )
+			.put ( "rules", new JSONArray ()
+				.put ( new JSONObject ().put ( "path", "/health" ).put ( "sampleRate", 0 ) )
+				.put ( new JSONObject ().put ( "method", "POST" ).put ( "path", "/model" ).put ( "sampleRate", 1.0 ) )
+			)
+		);
+
+		assertEquals ( 0.0, obs.getSampleRate ( "GET", "/health" ) );
+		assertEquals ( 1.0, obs.getSampleRate ( "POST", "/model/foo" ) );
+		assertEquals ( 0.5, obs.getSampleRate ( "GET", "/model/foo" ) );
+
+		// never sampled
+		final TestContext ctx = new TestContext ( "GET", "/health" );
+		obs.consider ( ctx );
+		assertNull ( ctx.installed () );
+	}
+
+	@Test
+	public void testCaptureIntoRing () throws IOException
+	{
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 1.0 )
+			.put ( "captureBodies", true )
+			.put ( "maxBodyBytes", 4 )
+			.put ( "bufferSize", 2 )
+		);
+
+		for ( int i=0; i<3; i++ )
+		{
+			runTrx ( obs, "/thing/" + i );
+		}
+
+		final List<JSONObject> samples = obs.getSamples ( 0, 10 );
+		assertEquals ( 2, samples.size () );
+		assertEquals ( 3L, samples.get ( 0 ).getLong ( "id" ) );
+		assertEquals ( 2L, samples.get ( 1 ).getLong ( "id" ) );
+
+		final JSONObject s = samples.get ( 0 );
+		assertEquals ( "POST", s.getString ( "method" ) );
+		assertEquals ( "(redacted)", s.getJSONObject ( "headers" ).getString ( "Authorization" ) );
+		assertEquals ( "text/plain", s.getJSONObject ( "headers" ).getString ( "Content-Type" ) );
+		assertEquals ( "requ", s.getString ( "requestBody" ) );
+		assertTrue ( s.getBoolean ( "requestBodyTruncated" ) );
+		assertEquals ( 7L, s.getLong ( "requestBodyLength" ) );
+		assertEquals ( "ok", s.getString ( "responseBody" ) );
+		assertEquals ( 200, s.getInt ( "status" ) );
+
+		assertEquals ( 1, obs.getSamples ( 2, 10 ).size () );
+
+		obs.clearSamples ();
+		assertEquals ( 0, obs.getSamples ( 0, 10 ).size () );
+		assertEquals ( 3L, obs.getStats ().getLong ( "sampled" ) );
+	}
+
+	@Test
+	public void testBodiesOffByDefault () throws IOException
+	{
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ().put ( "sampleRate", 1.0 ) );
+		runTrx ( obs, "/thing" );
+
+		final JSONObject s = obs.getSamples ( 0, 1 ).get ( 0 );
+		assertEquals ( "/thing", s.getString ( "url" ).substring ( "http://localhost".length () ) );
+		assertFalse ( s.has ( "requestBody" ) );
+		assertFalse ( s.has ( "responseBody" ) );
+		assertFalse ( obs.getStats ().getBoolean ( "captureBodies" ) );
+	}
+
+	@Test
+	public void testBodyAllowlists () throws IOException
+	{
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 1.0 )
+			.put ( "captureBodies", true )
+			.put ( "bodyContentTypes", new JSONArray ().put ( "application/json" ) )
+			.put ( "bodyPaths", new JSONArray ().put ( "/model" ) )
+		);
+
+		runTrx ( obs, "/model/x", "text/plain", "request", "application/json; charset=utf-8", "{\"ok\":true}" );
+		JSONObject s = obs.getSamples ( 0, 1 ).get ( 0 );
+		assertFalse ( s.has ( "requestBody" ) );
+		assertEquals ( "{\"ok\":true}", s.getString ( "responseBody" ) );
+
+		runTrx ( obs, "/other", "application/json", "{}", "application/json", "{}" );
+		s = obs.getSamples ( 0, 1 ).get ( 0 );
+		assertFalse ( s.has ( "requestBody" ) );
+		assertFalse ( s.has ( "responseBody" ) );
+	}
+
+	@Test
+	public void testRedactFields () throws IOException
+	{
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 1.0 )
+			.put ( "captureBodies", true )
+			.put ( "redactFields", new JSONArray ().put ( "password" ).put ( "token" ) )
+		);
+
+		runTrx ( obs, "/login", "application/json", "{\"user\":\"a\",\"password\":\"hunter2\",\"list\":[{\"Token\":{\"k\":1}}]}", "application/json", "{\"token\":42}" );
+		final JSONObject s = obs.getSamples ( 0, 1 ).get ( 0 );
+		final JSONObject req = new JSONObject ( s.getString ( "requestBody" ) );
+		assertEquals ( "a", req.getString ( "user" ) );
+		assertEquals ( "(redacted)", req.getString ( "password" ) );
+		assertEquals ( "(redacted)", req.getJSONArray ( "list" ).getJSONObject ( 0 ).getString ( "Token" ) );
+		assertEquals ( "(redacted)", new JSONObject ( s.getString ( "responseBody" ) ).getString ( "token" ) );
+
+		// cut off documents are redacted by pattern
+		assertEquals ( "{\"password\" : \"(redacted)\", \"n\": 1, \"token\":\"(redacted)\"", obs.redactFields ( "{\"password\" : \"hun\\\"ter2\", \"n\": 1, \"token\":123", true ) );
+		assertEquals ( "{\"a\":1,\"password\":\"(redacted)\"", obs.redactFields ( "{\"a\":1,\"password\":\"hunt", true ) );
+		assertEquals ( "{\"a\":1,", obs.redactFields ( "{\"a\":1,\"token\":{\"k\":\"v\"},\"b\":2", true ) );
+	}
+
+	@Test
+	public void testSpillKeepsRunningAfterFailure () throws IOException, FailedToStart, InterruptedException
+	{
+		final File dir = Files.createTempDirectory ( "samples" ).toFile ();
+		final File blocker = new File ( dir, "logs" );
+		assertTrue ( blocker.createNewFile () );
+		final File file = new File ( blocker, "samples.log" );
+
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 1.0 )
+			.put ( "spill", new JSONObject ()
+				.put ( "file", file.getAbsolutePath () )
+				.put ( "retryMs", 50 )
+			)
+		);
+		obs.start ();
+		try
+		{
+			// the log directory can't be created while a file is in its place
+			runTrx ( obs, "/lost" );
+			final long untilMs = System.currentTimeMillis () + 5000;
+			while ( obs.getStats ().getLong ( "spillDropped" ) == 0 && System.currentTimeMillis () < untilMs )
+			{
+				Thread.sleep ( 10 );
+			}
+			assertEquals ( 1L, obs.getStats ().getLong ( "spillDropped" ) );
+			assertTrue ( obs.getStats ().getBoolean ( "spillFailing" ) );
+			assertTrue ( obs.getStats ().getLong ( "spillErrors" ) >= 1 );
+
+			// once the directory can be created, spilling resumes
+			assertTrue ( blocker.delete () );
+			while ( obs.getStats ().getBoolean ( "spillFailing" ) && System.currentTimeMillis () < untilMs )
+			{
+				runTrx ( obs, "/retry" );
+				Thread.sleep ( 20 );
+			}
+			assertFalse ( obs.getStats ().getBoolean ( "spillFailing" ) );
+			runTrx ( obs, "/kept" );
+		}
+		finally
+		{
+			obs.requestFinish ();
+		}
+
+		final String current = new String ( Files.readAllBytes ( file.toPath () ), StandardCharsets.UTF_8 );
+		assertTrue ( current.contains ( "/kept" ) );
+		assertFalse ( current.contains ( "/lost" ) );
+	}
+
+	@Test
+	public void testSpillRotates () throws IOException, FailedToStart
+	{
+		final File dir = Files.createTempDirectory ( "samples" ).toFile ();
+		final File file = new File ( dir, "samples.log" );
+
+		final CHttpSamplingObserver obs = new CHttpSamplingObserver ( null, new JSONObject ()
+			.put ( "sampleRate", 1.0 )
+			.put ( "spill", new JSONObject ()
+				.put ( "file", file.getAbsolutePath () )
+				.put ( "maxFileBytes", 600 )
+				.put ( "maxFiles", 2 )
+			)
+		);
+		obs.start ();
+		for ( int i=0; i<5; i++ )
+		{
+			runTrx ( obs, "/spilled/" + i );
+		}
+		obs.requestFinish ();
+
+		assertTrue ( file.exists () );
+		assertTrue ( new File ( dir, "samples.log.1" ).exists () );
+		assertFalse ( new File ( dir, "samples.log.2" ).exists () );
+
+		final String current = new String ( Files.readAllBytes ( file.toPath () ), StandardCharsets.UTF_8 );
+		assertTrue ( current.contains ( "/spilled/4" ) );
+	}
+
+	private static void runTrx ( CHttpSamplingObserver obs, String path ) throws IOException
+	{
+		runTrx ( obs, path, "text/plain", "request", null, "ok" );
+	}
+
+	private static void runTrx ( CHttpSamplingObserver obs, String path, String requestType, String requestBody, String responseType, String responseBody ) throws IOException
+	{
+		final TestContext ctx = new TestContext ( "POST", path );
+		obs.consider ( ctx );
+
+		final CHttpObserver o = ctx.installed ();
+		assertNotNull ( o );
+
+		o
+			.method ( "POST" )
+			.onUrl ( "http://localhost" + path )
+			.withHeaders ( () -> {
+				final java.util.Map<String,List<String>> h = new java.util.TreeMap<> ();
+				h.put ( "Authorization", Collections.singletonList ( "secret" ) );
+				h.put ( "Content-Type", Arrays.asList ( requestType ) );
+				return h;
+			} )
+		;
+
+		try ( InputStream in = o.wrap ( new ByteArrayInputStream ( requestBody.getBytes ( StandardCharsets.UTF_8 ) ) ) )
+		{
+			StreamTools.readBytes ( in );
+		}
+
+		o.replyWith ( 200 );
+		if ( responseType != null )
+		{
+			o.replyHeader ( "ContentType", responseType );
+		}
+		final ByteArrayOutputStream sent = new ByteArrayOutputStream ();
+		try ( OutputStream out = o.wrap ( sent ) )
+		{
+			out.write ( responseBody.getBytes ( StandardCharsets.UTF_8 ) );
+		}
+		assertEquals ( responseBody, new String ( sent.toByteArray (), StandardCharsets.UTF_8 ) );
+
+		ctx.close ();
+	}
+
+	private static class TestContext extends CHttpRequestContext
+	{
+		public TestContext ( String method, String path )
+		{
+			super ( null, null );
+			fReq = (CHttpRequest) Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { CHttpRequest.class },
+				( proxy, m, args ) -> {
+					switch ( m.getName () )
+					{
+						case "getMethod": return method;
+						case "getPathInContext": return path;
+						default: return null;
+					}
+				}
+			);
+		}
+
+		@Override
+		public void install ( CHttpObserver i )
+		{
+			super.install ( i );
+			fInstalled = i;
+		}
+
+		public CHttpObserver installed () { return fInstalled; }
+
+		@Override
+		public CHttpRequest request () { return fReq; }
+
+		@Override
+		public CHttpResponse response () { return null; }
+
+		private final CHttpRequest fReq;
+		private CHttpObserver fInstalled;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.routing.playish;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import junit.framework.TestCase;
+
+public class InstanceEntryActionTest extends TestCase
+{
+	@Test
+	public void testArgsReachEndpoint () throws Exception
+	{
+		final Endpoint ep = new Endpoint ();
+
+		new InstanceEntryAction<Endpoint> ( ep, Endpoint.class.getName () + ".none", Collections.emptyList (), Collections.emptyList () )
+			.handle ( null, Collections.emptyList () );
+		new InstanceEntryAction<Endpoint> ( ep, Endpoint.class.getName () + ".one", Arrays.asList ( "a" ), Collections.emptyList () )
+			.handle ( null, Arrays.asList ( "1" ) );
+		new InstanceEntryAction<Endpoint> ( ep, Endpoint.class.getName () + ".four", Arrays.asList ( "a", "b", "c", "d" ), Collections.emptyList () )
+			.handle ( null, Arrays.asList ( "1", "2", "3", "4" ) );
+
+		assertEquals ( Arrays.asList ( "none", "one 1", "four 1234" ), ep.fCalls );
+	}
+
+	@Test
+	public void testStaticEntry () throws Exception
+	{
+		new StaticJavaEntryAction ( Endpoint.class.getName () + ".ping", Arrays.asList ( "a" ), Collections.emptyList () )
+			.handle ( null, Arrays.asList ( "x" ) );
+		assertEquals ( "x", Endpoint.sfLastPing );
+	}
+
+	@Test
+	public void testFailuresAreWrapped () throws Exception
+	{
+		final InstanceEntryAction<Endpoint> action = new InstanceEntryAction<Endpoint> ( new Endpoint (), Endpoint.class.getName () + ".fail",
+			Collections.emptyList (), Collections.emptyList () );
+		try
+		{
+			action.handle ( null, Collections.emptyList () );
+			fail ( "expected an exception" );
+		}
+		catch ( InvocationTargetException x )
+		{
+			assertTrue ( x.getTargetException () instanceof IllegalStateException );
+		}
+
+		try
+		{
+			action.handle ( null, Arrays.asList ( "extra" ) );
+			fail ( "expected an exception" );
+		}
+		catch ( IllegalArgumentException x )
+		{
+			// expected
+		}
+	}
+
+	public static class Endpoint
+	{
+		public void none ( CHttpRequestContext ctx ) { fCalls.add ( "none" ); }
+		public void one ( CHttpRequestContext ctx, String a ) { fCalls.add ( "one " + a ); }
+		public void four ( CHttpRequestContext ctx, String a, String b, String c, String d ) { fCalls.add ( "four " + a + b + c + d ); }
+		public void fail ( CHttpRequestContext ctx ) { throw new IllegalStateException ( "failed" ); }
+
+		public static void ping ( CHttpRequestContext ctx, String a ) { sfLastPing = a; }
+
+		final List<String> fCalls = new ArrayList<> ();
+		static String sfLastPing;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.tracing;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.continual.util.tracing.TraceContext;
+import junit.framework.TestCase;
+
+public class CHttpTraceTest extends TestCase
+{
+	@Test
+	public void testSpansOnCurrentTrace () throws InterruptedException
+	{
+		assertNull ( CHttpTrace.current () );
+
+		// no trace, no effect
+		try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_Handler ) ) {}
+
+		final CHttpTrace trace = CHttpTrace.begin ( "abc-123" );
+		try
+		{
+			assertSame ( trace, CHttpTrace.current () );
+
+			try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_Authentication ) )
+			{
+				Thread.sleep ( 2 );
+			}
+			try ( CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_Authentication ) )
+			{
+				Thread.sleep ( 2 );
+			}
+			trace.addTime ( CHttpTrace.kSpan_ResponseWrite, 5000L );
+
+			final Map<String,Long> spans = trace.getSpanTimesNanos ();
+			assertEquals ( 2, spans.size () );
+			assertTrue ( spans.get ( CHttpTrace.kSpan_Authentication ) >= 4 * 1000 * 1000L );
+			assertEquals ( 5000L, spans.get ( CHttpTrace.kSpan_ResponseWrite ).longValue () );
+			assertTrue ( trace.toString ().startsWith ( "trace abc-123 " ) );
+		}
+		finally
+		{
+			trace.end ();
+		}
+		assertNull ( CHttpTrace.current () );
+	}
+
+	@Test
+	public void testTraceIdValidation ()
+	{
+		assertTrue ( TraceContext.isValidTraceId ( TraceContext.newTraceId () ) );
+		assertEquals ( 32, TraceContext.newTraceId ().length () );
+		assertTrue ( TraceContext.isValidTraceId ( "req_1.2-a" ) );
+		assertFalse ( TraceContext.isValidTraceId ( null ) );
+		assertFalse ( TraceContext.isValidTraceId ( "" ) );
+		assertFalse ( TraceContext.isValidTraceId ( "bad id" ) );
+		assertFalse ( TraceContext.isValidTraceId ( "bad\r\nheader" ) );
+	}
+
+	@Test
+	public void testTraceContextScope ()
+	{
+		assertNull ( TraceContext.getTraceId () );
+		try ( TraceContext.Scope outer = TraceContext.withTraceId ( "outer" ) )
+		{
+			try ( TraceContext.Scope inner = TraceContext.withTraceId ( "inner" ) )
+			{
+				assertEquals ( "inner", TraceContext.getTraceId () );
+			}
+			assertEquals ( "outer", TraceContext.getTraceId () );
+		}
+		assertNull ( TraceContext.getTraceId () );
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.continual.builder.Builder.BuildFailure;
+import io.continual.http.app.htmlForms.MockRequest;
+import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.CHttpRequestContext;
+import io.continual.http.service.framework.context.CHttpResponse;
+import junit.framework.TestCase;
+
+public class StaticFileSenderTest extends TestCase
+{
+	@Test
+	public void testConditionalGet () throws IOException, BuildFailure
+	{
+		final File f = makeFile ( "body { color: red; }" );
+		final StaticFileSender sender = new StaticFileSender ( 1024 * 1024, 1024 );
+
+		final TestContext first = new TestContext ( new HashMap<> () );
+		assertTrue ( sender.sendFile ( first, f, "text/css", 60 ) );
+		assertEquals ( 200, first.fResponse.fStatus );
+		assertEquals ( "body { color: red; }", first.fResponse.fBody.toString () );
+		assertEquals ( "max-age=60", first.fResponse.fHeaders.get ( "Cache-Control" ) );
+
+		final String etag = first.fResponse.fHeaders.get ( "ETag" );
+		assertNotNull ( etag );
+
+		final HashMap<String,String> hdrs = new HashMap<> ();
+		hdrs.put ( "If-None-Match", "\"abc\", " + etag );
+		final TestContext second = new TestContext ( hdrs );
+		assertTrue ( sender.sendFile ( second, f, "text/css", 60 ) );
+		assertEquals ( 304, second.fResponse.fStatus );
+		assertEquals ( 0, second.fResponse.fBody.size () );
+
+		assertFalse ( sender.sendFile ( new TestContext ( new HashMap<> () ), new File ( f.getPath () + ".missing" ), "text/css", 60 ) );
+	}
+
+	@Test
+	public void testRanges () throws IOException, BuildFailure
+	{
+		final File f = makeFile ( "0123456789" );
+
+		// the second sender never caches, so it goes through sendFile
+		for ( StaticFileSender sender : new StaticFileSender[] { new StaticFileSender ( 1024, 1024 ), new StaticFileSender ( 0, 0 ) } )
+		{
+			final HashMap<String,String> hdrs = new HashMap<> ();
+			hdrs.put ( "Range", "bytes=2-4" );
+			final TestContext ctx = new TestContext ( hdrs );
+			sender.sendFile ( ctx, f, "text/plain", -1 );
+			assertEquals ( 206, ctx.fResponse.fStatus );
+			assertEquals ( "234", ctx.fResponse.fBody.toString () );
+			assertEquals ( "bytes 2-4/10", ctx.fResponse.fHeaders.get ( "Content-Range" ) );
+			assertEquals ( "3", ctx.fResponse.fHeaders.get ( "Content-Length" ) );
+
+			hdrs.put ( "Range", "bytes=-3" );
+			final TestContext suffix = new TestContext ( hdrs );
+			sender.sendFile ( suffix, f, "text/plain", -1 );
+			assertEquals ( "789", suffix.fResponse.fBody.toString () );
+
+			hdrs.put ( "Range", "bytes=20-" );
+			final TestContext bad = new TestContext ( hdrs );
+			sender.sendFile ( bad, f, "text/plain", -1 );
+			assertEquals ( 416, bad.fResponse.fStatus );
+
+			hdrs.put ( "Range", "bytes=2-4" );
+			hdrs.put ( "If-Range", "\"stale\"" );
+			final TestContext stale = new TestContext ( hdrs );
+			sender.sendFile ( stale, f, "text/plain", -1 );
+			assertEquals ( 200, stale.fResponse.fStatus );
+			assertEquals ( "0123456789", stale.fResponse.fBody.toString () );
+		}
+	}
+
+	@Test
+	public void testPrecompressedSibling () throws IOException, BuildFailure
+	{
+		final File f = makeFile ( "plain" );
+		final File gz = new File ( f.getPath () + ".gz" );
+		Files.write ( gz.toPath (), "zipped".getBytes () );
+		gz.deleteOnExit ();
+
+		final StaticFileSender sender = new StaticFileSender ( 1024, 1024 );
+
+		final HashMap<String,String> hdrs = new HashMap<> ();
+		hdrs.put ( "Accept-Encoding", "br;q=0, gzip" );
+		final TestContext ctx = new TestContext ( hdrs );
+		sender.sendFile ( ctx, f, "text/plain", -1 );
+		assertEquals ( "zipped", ctx.fResponse.fBody.toString () );
+		assertEquals ( "gzip", ctx.fResponse.fHeaders.get ( "Content-Encoding" ) );
+		assertEquals ( "Accept-Encoding", ctx.fResponse.fHeaders.get ( "Vary" ) );
+
+		final TestContext plain = new TestContext ( new HashMap<> () );
+		sender.sendFile ( plain, f, "text/plain", -1 );
+		assertEquals ( "plain", plain.fResponse.fBody.toString () );
+		assertNull ( plain.fResponse.fHeaders.get ( "Content-Encoding" ) );
+	}
+
+	@Test
+	public void testFileChangedWhileRead () throws IOException, BuildFailure
+	{
+		final File f = makeFile ( "short" );
+
+		// the file is rewritten, larger and newer, the first time it's read
+		final StaticFileSender sender = new StaticFileSender ( 1024, 1024 )
+		{
+			@Override
+			byte[] readFile ( File file ) throws IOException
+			{
+				if ( !fChanged )
+				{
+					fChanged = true;
+					Files.write ( file.toPath (), "a longer body".getBytes () );
+					file.setLastModified ( file.lastModified () + 5000L );
+				}
+				return super.readFile ( file );
+			}
+			private boolean fChanged = false;
+		};
+
+		final TestContext ctx = new TestContext ( new HashMap<> () );
+		sender.sendFile ( ctx, f, "text/plain", -1 );
+		assertEquals ( 200, ctx.fResponse.fStatus );
+		assertEquals ( "a longer body", ctx.fResponse.fBody.toString () );
+		assertEquals ( "13", ctx.fResponse.fHeaders.get ( "Content-Length" ) );
+		assertTrue ( ctx.fResponse.fHeaders.get ( "ETag" ).startsWith ( "\"d-" ) );
+	}
+
+	@Test
+	public void testFileThatKeepsChanging () throws IOException, BuildFailure
+	{
+		final File f = makeFile ( "x" );
+
+		// every read finds the file one byte longer
+		final StaticFileSender sender = new StaticFileSender ( 1024, 1024 )
+		{
+			@Override
+			byte[] readFile ( File file ) throws IOException
+			{
+				final byte[] data = super.readFile ( file );
+				Files.write ( file.toPath (), ( new String ( data ) + "x" ).getBytes () );
+				return data;
+			}
+		};
+
+		final TestContext ctx = new TestContext ( new HashMap<> () );
+		sender.sendFile ( ctx, f, "text/plain", -1 );
+		assertEquals ( 200, ctx.fResponse.fStatus );
+		assertEquals ( "" + ctx.fResponse.fBody.size (), ctx.fResponse.fHeaders.get ( "Content-Length" ) );
+		assertNull ( ctx.fResponse.fHeaders.get ( "ETag" ) );
+		assertNull ( ctx.fResponse.fHeaders.get ( "Last-Modified" ) );
+	}
+
+	private static File makeFile ( String content ) throws IOException
+	{
+		final File f = File.createTempFile ( "static", ".txt" );
+		f.deleteOnExit ();
+		Files.write ( f.toPath (), content.getBytes () );
+		return f;
+	}
+
+	private static class TestContext extends CHttpRequestContext
+	{
+		public TestContext ( Map<String,String> headers ) throws BuildFailure
+		{
+			super ( null, null );
+			fRequest = new MockRequest ( new HashMap<> () )
+			{
+				@Override
+				public String getFirstHeader ( String header )
+				{
+					return headers.get ( header );
+				}
+			};
+			fResponse = new TestResponse ();
+		}
+
+		@Override
+		public CHttpRequest request () { return fRequest; }
+
+		@Override
+		public CHttpResponse response () { return fResponse; }
+
+		private final CHttpRequest fRequest;
+		private final TestResponse fResponse;
+	}
+
+	private static class TestResponse implements CHttpResponse
+	{
+		@Override
+		public void sendError ( int err, String msg ) { fStatus = err; }
+
+		@Override
+		public void sendStatusAndMessage ( int status, String msg ) { fStatus = status; }
+
+		@Override
+		public CHttpResponse setStatus ( int code ) { fStatus = code; return this; }
+
+		@Override
+		public int getStatusCode () { return fStatus; }
+
+		@Override
+		public CHttpResponse setContentType ( String mimeType ) { return this; }
+
+		@Override
+		public CHttpResponse send ( String content ) throws IOException { fBody.write ( content.getBytes () ); return this; }
+
+		@Override
+		public void sendStatusAndBody ( int statusCode, String content, String mimeType ) { fStatus = statusCode; }
+
+		@Override
+		public PrintWriter getStreamForTextResponse () { return new PrintWriter ( fBody ); }
+
+		@Override
+		public PrintWriter getStreamForTextResponse ( String contentType ) { return new PrintWriter ( fBody ); }
+
+		@Override
+		public PrintWriter getStreamForTextResponse ( String contentType, String encoding ) { return new PrintWriter ( fBody ); }
+
+		@Override
+		public OutputStream getStreamForBinaryResponse () { return fBody; }
+
+		@Override
+		public OutputStream getStreamForBinaryResponse ( String contentType ) { return fBody; }
+
+		@Override
+		public CHttpResponse writeHeader ( String headerName, String headerValue ) { fHeaders.put ( headerName, headerValue ); return this; }
+
+		@Override
+		public CHttpResponse writeHeader ( String headerName, String headerValue, boolean overwrite ) { fHeaders.put ( headerName, headerValue ); return this; }
+
+		@Override
+		public void redirect ( String url ) {}
+
+		@Override
+		public void redirect ( Class<?> cls, String method ) {}
+
+		@Override
+		public void redirect ( Class<?> cls, String method, Map<String, Object> args ) {}
+
+		@Override
+		public void redirectExactly ( String url ) {}
+
+		private int fStatus = -1;
+		private final HashMap<String,String> fHeaders = new HashMap<> ();
+		private final ByteArrayOutputStream fBody = new ByteArrayOutputStream ();
+	}
+}
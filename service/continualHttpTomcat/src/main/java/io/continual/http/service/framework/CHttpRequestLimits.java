@@ -0,0 +1,177 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package io.continual.http.service.framework;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.continual.util.data.HumanReadableHelper;
+
+/**
+ * Concurrency limits and timeouts for requests, configured as an ordered list of rules that
+ * match on a path prefix and optionally a method. The first matching rule applies; requests
+ * that match no rule are unlimited and get the default timeout.
+ * <pre>
+ * [
+ *   { "path": "/model", "method": "GET", "maxConcurrent": 50, "timeout": "30s" },
+ *   { "path": "/receiver", "maxConcurrent": 200 }
+ * ]
+ * </pre>
+ */
+class CHttpRequestLimits
+{
+	/**
+	 * A limit rule.
+	 */
+	static class Rule
+	{
+		/**
+		 * Try to take a concurrency permit for a request under this rule. Each successful call
+		 * must be matched by a call to release().
+		 * @return true if the request may proceed
+		 */
+		public boolean tryAcquire ()
+		{
+			return fPermits == null || fPermits.tryAcquire ();
+		}
+
+		/**
+		 * Release a permit taken with tryAcquire()
+		 */
+		public void release ()
+		{
+			if ( fPermits != null )
+			{
+				fPermits.release ();
+			}
+		}
+
+		/**
+		 * Get the time allowed for an asynchronously handled request under this rule
+		 * @return a timeout in ms, where 0 means no timeout
+		 */
+		public long getTimeoutMs ()
+		{
+			return fTimeoutMs;
+		}
+
+		/**
+		 * Get the number of requests currently running under this rule, if it's limited
+		 * @return the number of running requests, or -1 if the rule is unlimited
+		 */
+		public int getActiveCount ()
+		{
+			return fPermits == null ? -1 : fMaxConcurrent - fPermits.availablePermits ();
+		}
+
+		@Override
+		public String toString ()
+		{
+			return ( fMethod == null ? "*" : fMethod ) + " " + fPath;
+		}
+
+		private Rule ( String method, String path, int maxConcurrent, long timeoutMs )
+		{
+			fMethod = method;
+			fPath = path;
+			fMaxConcurrent = maxConcurrent;
+			fPermits = maxConcurrent > 0 ? new Semaphore ( maxConcurrent ) : null;
+			fTimeoutMs = timeoutMs;
+		}
+
+		private final String fMethod;
+		private final String fPath;
+		private final int fMaxConcurrent;
+		private final Semaphore fPermits;
+		private final long fTimeoutMs;
+
+		private boolean matches ( String method, String path )
+		{
+			if ( fMethod != null && !fMethod.equalsIgnoreCase ( method ) ) return false;
+			if ( !path.startsWith ( fPath ) ) return false;
+
+			// match on whole path segments, so that "/model" doesn't match "/models"
+			return path.length () == fPath.length () ||
+				fPath.endsWith ( "/" ) ||
+				path.charAt ( fPath.length () ) == '/'
+			;
+		}
+	}
+
+	/**
+	 * Build limits from configuration
+	 * @param rules an array of rules, which may be null
+	 * @param defaultTimeoutMs the timeout for requests whose rule doesn't specify one
+	 */
+	public CHttpRequestLimits ( JSONArray rules, long defaultTimeoutMs )
+	{
+		fRules = new ArrayList<> ();
+		fDefault = new Rule ( null, "/", 0, defaultTimeoutMs );
+
+		if ( rules != null )
+		{
+			for ( int i=0; i<rules.length (); i++ )
+			{
+				final JSONObject rule = rules.getJSONObject ( i );
+				final String method = rule.optString ( "method", null );
+				fRules.add ( new Rule (
+					method == null || method.equals ( "*" ) ? null : method,
+					rule.optString ( "path", "/" ),
+					rule.optInt ( "maxConcurrent", 0 ),
+					readDurationMs ( rule, "timeout", defaultTimeoutMs )
+				) );
+			}
+		}
+	}
+
+	/**
+	 * Find the rule for a request
+	 * @param method the request method
+	 * @param path the request path within the servlet context
+	 * @return a rule, never null
+	 */
+	public Rule match ( String method, String path )
+	{
+		final String p = path == null || path.length () == 0 ? "/" : path;
+		for ( Rule r : fRules )
+		{
+			if ( r.matches ( method, p ) ) return r;
+		}
+		return fDefault;
+	}
+
+	/**
+	 * Read a duration setting given either as a number of milliseconds or as a string like "30s"
+	 * @param settings
+	 * @param key
+	 * @param defMs
+	 * @return a duration in ms
+	 */
+	static long readDurationMs ( JSONObject settings, String key, long defMs )
+	{
+		final Object val = settings == null ? null : settings.opt ( key );
+		if ( val == null ) return defMs;
+		if ( val instanceof Number ) return ((Number) val).longValue ();
+		return HumanReadableHelper.parseDuration ( val.toString () );
+	}
+
+	private final List<Rule> fRules;
+	private final Rule fDefault;
+}
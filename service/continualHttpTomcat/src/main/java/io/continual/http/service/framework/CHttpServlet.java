@@ -20,7 +20,20 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.util.LinkedList;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
@@ -46,6 +59,7 @@ import io.continual.http.service.framework.routing.CHttpRequestRouter;
 import io.continual.http.service.framework.routing.CHttpRequestRouter.noMatchingRoute;
 import io.continual.http.service.framework.routing.CHttpRouteInvocation;
 import io.continual.http.service.framework.sessions.CHttpUserSession;
+import io.continual.http.service.framework.tracing.CHttpTrace;
 import io.continual.iam.IamService;
 import io.continual.metrics.MetricsCatalog;
 import io.continual.metrics.impl.noop.NoopMetricsCatalog;
@@ -61,6 +75,7 @@ import io.continual.util.nv.impl.nvReadableStack;
 import io.continual.util.standards.HttpStatusCodes;
 import io.continual.util.standards.MimeTypes;
 import io.continual.util.time.Clock;
+import io.continual.util.tracing.TraceContext;
 
 /**
  * The base servlet associates a connection object with an HTTP connection. Even
@@ -71,7 +86,25 @@ public class CHttpServlet extends HttpServlet
 {
 	private static final String kSetting_SessionTimeout = "sessionDuration";
 	private static final String kDefault_SessionTimeout = "14d";
-	
+
+	// responses at least this large are compressed for clients that accept gzip or deflate; -1 disables compression
+	private static final String kSetting_CompressionMinSize = "compressionMinSize";
+	private static final int kDefault_CompressionMinSize = 1024;
+
+	// optional async handling: { "enabled": true, "executor": "virtual"|"pool", "threads": 200, "queueSize": 10000, "timeout": "60s" }
+	private static final String kSetting_Async = "async";
+	private static final String kDefault_AsyncExecutor = "virtual";
+	private static final int kDefault_AsyncThreads = 200;
+	private static final int kDefault_AsyncQueueSize = 10000;
+	private static final long kDefault_AsyncTimeoutMs = 60 * 1000L;
+
+	// optional per-route concurrency limits and timeouts, see CHttpRequestLimits
+	private static final String kSetting_RouteLimits = "routeLimits";
+
+	// optional request tracing: { "enabled": true, "propagate": true }. Span times are recorded as
+	// per-route histograms and the trace ID is passed to outbound JSON-over-HTTP calls when propagating.
+	private static final String kSetting_Tracing = "tracing";
+
 	/**
 	 * Session life cycle is determined at servlet creation time.
 	 */
@@ -152,6 +185,22 @@ public class CHttpServlet extends HttpServlet
 			throw new IllegalArgumentException ( "Invalid time specification." );
 		}
 		fSessionTimeInSeconds = sessionDuration * 1000;
+
+		fCompressionMinSize = settings.optInt ( kSetting_CompressionMinSize, kDefault_CompressionMinSize );
+
+		// async handling and request limits
+		final JSONObject async = settings.optJSONObject ( kSetting_Async );
+		final boolean asyncEnabled = async != null && async.optBoolean ( "enabled", true );
+		fAsyncExecutor = asyncEnabled ? makeAsyncExecutor ( async ) : null;
+		fLimits = new CHttpRequestLimits (
+			settings.optJSONArray ( kSetting_RouteLimits ),
+			CHttpRequestLimits.readDurationMs ( async, "timeout", kDefault_AsyncTimeoutMs )
+		);
+
+		// tracing
+		final JSONObject tracing = settings.optJSONObject ( kSetting_Tracing );
+		fTracing = tracing != null && tracing.optBoolean ( "enabled", true );
+		fTracePropagation = fTracing && tracing.optBoolean ( "propagate", true );
 	}
 
 	/**
@@ -204,6 +253,10 @@ public class CHttpServlet extends HttpServlet
 	public final void destroy ()
 	{
 		super.destroy ();
+		if ( fAsyncExecutor != null )
+		{
+			fAsyncExecutor.shutdownNow ();
+		}
 		try
 		{
 			servletShutdown ();
@@ -323,6 +376,77 @@ public class CHttpServlet extends HttpServlet
 
 	@Override
 	protected final void service ( HttpServletRequest req, HttpServletResponse resp ) throws ServletException, java.io.IOException
+	{
+		// an async request whose response was aborted is dispatched back here so that the container drops the connection
+		if ( req.getDispatcherType () == DispatcherType.ASYNC )
+		{
+			final Object aborted = req.getAttribute ( kAbortedResponse );
+			if ( aborted instanceof ResponseAborted ) throw (ResponseAborted) aborted;
+			return;
+		}
+
+		final CHttpRequestLimits.Rule limit = fLimits.match ( req.getMethod (), getPathInContext ( req ) );
+		if ( !limit.tryAcquire () )
+		{
+			log.info ( "{} {} {} rejected, route limit [{}] reached", ServletRequestTools.getBestRemoteAddress ( req ), req.getMethod (), req.getRequestURI (), limit );
+			fMetrics.meter ( Path.fromString ( "/routeLimitReached" ) ).mark ();
+			sendRawError ( resp, HttpStatusCodes.k503_serviceUnavailable, "Too many concurrent requests for this route." );
+			return;
+		}
+
+		if ( fAsyncExecutor != null && req.isAsyncSupported () )
+		{
+			// the permit is released by the async request when its handling ends
+			new AsyncRequest ( req, resp, limit ).start ();
+			return;
+		}
+
+		try
+		{
+			handleRequest ( req, resp );
+		}
+		finally
+		{
+			limit.release ();
+		}
+	}
+
+	/**
+	 * Request handling proper, run either on the container's thread or on the async executor.
+	 * When tracing is enabled, the request's trace is bound to the thread for the duration.
+	 * @param req
+	 * @param resp
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	private void handleRequest ( HttpServletRequest req, HttpServletResponse resp ) throws ServletException, IOException
+	{
+		if ( !fTracing )
+		{
+			runRequest ( req, resp );
+			return;
+		}
+
+		// continue the caller's trace if they sent a usable ID
+		String traceId = req.getHeader ( TraceContext.kTraceIdHeader );
+		if ( !TraceContext.isValidTraceId ( traceId ) )
+		{
+			traceId = TraceContext.newTraceId ();
+		}
+		resp.setHeader ( TraceContext.kTraceIdHeader, traceId );
+
+		final CHttpTrace trace = CHttpTrace.begin ( traceId );
+		try ( TraceContext.Scope scope = fTracePropagation ? TraceContext.withTraceId ( traceId ) : null )
+		{
+			runRequest ( req, resp );
+		}
+		finally
+		{
+			trace.end ();
+		}
+	}
+
+	private void runRequest ( HttpServletRequest req, HttpServletResponse resp ) throws ServletException, IOException
 	{
 		final long startMs = Clock.now ();
 		final String clientIp = ServletRequestTools.getBestRemoteAddress ( req );
@@ -340,17 +464,27 @@ public class CHttpServlet extends HttpServlet
 		try
 		{
 			final CHttpFilter.Disposition preRouteOk;
-			try ( final Timer.Context prt = fMetrics.timer ( pathAsMetricName.makeChildItem ( Name.fromString ( "preRouteExecutionTime" ) ) ).time () )
+			try (
+				final Timer.Context prt = fMetrics.timer ( pathAsMetricName.makeChildItem ( Name.fromString ( "preRouteExecutionTime" ) ) ).time ();
+				final CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_PreRoute )
+			)
 			{
 				preRouteOk = preRouteHandling ( ctx );
 			}
 
 			if ( preRouteOk == Disposition.PASS )
 			{
-				final CHttpRouteInvocation handler = fRouter.route ( reqObj );
+				final CHttpRouteInvocation handler;
+				try ( final CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_RouteLookup ) )
+				{
+					handler = fRouter.route ( reqObj );
+				}
 				pathAsMetricName = handler.getRouteNameForMetrics ();
 	
-				try ( final Timer.Context timer = fMetrics.timer ( pathAsMetricName.makeChildItem ( Name.fromString ( "executionTime" ) ) ).time () )
+				try (
+					final Timer.Context timer = fMetrics.timer ( pathAsMetricName.makeChildItem ( Name.fromString ( "executionTime" ) ) ).time ();
+					final CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_Handler )
+				)
 				{
 					handler.run ( ctx );
 				}
@@ -397,7 +531,10 @@ public class CHttpServlet extends HttpServlet
 		final int returnedStatusCode = ctx.response ().getStatusCode ();
 		log.info ( "{} {} {} ms", reqId, returnedStatusCode, durationMs );
 
-		ctx.close ();
+		try ( final CHttpTrace.Span span = CHttpTrace.span ( CHttpTrace.kSpan_ResponseWrite ) )
+		{
+			ctx.close ();
+		}
 		
 		if ( pathAsMetricName != null )
 		{
@@ -409,6 +546,35 @@ public class CHttpServlet extends HttpServlet
 				.mark ()
 			;
 		}
+
+		final CHttpTrace trace = CHttpTrace.current ();
+		if ( trace != null )
+		{
+			if ( pathAsMetricName != null )
+			{
+				trace.record ( fMetrics, pathAsMetricName );
+			}
+			log.debug ( "{} {}", reqId, trace );
+		}
+
+		// the container closes the connection when the servlet throws after the response is committed
+		if ( ctx.isAborted () )
+		{
+			throw new ResponseAborted ( reqId );
+		}
+	}
+
+	/**
+	 * Thrown out of the servlet when a handler aborts its response
+	 */
+	private static class ResponseAborted extends IOException
+	{
+		public ResponseAborted ( String reqId )
+		{
+			super ( "The response to " + reqId + " was aborted." );
+		}
+
+		private static final long serialVersionUID = 1L;
 	}
 
 	/**
@@ -439,7 +605,238 @@ public class CHttpServlet extends HttpServlet
 	 */
 	protected ServletRequestContext createHandlingContext ( HttpServletRequest req, HttpServletResponse resp, CHttpSession dc, CHttpRequestRouter rr )
 	{
-		return new ServletRequestContext ( req, resp, dc, rr );
+		return new ServletRequestContext ( req, resp, dc, rr, fCompressionMinSize );
+	}
+
+	/**
+	 * Handles a request on the async executor, racing its completion against the container's
+	 * timeout. The handler writes through a guarded response that's taken exactly once, either
+	 * by the timeout (or a container error) or by the handler's completion. Whoever takes it
+	 * completes the async context, and the handler can't write once the timeout has it. A timed
+	 * out request's handler is interrupted and the client gets a 503 if nothing has been sent yet.
+	 */
+	private class AsyncRequest implements Runnable, AsyncListener
+	{
+		public AsyncRequest ( HttpServletRequest req, HttpServletResponse resp, CHttpRequestLimits.Rule limit )
+		{
+			fReq = req;
+			fResp = resp;
+			fGuarded = new GuardedResponse ( resp );
+			fLimit = limit;
+			fReleased = new AtomicBoolean ( false );
+		}
+
+		public void start ()
+		{
+			fAsync = fReq.startAsync ( fReq, fResp );
+			fAsync.setTimeout ( fLimit.getTimeoutMs () );
+			fAsync.addListener ( this );
+			try
+			{
+				fWork = fAsyncExecutor.submit ( this );
+			}
+			catch ( RejectedExecutionException x )
+			{
+				releasePermit ();
+				if ( fGuarded.take () )
+				{
+					log.warn ( "Async request executor is full; rejecting {} {}", fReq.getMethod (), fReq.getRequestURI () );
+					fMetrics.meter ( Path.fromString ( "/asyncExecutorFull" ) ).mark ();
+					sendRawError ( fResp, HttpStatusCodes.k503_serviceUnavailable, "The server is too busy to handle this request." );
+					fAsync.complete ();
+				}
+			}
+		}
+
+		@Override
+		public void run ()
+		{
+			boolean aborted = false;
+			Throwable failure = null;
+			try
+			{
+				// a request that timed out while queued isn't worth starting
+				if ( !fGuarded.isTaken () )
+				{
+					handleRequest ( fReq, fGuarded );
+				}
+			}
+			catch ( ResponseAborted x )
+			{
+				// completing the async context would end the entity cleanly, so the abort is rethrown on a container thread
+				fReq.setAttribute ( kAbortedResponse, x );
+				aborted = true;
+			}
+			catch ( Throwable t )
+			{
+				failure = t;
+			}
+			finally
+			{
+				releasePermit ();
+				if ( fGuarded.take () )
+				{
+					if ( failure != null )
+					{
+						log.warn ( "Async request failed: " + failure.getMessage (), failure );
+						sendRawError ( fResp, HttpStatusCodes.k500_internalServerError, failure.getMessage () );
+					}
+
+					if ( aborted )
+					{
+						fAsync.dispatch ();
+					}
+					else
+					{
+						fAsync.complete ();
+					}
+				}
+				else if ( failure != null )
+				{
+					log.debug ( "Async request ended after its timeout: " + failure.getMessage () );
+				}
+			}
+		}
+
+		@Override
+		public void onTimeout ( AsyncEvent event )
+		{
+			if ( fGuarded.take () )
+			{
+				cancelWork ();
+				log.info ( "{} {} timed out after {} ms", fReq.getMethod (), fReq.getRequestURI (), fLimit.getTimeoutMs () );
+				fMetrics.meter ( Path.fromString ( "/asyncTimeout" ) ).mark ();
+				sendRawError ( fResp, HttpStatusCodes.k503_serviceUnavailable, "The request timed out." );
+				fAsync.complete ();
+			}
+		}
+
+		@Override
+		public void onError ( AsyncEvent event )
+		{
+			if ( fGuarded.take () )
+			{
+				// usually the client went away; there's no one to respond to
+				cancelWork ();
+				log.info ( "{} {} async error: {}", fReq.getMethod (), fReq.getRequestURI (),
+					event.getThrowable () == null ? "(unknown)" : event.getThrowable ().getMessage () );
+				fAsync.complete ();
+			}
+		}
+
+		@Override
+		public void onComplete ( AsyncEvent event ) {}
+
+		@Override
+		public void onStartAsync ( AsyncEvent event ) {}
+
+		private final HttpServletRequest fReq;
+		private final HttpServletResponse fResp;
+		private final GuardedResponse fGuarded;
+		private final CHttpRequestLimits.Rule fLimit;
+		private final AtomicBoolean fReleased;
+		private AsyncContext fAsync;
+		private volatile Future<?> fWork;
+
+		private void cancelWork ()
+		{
+			// a task cancelled before it starts never runs, so its permit is released here. a running
+			// task is interrupted, and whichever of this and its own completion comes first releases.
+			final Future<?> work = fWork;
+			if ( work != null && work.cancel ( true ) )
+			{
+				releasePermit ();
+			}
+		}
+
+		private void releasePermit ()
+		{
+			if ( fReleased.compareAndSet ( false, true ) )
+			{
+				fLimit.release ();
+			}
+		}
+	}
+
+	private static String getPathInContext ( HttpServletRequest req )
+	{
+		return req.getRequestURI ().substring ( req.getContextPath ().length () );
+	}
+
+	/**
+	 * Send a JSON error directly on the servlet response, for use outside of a handling context.
+	 * Nothing is sent if the response is already committed.
+	 * @param resp
+	 * @param err
+	 * @param msg
+	 */
+	private static void sendRawError ( HttpServletResponse resp, int err, String msg )
+	{
+		try
+		{
+			if ( resp.isCommitted () ) return;
+
+			resp.reset ();
+			resp.setStatus ( err );
+			if ( err == HttpStatusCodes.k503_serviceUnavailable )
+			{
+				resp.setHeader ( "Retry-After", "1" );
+			}
+			resp.setContentType ( MimeTypes.kAppJson );
+			resp.getWriter ().println ( new JSONObject ()
+				.put ( "statusCode", err )
+				.put ( "status", msg )
+				.toString ( 4 )
+			);
+			resp.flushBuffer ();
+		}
+		catch ( IOException | IllegalStateException x )
+		{
+			log.debug ( "Couldn't send error response: " + x.getMessage () );
+		}
+	}
+
+	/**
+	 * Make the executor for async request handling. Virtual threads are used when the runtime has
+	 * them (Java 21 and later). We build for older runtimes, so they're located reflectively, and
+	 * a bounded thread pool is used otherwise.
+	 * @param settings
+	 * @return an executor service
+	 */
+	private static ExecutorService makeAsyncExecutor ( JSONObject settings )
+	{
+		final String type = settings.optString ( "executor", kDefault_AsyncExecutor );
+		if ( type.equalsIgnoreCase ( "virtual" ) )
+		{
+			try
+			{
+				final ExecutorService es = (ExecutorService) Executors.class.getMethod ( "newVirtualThreadPerTaskExecutor" ).invoke ( null );
+				log.info ( "Async request handling runs on virtual threads." );
+				return es;
+			}
+			catch ( NoSuchMethodException | IllegalAccessException | InvocationTargetException e )
+			{
+				log.info ( "Virtual threads aren't available in this runtime; async request handling uses a thread pool." );
+			}
+		}
+		else if ( !type.equalsIgnoreCase ( "pool" ) )
+		{
+			throw new IllegalArgumentException ( "Unknown async executor type: " + type );
+		}
+
+		final int threads = settings.optInt ( "threads", kDefault_AsyncThreads );
+		final AtomicInteger threadCounter = new AtomicInteger ( 0 );
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor ( threads, threads, 60L, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable> ( settings.optInt ( "queueSize", kDefault_AsyncQueueSize ) ),
+			r -> {
+				final Thread t = new Thread ( r, "chttp-async-" + threadCounter.incrementAndGet () );
+				t.setDaemon ( true );
+				return t;
+			}
+		);
+		pool.allowCoreThreadTimeOut ( true );
+		log.info ( "Async request handling runs on a pool of {} threads.", threads );
+		return pool;
 	}
 
 	private void sendStdJsonError ( CHttpRequestContext ctx, int err, String msg )
@@ -584,6 +981,11 @@ public class CHttpServlet extends HttpServlet
 	private final JSONObject fProvidedPrefs;
 	private final SessionLifeCycle fSessionLifeCycle;
 	private final int fSessionTimeInSeconds;
+	private final int fCompressionMinSize;
+	private final transient ExecutorService fAsyncExecutor;
+	private final transient CHttpRequestLimits fLimits;
+	private final boolean fTracing;
+	private final boolean fTracePropagation;
 
 	private final LinkedList<CHttpRouteInstaller> fRouters;
 	private final LinkedList<CHttpFilter> fFilters;
@@ -594,6 +996,7 @@ public class CHttpServlet extends HttpServlet
 	private final CHttpObserverMgr fInspector;
 
 	private static final String kWebSessionObject = "chttp.session.";
+	private static final String kAbortedResponse = "chttp.abortedResponse";
 	private static final long serialVersionUID = 1L;
 
 	private final CHttpMetricNamer fMetricNamer;
@@ -0,0 +1,377 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The response given to an asynchronously handled request's handler. The response is taken
+ * exactly once, either by the request's timeout (or error) or by the handler's own completion,
+ * and whoever takes it owns it from then on. After that, the handler's writes through this
+ * wrapper fail with an IOException and its status and header changes are ignored, so a handler
+ * that runs on past its timeout can't write into the error response sent in its place.
+ */
+class GuardedResponse extends HttpServletResponseWrapper
+{
+	public GuardedResponse ( HttpServletResponse resp )
+	{
+		super ( resp );
+		fLock = new Object ();
+		fTaken = false;
+	}
+
+	/**
+	 * Take the response away from the handler. This waits for a write that's underway to finish.
+	 * @return true if the caller took the response, false if it had already been taken
+	 */
+	public boolean take ()
+	{
+		synchronized ( fLock )
+		{
+			if ( fTaken ) return false;
+			fTaken = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Has the response been taken?
+	 * @return true if the response was taken
+	 */
+	public boolean isTaken ()
+	{
+		synchronized ( fLock )
+		{
+			return fTaken;
+		}
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream () throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			if ( fStream == null )
+			{
+				fStream = new GuardedStream ( super.getOutputStream () );
+			}
+			return fStream;
+		}
+	}
+
+	@Override
+	public PrintWriter getWriter () throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			if ( fWriter == null )
+			{
+				fWriter = new PrintWriter ( new GuardedWriter ( super.getWriter () ) );
+			}
+			return fWriter;
+		}
+	}
+
+	@Override
+	public void flushBuffer () throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			super.flushBuffer ();
+		}
+	}
+
+	@Override
+	public void sendError ( int sc, String msg ) throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			super.sendError ( sc, msg );
+		}
+	}
+
+	@Override
+	public void sendError ( int sc ) throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			super.sendError ( sc );
+		}
+	}
+
+	@Override
+	public void sendRedirect ( String location ) throws IOException
+	{
+		synchronized ( fLock )
+		{
+			checkOpen ();
+			super.sendRedirect ( location );
+		}
+	}
+
+	@Override
+	public void reset ()
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.reset ();
+		}
+	}
+
+	@Override
+	public void resetBuffer ()
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.resetBuffer ();
+		}
+	}
+
+	@Override
+	public void setStatus ( int sc )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setStatus ( sc );
+		}
+	}
+
+	@Override
+	public void setHeader ( String name, String value )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setHeader ( name, value );
+		}
+	}
+
+	@Override
+	public void addHeader ( String name, String value )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.addHeader ( name, value );
+		}
+	}
+
+	@Override
+	public void setIntHeader ( String name, int value )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setIntHeader ( name, value );
+		}
+	}
+
+	@Override
+	public void addIntHeader ( String name, int value )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.addIntHeader ( name, value );
+		}
+	}
+
+	@Override
+	public void setDateHeader ( String name, long date )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setDateHeader ( name, date );
+		}
+	}
+
+	@Override
+	public void addDateHeader ( String name, long date )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.addDateHeader ( name, date );
+		}
+	}
+
+	@Override
+	public void addCookie ( Cookie cookie )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.addCookie ( cookie );
+		}
+	}
+
+	@Override
+	public void setContentType ( String type )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setContentType ( type );
+		}
+	}
+
+	@Override
+	public void setCharacterEncoding ( String charset )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setCharacterEncoding ( charset );
+		}
+	}
+
+	@Override
+	public void setContentLength ( int len )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setContentLength ( len );
+		}
+	}
+
+	@Override
+	public void setContentLengthLong ( long len )
+	{
+		synchronized ( fLock )
+		{
+			if ( !fTaken ) super.setContentLengthLong ( len );
+		}
+	}
+
+	private final Object fLock;
+	private boolean fTaken;
+	private GuardedStream fStream;
+	private PrintWriter fWriter;
+
+	// call with lock held
+	private void checkOpen () throws IOException
+	{
+		if ( fTaken ) throw new IOException ( "The response is no longer available to this handler." );
+	}
+
+	private class GuardedStream extends ServletOutputStream
+	{
+		public GuardedStream ( ServletOutputStream os )
+		{
+			fOut = os;
+		}
+
+		@Override
+		public void write ( int b ) throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.write ( b );
+			}
+		}
+
+		@Override
+		public void write ( byte[] b, int off, int len ) throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.write ( b, off, len );
+			}
+		}
+
+		@Override
+		public void flush () throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.flush ();
+			}
+		}
+
+		@Override
+		public void close () throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.close ();
+			}
+		}
+
+		@Override
+		public boolean isReady ()
+		{
+			return fOut.isReady ();
+		}
+
+		@Override
+		public void setWriteListener ( WriteListener writeListener )
+		{
+			fOut.setWriteListener ( writeListener );
+		}
+
+		private final ServletOutputStream fOut;
+	}
+
+	private class GuardedWriter extends Writer
+	{
+		public GuardedWriter ( Writer w )
+		{
+			fOut = w;
+		}
+
+		@Override
+		public void write ( char[] cbuf, int off, int len ) throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.write ( cbuf, off, len );
+			}
+		}
+
+		@Override
+		public void flush () throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.flush ();
+			}
+		}
+
+		@Override
+		public void close () throws IOException
+		{
+			synchronized ( fLock )
+			{
+				checkOpen ();
+				fOut.close ();
+			}
+		}
+
+		private final Writer fOut;
+	}
+}
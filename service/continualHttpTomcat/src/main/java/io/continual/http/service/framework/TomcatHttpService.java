@@ -260,7 +260,8 @@ public class TomcatHttpService extends CHttpService
 
 			final String servletName = "httpService";
 			final Context rootCtx = fTomcat.addContext ( "", fWorkDir.getAbsolutePath () );
-			Tomcat.addServlet ( rootCtx, servletName, hs );
+			// the servlet only goes async when its settings ask for it
+			Tomcat.addServlet ( rootCtx, servletName, hs ).setAsyncSupported ( true );
 			rootCtx.addServletMappingDecoded ( "/*", servletName );
 
 			try
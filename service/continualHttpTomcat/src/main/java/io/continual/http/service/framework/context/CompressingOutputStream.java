@@ -0,0 +1,175 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import io.continual.util.standards.HttpStatusCodes;
+
+/**
+ * A response stream that holds the first bytes written until there are more than the minimum
+ * size. A response that stays under the minimum is sent as is, with its content length. A larger
+ * response is compressed with the negotiated coding, unless by then the response has a type that
+ * doesn't compress well, a status without a full body, a content length, or its own content
+ * encoding.
+ */
+class CompressingOutputStream extends OutputStream
+{
+	public static final String kGzip = "gzip";
+	public static final String kDeflate = "deflate";
+
+	/**
+	 * Construct a compressing stream
+	 * @param resp the servlet response
+	 * @param coding "gzip" or "deflate"
+	 * @param minSize the smallest entity that's compressed
+	 */
+	public CompressingOutputStream ( HttpServletResponse resp, String coding, int minSize )
+	{
+		fResponse = resp;
+		fCoding = coding;
+		fMinSize = minSize;
+		fBuffer = new ByteArrayOutputStream ( Math.min ( minSize, 8192 ) + 1 );
+		fOut = null;
+		fClosed = false;
+	}
+
+	@Override
+	public void write ( int b ) throws IOException
+	{
+		if ( fOut == null && fBuffer.size () < fMinSize )
+		{
+			fBuffer.write ( b );
+			return;
+		}
+		write ( new byte[] { (byte) b }, 0, 1 );
+	}
+
+	@Override
+	public void write ( byte[] b, int off, int len ) throws IOException
+	{
+		if ( fClosed ) throw new IOException ( "The response stream is closed." );
+
+		if ( fOut == null )
+		{
+			if ( fBuffer.size () + len <= fMinSize )
+			{
+				fBuffer.write ( b, off, len );
+				return;
+			}
+			start ( true );
+		}
+		fOut.write ( b, off, len );
+	}
+
+	/**
+	 * Flush written data to the client. Until the minimum size is reached, data is held
+	 * so that the compression decision can still be made.
+	 */
+	@Override
+	public void flush () throws IOException
+	{
+		if ( fOut != null )
+		{
+			fOut.flush ();
+		}
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		if ( fClosed ) return;
+		fClosed = true;
+
+		if ( fOut == null )
+		{
+			start ( false );
+		}
+		fOut.close ();
+	}
+
+	private final HttpServletResponse fResponse;
+	private final String fCoding;
+	private final int fMinSize;
+	private ByteArrayOutputStream fBuffer;
+	private OutputStream fOut;
+	private boolean fClosed;
+
+	private void start ( boolean large ) throws IOException
+	{
+		final OutputStream raw = fResponse.getOutputStream ();
+
+		final boolean compressibleType = isCompressibleType ( fResponse.getContentType () );
+		if ( compressibleType && !fResponse.isCommitted () )
+		{
+			// the coding depends on the request's Accept-Encoding either way
+			fResponse.addHeader ( "Vary", "Accept-Encoding" );
+		}
+
+		if ( large && compressibleType && canCompress () )
+		{
+			fResponse.setHeader ( "Content-Encoding", fCoding );
+			fOut = kGzip.equals ( fCoding ) ?
+				new GZIPOutputStream ( raw, 8192, true ) :
+				new DeflaterOutputStream ( raw, true )
+			;
+		}
+		else
+		{
+			if ( !large && !fResponse.isCommitted () && !fResponse.containsHeader ( "Content-Length" ) )
+			{
+				fResponse.setContentLength ( fBuffer.size () );
+			}
+			fOut = raw;
+		}
+
+		fBuffer.writeTo ( fOut );
+		fBuffer = null;
+	}
+
+	private boolean canCompress ()
+	{
+		if ( fResponse.isCommitted () ) return false;
+		if ( fResponse.containsHeader ( "Content-Encoding" ) ) return false;
+		if ( fResponse.containsHeader ( "Content-Length" ) ) return false;
+
+		final int status = fResponse.getStatus ();
+		return status != HttpStatusCodes.k204_noContent &&
+			status != HttpStatusCodes.k206_partialContent &&
+			status != HttpStatusCodes.k304_notModified
+		;
+	}
+
+	static boolean isCompressibleType ( String contentType )
+	{
+		if ( contentType == null ) return false;
+
+		final String ct = contentType.toLowerCase ();
+		return ct.startsWith ( "text/" ) ||
+			ct.contains ( "json" ) ||
+			ct.contains ( "javascript" ) ||
+			ct.contains ( "xml" ) ||
+			ct.contains ( "csv" )
+		;
+	}
+}
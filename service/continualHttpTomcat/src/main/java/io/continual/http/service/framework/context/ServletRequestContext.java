@@ -34,11 +34,25 @@ import io.continual.http.service.framework.routing.CHttpRequestRouter;
 public class ServletRequestContext extends CHttpRequestContext
 {
 	public ServletRequestContext ( HttpServletRequest req, HttpServletResponse resp, CHttpSession s, CHttpRequestRouter router )
+	{
+		this ( req, resp, s, router, -1 );
+	}
+
+	/**
+	 * Construct a request context
+	 * @param req
+	 * @param resp
+	 * @param s
+	 * @param router
+	 * @param compressionMinSize the smallest response entity that's compressed for clients that accept it, or -1 to never compress
+	 */
+	public ServletRequestContext ( HttpServletRequest req, HttpServletResponse resp, CHttpSession s, CHttpRequestRouter router, int compressionMinSize )
 	{
 		super ( s, router );
 
 		fRequest = req;
 		fResponse = resp;
+		fCompressionMinSize = compressionMinSize;
 
 		fRequestWrapper = null;
 		fResponseWrapper = null;
@@ -54,6 +68,25 @@ public class ServletRequestContext extends CHttpRequestContext
 		fResponseWrapper = null;
 	}
 
+	@Override
+	public void close ()
+	{
+		if ( fResponseWrapper != null )
+		{
+			fResponseWrapper.finish ();
+		}
+		super.close ();
+	}
+
+	/**
+	 * Was the response aborted by its handler?
+	 * @return true if the response was aborted
+	 */
+	public boolean isAborted ()
+	{
+		return fResponseWrapper != null && fResponseWrapper.isAborted ();
+	}
+
 	public String servletPathToFullUrl ( String contentUrl )
 	{
 		final StringBuilder url = new StringBuilder ();
@@ -113,13 +146,14 @@ public class ServletRequestContext extends CHttpRequestContext
 	{
 		if ( fResponseWrapper == null )
 		{
-			fResponseWrapper = new StdResponse ( fRequest, fResponse, router (), inspector () );
+			fResponseWrapper = new StdResponse ( fRequest, fResponse, router (), inspector (), fCompressionMinSize );
 		}
 		return fResponseWrapper;
 	}
 
 	private final HttpServletRequest fRequest;
 	private final HttpServletResponse fResponse;
+	private final int fCompressionMinSize;
 
 	private StdRequest fRequestWrapper;
 	private StdResponse fResponseWrapper;
@@ -17,8 +17,10 @@
 
 package io.continual.http.service.framework.context;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.HashMap;
@@ -37,17 +39,93 @@ import io.continual.util.standards.MimeTypes;
 class StdResponse implements CHttpResponse
 {
 	public StdResponse ( HttpServletRequest req, HttpServletResponse r, CHttpRequestRouter rr, CHttpObserver inspector )
+	{
+		this ( req, r, rr, inspector, -1 );
+	}
+
+	/**
+	 * Construct a response
+	 * @param req
+	 * @param r
+	 * @param rr
+	 * @param inspector
+	 * @param compressionMinSize the smallest entity that's compressed when the client accepts gzip or deflate, or -1 to never compress
+	 */
+	public StdResponse ( HttpServletRequest req, HttpServletResponse r, CHttpRequestRouter rr, CHttpObserver inspector, int compressionMinSize )
 	{
 		fRequest = req;
 		fResponseEntityAllowed = !(req.getMethod ().equalsIgnoreCase ( HttpMethods.HEAD ));
 		fResponse = r;
 		fRouter = rr;
 		fInspector = inspector;
+
+		fCompressionMinSize = compressionMinSize;
+		fCompressor = null;
+		fCompressedWriter = null;
+		fAborted = false;
+
+		String coding = null;
+		if ( compressionMinSize >= 0 && fResponseEntityAllowed )
+		{
+			final String acceptEncoding = req.getHeader ( "Accept-Encoding" );
+			if ( CHttpRequest.acceptsEncoding ( acceptEncoding, CompressingOutputStream.kGzip ) )
+			{
+				coding = CompressingOutputStream.kGzip;
+			}
+			else if ( CHttpRequest.acceptsEncoding ( acceptEncoding, CompressingOutputStream.kDeflate ) )
+			{
+				coding = CompressingOutputStream.kDeflate;
+			}
+		}
+		fCoding = coding;
+	}
+
+	/**
+	 * Complete the response entity. This finishes a compressed stream, which the servlet
+	 * container can't do on its own.
+	 */
+	public void finish ()
+	{
+		// an aborted entity is left incomplete on purpose
+		if ( fAborted ) return;
+
+		try
+		{
+			if ( fCompressedWriter != null )
+			{
+				fCompressedWriter.close ();
+			}
+			else if ( fCompressor != null )
+			{
+				fCompressor.close ();
+			}
+		}
+		catch ( IOException e )
+		{
+			log.warn ( "Error completing response: " + e.getMessage () );
+		}
+	}
+
+	@Override
+	public void abort ()
+	{
+		fAborted = true;
+	}
+
+	/**
+	 * Was this response aborted?
+	 * @return true if abort() was called
+	 */
+	public boolean isAborted ()
+	{
+		return fAborted;
 	}
 
 	@Override
 	public void sendStatusAndBody ( int err, String content, String mimeType )
 	{
+		if ( fAborted ) return;
+
 		try
 		{
 			setStatus ( err );
@@ -68,6 +146,8 @@ class StdResponse implements CHttpResponse
 	@Override
 	public void sendStatusAndMessage ( int status, String msg )
 	{
+		if ( fAborted ) return;
+
 		try
 		{
 			fInspector.replyWith ( status, msg );
@@ -101,12 +181,45 @@ class StdResponse implements CHttpResponse
 		return this;
 	}
 
+	@Override
+	public CHttpResponse setContentLength ( long length )
+	{
+		fInspector.replyHeader ( "Content-Length", Long.toString ( length ) );
+		fResponse.setContentLengthLong ( length );
+		return this;
+	}
+
+	@Override
+	public void sendFile ( File f, long offset, long length, String contentType ) throws IOException
+	{
+		if ( !fResponseEntityAllowed )
+		{
+			fResponse.setContentType ( contentType );
+			return;
+		}
+
+		// when the connector supports it, tomcat sends the file from the kernel after we return
+		if ( Boolean.TRUE.equals ( fRequest.getAttribute ( kSendfileSupported ) ) )
+		{
+			fResponse.setContentType ( contentType );
+			fResponse.setContentLengthLong ( length );
+			fRequest.setAttribute ( kSendfileFilename, f.getCanonicalPath () );
+			fRequest.setAttribute ( kSendfileStart, offset );
+			fRequest.setAttribute ( kSendfileEnd, offset + length );
+			return;
+		}
+
+		CHttpResponse.super.sendFile ( f, offset, length, contentType );
+	}
+
 	@Override
 	public CHttpResponse send ( String content ) throws IOException
 	{
-		final PrintWriter pw = new PrintWriter ( fResponse.getWriter () );
-		pw.print ( content );
-		pw.close ();
+		if ( fAborted ) return this;
+
+		final Writer w = fCoding != null ? getCompressedWriter () : fResponse.getWriter ();
+		w.write ( content );
+		w.close ();
 		return this;
 	}
 
@@ -142,12 +255,12 @@ class StdResponse implements CHttpResponse
 	@Override
 	public OutputStream getStreamForBinaryResponse ( String contentType ) throws IOException
 	{
-		fResponse.setContentType ( contentType );
+		setContentType ( contentType );
 
 		OutputStream os ;
-		if ( fResponseEntityAllowed )
+		if ( fResponseEntityAllowed && !fAborted )
 		{
-			os = fInspector.wrap ( fResponse.getOutputStream () );
+			os = fInspector.wrap ( fCoding != null ? getCompressor () : fResponse.getOutputStream () );
 		}
 		else
 		{
@@ -172,13 +285,13 @@ class StdResponse implements CHttpResponse
 	@Override
 	public PrintWriter getStreamForTextResponse ( String contentType, String encoding ) throws IOException
 	{
-		fResponse.setContentType ( contentType );
+		setContentType ( contentType );
 		fResponse.setCharacterEncoding ( encoding );
 
 		PrintWriter pw ;
-		if ( fResponseEntityAllowed )
+		if ( fResponseEntityAllowed && !fAborted )
 		{
-			pw = fInspector.wrap ( fResponse.getWriter () );
+			pw = fInspector.wrap ( fCoding != null ? getCompressedWriter () : fResponse.getWriter () );
 		}
 		else
 		{
@@ -229,6 +342,34 @@ class StdResponse implements CHttpResponse
 	private final HttpServletResponse fResponse;
 	private final CHttpRequestRouter fRouter;
 	private final CHttpObserver fInspector;
+	private final int fCompressionMinSize;
+	private final String fCoding;
+	private CompressingOutputStream fCompressor;
+	private PrintWriter fCompressedWriter;
+	private volatile boolean fAborted;
+
+	private CompressingOutputStream getCompressor ()
+	{
+		if ( fCompressor == null )
+		{
+			fCompressor = new CompressingOutputStream ( fResponse, fCoding, fCompressionMinSize );
+		}
+		return fCompressor;
+	}
+
+	private PrintWriter getCompressedWriter () throws IOException
+	{
+		if ( fCompressedWriter == null )
+		{
+			fCompressedWriter = new PrintWriter ( new OutputStreamWriter ( getCompressor (), fResponse.getCharacterEncoding () ) );
+		}
+		return fCompressedWriter;
+	}
+
+	private static final String kSendfileSupported = "org.apache.tomcat.sendfile.support";
+	private static final String kSendfileFilename = "org.apache.tomcat.sendfile.filename";
+	private static final String kSendfileStart = "org.apache.tomcat.sendfile.start";
+	private static final String kSendfileEnd = "org.apache.tomcat.sendfile.end";
 
 	private static org.slf4j.Logger log = LoggerFactory.getLogger ( StdResponse.class );
 
@@ -0,0 +1,49 @@
+package io.continual.http.service.framework;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class CHttpRequestLimitsTest extends TestCase
+{
+	@Test
+	public void testFirstMatchingRuleApplies ()
+	{
+		final CHttpRequestLimits limits = new CHttpRequestLimits ( new JSONArray ()
+			.put ( new JSONObject ().put ( "path", "/model" ).put ( "method", "GET" ).put ( "maxConcurrent", 2 ).put ( "timeout", "30s" ) )
+			.put ( new JSONObject ().put ( "path", "/model" ).put ( "maxConcurrent", 1 ) ),
+			60000L
+		);
+
+		assertEquals ( 30000L, limits.match ( "GET", "/model/foo" ).getTimeoutMs () );
+		assertEquals ( 60000L, limits.match ( "POST", "/model/foo" ).getTimeoutMs () );
+		assertEquals ( 0, limits.match ( "POST", "/model" ).getActiveCount () );
+
+		// whole segments only, and unmatched requests are unlimited
+		final CHttpRequestLimits.Rule other = limits.match ( "GET", "/models" );
+		assertEquals ( -1, other.getActiveCount () );
+		assertEquals ( 60000L, other.getTimeoutMs () );
+		assertEquals ( -1, limits.match ( "GET", "" ).getActiveCount () );
+	}
+
+	@Test
+	public void testPermits ()
+	{
+		final CHttpRequestLimits limits = new CHttpRequestLimits ( new JSONArray ()
+			.put ( new JSONObject ().put ( "path", "/slow/" ).put ( "maxConcurrent", 2 ).put ( "timeout", 0 ) ),
+			60000L
+		);
+
+		final CHttpRequestLimits.Rule r = limits.match ( "GET", "/slow/thing" );
+		assertEquals ( 0L, r.getTimeoutMs () );
+		assertTrue ( r.tryAcquire () );
+		assertTrue ( r.tryAcquire () );
+		assertFalse ( r.tryAcquire () );
+		assertEquals ( 2, r.getActiveCount () );
+
+		r.release ();
+		assertTrue ( r.tryAcquire () );
+	}
+}
@@ -3,13 +3,37 @@ package io.continual.http.service.framework;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Test;
 
 import io.continual.builder.Builder.BuildFailure;
+import io.continual.http.service.framework.CHttpServlet.SessionLifeCycle;
 import io.continual.http.service.framework.context.CHttpRequest;
+import io.continual.http.service.framework.context.MockServletRequest;
+import io.continual.http.service.framework.context.MockServletResponse;
+import io.continual.http.service.framework.context.ServletRequestContext;
+import io.continual.http.service.framework.routing.CHttpRequestRouter;
 import io.continual.util.naming.Path;
 import junit.framework.TestCase;
 
@@ -26,6 +50,181 @@ public class CHttpServletTest extends TestCase
 		assertEquals ( Path.fromString ( "/GET (root)" ), mn.getMetricNameFor ( new TestReq ( "GET", "/" ) ) );
 	}
 
+	@Test
+	public void testTimeoutsReturnPermits () throws BuildFailure, ServletException, IOException, InterruptedException
+	{
+		final Semaphore started = new Semaphore ( 0 );
+		final CountDownLatch release = new CountDownLatch ( 1 );
+		final AtomicInteger lateWritesRefused = new AtomicInteger ( 0 );
+
+		// one async thread, two permits for /slow, and timeouts fired by the test
+		final CHttpServlet s = new CHttpServlet ( new JSONObject ()
+			.put ( "async", new JSONObject ().put ( "executor", "pool" ).put ( "threads", 1 ).put ( "timeout", "1h" ) )
+			.put ( "routeLimits", new JSONArray ().put ( new JSONObject ().put ( "path", "/slow" ).put ( "maxConcurrent", 2 ) ) ),
+			SessionLifeCycle.NO_SESSION, null, null, null )
+		{
+			@Override
+			protected ServletRequestContext createHandlingContext ( HttpServletRequest req, HttpServletResponse resp, CHttpSession dc, CHttpRequestRouter rr )
+			{
+				// each handler waits to be released; one that's interrupted by its timeout tries to write anyway
+				started.release ();
+				try
+				{
+					release.await ();
+				}
+				catch ( InterruptedException x )
+				{
+					try
+					{
+						resp.getOutputStream ().write ( 'x' );
+					}
+					catch ( IOException e )
+					{
+						lateWritesRefused.incrementAndGet ();
+					}
+				}
+				throw new IllegalStateException ( "The test handler is done." );
+			}
+		};
+
+		// the first request runs, the second is queued behind it, and the third is over the limit
+		final AsyncReq running = new AsyncReq ();
+		final MockServletResponse runningResp = new MockServletResponse ();
+		s.service ( running, runningResp );
+		assertTrue ( started.tryAcquire ( 5, TimeUnit.SECONDS ) );
+
+		final AsyncReq queued = new AsyncReq ();
+		final MockServletResponse queuedResp = new MockServletResponse ();
+		s.service ( queued, queuedResp );
+
+		assertFalse ( admit ( s ) );
+
+		// time out the queued request, which never starts, and then the running one
+		queued.fAsync.timeout ();
+		assertTrue ( queued.fAsync.fCompleted.await ( 5, TimeUnit.SECONDS ) );
+		assertEquals ( 503, queuedResp.getStatus () );
+
+		running.fAsync.timeout ();
+		assertTrue ( running.fAsync.fCompleted.await ( 5, TimeUnit.SECONDS ) );
+		assertEquals ( 503, runningResp.getStatus () );
+
+		// the interrupted handler can't write into the timeout's response
+		final long untilMs = System.currentTimeMillis () + 5000;
+		while ( lateWritesRefused.get () == 0 && System.currentTimeMillis () < untilMs )
+		{
+			Thread.sleep ( 10 );
+		}
+		assertEquals ( 1, lateWritesRefused.get () );
+		assertFalse ( runningResp.getBody ().contains ( "x" ) );
+		assertTrue ( runningResp.getBody ().contains ( "timed out" ) );
+
+		// both permits are back
+		assertTrue ( admit ( s ) );
+		assertTrue ( admit ( s ) );
+		assertFalse ( admit ( s ) );
+
+		release.countDown ();
+	}
+
+	private static boolean admit ( CHttpServlet s ) throws ServletException, IOException
+	{
+		final AsyncReq req = new AsyncReq ();
+		final MockServletResponse resp = new MockServletResponse ();
+		s.service ( req, resp );
+		if ( req.fAsync != null ) return true;
+
+		assertEquals ( 503, resp.getStatus () );
+		return false;
+	}
+
+	private static class AsyncReq extends MockServletRequest
+	{
+		@Override
+		public String getMethod () { return "GET"; }
+
+		@Override
+		public String getRequestURI () { return "/slow/thing"; }
+
+		@Override
+		public String getContextPath () { return ""; }
+
+		@Override
+		public Enumeration<String> getHeaders ( String name ) { return Collections.emptyEnumeration (); }
+
+		@Override
+		public DispatcherType getDispatcherType () { return DispatcherType.REQUEST; }
+
+		@Override
+		public boolean isAsyncSupported () { return true; }
+
+		@Override
+		public AsyncContext startAsync ( ServletRequest req, ServletResponse resp )
+		{
+			fAsync = new TestAsyncContext ( req, resp );
+			return fAsync;
+		}
+
+		private TestAsyncContext fAsync;
+	}
+
+	private static class TestAsyncContext implements AsyncContext
+	{
+		public TestAsyncContext ( ServletRequest req, ServletResponse resp )
+		{
+			fReq = req;
+			fResp = resp;
+		}
+
+		public void timeout () throws IOException
+		{
+			fListener.onTimeout ( new AsyncEvent ( this, fReq, fResp ) );
+		}
+
+		@Override
+		public ServletRequest getRequest () { return fReq; }
+
+		@Override
+		public ServletResponse getResponse () { return fResp; }
+
+		@Override
+		public boolean hasOriginalRequestAndResponse () { return true; }
+
+		@Override
+		public void dispatch () { fCompleted.countDown (); }
+
+		@Override
+		public void dispatch ( String path ) { fCompleted.countDown (); }
+
+		@Override
+		public void dispatch ( ServletContext context, String path ) { fCompleted.countDown (); }
+
+		@Override
+		public void complete () { fCompleted.countDown (); }
+
+		@Override
+		public void start ( Runnable run ) { run.run (); }
+
+		@Override
+		public void addListener ( AsyncListener listener ) { fListener = listener; }
+
+		@Override
+		public void addListener ( AsyncListener listener, ServletRequest req, ServletResponse resp ) { fListener = listener; }
+
+		@Override
+		public <T extends AsyncListener> T createListener ( Class<T> clazz ) { return null; }
+
+		@Override
+		public void setTimeout ( long timeoutMs ) {}
+
+		@Override
+		public long getTimeout () { return 0; }
+
+		private final ServletRequest fReq;
+		private final ServletResponse fResp;
+		private volatile AsyncListener fListener;
+		private final CountDownLatch fCompleted = new CountDownLatch ( 1 );
+	}
+
 	private static class TestReq implements CHttpRequest 
 	{
 		private String fPath;
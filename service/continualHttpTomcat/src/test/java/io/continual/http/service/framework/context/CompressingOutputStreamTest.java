@@ -0,0 +1,138 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *	
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *	
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import io.continual.util.data.StreamTools;
+import junit.framework.TestCase;
+
+public class CompressingOutputStreamTest extends TestCase
+{
+	@Test
+	public void testSmallResponseIsNotCompressed () throws IOException
+	{
+		final TestResponse r = new TestResponse ( "application/json" );
+		final CompressingOutputStream os = new CompressingOutputStream ( r.fProxy, CompressingOutputStream.kGzip, 1024 );
+		os.write ( "{\"hello\":\"world\"}".getBytes () );
+		os.close ();
+
+		assertNull ( r.fHeaders.get ( "Content-Encoding" ) );
+		assertEquals ( "17", r.fHeaders.get ( "Content-Length" ) );
+		assertEquals ( "{\"hello\":\"world\"}", new String ( r.fBody.toByteArray () ) );
+	}
+
+	@Test
+	public void testLargeResponseIsCompressed () throws IOException
+	{
+		final StringBuilder sb = new StringBuilder ();
+		for ( int i=0; i<1000; i++ )
+		{
+			sb.append ( "{\"item\":" ).append ( i ).append ( "}," );
+		}
+		final byte[] data = sb.toString ().getBytes ();
+
+		final TestResponse r = new TestResponse ( "application/json; charset=UTF-8" );
+		final CompressingOutputStream os = new CompressingOutputStream ( r.fProxy, CompressingOutputStream.kGzip, 1024 );
+		for ( int i=0; i<data.length; i+=100 )
+		{
+			os.write ( data, i, Math.min ( 100, data.length - i ) );
+		}
+		os.close ();
+
+		assertEquals ( "gzip", r.fHeaders.get ( "Content-Encoding" ) );
+		assertEquals ( "Accept-Encoding", r.fHeaders.get ( "Vary" ) );
+		assertTrue ( r.fBody.size () < data.length );
+
+		final ByteArrayOutputStream unzipped = new ByteArrayOutputStream ();
+		StreamTools.copyStream ( new GZIPInputStream ( new ByteArrayInputStream ( r.fBody.toByteArray () ) ), unzipped );
+		assertEquals ( sb.toString (), new String ( unzipped.toByteArray () ) );
+	}
+
+	@Test
+	public void testBinaryTypeIsNotCompressed () throws IOException
+	{
+		final TestResponse r = new TestResponse ( "image/png" );
+		final CompressingOutputStream os = new CompressingOutputStream ( r.fProxy, CompressingOutputStream.kGzip, 10 );
+		os.write ( new byte [ 5000 ] );
+		os.close ();
+
+		assertNull ( r.fHeaders.get ( "Content-Encoding" ) );
+		assertEquals ( 5000, r.fBody.size () );
+	}
+
+	/**
+	 * Just enough of a servlet response for the compressing stream
+	 */
+	private static class TestResponse
+	{
+		public TestResponse ( String contentType )
+		{
+			fHeaders = new HashMap<> ();
+			fBody = new ByteArrayOutputStream ();
+			final ServletOutputStream sos = new ServletOutputStream ()
+			{
+				@Override
+				public void write ( int b ) { fBody.write ( b ); }
+
+				@Override
+				public boolean isReady () { return true; }
+
+				@Override
+				public void setWriteListener ( WriteListener writeListener ) {}
+			};
+
+			fProxy = (HttpServletResponse) Proxy.newProxyInstance ( getClass ().getClassLoader (), new Class<?>[] { HttpServletResponse.class },
+				( proxy, method, args ) ->
+				{
+					switch ( method.getName () )
+					{
+						case "getOutputStream": return sos;
+						case "getContentType": return contentType;
+						case "getStatus": return 200;
+						case "isCommitted": return false;
+						case "containsHeader": return fHeaders.containsKey ( args[0] );
+						case "setHeader":
+						case "addHeader":
+							fHeaders.put ( (String) args[0], (String) args[1] );
+							return null;
+						case "setContentLength":
+							fHeaders.put ( "Content-Length", args[0].toString () );
+							return null;
+						default:
+							return null;
+					}
+				}
+			);
+		}
+
+		final HashMap<String,String> fHeaders;
+		final ByteArrayOutputStream fBody;
+		final HttpServletResponse fProxy;
+	}
+}
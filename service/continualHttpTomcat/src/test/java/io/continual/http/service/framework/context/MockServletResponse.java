@@ -0,0 +1,205 @@
+/*
+ *	Copyright 2019, Continual.io
+ *
+ *	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ *	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+
+package io.continual.http.service.framework.context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A response that records its status, headers, and body in memory
+ */
+public class MockServletResponse implements HttpServletResponse
+{
+	/**
+	 * Get the body written so far
+	 * @return the body as a string
+	 */
+	public synchronized String getBody ()
+	{
+		if ( fWriter != null ) fWriter.flush ();
+		return new String ( fBody.toByteArray (), StandardCharsets.UTF_8 );
+	}
+
+	@Override
+	public synchronized String getCharacterEncoding () { return "UTF-8"; }
+
+	@Override
+	public synchronized String getContentType () { return fContentType; }
+
+	@Override
+	public synchronized ServletOutputStream getOutputStream ()
+	{
+		return new ServletOutputStream ()
+		{
+			@Override
+			public void write ( int b ) { synchronized ( MockServletResponse.this ) { fBody.write ( b ); } }
+
+			@Override
+			public boolean isReady () { return true; }
+
+			@Override
+			public void setWriteListener ( WriteListener writeListener ) {}
+		};
+	}
+
+	@Override
+	public synchronized PrintWriter getWriter ()
+	{
+		if ( fWriter == null )
+		{
+			fWriter = new PrintWriter ( new OutputStreamWriter ( fBody, StandardCharsets.UTF_8 ) );
+		}
+		return fWriter;
+	}
+
+	@Override
+	public synchronized void setCharacterEncoding ( String charset ) {}
+
+	@Override
+	public synchronized void setContentLength ( int len ) {}
+
+	@Override
+	public synchronized void setContentLengthLong ( long len ) {}
+
+	@Override
+	public synchronized void setContentType ( String type ) { fContentType = type; }
+
+	@Override
+	public synchronized void setBufferSize ( int size ) {}
+
+	@Override
+	public synchronized int getBufferSize () { return 0; }
+
+	@Override
+	public synchronized void flushBuffer ()
+	{
+		if ( fWriter != null ) fWriter.flush ();
+		fCommitted = true;
+	}
+
+	@Override
+	public synchronized void resetBuffer ()
+	{
+		if ( fWriter != null ) fWriter.flush ();
+		fBody.reset ();
+	}
+
+	@Override
+	public synchronized boolean isCommitted () { return fCommitted; }
+
+	@Override
+	public synchronized void reset ()
+	{
+		resetBuffer ();
+		fStatus = 200;
+		fHeaders.clear ();
+	}
+
+	@Override
+	public synchronized void setLocale ( Locale loc ) {}
+
+	@Override
+	public synchronized Locale getLocale () { return Locale.getDefault (); }
+
+	@Override
+	public synchronized void addCookie ( Cookie cookie ) {}
+
+	@Override
+	public synchronized boolean containsHeader ( String name ) { return fHeaders.containsKey ( name ); }
+
+	@Override
+	public String encodeURL ( String url ) { return url; }
+
+	@Override
+	public String encodeRedirectURL ( String url ) { return url; }
+
+	@Override
+	@Deprecated
+	public String encodeUrl ( String url ) { return url; }
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl ( String url ) { return url; }
+
+	@Override
+	public synchronized void sendError ( int sc, String msg ) { fStatus = sc; fCommitted = true; }
+
+	@Override
+	public synchronized void sendError ( int sc ) { sendError ( sc, null ); }
+
+	@Override
+	public synchronized void sendRedirect ( String location ) { fStatus = 302; fCommitted = true; }
+
+	@Override
+	public synchronized void setDateHeader ( String name, long date ) { setHeader ( name, Long.toString ( date ) ); }
+
+	@Override
+	public synchronized void addDateHeader ( String name, long date ) { setDateHeader ( name, date ); }
+
+	@Override
+	public synchronized void setHeader ( String name, String value ) { fHeaders.put ( name, value ); }
+
+	@Override
+	public synchronized void addHeader ( String name, String value ) { setHeader ( name, value ); }
+
+	@Override
+	public synchronized void setIntHeader ( String name, int value ) { setHeader ( name, Integer.toString ( value ) ); }
+
+	@Override
+	public synchronized void addIntHeader ( String name, int value ) { setIntHeader ( name, value ); }
+
+	@Override
+	public synchronized void setStatus ( int sc ) { fStatus = sc; }
+
+	@Override
+	@Deprecated
+	public synchronized void setStatus ( int sc, String sm ) { fStatus = sc; }
+
+	@Override
+	public synchronized int getStatus () { return fStatus; }
+
+	@Override
+	public synchronized String getHeader ( String name ) { return fHeaders.get ( name ); }
+
+	@Override
+	public synchronized Collection<String> getHeaders ( String name )
+	{
+		final String value = fHeaders.get ( name );
+		return value == null ? Collections.<String>emptyList () : Collections.singletonList ( value );
+	}
+
+	@Override
+	public synchronized Collection<String> getHeaderNames () { return fHeaders.keySet (); }
+
+	private int fStatus = 200;
+	private String fContentType;
+	private boolean fCommitted = false;
+	private PrintWriter fWriter;
+	private final HashMap<String,String> fHeaders = new HashMap<> ();
+	private final ByteArrayOutputStream fBody = new ByteArrayOutputStream ();
+}
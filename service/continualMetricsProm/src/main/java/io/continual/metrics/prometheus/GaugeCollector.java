@@ -0,0 +1,47 @@
+package io.continual.metrics.prometheus;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.continual.metrics.metricTypes.Gauge;
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+/**
+ * Reports a gauge's value at scrape time. Numbers are reported as is, booleans as 1 or 0, and
+ * anything else (including null) is left out of the scrape.
+ */
+class GaugeCollector<T> extends Collector
+{
+	GaugeCollector ( String name, String help, Gauge<T> gauge )
+	{
+		fName = name;
+		fHelp = help;
+		fGauge = gauge;
+	}
+
+	@Override
+	public List<MetricFamilySamples> collect ()
+	{
+		final Object val = fGauge.getValue ();
+
+		final double d;
+		if ( val instanceof Number )
+		{
+			d = ((Number) val).doubleValue ();
+		}
+		else if ( val instanceof Boolean )
+		{
+			d = ((Boolean) val) ? 1.0 : 0.0;
+		}
+		else
+		{
+			return Collections.emptyList ();
+		}
+		return Collections.singletonList ( new GaugeMetricFamily ( fName, fHelp, d ) );
+	}
+
+	private final String fName;
+	private final String fHelp;
+	private final Gauge<T> fGauge;
+}
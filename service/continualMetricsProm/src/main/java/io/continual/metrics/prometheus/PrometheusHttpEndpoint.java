@@ -1,7 +1,8 @@
 package io.continual.metrics.prometheus;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.PrintWriter;
 import java.util.Map;
 
 import org.json.JSONObject;
@@ -18,6 +19,7 @@ import io.continual.services.ServiceContainer;
 import io.continual.util.naming.Name;
 import io.continual.util.naming.Path;
 import io.continual.util.standards.HttpStatusCodes;
+import io.prometheus.client.CollectorRegistry;
 
 public class PrometheusHttpEndpoint extends TomcatHttpService
 {
@@ -33,31 +35,52 @@ public class PrometheusHttpEndpoint extends TomcatHttpService
 		);
 	}
 
+	private static final int kWriteBufferSize = 64 * 1024;
+
+	private static abstract class MetricsRouteInvocation implements CHttpRouteInvocation
+	{
+		@Override
+		public Path getRouteNameForMetrics ()
+		{
+			return Path.getRootPath ().makeChildItem ( Name.fromString ( "metrics" ) );
+		}
+	}
+
 	private static class MetricsRouter implements CHttpRouteSource
 	{
 		@Override
 		public CHttpRouteInvocation getRouteFor ( String verb, String path )
 		{
-			if ( verb != null && verb.equalsIgnoreCase ( "GET" ) && path != null && path.equals ( "metrics" ) )
+			if ( verb == null || path == null || !( path.equals ( "metrics" ) || path.equals ( "/metrics" ) ) ) return null;
+
+			if ( verb.equalsIgnoreCase ( "GET" ) )
 			{
-				return new CHttpRouteInvocation ()
+				return new MetricsRouteInvocation ()
 				{
 					@Override
-					public void run ( CHttpRequestContext context )
-						throws IOException, IllegalArgumentException, IllegalAccessException, InvocationTargetException
+					public void run ( CHttpRequestContext context ) throws IOException
 					{
+						// stream the scrape as the registry collects it rather than building it in memory
 						final CHttpResponse reply = context.response ();
 						reply.writeHeader ( "Access-Control-Allow-Origin", "*" );
-						reply.writeHeader ( "Access-Control-Allow-Methods", "DELETE, GET, OPTIONS, PATCH, POST, PUT" );
-						reply.writeHeader ( "Access-Control-Max-Age", "3600" );
-						reply.setStatus ( HttpStatusCodes.k204_noContent );
+						reply.setStatus ( HttpStatusCodes.k200_ok );
+						final PrintWriter pw = reply.getStreamForTextResponse ( PrometheusTextWriter.kContentType );
+						PrometheusTextWriter.write ( CollectorRegistry.defaultRegistry, new BufferedWriter ( pw, kWriteBufferSize ) );
 					}
-
+				};
+			}
+			else if ( verb.equalsIgnoreCase ( "OPTIONS" ) )
+			{
+				return new MetricsRouteInvocation ()
+				{
 					@Override
-					public Path getRouteNameForMetrics ()
+					public void run ( CHttpRequestContext context )
 					{
-						// FIXME: this is just to complete the interface.
-						return Path.getRootPath ().makeChildItem ( Name.fromString ( "metrics" ) );
+						final CHttpResponse reply = context.response ();
+						reply.writeHeader ( "Access-Control-Allow-Origin", "*" );
+						reply.writeHeader ( "Access-Control-Allow-Methods", "GET, OPTIONS" );
+						reply.writeHeader ( "Access-Control-Max-Age", "3600" );
+						reply.setStatus ( HttpStatusCodes.k204_noContent );
 					}
 				};
 			}
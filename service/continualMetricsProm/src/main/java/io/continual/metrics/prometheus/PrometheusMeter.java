@@ -0,0 +1,144 @@
+package io.continual.metrics.prometheus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.continual.metrics.metricTypes.Meter;
+
+/**
+ * A meter backed by a Prometheus counter. Prometheus computes rates from the counter at query time,
+ * but the Meter interface also reports rates locally, so this keeps the usual exponentially weighted
+ * 1, 5 and 15 minute averages, updated on a 5 second tick as the meter is used.
+ */
+class PrometheusMeter implements Meter
+{
+	PrometheusMeter ( io.prometheus.client.Counter counter )
+	{
+		fChild = counter.labels ();
+		fCount = new LongAdder ();
+		fUncounted = new LongAdder ();
+		fStartNs = System.nanoTime ();
+		fLastTickNs = new AtomicLong ( fStartNs );
+		fM1 = new Ewma ( 1 );
+		fM5 = new Ewma ( 5 );
+		fM15 = new Ewma ( 15 );
+	}
+
+	@Override
+	public void mark ( long amt )
+	{
+		tickIfNecessary ();
+		fChild.inc ( amt );
+		fCount.add ( amt );
+		fUncounted.add ( amt );
+	}
+
+	@Override
+	public long getCount ()
+	{
+		return fCount.sum ();
+	}
+
+	@Override
+	public double getMeanRate ()
+	{
+		final long count = getCount ();
+		if ( count == 0 ) return 0.0;
+
+		final double elapsedSec = ( System.nanoTime () - fStartNs ) / (double) TimeUnit.SECONDS.toNanos ( 1 );
+		return elapsedSec <= 0.0 ? 0.0 : count / elapsedSec;
+	}
+
+	@Override
+	public double getOneMinuteRate ()
+	{
+		tickIfNecessary ();
+		return fM1.getRatePerSecond ();
+	}
+
+	@Override
+	public double getFiveMinuteRate ()
+	{
+		tickIfNecessary ();
+		return fM5.getRatePerSecond ();
+	}
+
+	@Override
+	public double getFifteenMinuteRate ()
+	{
+		tickIfNecessary ();
+		return fM15.getRatePerSecond ();
+	}
+
+	private final io.prometheus.client.Counter.Child fChild;
+	private final LongAdder fCount;
+	private final LongAdder fUncounted;
+	private final long fStartNs;
+	private final AtomicLong fLastTickNs;
+	private final Ewma fM1;
+	private final Ewma fM5;
+	private final Ewma fM15;
+
+	private static final long kTickIntervalSec = 5;
+	private static final long kTickIntervalNs = TimeUnit.SECONDS.toNanos ( kTickIntervalSec );
+
+	private void tickIfNecessary ()
+	{
+		final long lastTickNs = fLastTickNs.get ();
+		final long nowNs = System.nanoTime ();
+		final long ageNs = nowNs - lastTickNs;
+		if ( ageNs < kTickIntervalNs ) return;
+
+		// only the thread that moves the tick forward updates the averages
+		final long newTickNs = nowNs - ( ageNs % kTickIntervalNs );
+		if ( fLastTickNs.compareAndSet ( lastTickNs, newTickNs ) )
+		{
+			final long ticks = ageNs / kTickIntervalNs;
+			final long uncounted = fUncounted.sumThenReset ();
+			synchronized ( this )
+			{
+				fM1.tick ( uncounted );
+				fM5.tick ( uncounted );
+				fM15.tick ( uncounted );
+				for ( long i=1; i<ticks; i++ )
+				{
+					fM1.tick ( 0 );
+					fM5.tick ( 0 );
+					fM15.tick ( 0 );
+				}
+			}
+		}
+	}
+
+	private static class Ewma
+	{
+		Ewma ( int minutes )
+		{
+			fAlpha = 1.0 - Math.exp ( -kTickIntervalSec / 60.0 / minutes );
+		}
+
+		synchronized void tick ( long count )
+		{
+			final double instantRate = count / (double) kTickIntervalSec;
+			if ( fInitialized )
+			{
+				fRate += ( fAlpha * ( instantRate - fRate ) );
+			}
+			else
+			{
+				fRate = instantRate;
+				fInitialized = true;
+			}
+		}
+
+		synchronized double getRatePerSecond ()
+		{
+			return fRate;
+		}
+
+		private final double fAlpha;
+		private boolean fInitialized = false;
+		private double fRate = 0.0;
+	}
+}
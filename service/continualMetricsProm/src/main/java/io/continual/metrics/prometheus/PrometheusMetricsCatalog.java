@@ -1,11 +1,10 @@
 package io.continual.metrics.prometheus;
 
-import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import io.continual.metrics.MetricsCatalog;
-import io.continual.metrics.impl.noop.NoopGauge;
-import io.continual.metrics.impl.noop.NoopMeter;
 import io.continual.metrics.metricTypes.Counter;
 import io.continual.metrics.metricTypes.Gauge;
 import io.continual.metrics.metricTypes.Histogram;
@@ -18,21 +17,13 @@ public class PrometheusMetricsCatalog implements MetricsCatalog
 {
 	public PrometheusMetricsCatalog ()
 	{
-		this ( Path.getRootPath () );
+		this ( Path.getRootPath (), new ConcurrentHashMap<> () );
 	}
 
 	@Override
 	public MetricsCatalog getSubCatalog ( Name name )
 	{
-		PrometheusMetricsCatalog result = fChildren.get ( name );
-		if ( result != null )
-		{
-			return result;
-		}
-		
-		result = new PrometheusMetricsCatalog ( fBasePath.makeChildItem ( name ) );
-		fChildren.put ( name, result );
-		return result;
+		return fChildren.computeIfAbsent ( name, n -> new PrometheusMetricsCatalog ( fBasePath.makeChildItem ( n ), fMetrics ) );
 	}
 
 	@Override
@@ -78,139 +69,131 @@ public class PrometheusMetricsCatalog implements MetricsCatalog
 	@Override
 	public Counter counter ( Path name, String helpText )
 	{
-		final Path fullPath = getCurrentBase().makeChildPath ( name );
-
-		final String pName = pathToPrometheusName ( fullPath );
-		final io.prometheus.client.Counter pc = io.prometheus.client.Counter.build ()
-			.name ( pName )
-			.help ( helpText )
-			.create ()
-		;
-		register ( pName, pc );
-		
-		return new Counter ()
-		{
-			@Override
-			public void increment ( long amount )
+		final String pName = pathToPrometheusName ( getCurrentBase().makeChildPath ( name ) );
+		return lookup ( pName, Counter.class, () -> {
+			final io.prometheus.client.Counter pc = io.prometheus.client.Counter.build ()
+				.name ( pName )
+				.help ( helpText )
+				.register ()
+			;
+			final io.prometheus.client.Counter.Child child = pc.labels ();
+			return new Counter ()
 			{
-				pc.inc ( amount );
-			}
+				@Override
+				public void increment ( long amount )
+				{
+					child.inc ( amount );
+				}
 
-			@Override
-			public long getCount ()
-			{
-				return Math.round ( pc.get () );
-			}
-		};
+				@Override
+				public long getCount ()
+				{
+					return Math.round ( child.get () );
+				}
+			};
+		} );
 	}
 
 	@Override
 	public Meter meter ( Path name, String helpText )
 	{
-		return new NoopMeter ();
+		final String pName = pathToPrometheusName ( getCurrentBase().makeChildPath ( name ) );
+		return lookup ( pName, Meter.class, () -> new PrometheusMeter ( io.prometheus.client.Counter.build ()
+			.name ( pName )
+			.help ( helpText )
+			.register ()
+		) );
 	}
 
 	@Override
 	public <T> Gauge<T> gauge ( Path name, String helpText, GaugeFactory<T> factory )
 	{
-		return new NoopGauge<T> ();
+		final String pName = pathToPrometheusName ( getCurrentBase().makeChildPath ( name ) );
+		return lookup ( pName, Gauge.class, () -> {
+			final Gauge<T> gauge = factory.makeNewGauage ();
+			new GaugeCollector<T> ( pName, helpText, gauge ).register ();
+			return gauge;
+		} );
 	}
 
 	@Override
 	public Histogram histogram ( Path name, String helpText )
 	{
-		final Path fullPath = getCurrentBase().makeChildPath ( name );
-		final String pName = pathToPrometheusName ( fullPath );
-
-		io.prometheus.client.Histogram h;
-		io.prometheus.client.SimpleCollector<?> sc = fLocalPaths.get ( pName );
-		if ( sc != null )
-		{
-			h = (io.prometheus.client.Histogram)sc;
-		}
-		else
-		{
-			h = io.prometheus.client.Histogram.build ()
+		final String pName = pathToPrometheusName ( getCurrentBase().makeChildPath ( name ) );
+		return lookup ( pName, Histogram.class, () -> {
+			final io.prometheus.client.Histogram.Child child = io.prometheus.client.Histogram.build ()
 				.name ( pName )
 				.help ( helpText )
-				.create ()
+				.register ()
+				.labels ()
 			;
-			register ( pName, h );
-		}
-
-		return new Histogram ()
-		{
-			@Override
-			public void update ( int value )
+			return new Histogram ()
 			{
-				h.observe ( value );
-			}
+				@Override
+				public void update ( int value )
+				{
+					child.observe ( value );
+				}
 
-			@Override
-			public void update ( long value )
-			{
-				h.observe ( value );
-			}
-		};
+				@Override
+				public void update ( long value )
+				{
+					child.observe ( value );
+				}
+			};
+		} );
 	}
 
 	@Override
 	public Timer timer ( Path name, String helpText )
 	{
-		final Path fullPath = getCurrentBase().makeChildPath ( name );
-		final String pName = pathToPrometheusName ( fullPath );
-
-		io.prometheus.client.Histogram h;
-		io.prometheus.client.SimpleCollector<?> sc = fLocalPaths.get ( pName );
-		if ( sc != null )
-		{
-			h = (io.prometheus.client.Histogram)sc;
-		}
-		else
-		{
-			h = io.prometheus.client.Histogram.build ()
+		final String pName = pathToPrometheusName ( getCurrentBase().makeChildPath ( name ) );
+		return lookup ( pName, Timer.class, () -> {
+			// Prometheus' default buckets are in seconds, so we observe seconds here
+			final io.prometheus.client.Histogram.Child child = io.prometheus.client.Histogram.build ()
 				.name ( pName )
 				.help ( helpText )
-				.create ()
+				.register ()
+				.labels ()
 			;
-			register ( pName, h );
-		}
-
-		return new Timer ()
-		{
-			@Override
-			public Context time ()
+			return new Timer ()
 			{
-				final long startNs = System.nanoTime ();
-				return new Context ()
+				@Override
+				public Context time ()
 				{
-					@Override
-					public long stop ()
+					final long startNs = System.nanoTime ();
+					return new Context ()
 					{
-						final long endNs = System.nanoTime ();
-						final long durationNs = endNs - startNs;
-						h.observe ( durationNs );
-						return durationNs;
-					}
-				};
-			}
-		};
+						@Override
+						public long stop ()
+						{
+							final long endNs = System.nanoTime ();
+							final long durationNs = endNs - startNs;
+							child.observe ( durationNs / kNanosPerSecond );
+							return durationNs;
+						}
+					};
+				}
+			};
+		} );
 	}
 
 	private final Path fBasePath;
 	private final LinkedList<Path> fPathStack;
-	private final HashMap<String,io.prometheus.client.SimpleCollector<?>> fLocalPaths;
-	private final HashMap<Name,PrometheusMetricsCatalog> fChildren;
+	private final ConcurrentHashMap<String,Object> fMetrics;
+	private final ConcurrentHashMap<Name,PrometheusMetricsCatalog> fChildren;
 
-	private PrometheusMetricsCatalog ( Path basePath )
+	private static final double kNanosPerSecond = 1000.0 * 1000.0 * 1000.0;
+
+	private PrometheusMetricsCatalog ( Path basePath, ConcurrentHashMap<String,Object> metrics )
 	{
 		fBasePath = basePath;
 
 		fPathStack = new LinkedList<> ();
 		fPathStack.add ( basePath );
 
-		fChildren = new HashMap<> ();
-		fLocalPaths = new HashMap<> ();
+		fChildren = new ConcurrentHashMap<> ();
+		fMetrics = metrics;
 	}
 
 	private Path getCurrentBase ()
@@ -218,13 +201,21 @@ public class PrometheusMetricsCatalog implements MetricsCatalog
 		return fPathStack.getLast ();
 	}
 
-	private void register ( String pName, io.prometheus.client.SimpleCollector<?> sc )
+	/**
+	 * Get the metric registered under the given name, creating and registering it if needed. Metric
+	 * names are global in Prometheus, so the map is shared by every catalog in the tree, and each
+	 * metric is created once no matter how many threads ask for it at the same time.
+	 */
+	private <M> M lookup ( String pName, Class<?> type, Supplier<M> creator )
 	{
-		if ( !fLocalPaths.containsKey ( pName ) )
+		final Object existing = fMetrics.computeIfAbsent ( pName, n -> creator.get () );
+		if ( !type.isInstance ( existing ) )
 		{
-			sc.register ();
-			fLocalPaths.put ( pName, sc );
+			throw new IllegalArgumentException ( "Metric " + pName + " is already registered as a different type." );
 		}
+		@SuppressWarnings("unchecked")
+		final M result = (M) existing;
+		return result;
 	}
 
 	private String pathToPrometheusName ( Path fullPath )
@@ -0,0 +1,153 @@
+package io.continual.metrics.prometheus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Enumeration;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+import io.prometheus.client.CollectorRegistry;
+
+/**
+ * Writes the Prometheus text exposition format (version 0.0.4) directly to a writer. The registry
+ * collects one metric family at a time as we go, so a scrape never holds more than a single family
+ * in memory.
+ */
+public class PrometheusTextWriter
+{
+	public static final String kContentType = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * Write every metric family in the registry
+	 * @param registry
+	 * @param w
+	 * @throws IOException
+	 */
+	public static void write ( CollectorRegistry registry, Writer w ) throws IOException
+	{
+		final Enumeration<MetricFamilySamples> families = registry.metricFamilySamples ();
+		while ( families.hasMoreElements () )
+		{
+			write ( families.nextElement (), w );
+		}
+		w.flush ();
+	}
+
+	/**
+	 * Write a single metric family
+	 * @param family
+	 * @param w
+	 * @throws IOException
+	 */
+	public static void write ( MetricFamilySamples family, Writer w ) throws IOException
+	{
+		// counters are exposed with a _total suffix in this format
+		final String name = family.type == Collector.Type.COUNTER ? family.name + "_total" : family.name;
+
+		w.write ( "# HELP " );
+		w.write ( name );
+		w.write ( ' ' );
+		writeEscapedHelp ( family.help, w );
+		w.write ( '\n' );
+
+		w.write ( "# TYPE " );
+		w.write ( name );
+		w.write ( ' ' );
+		w.write ( typeString ( family.type ) );
+		w.write ( '\n' );
+
+		for ( Sample s : family.samples )
+		{
+			// creation time samples aren't part of this format's families
+			if ( s.name.endsWith ( "_created" ) ) continue;
+
+			w.write ( s.name );
+			if ( s.labelNames.size () > 0 )
+			{
+				w.write ( '{' );
+				for ( int i=0; i<s.labelNames.size (); i++ )
+				{
+					if ( i > 0 ) w.write ( ',' );
+					w.write ( s.labelNames.get ( i ) );
+					w.write ( "=\"" );
+					writeEscapedLabelValue ( s.labelValues.get ( i ), w );
+					w.write ( '"' );
+				}
+				w.write ( '}' );
+			}
+			w.write ( ' ' );
+			w.write ( Collector.doubleToGoString ( s.value ) );
+			if ( s.timestampMs != null )
+			{
+				w.write ( ' ' );
+				w.write ( s.timestampMs.toString () );
+			}
+			w.write ( '\n' );
+		}
+	}
+
+	private static String typeString ( Collector.Type t )
+	{
+		switch ( t )
+		{
+			case GAUGE:
+				return "gauge";
+			case COUNTER:
+				return "counter";
+			case SUMMARY:
+				return "summary";
+			case HISTOGRAM:
+				return "histogram";
+			case GAUGE_HISTOGRAM:
+				return "histogram";
+			case STATE_SET:
+				return "gauge";
+			case INFO:
+				return "gauge";
+			default:
+				return "untyped";
+		}
+	}
+
+	private static void writeEscapedHelp ( String s, Writer w ) throws IOException
+	{
+		for ( int i=0; i<s.length (); i++ )
+		{
+			final char c = s.charAt ( i );
+			switch ( c )
+			{
+				case '\\':
+					w.write ( "\\\\" );
+					break;
+				case '\n':
+					w.write ( "\\n" );
+					break;
+				default:
+					w.write ( c );
+			}
+		}
+	}
+
+	private static void writeEscapedLabelValue ( String s, Writer w ) throws IOException
+	{
+		for ( int i=0; i<s.length (); i++ )
+		{
+			final char c = s.charAt ( i );
+			switch ( c )
+			{
+				case '\\':
+					w.write ( "\\\\" );
+					break;
+				case '\"':
+					w.write ( "\\\"" );
+					break;
+				case '\n':
+					w.write ( "\\n" );
+					break;
+				default:
+					w.write ( c );
+			}
+		}
+	}
+}
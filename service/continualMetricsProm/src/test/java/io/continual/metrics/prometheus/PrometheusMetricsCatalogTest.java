@@ -0,0 +1,43 @@
+package io.continual.metrics.prometheus;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import io.continual.metrics.MetricsCatalog;
+import io.continual.metrics.metricTypes.Meter;
+import io.prometheus.client.CollectorRegistry;
+import junit.framework.TestCase;
+
+public class PrometheusMetricsCatalogTest extends TestCase
+{
+	@Test
+	public void testMetersAndGaugesAreExposed () throws IOException
+	{
+		final MetricsCatalog cat = new PrometheusMetricsCatalog ().getSubCatalog ( "catalogTest" );
+
+		final Meter m = cat.meter ( "msgsIn" );
+		m.mark ();
+		m.mark ( 4 );
+		assertEquals ( 5, m.getCount () );
+
+		// asking again gets the same meter rather than a new, unregistered one
+		assertSame ( m, cat.meter ( "msgsIn" ) );
+		cat.counter ( "errors" ).increment ( 2 );
+		cat.counter ( "errors" ).increment ( 1 );
+
+		cat.gauge ( "depth", () -> () -> 7 );
+
+		final StringWriter sw = new StringWriter ();
+		PrometheusTextWriter.write ( CollectorRegistry.defaultRegistry, sw );
+		final String scrape = sw.toString ();
+
+		assertTrue ( scrape, scrape.contains ( "# TYPE catalogTest_msgsIn_total counter\n" ) );
+		assertTrue ( scrape, scrape.contains ( "catalogTest_msgsIn_total 5.0\n" ) );
+		assertTrue ( scrape, scrape.contains ( "catalogTest_errors_total 3.0\n" ) );
+		assertTrue ( scrape, scrape.contains ( "# TYPE catalogTest_depth gauge\n" ) );
+		assertTrue ( scrape, scrape.contains ( "catalogTest_depth 7.0\n" ) );
+		assertFalse ( scrape, scrape.contains ( "_created" ) );
+	}
+}